@@ -0,0 +1,153 @@
+package com.audacious_software.zamboni.benchmark;
+
+import com.audacious_software.zamboni.benchmark.server.UpdateServer;
+import com.audacious_software.zamboni.utils.BlockDownload;
+import com.audacious_software.zamboni.utils.BlockIndex;
+import com.audacious_software.zamboni.utils.HttpDownload;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.URL;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Updates an installed APK to a new version of which a fraction of the
+ * content changed, with a full download and with a block download that
+ * reuses the unchanged blocks of the installed APK. The bytes counter
+ * shows the transferred bytes, the scan of the old APK is part of the
+ * time of the block download.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class BlockDownloadBenchmark {
+    private static final String PATH = "/app.apk";
+    private static final int SIZE = 8 * 1024 * 1024;
+
+    /**
+     * Percent of the new version that differs from the old one, changed
+     * in runs of 16 KB at random places, half of which also shift the
+     * rest of the file.
+     */
+    @Param({"1", "10", "50"})
+    public int changed;
+
+    /**
+     * Bytes per second, 0 for unlimited.
+     */
+    @Param({"0", "10485760"})
+    public long bandwidth;
+
+    /**
+     * full or block.
+     */
+    @Param({"full", "block"})
+    public String mode;
+
+    private UpdateServer mServer;
+    private HttpDownload.ConnectionFactory mFactory;
+    private URL mUrl;
+    private BlockIndex mIndex;
+    private File mOld;
+    private File mNew;
+    private File mFile;
+
+    @Setup
+    public void setUp() throws IOException {
+        byte[] old = UpdateServer.createFile(SIZE);
+        byte[] updated = modify(old, changed);
+        mOld = write(old, "old");
+        mNew = write(updated, "new");
+
+        ByteArrayOutputStream index = new ByteArrayOutputStream();
+        BlockIndex.write(mNew, BlockIndex.DEFAULT_BLOCK_SIZE, BlockIndex.DEFAULT_HASH_LENGTH, index);
+        mIndex = BlockIndex.parse(new ByteArrayInputStream(index.toByteArray()));
+
+        mServer = UpdateServer.start();
+        mServer.putFile(PATH, updated);
+        mServer.setBandwidth(bandwidth);
+        mFactory = mServer.connectionFactory();
+        mUrl = mServer.httpsUrl(PATH);
+        mFile = File.createTempFile("download", ".apk");
+    }
+
+    @TearDown
+    public void tearDown() {
+        mServer.close();
+        mOld.delete();
+        mNew.delete();
+        mFile.delete();
+    }
+
+    @Benchmark
+    public long download(Transfers.Counters counters) {
+        if ("full".equals(mode)) {
+            return Transfers.download(mUrl, mFactory, mFile, counters);
+        }
+
+        BlockDownload download = new BlockDownload(mIndex, mUrl, mFactory);
+        try {
+            long total = download.download(mOld, mFile, null);
+            counters.successes++;
+            return total;
+        } catch (IOException e) {
+            counters.failures++;
+            return 0L;
+        } finally {
+            counters.bytes += download.getFetchedBytes();
+        }
+    }
+
+    /**
+     * Returns a copy of the data with runs replaced or inserted.
+     */
+    private static byte[] modify(byte[] data, int percent) {
+        Random random = new Random(percent);
+        int run = 16 * 1024;
+        int runs = Math.max(1, (int) ((long) data.length * percent / 100 / run));
+        ByteArrayOutputStream result = new ByteArrayOutputStream(data.length + runs * run);
+        byte[] fresh = new byte[run];
+
+        int[] starts = new int[runs];
+        for (int index = 0; index < runs; index++) {
+            starts[index] = random.nextInt(data.length - run);
+        }
+        Arrays.sort(starts);
+
+        int position = 0;
+        for (int index = 0; index < runs; index++) {
+            int start = Math.max(starts[index], position);
+            result.write(data, position, start - position);
+            random.nextBytes(fresh);
+            result.write(fresh, 0, run);
+            // Every other run is an insertion, which shifts the following blocks.
+            position = index % 2 == 0 ? Math.min(data.length, start + run) : start;
+        }
+        result.write(data, position, data.length - position);
+        return result.toByteArray();
+    }
+
+    private static File write(byte[] data, String prefix) throws IOException {
+        File file = File.createTempFile(prefix, ".apk");
+        try (OutputStream output = new FileOutputStream(file)) {
+            output.write(data);
+        }
+        return file;
+    }
+}
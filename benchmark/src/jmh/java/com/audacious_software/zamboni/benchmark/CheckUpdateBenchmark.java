@@ -0,0 +1,95 @@
+package com.audacious_software.zamboni.benchmark;
+
+import com.audacious_software.zamboni.benchmark.server.UpdateServer;
+import com.audacious_software.zamboni.utils.FeedParser;
+import com.audacious_software.zamboni.utils.HttpDownload;
+import com.audacious_software.zamboni.utils.StreamUtil;
+
+import org.json.JSONArray;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Update checks against the local {@link UpdateServer}, the way
+ * CheckUpdateTask.doInBackground() does them: fetch the feed, parse it
+ * and look for a newer version. The conditional variant sends the ETag
+ * of the feed, showing what a 304 response would save.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class CheckUpdateBenchmark {
+    private static final String PATH = "/api/2/apps/benchmark";
+
+    private static final FeedParser.UpdateTimeCheck NEVER_NEWER = new FeedParser.UpdateTimeCheck() {
+        @Override
+        public boolean isNewerThanLastUpdateTime(long timestamp) {
+            return false;
+        }
+    };
+
+    @Param({"25", "1000"})
+    public int versions;
+
+    @Param({"0", "40"})
+    public long latency;
+
+    @Param({"false", "true"})
+    public boolean conditional;
+
+    private UpdateServer mServer;
+    private HttpDownload.ConnectionFactory mFactory;
+    private URL mUrl;
+    private String mETag;
+
+    @Setup
+    public void setUp() throws IOException {
+        mServer = UpdateServer.start();
+        mServer.putFeed(PATH, Feeds.create(versions));
+        mServer.setLatency(latency);
+        mFactory = mServer.connectionFactory();
+        mUrl = mServer.httpsUrl(PATH);
+        mETag = mServer.getETag(PATH);
+    }
+
+    @TearDown
+    public void tearDown() {
+        mServer.close();
+    }
+
+    @Benchmark
+    public JSONArray checkUpdate(Transfers.Counters counters) throws IOException {
+        HttpURLConnection connection = mFactory.open(mUrl);
+        if (conditional) {
+            connection.setRequestProperty("If-None-Match", mETag);
+        }
+        connection.connect();
+
+        if (connection.getResponseCode() == HttpURLConnection.HTTP_NOT_MODIFIED) {
+            connection.getInputStream().close();
+            counters.successes++;
+            return null;
+        }
+
+        String jsonString = StreamUtil.convertStreamToString(new BufferedInputStream(connection.getInputStream()));
+        counters.bytes += jsonString.length();
+        counters.successes++;
+
+        JSONArray json = new JSONArray(jsonString);
+        FeedParser parser = new FeedParser(versions / 2, NEVER_NEWER);
+        return parser.findNewVersion(json) ? FeedParser.limitResponseSize(json, Feeds.MAX_NUMBER_OF_VERSIONS) : null;
+    }
+}
@@ -0,0 +1,86 @@
+package com.audacious_software.zamboni.benchmark;
+
+import com.audacious_software.zamboni.benchmark.server.UpdateServer;
+import com.audacious_software.zamboni.utils.HttpDownload;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URL;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * End-to-end APK downloads from the local {@link UpdateServer}. Sample
+ * time mode reports latency percentiles; the bytes counter divided by
+ * the iteration time gives the throughput.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class DownloadBenchmark {
+    private static final String PATH = "/app.apk";
+
+    @Param({"262144", "4194304"})
+    public int size;
+
+    /**
+     * Bytes per second, 0 for unlimited.
+     */
+    @Param({"0", "10485760"})
+    public long bandwidth;
+
+    /**
+     * Milliseconds before each response.
+     */
+    @Param({"0", "40"})
+    public long latency;
+
+    /**
+     * direct, two same-protocol redirects, or a redirect from HTTP to HTTPS.
+     */
+    @Param({"direct", "redirect", "cross"})
+    public String route;
+
+    private UpdateServer mServer;
+    private HttpDownload.ConnectionFactory mFactory;
+    private URL mUrl;
+    private File mFile;
+
+    @Setup
+    public void setUp() throws IOException {
+        mServer = UpdateServer.start();
+        mServer.putFile(PATH, UpdateServer.createFile(size));
+        mServer.setBandwidth(bandwidth);
+        mServer.setLatency(latency);
+        mFactory = mServer.connectionFactory();
+        mFile = File.createTempFile("download", ".apk");
+
+        if ("redirect".equals(route)) {
+            mUrl = mServer.httpsUrl("/redirect/2" + PATH);
+        } else if ("cross".equals(route)) {
+            mUrl = mServer.httpUrl("/cross" + PATH);
+        } else {
+            mUrl = mServer.httpsUrl(PATH);
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        mServer.close();
+        mFile.delete();
+    }
+
+    @Benchmark
+    public long download(Transfers.Counters counters) {
+        return Transfers.download(mUrl, mFactory, mFile, counters);
+    }
+}
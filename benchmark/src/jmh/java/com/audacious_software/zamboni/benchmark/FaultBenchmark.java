@@ -0,0 +1,60 @@
+package com.audacious_software.zamboni.benchmark;
+
+import com.audacious_software.zamboni.benchmark.server.UpdateServer;
+import com.audacious_software.zamboni.utils.HttpDownload;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URL;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Downloads where every second response is broken. The counters show
+ * that each fault is detected, and how many bytes were spent on it.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class FaultBenchmark {
+    private static final String PATH = "/app.apk";
+    private static final int SIZE = 1024 * 1024;
+
+    @Param({"RESET", "HTML_PAGE", "SERVER_ERROR"})
+    public String fault;
+
+    private UpdateServer mServer;
+    private HttpDownload.ConnectionFactory mFactory;
+    private URL mUrl;
+    private File mFile;
+
+    @Setup
+    public void setUp() throws IOException {
+        mServer = UpdateServer.start();
+        mServer.putFile(PATH, UpdateServer.createFile(SIZE));
+        mServer.setFault(UpdateServer.Fault.valueOf(fault), 2);
+        mFactory = mServer.connectionFactory();
+        mUrl = mServer.httpsUrl(PATH);
+        mFile = File.createTempFile("download", ".apk");
+    }
+
+    @TearDown
+    public void tearDown() {
+        mServer.close();
+        mFile.delete();
+    }
+
+    @Benchmark
+    public long download(Transfers.Counters counters) {
+        return Transfers.download(mUrl, mFactory, mFile, counters);
+    }
+}
@@ -0,0 +1,69 @@
+package com.audacious_software.zamboni.benchmark;
+
+import com.audacious_software.zamboni.utils.FeedParser;
+
+import org.json.JSONArray;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Parsing and evaluating the version feed, as done by CheckUpdateTask.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class FeedBenchmark {
+    private static final FeedParser.UpdateTimeCheck NEVER_NEWER = new FeedParser.UpdateTimeCheck() {
+        @Override
+        public boolean isNewerThanLastUpdateTime(long timestamp) {
+            return false;
+        }
+    };
+
+    @Param({"10", "100", "1000", "10000"})
+    public int versions;
+
+    private String mFeed;
+    private JSONArray mJson;
+    private int mInstalledVersionCode;
+
+    @Setup
+    public void setUp() {
+        mFeed = Feeds.create(versions);
+        mJson = new JSONArray(mFeed);
+        mInstalledVersionCode = versions / 2;
+    }
+
+    @Benchmark
+    public JSONArray parseFeed() {
+        return new JSONArray(mFeed);
+    }
+
+    @Benchmark
+    public boolean findNewVersion() {
+        return new FeedParser(mInstalledVersionCode, NEVER_NEWER).findNewVersion(mJson);
+    }
+
+    @Benchmark
+    public JSONArray limitResponseSize() {
+        return FeedParser.limitResponseSize(mJson, Feeds.MAX_NUMBER_OF_VERSIONS);
+    }
+
+    /**
+     * The complete background work of CheckUpdateTask after the download.
+     */
+    @Benchmark
+    public JSONArray checkUpdate() {
+        JSONArray json = new JSONArray(mFeed);
+        FeedParser parser = new FeedParser(mInstalledVersionCode, NEVER_NEWER);
+        return parser.findNewVersion(json) ? FeedParser.limitResponseSize(json, Feeds.MAX_NUMBER_OF_VERSIONS) : null;
+    }
+}
@@ -0,0 +1,71 @@
+package com.audacious_software.zamboni.benchmark;
+
+import com.audacious_software.zamboni.utils.ReleaseNotesRenderer;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Synthetic version feeds shaped like the ones served to the library.
+ */
+final class Feeds {
+    /**
+     * Same as VersionHelper.MAX_NUMBER_OF_VERSIONS.
+     */
+    static final int MAX_NUMBER_OF_VERSIONS = 25;
+
+    private static final long FIRST_TIMESTAMP = 1500000000L;
+
+    private Feeds() {
+    }
+
+    /**
+     * Returns a feed with the given number of versions in random order,
+     * like feeds that aren't sorted by the server. The same size always
+     * yields the same feed.
+     */
+    static String create(int versions) {
+        List<JSONObject> entries = new ArrayList<>(versions);
+        for (int version = 1; version <= versions; version++) {
+            JSONObject entry = new JSONObject();
+            entry.put("id", Integer.toString(100000 + version));
+            entry.put("version", Integer.toString(version));
+            entry.put("shortversion", "1." + (version / 100) + "." + (version % 100));
+            entry.put("title", "Benchmark App");
+            entry.put("timestamp", FIRST_TIMESTAMP + version * 3600L);
+            entry.put("appsize", 20000000L + version);
+            entry.put("mandatory", version % 50 == 0);
+            entry.put("external", false);
+            entry.put("app_url", "https://updates.example.com/apps/benchmark/" + version + ".apk");
+            entry.put("notes", notes(version));
+            entries.add(entry);
+        }
+        Collections.shuffle(entries, new Random(versions));
+
+        JSONArray feed = new JSONArray();
+        for (JSONObject entry : entries) {
+            feed.put(entry);
+        }
+        return feed.toString();
+    }
+
+    static ReleaseNotesRenderer.Template template() {
+        return new ReleaseNotesRenderer.Template("Newest version", "Version %s", "Already installed",
+                "No information.", "Restore");
+    }
+
+    private static String notes(int version) {
+        if (version % 10 == 0) {
+            return "";
+        }
+        return "<p>Release " + version + " fixes <b>several</b> issues:</p>"
+                + "<ul><li>Faster start-up</li><li>Fixed a crash when rotating the device</li>"
+                + "<li>Updated translations</li></ul>"
+                + "<p>See <a href='https://example.com/changes/" + version + "'>all changes</a>.</p>";
+    }
+}
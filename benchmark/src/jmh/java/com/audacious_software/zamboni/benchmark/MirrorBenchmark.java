@@ -0,0 +1,114 @@
+package com.audacious_software.zamboni.benchmark;
+
+import com.audacious_software.zamboni.benchmark.server.UpdateServer;
+import com.audacious_software.zamboni.utils.HttpDownload;
+import com.audacious_software.zamboni.utils.MirrorDownload;
+import com.audacious_software.zamboni.utils.MirrorSelector;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Downloads from two mirrors of which the first misbehaves on every
+ * fourth request, with only the first mirror, with failover to the
+ * second, and with the first request hedged. The upper percentiles show
+ * the tail latency.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class MirrorBenchmark {
+    private static final String PATH = "/app.apk";
+    private static final int SIZE = 1024 * 1024;
+
+    @Param({"STALL", "RESET"})
+    public String fault;
+
+    /**
+     * single, failover or hedged.
+     */
+    @Param({"single", "failover", "hedged"})
+    public String mode;
+
+    private UpdateServer mPrimary;
+    private UpdateServer mSecondary;
+    private List<URL> mMirrors;
+    private MirrorDownload.Connector mConnector;
+    private File mFile;
+
+    @Setup
+    public void setUp() throws IOException {
+        mPrimary = UpdateServer.start();
+        mSecondary = UpdateServer.start();
+        byte[] apk = UpdateServer.createFile(SIZE);
+        for (UpdateServer server : Arrays.asList(mPrimary, mSecondary)) {
+            server.putFile(PATH, apk);
+            server.setLatency(10);
+        }
+        mPrimary.setFault(UpdateServer.Fault.valueOf(fault), 4);
+
+        URL primary = mPrimary.httpsUrl(PATH);
+        mMirrors = "single".equals(mode) ? Collections.singletonList(primary) : Arrays.asList(primary, mSecondary.httpsUrl(PATH));
+        final HttpDownload.ConnectionFactory primaryFactory = mPrimary.connectionFactory();
+        final HttpDownload.ConnectionFactory secondaryFactory = mSecondary.connectionFactory();
+        final String primaryHost = primary.getAuthority();
+        mConnector = new MirrorDownload.Connector() {
+            @Override
+            public HttpURLConnection connect(URL mirror, final long offset) throws IOException {
+                final HttpDownload.ConnectionFactory factory = primaryHost.equals(mirror.getAuthority()) ? primaryFactory : secondaryFactory;
+                return HttpDownload.connect(mirror, Transfers.MAX_REDIRECTS, new HttpDownload.ConnectionFactory() {
+                    @Override
+                    public HttpURLConnection open(URL url) throws IOException {
+                        HttpURLConnection connection = factory.open(url);
+                        if (offset > 0L) {
+                            connection.setRequestProperty("Range", "bytes=" + offset + "-");
+                        }
+                        return connection;
+                    }
+                });
+            }
+        };
+
+        MirrorSelector.clear();
+        MirrorSelector.setHedgingEnabled("hedged".equals(mode));
+        mFile = File.createTempFile("download", ".apk");
+    }
+
+    @TearDown
+    public void tearDown() {
+        MirrorSelector.setHedgingEnabled(false);
+        MirrorSelector.clear();
+        mPrimary.close();
+        mSecondary.close();
+        mFile.delete();
+    }
+
+    @Benchmark
+    public long download(Transfers.Counters counters) {
+        try {
+            long total = new MirrorDownload(mMirrors, mConnector, SIZE).download(mFile, null);
+            counters.successes++;
+            counters.bytes += total;
+            return total;
+        } catch (IOException e) {
+            counters.failures++;
+            return 0L;
+        }
+    }
+}
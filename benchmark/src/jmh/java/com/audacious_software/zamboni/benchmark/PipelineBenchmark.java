@@ -0,0 +1,65 @@
+package com.audacious_software.zamboni.benchmark;
+
+import com.audacious_software.zamboni.utils.FakeTransport;
+import com.audacious_software.zamboni.utils.HttpDownload;
+import com.audacious_software.zamboni.utils.ProbeCache;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.URL;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The download pipeline on the in-memory {@link FakeTransport}: the cost
+ * of redirect handling, probing and copying without any network or disk.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class PipelineBenchmark {
+    private static final String FILE_URL = "https://cdn.example.com/app.apk";
+    private static final String REDIRECT_URL = "http://updates.example.com/app.apk";
+
+    @Param({"262144", "4194304"})
+    public int size;
+
+    private FakeTransport mTransport;
+    private URL mRedirectUrl;
+
+    private final OutputStream mSink = new OutputStream() {
+        @Override
+        public void write(int b) {
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+        }
+    };
+
+    @Setup
+    public void setUp() throws IOException {
+        mTransport = new FakeTransport();
+        mTransport.respond(FILE_URL, "application/vnd.android.package-archive", new byte[size]).header("ETag", "\"1\"");
+        mTransport.redirect(REDIRECT_URL, FILE_URL);
+        mRedirectUrl = new URL(REDIRECT_URL);
+    }
+
+    @Benchmark
+    public ProbeCache.Entry probe() throws IOException {
+        return HttpDownload.probe(mRedirectUrl, Transfers.MAX_REDIRECTS, mTransport);
+    }
+
+    @Benchmark
+    public long download() throws IOException {
+        return HttpDownload.transfer(HttpDownload.connect(mRedirectUrl, Transfers.MAX_REDIRECTS, mTransport), mSink, null);
+    }
+}
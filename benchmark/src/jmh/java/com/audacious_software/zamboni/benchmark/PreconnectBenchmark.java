@@ -0,0 +1,98 @@
+package com.audacious_software.zamboni.benchmark;
+
+import com.audacious_software.zamboni.benchmark.server.UpdateServer;
+import com.audacious_software.zamboni.utils.HttpDownload;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Time to the first byte of a download, on a new connection or after the
+ * size probe of DownloadPreconnect left a connection in the pool. Every
+ * measured request closes its connection, so each invocation starts cold
+ * unless it was pre-connected.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class PreconnectBenchmark {
+    private static final String PATH = "/app.apk";
+
+    private static final int MAX_REDIRECTS = 6;
+
+    @Param({"cold", "preconnected"})
+    public String mode;
+
+    /**
+     * Milliseconds before each response.
+     */
+    @Param({"0", "40"})
+    public long latency;
+
+    /**
+     * direct, or a redirect from HTTP to HTTPS.
+     */
+    @Param({"direct", "cross"})
+    public String route;
+
+    private UpdateServer mServer;
+    private HttpDownload.ConnectionFactory mFactory;
+    private HttpDownload.ConnectionFactory mClosingFactory;
+    private URL mUrl;
+    private URL mTarget;
+
+    @Setup
+    public void setUp() throws IOException {
+        mServer = UpdateServer.start();
+        mServer.putFile(PATH, UpdateServer.createFile(65536));
+        mServer.setLatency(latency);
+        mFactory = mServer.connectionFactory();
+        mClosingFactory = new HttpDownload.ConnectionFactory() {
+            @Override
+            public HttpURLConnection open(URL url) throws IOException {
+                HttpURLConnection connection = mFactory.open(url);
+                connection.setRequestProperty("Connection", "close");
+                return connection;
+            }
+        };
+        mUrl = "cross".equals(route) ? mServer.httpUrl("/cross" + PATH) : mServer.httpsUrl(PATH);
+    }
+
+    @Setup(Level.Invocation)
+    public void prepare() throws IOException {
+        if ("preconnected".equals(mode)) {
+            mTarget = HttpDownload.probe(mUrl, MAX_REDIRECTS, mFactory).getUrl();
+        } else {
+            mTarget = mUrl;
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        mServer.close();
+    }
+
+    @Benchmark
+    public int firstByte() throws IOException {
+        HttpURLConnection connection = HttpDownload.connect(mTarget, MAX_REDIRECTS, mClosingFactory);
+        try (InputStream input = connection.getInputStream()) {
+            return input.read();
+        } finally {
+            connection.disconnect();
+        }
+    }
+}
@@ -0,0 +1,71 @@
+package com.audacious_software.zamboni.benchmark;
+
+import com.audacious_software.zamboni.utils.ReleaseIndex;
+import com.audacious_software.zamboni.utils.ReleaseNotesRenderer;
+
+import org.json.JSONArray;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Loading the versions and rendering the release notes, as done by
+ * VersionHelper and VersionHelper.getReleaseNotes(). The library passes a
+ * feed limited by CheckUpdateTask, larger feeds measure the selection of
+ * the newest versions.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ReleaseNotesBenchmark {
+    @Param({"10", "100", "1000", "10000"})
+    public int versions;
+
+    private String mFeed;
+    private JSONArray mJson;
+    private ReleaseIndex mIndex;
+    private ReleaseNotesRenderer.Template mTemplate;
+
+    @Setup
+    public void setUp() {
+        mFeed = Feeds.create(versions);
+        mJson = new JSONArray(mFeed);
+        mIndex = new ReleaseIndex(mJson, Feeds.MAX_NUMBER_OF_VERSIONS);
+        mTemplate = Feeds.template();
+    }
+
+    /**
+     * Parsing and sorting, like the VersionHelper constructor.
+     */
+    @Benchmark
+    public ReleaseIndex loadVersions() {
+        return new ReleaseIndex(new JSONArray(mFeed), Feeds.MAX_NUMBER_OF_VERSIONS);
+    }
+
+    @Benchmark
+    public ReleaseIndex selectNewest() {
+        return new ReleaseIndex(mJson, Feeds.MAX_NUMBER_OF_VERSIONS);
+    }
+
+    @Benchmark
+    public String renderReleaseNotes() {
+        return new ReleaseNotesRenderer(mIndex, mTemplate, mIndex.getVersionCode(0), versions / 2, true).render();
+    }
+
+    @Benchmark
+    public String renderNewestSection() {
+        return new ReleaseNotesRenderer(mIndex, mTemplate, mIndex.getVersionCode(0), versions / 2, true).render(1);
+    }
+
+    @Benchmark
+    public boolean checkSimpleMarkup() {
+        return new ReleaseNotesRenderer(mIndex, mTemplate, mIndex.getVersionCode(0), versions / 2, false).hasOnlySimpleMarkup(true);
+    }
+}
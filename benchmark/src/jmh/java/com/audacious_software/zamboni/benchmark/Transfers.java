@@ -0,0 +1,89 @@
+package com.audacious_software.zamboni.benchmark;
+
+import com.audacious_software.zamboni.utils.HttpDownload;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.URL;
+import java.net.URLConnection;
+
+/**
+ * Runs a download the way DownloadFileTask.doInBackground() does, without
+ * the Android parts: redirects, the content type check and the transfer
+ * into a file.
+ */
+public final class Transfers {
+    /**
+     * Same as DownloadFileTask.MAX_REDIRECTS.
+     */
+    static final int MAX_REDIRECTS = 6;
+
+    private Transfers() {
+    }
+
+    /**
+     * Bytes received and outcomes, reported by JMH next to the timings.
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class Counters {
+        public long bytes;
+        public long successes;
+        public long failures;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            bytes = 0;
+            successes = 0;
+            failures = 0;
+        }
+    }
+
+    static long download(URL url, HttpDownload.ConnectionFactory factory, File file, final Counters counters) {
+        final long[] received = new long[1];
+        try {
+            URLConnection connection = HttpDownload.connect(url, MAX_REDIRECTS, factory);
+            connection.connect();
+
+            if (!HttpDownload.isFile(connection)) {
+                closeQuietly(connection);
+                counters.failures++;
+                return 0L;
+            }
+
+            try (OutputStream output = new FileOutputStream(file)) {
+                long total = HttpDownload.transfer(connection, output, new HttpDownload.ProgressListener() {
+                    @Override
+                    public void onProgress(long total, int length) {
+                        received[0] = total;
+                    }
+                });
+                counters.successes++;
+                return total;
+            }
+        } catch (IOException e) {
+            counters.failures++;
+            return 0L;
+        } finally {
+            counters.bytes += received[0];
+        }
+    }
+
+    /**
+     * Reads and closes an unexpected response, so the connection can be reused.
+     */
+    private static void closeQuietly(URLConnection connection) {
+        try {
+            connection.getInputStream().close();
+        } catch (IOException ignored) {
+        }
+    }
+}
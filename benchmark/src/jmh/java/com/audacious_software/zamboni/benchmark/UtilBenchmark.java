@@ -0,0 +1,66 @@
+package com.audacious_software.zamboni.benchmark;
+
+import com.audacious_software.zamboni.utils.StreamUtil;
+import com.audacious_software.zamboni.utils.VersionStrings;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Helpers behind Util.convertStreamToString, Util.bytesToHex and
+ * VersionHelper.compareVersionStrings.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class UtilBenchmark {
+    private static final String[][] VERSION_PAIRS = {
+            {"2.1", "4.2.2"},
+            {"4.2.2", "4.2.2-update1"},
+            {"10.0.1", "10.0"},
+            {"5.0", "99.0"},
+            {"1.2.3.4.5", "1.2.3.4.6"},
+    };
+
+    @Param({"10", "100", "1000", "10000"})
+    public int versions;
+
+    private byte[] mFeedBytes;
+    private byte[] mDigest;
+
+    @Setup
+    public void setUp() throws NoSuchAlgorithmException {
+        mFeedBytes = Feeds.create(versions).getBytes(StandardCharsets.UTF_8);
+        mDigest = MessageDigest.getInstance("SHA-256").digest(mFeedBytes);
+    }
+
+    @Benchmark
+    public String convertStreamToString() {
+        return StreamUtil.convertStreamToString(new ByteArrayInputStream(mFeedBytes));
+    }
+
+    @Benchmark
+    public String bytesToHex() {
+        return StreamUtil.bytesToHex(mDigest);
+    }
+
+    @Benchmark
+    public void compareVersionStrings(Blackhole blackhole) {
+        for (String[] pair : VERSION_PAIRS) {
+            blackhole.consume(VersionStrings.compare(pair[0], pair[1]));
+        }
+    }
+}
@@ -0,0 +1,521 @@
+package com.audacious_software.zamboni.benchmark.server;
+
+import com.audacious_software.zamboni.utils.HttpDownload;
+import com.sun.net.httpserver.Headers;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import com.sun.net.httpserver.HttpsConfigurator;
+import com.sun.net.httpserver.HttpsServer;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.KeyStore;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.net.ssl.HttpsURLConnection;
+import javax.net.ssl.KeyManagerFactory;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLSocketFactory;
+import javax.net.ssl.TrustManagerFactory;
+
+/**
+ * Stand-in for the update server, listening on the loopback interface
+ * with HTTPS and plain HTTP.
+ *
+ * Serves registered feeds and files with ETag and byte range support,
+ * several ranges are sent as multipart/byteranges. Paths can be prefixed to get redirects:
+ * <ul>
+ * <li>/redirect/{n}/path redirects n times over HTTPS before serving path,
+ * these are followed by HttpURLConnection itself.</li>
+ * <li>/cross/path redirects from HTTP to HTTPS, which only
+ * {@link HttpDownload#connect(URL, int, HttpDownload.ConnectionFactory)}
+ * follows.</li>
+ * </ul>
+ *
+ * Responses can be shaped with a latency before each response and a
+ * bandwidth limit, and faults can be injected into every n-th request
+ * of a registered resource.
+ */
+public class UpdateServer implements Closeable {
+    public static final String USER_AGENT = "Zamboni/Benchmark";
+
+    private static final String KEYSTORE = "/localhost.p12";
+    private static final char[] KEYSTORE_PASSWORD = "zamboni".toCharArray();
+    private static final int CHUNK_SIZE = 16 * 1024;
+    private static final int TIMEOUT = 60000;
+    private static final String BOUNDARY = "zamboni-benchmark-boundary";
+
+    /**
+     * Faults which can be injected into responses.
+     */
+    public enum Fault {
+        NONE,
+        /**
+         * Closes the connection after half of the body.
+         */
+        RESET,
+        /**
+         * Answers 200 with an HTML page, like a captive portal.
+         */
+        HTML_PAGE,
+        /**
+         * Answers 503 with an HTML page.
+         */
+        SERVER_ERROR,
+        /**
+         * Waits {@link #STALL_MILLIS} before answering, like an overloaded edge.
+         */
+        STALL
+    }
+
+    public static final long STALL_MILLIS = 1000L;
+
+    private static class Resource {
+        final byte[] mBody;
+        final String mContentType;
+        final String mETag;
+
+        Resource(byte[] body, String contentType) {
+            this.mBody = body;
+            this.mContentType = contentType;
+            this.mETag = "\"" + digest(body) + "\"";
+        }
+    }
+
+    private final SSLContext mSslContext;
+    private final HttpsServer mHttpsServer;
+    private final HttpServer mHttpServer;
+    private final ExecutorService mExecutor;
+    private final Map<String, Resource> mResources = new ConcurrentHashMap<>();
+
+    private volatile long mBytesPerSecond;
+    private volatile long mLatencyMillis;
+    private volatile Fault mFault = Fault.NONE;
+    private volatile int mFaultInterval = 1;
+
+    private final AtomicLong mRequests = new AtomicLong();
+    private final AtomicLong mResourceRequests = new AtomicLong();
+    private final AtomicLong mBytesSent = new AtomicLong();
+
+    static {
+        // Otherwise Nagle's algorithm and delayed ACKs add ~40ms to small responses.
+        System.setProperty("sun.net.httpserver.nodelay", "true");
+    }
+
+    private UpdateServer() throws IOException, GeneralSecurityException {
+        mSslContext = createSslContext();
+        mExecutor = Executors.newCachedThreadPool(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "UpdateServer");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+
+        HttpHandler handler = new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                try {
+                    serve(exchange);
+                } finally {
+                    exchange.close();
+                }
+            }
+        };
+
+        InetSocketAddress address = new InetSocketAddress(InetAddress.getLoopbackAddress(), 0);
+        mHttpsServer = HttpsServer.create(address, 0);
+        mHttpsServer.setHttpsConfigurator(new HttpsConfigurator(mSslContext));
+        mHttpsServer.createContext("/", handler);
+        mHttpsServer.setExecutor(mExecutor);
+        mHttpServer = HttpServer.create(address, 0);
+        mHttpServer.createContext("/", handler);
+        mHttpServer.setExecutor(mExecutor);
+    }
+
+    public static UpdateServer start() throws IOException {
+        UpdateServer server;
+        try {
+            server = new UpdateServer();
+        } catch (GeneralSecurityException e) {
+            throw new IOException("Could not load the server certificate", e);
+        }
+        server.mHttpsServer.start();
+        server.mHttpServer.start();
+        return server;
+    }
+
+    @Override
+    public void close() {
+        mHttpsServer.stop(0);
+        mHttpServer.stop(0);
+        mExecutor.shutdownNow();
+    }
+
+    public void putFeed(String path, String json) {
+        mResources.put(path, new Resource(json.getBytes(StandardCharsets.UTF_8), "application/json; charset=utf-8"));
+    }
+
+    public void putFile(String path, byte[] data) {
+        mResources.put(path, new Resource(data, "application/vnd.android.package-archive"));
+    }
+
+    /**
+     * Returns a file of the given size with deterministic content.
+     */
+    public static byte[] createFile(int size) {
+        byte[] data = new byte[size];
+        new Random(size).nextBytes(data);
+        return data;
+    }
+
+    public String getETag(String path) {
+        Resource resource = mResources.get(path);
+        return resource != null ? resource.mETag : null;
+    }
+
+    /**
+     * @param bytesPerSecond bandwidth limit of each response, 0 for unlimited
+     */
+    public void setBandwidth(long bytesPerSecond) {
+        mBytesPerSecond = bytesPerSecond;
+    }
+
+    /**
+     * @param millis delay before each response, including redirects
+     */
+    public void setLatency(long millis) {
+        mLatencyMillis = millis;
+    }
+
+    /**
+     * @param fault    the fault to inject
+     * @param interval inject into every n-th request of a resource
+     */
+    public void setFault(Fault fault, int interval) {
+        mFault = fault;
+        mFaultInterval = Math.max(1, interval);
+        mResourceRequests.set(0);
+    }
+
+    public long getRequests() {
+        return mRequests.get();
+    }
+
+    public long getBytesSent() {
+        return mBytesSent.get();
+    }
+
+    public URL httpsUrl(String path) {
+        return url("https", mHttpsServer.getAddress(), path);
+    }
+
+    public URL httpUrl(String path) {
+        return url("http", mHttpServer.getAddress(), path);
+    }
+
+    /**
+     * Returns a factory configuring connections like DownloadFileTask
+     * does, trusting the certificate of this server.
+     */
+    public HttpDownload.ConnectionFactory connectionFactory() {
+        final SSLSocketFactory socketFactory = mSslContext.getSocketFactory();
+        return new HttpDownload.ConnectionFactory() {
+            @Override
+            public HttpURLConnection open(URL url) throws IOException {
+                HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+                if (connection instanceof HttpsURLConnection) {
+                    ((HttpsURLConnection) connection).setSSLSocketFactory(socketFactory);
+                }
+                connection.addRequestProperty("User-Agent", USER_AGENT);
+                connection.setInstanceFollowRedirects(true);
+                connection.setConnectTimeout(TIMEOUT);
+                connection.setReadTimeout(TIMEOUT);
+                return connection;
+            }
+        };
+    }
+
+    private void serve(HttpExchange exchange) throws IOException {
+        mRequests.incrementAndGet();
+        drain(exchange.getRequestBody());
+        sleep(mLatencyMillis);
+
+        String path = exchange.getRequestURI().getPath();
+        if (path.startsWith("/cross/")) {
+            redirect(exchange, httpsUrl(path.substring("/cross".length())));
+            return;
+        }
+        if (path.startsWith("/redirect/")) {
+            int slash = path.indexOf('/', "/redirect/".length());
+            int hops = Integer.parseInt(path.substring("/redirect/".length(), slash));
+            String target = path.substring(slash);
+            redirect(exchange, httpsUrl(hops > 1 ? "/redirect/" + (hops - 1) + target : target));
+            return;
+        }
+
+        Resource resource = mResources.get(path);
+        if (resource == null) {
+            sendText(exchange, HttpURLConnection.HTTP_NOT_FOUND, "Not found");
+            return;
+        }
+
+        Fault fault = mFault;
+        if (fault != Fault.NONE && mResourceRequests.incrementAndGet() % mFaultInterval != 0) {
+            fault = Fault.NONE;
+        }
+        if (fault == Fault.STALL) {
+            sleep(STALL_MILLIS);
+        } else if (fault == Fault.HTML_PAGE) {
+            sendText(exchange, HttpURLConnection.HTTP_OK, "Sign in to continue");
+            return;
+        } else if (fault == Fault.SERVER_ERROR) {
+            sendText(exchange, HttpURLConnection.HTTP_UNAVAILABLE, "Service unavailable");
+            return;
+        }
+
+        Headers request = exchange.getRequestHeaders();
+        Headers response = exchange.getResponseHeaders();
+        response.set("ETag", resource.mETag);
+        response.set("Accept-Ranges", "bytes");
+        response.set("Content-Type", resource.mContentType);
+
+        if (resource.mETag.equals(request.getFirst("If-None-Match"))) {
+            exchange.sendResponseHeaders(HttpURLConnection.HTTP_NOT_MODIFIED, -1);
+            return;
+        }
+
+        int length = resource.mBody.length;
+        int start = 0;
+        int end = length - 1;
+        int code = HttpURLConnection.HTTP_OK;
+
+        String range = request.getFirst("Range");
+        String ifRange = request.getFirst("If-Range");
+        if (range != null && (ifRange == null || ifRange.equals(resource.mETag))) {
+            List<long[]> ranges = parseRanges(range, length);
+            if (ranges == null) {
+                response.set("Content-Range", "bytes */" + length);
+                exchange.sendResponseHeaders(416, -1);
+                return;
+            }
+            if (ranges.size() > 1) {
+                sendParts(exchange, resource, ranges, fault);
+                return;
+            }
+            long[] bounds = ranges.get(0);
+            start = (int) bounds[0];
+            end = (int) bounds[1];
+            code = HttpURLConnection.HTTP_PARTIAL;
+            response.set("Content-Range", "bytes " + start + "-" + end + "/" + length);
+        }
+
+        int count = end - start + 1;
+        if ("HEAD".equals(exchange.getRequestMethod())) {
+            response.set("Content-Length", Integer.toString(count));
+            exchange.sendResponseHeaders(code, -1);
+            return;
+        }
+
+        exchange.sendResponseHeaders(code, count);
+        // Closing the exchange before the announced length drops the connection.
+        int limit = fault == Fault.RESET ? count / 2 : count;
+        writeShaped(exchange.getResponseBody(), resource.mBody, start, limit);
+    }
+
+    /**
+     * Sends several ranges as a multipart/byteranges body.
+     */
+    private void sendParts(HttpExchange exchange, Resource resource, List<long[]> ranges, Fault fault) throws IOException {
+        int length = resource.mBody.length;
+        List<byte[]> heads = new ArrayList<>();
+        long count = 0;
+        for (long[] range : ranges) {
+            byte[] head = ("\r\n--" + BOUNDARY + "\r\n"
+                    + "Content-Type: " + resource.mContentType + "\r\n"
+                    + "Content-Range: bytes " + range[0] + "-" + range[1] + "/" + length + "\r\n\r\n").getBytes(StandardCharsets.US_ASCII);
+            heads.add(head);
+            count += head.length + range[1] - range[0] + 1;
+        }
+        byte[] tail = ("\r\n--" + BOUNDARY + "--\r\n").getBytes(StandardCharsets.US_ASCII);
+        count += tail.length;
+
+        exchange.getResponseHeaders().set("Content-Type", "multipart/byteranges; boundary=" + BOUNDARY);
+        if ("HEAD".equals(exchange.getRequestMethod())) {
+            exchange.getResponseHeaders().set("Content-Length", Long.toString(count));
+            exchange.sendResponseHeaders(HttpURLConnection.HTTP_PARTIAL, -1);
+            return;
+        }
+        exchange.sendResponseHeaders(HttpURLConnection.HTTP_PARTIAL, count);
+
+        OutputStream output = exchange.getResponseBody();
+        int parts = fault == Fault.RESET ? ranges.size() / 2 : ranges.size();
+        for (int index = 0; index < parts; index++) {
+            long[] range = ranges.get(index);
+            output.write(heads.get(index));
+            mBytesSent.addAndGet(heads.get(index).length);
+            writeShaped(output, resource.mBody, (int) range[0], (int) (range[1] - range[0] + 1));
+        }
+        if (parts == ranges.size()) {
+            output.write(tail);
+            mBytesSent.addAndGet(tail.length);
+        }
+        output.flush();
+    }
+
+    private void writeShaped(OutputStream output, byte[] body, int offset, int count) throws IOException {
+        long bytesPerSecond = mBytesPerSecond;
+        long startTime = System.nanoTime();
+        int chunkSize = bytesPerSecond > 0 ? (int) Math.max(1024, Math.min(CHUNK_SIZE, bytesPerSecond / 50)) : CHUNK_SIZE;
+
+        int written = 0;
+        while (written < count) {
+            int chunk = Math.min(chunkSize, count - written);
+            output.write(body, offset + written, chunk);
+            written += chunk;
+            mBytesSent.addAndGet(chunk);
+
+            if (bytesPerSecond > 0) {
+                long due = startTime + written * 1000000000L / bytesPerSecond;
+                long delay = due - System.nanoTime();
+                if (delay > 0) {
+                    sleep(delay / 1000000L);
+                }
+            }
+        }
+        output.flush();
+    }
+
+    /**
+     * Parses a list of ranges of the form "bytes=a-b,c-d". Returns null if
+     * none of them can be satisfied, unsatisfiable ones are dropped.
+     */
+    static List<long[]> parseRanges(String range, int length) {
+        if (!range.startsWith("bytes=")) {
+            return null;
+        }
+        List<long[]> ranges = new ArrayList<>();
+        for (String spec : range.substring("bytes=".length()).split(",")) {
+            long[] bounds = parseRange(spec.trim(), length);
+            if (bounds != null) {
+                ranges.add(bounds);
+            }
+        }
+        return ranges.isEmpty() ? null : ranges;
+    }
+
+    /**
+     * Parses a single range of the form "a-b", "a-" or "-n". Returns null
+     * if it can't be satisfied.
+     */
+    static long[] parseRange(String spec, int length) {
+        int dash = spec.indexOf('-');
+        if (dash < 0) {
+            return null;
+        }
+
+        try {
+            long start;
+            long end;
+            if (dash == 0) {
+                long suffix = Long.parseLong(spec.substring(1));
+                start = Math.max(0, length - suffix);
+                end = length - 1;
+            } else {
+                start = Long.parseLong(spec.substring(0, dash));
+                end = dash == spec.length() - 1 ? length - 1 : Math.min(length - 1, Long.parseLong(spec.substring(dash + 1)));
+            }
+            return start <= end && start < length ? new long[]{start, end} : null;
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    private void redirect(HttpExchange exchange, URL location) throws IOException {
+        exchange.getResponseHeaders().set("Location", location.toString());
+        exchange.sendResponseHeaders(HttpURLConnection.HTTP_MOVED_TEMP, -1);
+    }
+
+    private void sendText(HttpExchange exchange, int code, String message) throws IOException {
+        byte[] body = ("<html><body><h1>" + message + "</h1></body></html>").getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "text/html; charset=utf-8");
+        exchange.sendResponseHeaders(code, body.length);
+        exchange.getResponseBody().write(body);
+        mBytesSent.addAndGet(body.length);
+    }
+
+    private static void drain(InputStream input) throws IOException {
+        byte[] buffer = new byte[1024];
+        while (input.read(buffer) != -1) {
+            // Discard the request body.
+        }
+    }
+
+    private static void sleep(long millis) {
+        if (millis <= 0) {
+            return;
+        }
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static URL url(String protocol, InetSocketAddress address, String path) {
+        try {
+            return new URL(protocol, "localhost", address.getPort(), path);
+        } catch (MalformedURLException e) {
+            throw new IllegalArgumentException(e);
+        }
+    }
+
+    private static SSLContext createSslContext() throws IOException, GeneralSecurityException {
+        KeyStore keyStore = KeyStore.getInstance("PKCS12");
+        try (InputStream input = UpdateServer.class.getResourceAsStream(KEYSTORE)) {
+            keyStore.load(input, KEYSTORE_PASSWORD);
+        }
+
+        KeyManagerFactory keyManagers = KeyManagerFactory.getInstance(KeyManagerFactory.getDefaultAlgorithm());
+        keyManagers.init(keyStore, KEYSTORE_PASSWORD);
+        TrustManagerFactory trustManagers = TrustManagerFactory.getInstance(TrustManagerFactory.getDefaultAlgorithm());
+        trustManagers.init(keyStore);
+
+        SSLContext context = SSLContext.getInstance("TLS");
+        context.init(keyManagers.getKeyManagers(), trustManagers.getTrustManagers(), null);
+        return context;
+    }
+
+    private static String digest(byte[] data) {
+        try {
+            byte[] hash = MessageDigest.getInstance("SHA-256").digest(data);
+            StringBuilder result = new StringBuilder();
+            for (int index = 0; index < 8; index++) {
+                result.append(String.format("%02x", hash[index]));
+            }
+            return result.toString();
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,135 @@
+package com.audacious_software.zamboni.listeners;
+
+/**
+ * <h3>Description</h3>
+ *
+ * Abstract class for callbacks reporting where the time of an update
+ * goes, from checking the feed to launching the installer. Register an
+ * implementation with UpdateMetrics.setListener().
+ * Callbacks may be invoked on background threads. All durations are in
+ * milliseconds.
+ **/
+public abstract class UpdateMetricsListener {
+    /**
+     * Fetching the version feed.
+     */
+    public static final int PHASE_CHECK = 1;
+
+    /**
+     * Determining the size of an externally hosted APK.
+     */
+    public static final int PHASE_SIZE_PROBE = 2;
+
+    /**
+     * Downloading the APK.
+     */
+    public static final int PHASE_DOWNLOAD = 3;
+
+    /**
+     * Connecting to the APK host while the update dialog is shown.
+     */
+    public static final int PHASE_PRECONNECT = 4;
+
+    /**
+     * Called when the response headers of a request were received.
+     * Phases of a reused connection are reported as 0. Redirects are
+     * included in the time to the first byte.
+     *
+     * @param phase           one of the PHASE constants
+     * @param connectMillis   time to establish the TCP connection, including
+     *                        resolving the host
+     * @param tlsMillis       time of the TLS handshake
+     * @param firstByteMillis time from the connection being ready to the response headers
+     */
+    public void onRequestTimed(int phase, long connectMillis, long tlsMillis, long firstByteMillis) {
+    }
+
+    /**
+     * Called when the host of a request was resolved. The library looks
+     * each host up once per network next to the first request, which the
+     * platform connection doesn't let it time.
+     *
+     * @param phase  one of the PHASE constants, 0 if no request was timed
+     * @param millis time of the DNS lookup
+     */
+    public void onHostResolved(int phase, long millis) {
+    }
+
+    /**
+     * Called when the version feed was read and parsed.
+     *
+     * @param bytes       size of the feed
+     * @param parseMillis time to parse and evaluate the feed
+     */
+    public void onFeedParsed(long bytes, long parseMillis) {
+    }
+
+    /**
+     * Called when a download ended.
+     *
+     * @param bytes      number of bytes received
+     * @param millis     duration of the transfer, excluding the request
+     * @param successful false if the download failed or was rejected
+     */
+    public void onDownloadFinished(long bytes, long millis, boolean successful) {
+    }
+
+    /**
+     * Called when a transfer updated the throughput estimate of the
+     * network, see BandwidthEstimator.
+     *
+     * @param networkType    the type of the network, 0 if unknown
+     * @param bytesPerSecond the new estimate
+     */
+    public void onBandwidthEstimated(int networkType, long bytesPerSecond) {
+    }
+
+    /**
+     * Called when an APK was built from the blocks of the installed one
+     * and the changed ranges of the new one, see BlockDownload.
+     *
+     * @param reusedBytes  bytes copied from the installed APK
+     * @param fetchedBytes bytes received from the server
+     * @param scanMillis   time to find the blocks in the installed APK
+     */
+    public void onBlockDownload(long reusedBytes, long fetchedBytes, long scanMillis) {
+    }
+
+    /**
+     * Called when a TLS handshake of a request of the library completed.
+     * A resumed handshake reused the session of an earlier connection and
+     * saved a round trip and the certificate checks.
+     *
+     * @param phase   one of the PHASE constants, 0 if no request was timed
+     * @param millis  time of the handshake
+     * @param resumed true if an earlier session was resumed
+     */
+    public void onTlsHandshake(int phase, long millis, boolean resumed) {
+    }
+
+    /**
+     * Called when a phase is started again after a failure.
+     *
+     * @param phase one of the PHASE constants
+     */
+    public void onRetry(int phase) {
+    }
+
+    /**
+     * Called when the downloaded APK was checked before launching the installer.
+     *
+     * @param millis time to check the archive
+     * @param valid  false if the file isn't a readable APK
+     */
+    public void onApkVerified(long millis, boolean valid) {
+    }
+
+    /**
+     * Called when the installer was launched.
+     *
+     * @param millisSinceUpdateDetected time since the update was found, or -1
+     *                                  if it was found in a previous process
+     */
+    public void onInstallerLaunched(long millisSinceUpdateDetected) {
+    }
+}
@@ -0,0 +1,312 @@
+package com.audacious_software.zamboni.utils;
+
+import com.audacious_software.zamboni.listeners.UpdateMetricsListener;
+
+import java.io.IOException;
+import java.net.Inet6Address;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.net.URL;
+import java.net.UnknownHostException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <h3>Description</h3>
+ *
+ * Internal helper class. Measures how the addresses of a dual-stack host
+ * answer, like Happy Eyeballs (RFC 8305): IPv6 and IPv4 addresses
+ * alternate, a new attempt starts every {@link #CONNECTION_ATTEMPT_DELAY_MILLIS}
+ * or as soon as the previous one failed, and the first connection wins.
+ *
+ * HttpURLConnection connects by itself and can't be handed a socket, so
+ * the race doesn't change how requests connect. {@link #measure(URL, int)}
+ * runs it once per host and network in the background and logs which
+ * family won, so a blackholed family shows up in the logs; the outcome is
+ * kept for {@link #FAMILY_TTL_MILLIS}. The lookup of the host before the
+ * race is timed and reported as the DNS time of the requesting phase,
+ * which the platform connection doesn't expose.
+ *
+ **/
+public class AddressRacer {
+    /**
+     * Delay between connection attempts recommended by RFC 8305.
+     */
+    public static final long CONNECTION_ATTEMPT_DELAY_MILLIS = 250L;
+
+    /**
+     * How long the outcome of a race is kept before the host is raced
+     * again.
+     */
+    public static final long FAMILY_TTL_MILLIS = TimeUnit.MINUTES.toMillis(10);
+
+    private static final int MAX_ENTRIES = 16;
+
+    /**
+     * When the outcome of each raced host expires.
+     */
+    private static final Map<String, Long> sOutcomes = new LinkedHashMap<>(MAX_ENTRIES, 0.75f, true);
+
+    /**
+     * The hosts raced in the background right now.
+     */
+    private static final Set<String> sRacing = new HashSet<>();
+
+    /**
+     * Races the addresses of the host of the URL on a background thread,
+     * unless there is a recent outcome for it. Doesn't block and doesn't
+     * change how the request connects.
+     *
+     * @param url           the URL that is going to be requested
+     * @param timeoutMillis timeout of the whole race
+     * @param phase         the phase the lookup is reported for
+     * @param metrics       notified of the lookup time, may be null
+     */
+    public static void measure(URL url, int timeoutMillis, int phase, UpdateMetricsListener metrics) {
+        String host = url.getHost();
+        if (!hasOutcome(host)) {
+            int port = url.getPort() >= 0 ? url.getPort() : url.getDefaultPort();
+            raceInBackground(host, port, timeoutMillis, phase, metrics);
+        }
+    }
+
+    /**
+     * Orders the addresses of a host for connecting: alternating families,
+     * starting with the family of the first address.
+     *
+     * @param addresses the resolved addresses in the order of the resolver
+     * @return a new array with the same addresses
+     */
+    static InetAddress[] interleave(InetAddress[] addresses) {
+        if (addresses.length == 0) {
+            return addresses;
+        }
+        boolean ipv6First = addresses[0] instanceof Inet6Address;
+
+        List<InetAddress> preferred = new ArrayList<>();
+        List<InetAddress> other = new ArrayList<>();
+        for (InetAddress address : addresses) {
+            ((address instanceof Inet6Address) == ipv6First ? preferred : other).add(address);
+        }
+
+        InetAddress[] sorted = new InetAddress[addresses.length];
+        int index = 0;
+        for (int i = 0; i < Math.max(preferred.size(), other.size()); i++) {
+            if (i < preferred.size()) {
+                sorted[index++] = preferred.get(i);
+            }
+            if (i < other.size()) {
+                sorted[index++] = other.get(i);
+            }
+        }
+        return sorted;
+    }
+
+    /**
+     * Forgets all outcomes, e.g. after the network changed.
+     */
+    public static synchronized void clear() {
+        sOutcomes.clear();
+    }
+
+    /**
+     * Resolves and races the addresses of the host on a new thread, unless
+     * that is already happening. Only the outcome is kept, the connection
+     * is closed again.
+     */
+    private static void raceInBackground(final String host, final int port, final int timeoutMillis, final int phase, final UpdateMetricsListener metrics) {
+        synchronized (AddressRacer.class) {
+            if (!sRacing.add(host)) {
+                return;
+            }
+        }
+
+        Thread thread = new Thread("Zamboni-Race") {
+            @Override
+            public void run() {
+                try {
+                    long start = now();
+                    InetAddress[] addresses = InetAddress.getAllByName(host);
+                    if (metrics != null) {
+                        metrics.onHostResolved(phase, now() - start);
+                    }
+                    if (hasBothFamilies(addresses)) {
+                        race(host, addresses, port, timeoutMillis).close();
+                    } else {
+                        putOutcome(host);
+                    }
+                } catch (IOException e) {
+                    // The request reports the failure, the next one races again.
+                    HockeyLog.debug(HockeyLog.HOCKEY_TAG, "No address of %s answered", host, e);
+                } finally {
+                    synchronized (AddressRacer.class) {
+                        sRacing.remove(host);
+                    }
+                }
+            }
+        };
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Connects to the addresses, staggered in the order of
+     * {@link #interleave(InetAddress[])}, and returns the first connected
+     * socket. The other attempts are closed.
+     *
+     * @param resolved the addresses in the order of the resolver
+     */
+    static Socket race(String host, InetAddress[] resolved, int port, int timeoutMillis) throws IOException {
+        if (resolved.length == 0) {
+            throw new UnknownHostException(host);
+        }
+        InetAddress[] addresses = interleave(resolved);
+
+        final BlockingQueue<Attempt> finished = new LinkedBlockingQueue<>();
+        List<Attempt> attempts = new ArrayList<>();
+        long start = now();
+        long deadline = start + timeoutMillis;
+        Attempt winner = null;
+        int failures = 0;
+        try {
+            while (true) {
+                if (attempts.size() < addresses.length) {
+                    Attempt attempt = new Attempt(new InetSocketAddress(addresses[attempts.size()], port), timeoutMillis, finished);
+                    attempts.add(attempt);
+                    attempt.start();
+                }
+
+                long remaining = deadline - now();
+                long wait = attempts.size() < addresses.length ? Math.min(CONNECTION_ATTEMPT_DELAY_MILLIS, remaining) : remaining;
+                Attempt result = wait > 0L ? finished.poll(wait, TimeUnit.MILLISECONDS) : null;
+                if (result == null) {
+                    if (now() >= deadline) {
+                        throw new SocketTimeoutException("Could not connect to " + host + " within " + timeoutMillis + "ms");
+                    }
+                    continue;
+                }
+
+                if (result.mFailure == null) {
+                    winner = result;
+                    putOutcome(host);
+                    HockeyLog.debug(HockeyLog.HOCKEY_TAG, "%s answered first via %s after %dms", host, result.mAddress.getAddress().getHostAddress(), result.mConnectMillis);
+                    return result.mSocket;
+                }
+
+                if (++failures == addresses.length) {
+                    throw result.mFailure;
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while connecting to " + host);
+        } finally {
+            for (Attempt attempt : attempts) {
+                if (attempt != winner) {
+                    attempt.cancel();
+                }
+            }
+        }
+    }
+
+    private static boolean hasBothFamilies(InetAddress[] addresses) {
+        boolean ipv6 = false;
+        boolean ipv4 = false;
+        for (InetAddress address : addresses) {
+            if (address instanceof Inet6Address) {
+                ipv6 = true;
+            } else {
+                ipv4 = true;
+            }
+        }
+        return ipv6 && ipv4;
+    }
+
+    private static synchronized boolean hasOutcome(String host) {
+        Long expiresAt = sOutcomes.get(host);
+        if (expiresAt != null && now() >= expiresAt) {
+            sOutcomes.remove(host);
+            return false;
+        }
+        return expiresAt != null;
+    }
+
+    private static synchronized void putOutcome(String host) {
+        sOutcomes.put(host, now() + FAMILY_TTL_MILLIS);
+
+        Iterator<Long> iterator = sOutcomes.values().iterator();
+        while (sOutcomes.size() > MAX_ENTRIES && iterator.hasNext()) {
+            iterator.next();
+            iterator.remove();
+        }
+    }
+
+    private static long now() {
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime());
+    }
+
+    /**
+     * One connection attempt on its own thread. A socket that connects
+     * after the race was decided is closed.
+     */
+    private static class Attempt extends Thread {
+        private final InetSocketAddress mAddress;
+        private final int mTimeoutMillis;
+        private final BlockingQueue<Attempt> mFinished;
+        private final Socket mSocket = new Socket();
+        private boolean mCancelled;
+        private volatile IOException mFailure;
+        private volatile long mConnectMillis;
+
+        Attempt(InetSocketAddress address, int timeoutMillis, BlockingQueue<Attempt> finished) {
+            super("Zamboni-Connect");
+            setDaemon(true);
+            this.mAddress = address;
+            this.mTimeoutMillis = timeoutMillis;
+            this.mFinished = finished;
+        }
+
+        @Override
+        public void run() {
+            long start = now();
+            try {
+                mSocket.connect(mAddress, mTimeoutMillis);
+                mConnectMillis = now() - start;
+            } catch (IOException e) {
+                mFailure = e;
+            }
+            synchronized (this) {
+                if (mCancelled) {
+                    closeQuietly();
+                    return;
+                }
+            }
+            mFinished.add(this);
+        }
+
+        /**
+         * Aborts the attempt if it is still connecting, or closes its socket.
+         */
+        synchronized void cancel() {
+            mCancelled = true;
+            closeQuietly();
+        }
+
+        private void closeQuietly() {
+            try {
+                mSocket.close();
+            } catch (IOException ignored) {
+            }
+        }
+    }
+}
@@ -0,0 +1,189 @@
+package com.audacious_software.zamboni.utils;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * <h3>Description</h3>
+ *
+ * Internal helper class. Estimates the throughput of the device from the
+ * transfers of the update check and the download, so the download can be
+ * planned, e.g. its buffer size or whether it is worth starting now.
+ *
+ * The estimate is an exponentially weighted moving average per network
+ * type. Small transfers say more about latency than about throughput, so
+ * they are weighted less, and tiny ones are ignored. The type of the
+ * current network is set by the platform, see {@link #setNetworkType(int)};
+ * samples taken without one are kept under type 0.
+ *
+ * The estimates are kept in a {@link Store}, so they survive the process.
+ * Without a store they are kept in memory only.
+ *
+ **/
+public class BandwidthEstimator {
+    /**
+     * Transfers smaller than this are ignored.
+     */
+    public static final long MIN_SAMPLE_BYTES = 4 * 1024;
+
+    /**
+     * Transfers of this size and larger get the full weight.
+     */
+    public static final long FULL_WEIGHT_BYTES = 1024 * 1024;
+
+    /**
+     * The weight of a full sample, the rest is the weight of the estimate.
+     */
+    static final double ALPHA = 0.3;
+
+    private static final long MIN_SAMPLE_MILLIS = 10L;
+
+    private static final int MIN_BUFFER_SIZE = 8 * 1024;
+    private static final int MAX_BUFFER_SIZE = 64 * 1024;
+
+    private static final String KEY_PREFIX = "bandwidth.";
+
+    private static final Map<Integer, Estimate> sEstimates = new HashMap<>();
+
+    private static Store sStore;
+
+    private static int sNetworkType;
+
+    /**
+     * <h3>Description</h3>
+     *
+     * Persists the estimates.
+     *
+     **/
+    public interface Store {
+        long getLong(String key, long defaultValue);
+
+        void putLong(String key, long value);
+    }
+
+    private static class Estimate {
+        private double mBytesPerSecond;
+        private long mSamples;
+    }
+
+    /**
+     * Sets where the estimates are kept. Estimates loaded before are kept.
+     */
+    public static synchronized void setStore(Store store) {
+        sStore = store;
+    }
+
+    /**
+     * Sets the type of the current network. Following samples and queries
+     * use the estimate of this type.
+     *
+     * @param networkType a type defined by the platform, 0 if unknown
+     */
+    public static synchronized void setNetworkType(int networkType) {
+        sNetworkType = networkType;
+    }
+
+    public static synchronized int getNetworkType() {
+        return sNetworkType;
+    }
+
+    /**
+     * Adds a transfer on the current network to its estimate.
+     *
+     * @param bytes  the number of bytes transferred
+     * @param millis the duration of the transfer, excluding the request
+     * @return true if the sample was used
+     */
+    public static synchronized boolean addSample(long bytes, long millis) {
+        if (bytes < MIN_SAMPLE_BYTES) {
+            return false;
+        }
+
+        double bytesPerSecond = bytes * 1000.0 / Math.max(millis, MIN_SAMPLE_MILLIS);
+        Estimate estimate = getEstimate(sNetworkType);
+        if (estimate.mSamples == 0L) {
+            estimate.mBytesPerSecond = bytesPerSecond;
+        } else {
+            double weight = ALPHA * Math.min(1.0, Math.sqrt((double) bytes / FULL_WEIGHT_BYTES));
+            estimate.mBytesPerSecond += weight * (bytesPerSecond - estimate.mBytesPerSecond);
+        }
+        estimate.mSamples++;
+        save(sNetworkType, estimate);
+        return true;
+    }
+
+    /**
+     * Returns the estimated throughput of the current network in bytes per
+     * second, or -1 if there is no sample yet.
+     */
+    public static synchronized long getBytesPerSecond() {
+        return getBytesPerSecond(sNetworkType);
+    }
+
+    /**
+     * Returns the estimated throughput of a network type in bytes per
+     * second, or -1 if there is no sample yet.
+     */
+    public static synchronized long getBytesPerSecond(int networkType) {
+        Estimate estimate = getEstimate(networkType);
+        return estimate.mSamples > 0L ? (long) estimate.mBytesPerSecond : -1L;
+    }
+
+    /**
+     * Returns the number of samples of the estimate of a network type.
+     */
+    public static synchronized long getSampleCount(int networkType) {
+        return getEstimate(networkType).mSamples;
+    }
+
+    /**
+     * Returns how long a transfer would take on the current network, or -1
+     * if the size or the throughput are unknown.
+     *
+     * @param bytes the size of the transfer, -1 if unknown
+     */
+    public static synchronized long estimateMillis(long bytes) {
+        long bytesPerSecond = getBytesPerSecond();
+        return bytes >= 0L && bytesPerSecond > 0L ? bytes * 1000L / bytesPerSecond : -1L;
+    }
+
+    /**
+     * Returns the size of the buffer for a transfer on the current network:
+     * about 10ms of data, between 8KB and 64KB.
+     */
+    public static synchronized int getBufferSize() {
+        long bytesPerSecond = getBytesPerSecond();
+        if (bytesPerSecond <= 0L) {
+            return MIN_BUFFER_SIZE;
+        }
+        return (int) Math.max(MIN_BUFFER_SIZE, Math.min(MAX_BUFFER_SIZE, bytesPerSecond / 100L));
+    }
+
+    /**
+     * Forgets the estimates kept in memory. Persisted estimates are loaded
+     * again when used.
+     */
+    public static synchronized void clear() {
+        sEstimates.clear();
+    }
+
+    private static Estimate getEstimate(int networkType) {
+        Estimate estimate = sEstimates.get(networkType);
+        if (estimate == null) {
+            estimate = new Estimate();
+            if (sStore != null) {
+                estimate.mBytesPerSecond = sStore.getLong(KEY_PREFIX + networkType + ".bytesPerSecond", 0L);
+                estimate.mSamples = sStore.getLong(KEY_PREFIX + networkType + ".samples", 0L);
+            }
+            sEstimates.put(networkType, estimate);
+        }
+        return estimate;
+    }
+
+    private static void save(int networkType, Estimate estimate) {
+        if (sStore != null) {
+            sStore.putLong(KEY_PREFIX + networkType + ".bytesPerSecond", (long) estimate.mBytesPerSecond);
+            sStore.putLong(KEY_PREFIX + networkType + ".samples", estimate.mSamples);
+        }
+    }
+}
@@ -0,0 +1,338 @@
+package com.audacious_software.zamboni.utils;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * <h3>Description</h3>
+ *
+ * Internal helper class. Downloads a new version of a file incrementally,
+ * in the manner of zsync: the blocks of the {@link BlockIndex} of the new
+ * file that are found anywhere in an old version, e.g. the installed APK,
+ * are copied from there, and only the others are fetched with range
+ * requests, see {@link RangeFetcher}. The result is checked against the
+ * SHA-256 of the index. No patches have to be created on the server.
+ *
+ * The old file is scanned with the rolling checksum of rsync through a
+ * memory mapping, so it isn't copied onto the heap.
+ *
+ **/
+public class BlockDownload {
+    /**
+     * The number of bits of the filter that rejects most rolling checksums
+     * without a look at the index.
+     */
+    private static final int FILTER_BITS = 20;
+
+    private final BlockIndex mIndex;
+    private final URL mUrl;
+    private final HttpDownload.ConnectionFactory mFactory;
+    private long mReusedBytes;
+    private long mFetchedBytes;
+    private long mScanMillis;
+    private boolean mWholeFileAllowed = true;
+
+    /**
+     * @param index   the index of the new file
+     * @param url     the URL of the new file
+     * @param factory opens the connections for the ranges
+     */
+    public BlockDownload(BlockIndex index, URL url, HttpDownload.ConnectionFactory factory) {
+        this.mIndex = index;
+        this.mUrl = url;
+        this.mFactory = factory;
+    }
+
+    /**
+     * Sets whether the whole file may be downloaded if the server ignores
+     * ranges, see {@link RangeFetcher#setWholeFileAllowed(boolean)}.
+     */
+    public void setWholeFileAllowed(boolean wholeFileAllowed) {
+        this.mWholeFileAllowed = wholeFileAllowed;
+    }
+
+    /**
+     * Builds the new file.
+     *
+     * @param seed     the old file
+     * @param target   receives the new file, overwritten
+     * @param listener notified with the bytes of the new file done so far,
+     *                 may be null
+     * @return the size of the new file
+     * @throws IOException if the old file can't be read, a range can't be
+     *                     fetched or the result doesn't match the index
+     */
+    public long download(File seed, File target, final HttpDownload.ProgressListener listener) throws IOException {
+        long start = now();
+        long[] seedOffsets = match(seed);
+        mScanMillis = now() - start;
+
+        RandomAccessFile output = new RandomAccessFile(target, "rw");
+        try {
+            output.setLength(0L);
+            output.setLength(mIndex.getLength());
+            mReusedBytes = copyBlocks(seed, seedOffsets, output);
+            if (listener != null) {
+                listener.onProgress(mReusedBytes, (int) mIndex.getLength());
+            }
+
+            List<long[]> ranges = getMissingRanges(seedOffsets);
+            HockeyLog.info(HockeyLog.HOCKEY_TAG, "Reusing %d of %d bytes, fetching %d ranges", mReusedBytes, mIndex.getLength(), ranges.size());
+            if (!ranges.isEmpty()) {
+                RangeFetcher fetcher = new RangeFetcher(mUrl, mFactory, mIndex.getLength());
+                fetcher.setWholeFileAllowed(mWholeFileAllowed);
+                long transferStart = now();
+                try {
+                    fetcher.fetch(ranges, output, listener == null ? null : new HttpDownload.ProgressListener() {
+                        @Override
+                        public void onProgress(long total, int ignored) {
+                            listener.onProgress(Math.min(mReusedBytes + total, mIndex.getLength()), (int) mIndex.getLength());
+                        }
+                    });
+                } finally {
+                    mFetchedBytes = fetcher.getReceivedBytes();
+                    BandwidthEstimator.addSample(mFetchedBytes, now() - transferStart);
+                }
+            }
+        } finally {
+            output.close();
+        }
+
+        verify(target);
+        return target.length();
+    }
+
+    /**
+     * Returns the number of bytes copied from the old file.
+     */
+    public long getReusedBytes() {
+        return mReusedBytes;
+    }
+
+    /**
+     * Returns the number of bytes received from the server.
+     */
+    public long getFetchedBytes() {
+        return mFetchedBytes;
+    }
+
+    /**
+     * Returns the time it took to scan the old file.
+     */
+    public long getScanMillis() {
+        return mScanMillis;
+    }
+
+    /**
+     * Finds the blocks of the index in the old file.
+     *
+     * @return for each block, its offset in the old file or -1
+     */
+    long[] match(File seed) throws IOException {
+        int blockSize = mIndex.getBlockSize();
+        int blocks = mIndex.getBlockCount();
+        long[] seedOffsets = new long[blocks];
+        Arrays.fill(seedOffsets, -1L);
+
+        // The blocks sorted by their rolling checksum, and a filter of them.
+        long[] sorted = new long[blocks];
+        long[] filter = new long[1 << (FILTER_BITS - 6)];
+        for (int block = 0; block < blocks; block++) {
+            int weak = mIndex.getWeak(block);
+            sorted[block] = ((long) weak << 32) | block;
+            int bit = filterBit(weak);
+            filter[bit >>> 6] |= 1L << bit;
+        }
+        Arrays.sort(sorted);
+
+        FileInputStream input = new FileInputStream(seed);
+        try {
+            FileChannel channel = input.getChannel();
+            long size = channel.size();
+            if (size > Integer.MAX_VALUE) {
+                throw new IOException("Old file too large to map: " + size);
+            }
+            if (size < blockSize) {
+                return seedOffsets;
+            }
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0L, size);
+            MessageDigest digest = BlockIndex.newSha256();
+            int length = (int) size;
+
+            int position = 0;
+            int a = 0;
+            int b = 0;
+            boolean fresh = true;
+            while (position + blockSize <= length) {
+                if (fresh) {
+                    a = 0;
+                    b = 0;
+                    for (int index = 0; index < blockSize; index++) {
+                        a += buffer.get(position + index) & 0xff;
+                        b += a;
+                    }
+                    fresh = false;
+                }
+
+                int weak = (a & 0xffff) | (b << 16);
+                int bit = filterBit(weak);
+                if ((filter[bit >>> 6] & (1L << bit)) != 0L && matchBlock(sorted, weak, buffer, position, digest, seedOffsets)) {
+                    position += blockSize;
+                    fresh = true;
+                    continue;
+                }
+
+                if (position + blockSize == length) {
+                    break;
+                }
+                int out = buffer.get(position) & 0xff;
+                int in = buffer.get(position + blockSize) & 0xff;
+                a += in - out;
+                b += a - blockSize * out;
+                position++;
+            }
+            return seedOffsets;
+        } finally {
+            input.close();
+        }
+    }
+
+    /**
+     * Compares the window with the strong checksums of the blocks with the
+     * rolling checksum and records the matches.
+     *
+     * @return true if the window matched a block
+     */
+    private boolean matchBlock(long[] sorted, int weak, MappedByteBuffer buffer, int position, MessageDigest digest, long[] seedOffsets) {
+        int first = lowerBound(sorted, weak);
+        if (first >= sorted.length || (int) (sorted[first] >>> 32) != weak) {
+            return false;
+        }
+
+        ByteBuffer window = buffer.duplicate();
+        window.position(position);
+        window.limit(position + mIndex.getBlockSize());
+        digest.reset();
+        digest.update(window);
+        byte[] strong = digest.digest();
+
+        boolean matched = false;
+        for (int index = first; index < sorted.length && (int) (sorted[index] >>> 32) == weak; index++) {
+            int block = (int) sorted[index];
+            if (mIndex.strongEquals(block, strong)) {
+                matched = true;
+                if (seedOffsets[block] < 0L) {
+                    seedOffsets[block] = position;
+                }
+            }
+        }
+        return matched;
+    }
+
+    /**
+     * Copies the blocks found in the old file to their place in the new one.
+     *
+     * @return the number of bytes copied
+     */
+    private long copyBlocks(File seed, long[] seedOffsets, RandomAccessFile output) throws IOException {
+        int blockSize = mIndex.getBlockSize();
+        long copied = 0L;
+        FileInputStream input = new FileInputStream(seed);
+        try {
+            FileChannel source = input.getChannel();
+            FileChannel target = output.getChannel();
+            for (int block = 0; block < seedOffsets.length; block++) {
+                if (seedOffsets[block] < 0L) {
+                    continue;
+                }
+                long offset = (long) block * blockSize;
+                long count = Math.min(blockSize, mIndex.getLength() - offset);
+                long done = 0L;
+                while (done < count) {
+                    long transferred = source.transferTo(seedOffsets[block] + done, count - done, target.position(offset + done));
+                    if (transferred <= 0L) {
+                        throw new IOException("Could not copy block " + block);
+                    }
+                    done += transferred;
+                }
+                copied += count;
+            }
+        } finally {
+            input.close();
+        }
+        return copied;
+    }
+
+    /**
+     * Returns the byte ranges of the blocks not found, adjacent ones merged.
+     */
+    List<long[]> getMissingRanges(long[] seedOffsets) {
+        int blockSize = mIndex.getBlockSize();
+        List<long[]> ranges = new ArrayList<>();
+        for (int block = 0; block < seedOffsets.length; block++) {
+            if (seedOffsets[block] >= 0L) {
+                continue;
+            }
+            long start = (long) block * blockSize;
+            long end = Math.min(start + blockSize, mIndex.getLength()) - 1;
+            long[] last = ranges.isEmpty() ? null : ranges.get(ranges.size() - 1);
+            if (last != null && last[1] + 1 == start) {
+                last[1] = end;
+            } else {
+                ranges.add(new long[]{start, end});
+            }
+        }
+        return ranges;
+    }
+
+    private void verify(File target) throws IOException {
+        MessageDigest digest = BlockIndex.newSha256();
+        InputStream input = new FileInputStream(target);
+        try {
+            byte[] buffer = new byte[64 * 1024];
+            int count;
+            while ((count = input.read(buffer)) != -1) {
+                digest.update(buffer, 0, count);
+            }
+        } finally {
+            input.close();
+        }
+        if (!MessageDigest.isEqual(digest.digest(), mIndex.getSha256())) {
+            throw new IOException("The assembled file does not match the SHA-256 of the index");
+        }
+    }
+
+    private static int lowerBound(long[] sorted, int weak) {
+        long key = (long) weak << 32;
+        int low = 0;
+        int high = sorted.length;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (sorted[middle] < key) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    private static int filterBit(int weak) {
+        return (weak * 0x9E3779B1) >>> (32 - FILTER_BITS);
+    }
+
+    private static long now() {
+        return System.nanoTime() / 1000000L;
+    }
+}
@@ -0,0 +1,288 @@
+package com.audacious_software.zamboni.utils;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * <h3>Description</h3>
+ *
+ * Internal helper class. The block checksums of a file, which let a client
+ * find the parts of the file it already has, see {@link BlockDownload}.
+ * Modelled on zsync: a text header, e.g.
+ * <pre>
+ * zamboni-blocks: 1
+ * Blocksize: 4096
+ * Length: 12345678
+ * Hash-Length: 8
+ * SHA-256: 9f86d08188...
+ * </pre>
+ * followed by an empty line and, for each block, its rolling checksum in
+ * 4 bytes and the first Hash-Length bytes of its SHA-256, both big-endian.
+ * The last block is padded with zeros. The index is created at release
+ * time with {@link #write(File, int, int, OutputStream)} and served next
+ * to the file, so any static file hosting will do.
+ *
+ **/
+public class BlockIndex {
+    public static final int DEFAULT_BLOCK_SIZE = 4096;
+
+    public static final int DEFAULT_HASH_LENGTH = 8;
+
+    private static final String MAGIC = "zamboni-blocks: 1";
+
+    private static final int MAX_HEADER_LINE = 1024;
+
+    /**
+     * The number of blocks the arrays are allocated for before any block
+     * was read.
+     */
+    private static final int INITIAL_CAPACITY = 4096;
+
+    private final int mBlockSize;
+    private final long mLength;
+    private final int mHashLength;
+    private final byte[] mSha256;
+    private final int[] mWeak;
+    private final byte[] mStrong;
+
+    private BlockIndex(int blockSize, long length, int hashLength, byte[] sha256, int[] weak, byte[] strong) {
+        this.mBlockSize = blockSize;
+        this.mLength = length;
+        this.mHashLength = hashLength;
+        this.mSha256 = sha256;
+        this.mWeak = weak;
+        this.mStrong = strong;
+    }
+
+    /**
+     * Reads an index.
+     *
+     * @param input the index, not closed
+     * @throws IOException if the index can't be read or is malformed
+     */
+    public static BlockIndex parse(InputStream input) throws IOException {
+        DataInputStream data = new DataInputStream(new BufferedInputStream(input));
+        if (!MAGIC.equals(readLine(data))) {
+            throw new IOException("Not a block index");
+        }
+
+        int blockSize = -1;
+        long length = -1L;
+        int hashLength = -1;
+        byte[] sha256 = null;
+        String line;
+        while ((line = readLine(data)).length() > 0) {
+            int colon = line.indexOf(':');
+            if (colon < 0) {
+                throw new IOException("Malformed block index header: " + line);
+            }
+            String key = line.substring(0, colon).trim();
+            String value = line.substring(colon + 1).trim();
+            try {
+                if ("Blocksize".equalsIgnoreCase(key)) {
+                    blockSize = Integer.parseInt(value);
+                } else if ("Length".equalsIgnoreCase(key)) {
+                    length = Long.parseLong(value);
+                } else if ("Hash-Length".equalsIgnoreCase(key)) {
+                    hashLength = Integer.parseInt(value);
+                } else if ("SHA-256".equalsIgnoreCase(key)) {
+                    sha256 = fromHex(value);
+                }
+                // Other headers are reserved for later versions.
+            } catch (NumberFormatException e) {
+                throw new IOException("Malformed block index header: " + line);
+            }
+        }
+        if (blockSize < 64 || blockSize > 1024 * 1024 || length < 0L || hashLength < 4 || hashLength > 32 || sha256 == null || sha256.length != 32) {
+            throw new IOException("Incomplete block index header");
+        }
+
+        long blocks = (length + blockSize - 1) / blockSize;
+        if (blocks > Integer.MAX_VALUE / Math.max(hashLength, 4)) {
+            throw new IOException("Block index too large");
+        }
+        // The header isn't trusted with the allocation: the arrays grow with the blocks actually read.
+        int capacity = (int) Math.min(blocks, INITIAL_CAPACITY);
+        int[] weak = new int[capacity];
+        byte[] strong = new byte[capacity * hashLength];
+        try {
+            for (int block = 0; block < blocks; block++) {
+                if (block == weak.length) {
+                    capacity = (int) Math.min(blocks, 2L * capacity);
+                    weak = Arrays.copyOf(weak, capacity);
+                    strong = Arrays.copyOf(strong, capacity * hashLength);
+                }
+                weak[block] = data.readInt();
+                data.readFully(strong, block * hashLength, hashLength);
+            }
+        } catch (EOFException e) {
+            throw new IOException("Truncated block index");
+        }
+        return new BlockIndex(blockSize, length, hashLength, sha256, weak, strong);
+    }
+
+    /**
+     * Writes the index of a file.
+     *
+     * @param file       the file
+     * @param blockSize  the size of the blocks, e.g. {@link #DEFAULT_BLOCK_SIZE}
+     * @param hashLength the number of bytes of the strong checksum kept,
+     *                   e.g. {@link #DEFAULT_HASH_LENGTH}
+     * @param output     receives the index, not closed
+     */
+    public static void write(File file, int blockSize, int hashLength, OutputStream output) throws IOException {
+        MessageDigest fileDigest = newSha256();
+        MessageDigest blockDigest = newSha256();
+        ByteArrayOutputStream blocks = new ByteArrayOutputStream();
+        DataOutputStream blockData = new DataOutputStream(blocks);
+
+        InputStream input = new BufferedInputStream(new FileInputStream(file));
+        try {
+            byte[] block = new byte[blockSize];
+            int count;
+            while ((count = readBlock(input, block)) > 0) {
+                fileDigest.update(block, 0, count);
+                Arrays.fill(block, count, blockSize, (byte) 0);
+                blockData.writeInt(weakChecksum(block, 0, blockSize));
+                blockDigest.update(block, 0, blockSize);
+                blockData.write(blockDigest.digest(), 0, hashLength);
+            }
+        } finally {
+            input.close();
+        }
+
+        String header = MAGIC + "\n"
+                + "Blocksize: " + blockSize + "\n"
+                + "Length: " + file.length() + "\n"
+                + "Hash-Length: " + hashLength + "\n"
+                + "SHA-256: " + toHex(fileDigest.digest()) + "\n\n";
+        output.write(header.getBytes(Charset.forName("US-ASCII")));
+        blocks.writeTo(output);
+        output.flush();
+    }
+
+    public int getBlockSize() {
+        return mBlockSize;
+    }
+
+    /**
+     * Returns the size of the file.
+     */
+    public long getLength() {
+        return mLength;
+    }
+
+    public int getBlockCount() {
+        return mWeak.length;
+    }
+
+    /**
+     * Returns the SHA-256 of the whole file.
+     */
+    public byte[] getSha256() {
+        return mSha256.clone();
+    }
+
+    int getHashLength() {
+        return mHashLength;
+    }
+
+    int getWeak(int block) {
+        return mWeak[block];
+    }
+
+    /**
+     * Returns true if the strong checksum of the block starts with the
+     * digest.
+     */
+    boolean strongEquals(int block, byte[] digest) {
+        int offset = block * mHashLength;
+        for (int index = 0; index < mHashLength; index++) {
+            if (mStrong[offset + index] != digest[index]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns the rolling checksum of rsync: the sum of the bytes in the
+     * lower and the sum of the partial sums in the upper 16 bits.
+     */
+    static int weakChecksum(byte[] data, int offset, int length) {
+        int a = 0;
+        int b = 0;
+        for (int index = 0; index < length; index++) {
+            a += data[offset + index] & 0xff;
+            b += a;
+        }
+        return (a & 0xffff) | (b << 16);
+    }
+
+    static MessageDigest newSha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            // Every Java platform has SHA-256.
+            throw new IllegalStateException(e);
+        }
+    }
+
+    static String toHex(byte[] bytes) {
+        StringBuilder builder = new StringBuilder(bytes.length * 2);
+        for (byte value : bytes) {
+            builder.append(String.format(Locale.US, "%02x", value & 0xff));
+        }
+        return builder.toString();
+    }
+
+    private static byte[] fromHex(String hex) {
+        if (hex.length() % 2 != 0) {
+            throw new NumberFormatException(hex);
+        }
+        byte[] bytes = new byte[hex.length() / 2];
+        for (int index = 0; index < bytes.length; index++) {
+            bytes[index] = (byte) Integer.parseInt(hex.substring(2 * index, 2 * index + 2), 16);
+        }
+        return bytes;
+    }
+
+    private static int readBlock(InputStream input, byte[] block) throws IOException {
+        int total = 0;
+        int count;
+        while (total < block.length && (count = input.read(block, total, block.length - total)) != -1) {
+            total += count;
+        }
+        return total;
+    }
+
+    private static String readLine(DataInputStream input) throws IOException {
+        StringBuilder line = new StringBuilder();
+        int value;
+        while ((value = input.read()) != '\n') {
+            if (value == -1) {
+                throw new IOException("Truncated block index header");
+            }
+            if (line.length() >= MAX_HEADER_LINE) {
+                throw new IOException("Block index header line too long");
+            }
+            if (value != '\r') {
+                line.append((char) value);
+            }
+        }
+        return line.toString();
+    }
+}
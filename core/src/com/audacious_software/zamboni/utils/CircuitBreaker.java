@@ -0,0 +1,226 @@
+package com.audacious_software.zamboni.utils;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <h3>Description</h3>
+ *
+ * Internal helper class. Stops requests to a host that keeps failing, so
+ * the installed base backs off while a server recovers instead of every
+ * app launch adding to the load.
+ *
+ * After {@link #FAILURE_THRESHOLD} failed requests in a row, or when the
+ * server asks for a delay with Retry-After, the circuit of the host opens
+ * and requests fail immediately. When the cooldown is over, one request is
+ * let through: if it succeeds, the circuit closes, otherwise it opens
+ * again for twice as long, up to {@link #MAX_COOLDOWN_MILLIS}. Cooldowns
+ * are randomized so the devices don't come back all at once.
+ *
+ * The state is kept in a {@link Store}, so it survives the process.
+ * Without a store it is kept in memory only.
+ *
+ **/
+public class CircuitBreaker {
+    public static final int FAILURE_THRESHOLD = 3;
+
+    public static final long BASE_COOLDOWN_MILLIS = TimeUnit.MINUTES.toMillis(1);
+
+    public static final long MAX_COOLDOWN_MILLIS = TimeUnit.HOURS.toMillis(6);
+
+    private static final String KEY_PREFIX = "circuit.";
+
+    private static final Map<String, State> sStates = new HashMap<>();
+
+    private static final Random sRandom = new Random();
+
+    private static Store sStore;
+
+    /**
+     * <h3>Description</h3>
+     *
+     * Persists the state of the circuits.
+     *
+     **/
+    public interface Store {
+        long getLong(String key, long defaultValue);
+
+        void putLong(String key, long value);
+
+        void remove(String key);
+    }
+
+    /**
+     * <h3>Description</h3>
+     *
+     * Thrown instead of making a request while the circuit of its host is
+     * open.
+     *
+     **/
+    public static class OpenException extends IOException {
+        private static final long serialVersionUID = 1L;
+
+        OpenException(String host, long remainingMillis) {
+            super("Not contacting " + host + " for another " + TimeUnit.MILLISECONDS.toSeconds(remainingMillis) + "s after repeated failures");
+        }
+    }
+
+    private static class State {
+        private int mFailures;
+        private int mTrips;
+        private long mOpenUntil;
+        private boolean mProbing;
+    }
+
+    /**
+     * Sets where the state is kept. States loaded before are kept.
+     */
+    public static synchronized void setStore(Store store) {
+        sStore = store;
+    }
+
+    /**
+     * Returns normally if a request to the host may be made now. While the
+     * circuit is half open, only the first caller may.
+     *
+     * @param host the host of the request
+     * @throws OpenException if the circuit is open
+     */
+    public static synchronized void checkRequest(String host) throws OpenException {
+        State state = getState(host);
+        if (state.mOpenUntil == 0L) {
+            return;
+        }
+
+        long remaining = state.mOpenUntil - System.currentTimeMillis();
+        if (remaining > MAX_COOLDOWN_MILLIS) {
+            // The clock was set back.
+            remaining = MAX_COOLDOWN_MILLIS;
+            state.mOpenUntil = System.currentTimeMillis() + remaining;
+            save(host, state);
+        }
+        if (remaining > 0L) {
+            throw new OpenException(host, remaining);
+        }
+        if (state.mProbing) {
+            throw new OpenException(host, 0L);
+        }
+        state.mProbing = true;
+    }
+
+    /**
+     * Records a successful request, closing the circuit.
+     */
+    public static synchronized void recordSuccess(String host) {
+        State state = getState(host);
+        if (state.mFailures == 0 && state.mOpenUntil == 0L) {
+            return;
+        }
+        if (state.mOpenUntil != 0L) {
+            HockeyLog.info(HockeyLog.HOCKEY_TAG, "%s recovered, resuming requests", host);
+        }
+        sStates.put(host, new State());
+        forget(host);
+    }
+
+    /**
+     * Records a request the server failed, e.g. with a 5xx status. Opens the
+     * circuit if the host failed too often in a row, the trial request of a
+     * half open circuit failed or the server asked for a delay.
+     *
+     * @param host             the host of the request
+     * @param retryAfterMillis the delay the server asked for, or -1
+     */
+    public static synchronized void recordFailure(String host, long retryAfterMillis) {
+        State state = getState(host);
+        state.mFailures++;
+        boolean probeFailed = state.mProbing;
+        state.mProbing = false;
+
+        long cooldown = -1L;
+        if (probeFailed || state.mFailures >= FAILURE_THRESHOLD) {
+            state.mTrips++;
+            long base = BASE_COOLDOWN_MILLIS << Math.min(state.mTrips - 1, 16);
+            long capped = Math.min(MAX_COOLDOWN_MILLIS, base);
+            cooldown = capped / 2 + (long) (sRandom.nextDouble() * (capped / 2));
+        }
+        if (retryAfterMillis > 0L) {
+            cooldown = Math.max(cooldown, Math.min(MAX_COOLDOWN_MILLIS, retryAfterMillis));
+        }
+        if (cooldown > 0L) {
+            state.mOpenUntil = System.currentTimeMillis() + cooldown;
+            HockeyLog.warn(HockeyLog.HOCKEY_TAG, "Pausing requests to %s for %ds", host, TimeUnit.MILLISECONDS.toSeconds(cooldown));
+        }
+        save(host, state);
+    }
+
+    /**
+     * Records a request that failed for a reason other than the server,
+     * e.g. because the device is offline. Doesn't count as a failure, but
+     * lets the next request through if this one was the trial request.
+     */
+    public static synchronized void recordUnrelatedFailure(String host) {
+        getState(host).mProbing = false;
+    }
+
+    /**
+     * Returns true if requests to the host are currently refused.
+     */
+    public static synchronized boolean isOpen(String host) {
+        State state = getState(host);
+        return state.mOpenUntil != 0L && (state.mOpenUntil > System.currentTimeMillis() || state.mProbing);
+    }
+
+    /**
+     * Returns how long the circuit of the host stays open, 0 if requests
+     * are allowed or it is half open.
+     */
+    public static synchronized long getRemainingMillis(String host) {
+        State state = getState(host);
+        return state.mOpenUntil != 0L ? Math.max(0L, state.mOpenUntil - System.currentTimeMillis()) : 0L;
+    }
+
+    /**
+     * Closes all circuits kept in memory. Persisted states of other hosts
+     * are loaded again when used.
+     */
+    public static synchronized void clear() {
+        for (String host : sStates.keySet()) {
+            forget(host);
+        }
+        sStates.clear();
+    }
+
+    private static State getState(String host) {
+        State state = sStates.get(host);
+        if (state == null) {
+            state = new State();
+            if (sStore != null) {
+                state.mFailures = (int) sStore.getLong(KEY_PREFIX + host + ".failures", 0L);
+                state.mTrips = (int) sStore.getLong(KEY_PREFIX + host + ".trips", 0L);
+                state.mOpenUntil = sStore.getLong(KEY_PREFIX + host + ".openUntil", 0L);
+            }
+            sStates.put(host, state);
+        }
+        return state;
+    }
+
+    private static void forget(String host) {
+        if (sStore != null) {
+            sStore.remove(KEY_PREFIX + host + ".failures");
+            sStore.remove(KEY_PREFIX + host + ".trips");
+            sStore.remove(KEY_PREFIX + host + ".openUntil");
+        }
+    }
+
+    private static void save(String host, State state) {
+        if (sStore != null) {
+            sStore.putLong(KEY_PREFIX + host + ".failures", state.mFailures);
+            sStore.putLong(KEY_PREFIX + host + ".trips", state.mTrips);
+            sStore.putLong(KEY_PREFIX + host + ".openUntil", state.mOpenUntil);
+        }
+    }
+}
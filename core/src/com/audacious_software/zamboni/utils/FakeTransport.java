@@ -0,0 +1,285 @@
+package com.audacious_software.zamboni.utils;
+
+import java.io.ByteArrayInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * <h3>Description</h3>
+ *
+ * In-memory transport for tests and benchmarks. Serves the responses
+ * registered per URL without any network access, with redirects, ETag
+ * and single byte range support, and records the requests made.
+ *
+ **/
+public class FakeTransport implements HttpTransport {
+    private static final int MAX_REDIRECTS = 20;
+
+    private final Map<String, Response> mResponses = new ConcurrentHashMap<>();
+    private final List<String> mRequests = Collections.synchronizedList(new ArrayList<String>());
+    private final AtomicLong mBytesServed = new AtomicLong();
+
+    /**
+     * <h3>Description</h3>
+     *
+     * A registered response. Headers can be added after registering.
+     *
+     **/
+    public static class Response {
+        private final int mCode;
+        private final byte[] mBody;
+        private final Map<String, String> mHeaders = new ConcurrentHashMap<>();
+
+        Response(int code, byte[] body) {
+            this.mCode = code;
+            this.mBody = body;
+        }
+
+        public Response header(String name, String value) {
+            mHeaders.put(name.toLowerCase(Locale.US), value);
+            return this;
+        }
+    }
+
+    /**
+     * Registers a response for a URL.
+     *
+     * @param url  the complete URL
+     * @param code the HTTP status code
+     * @param body the body, may be empty
+     */
+    public Response respond(String url, int code, byte[] body) {
+        Response response = new Response(code, body);
+        mResponses.put(url, response);
+        return response;
+    }
+
+    /**
+     * Registers a file for a URL, served with status 200.
+     */
+    public Response respond(String url, String contentType, byte[] body) {
+        return respond(url, HttpURLConnection.HTTP_OK, body).header("Content-Type", contentType);
+    }
+
+    /**
+     * Registers a temporary redirect.
+     */
+    public Response redirect(String from, String to) {
+        return respond(from, HttpURLConnection.HTTP_MOVED_TEMP, new byte[0]).header("Location", to);
+    }
+
+    /**
+     * Returns the requests made so far, as method and URL, e.g. "HEAD https://...".
+     */
+    public List<String> getRequests() {
+        synchronized (mRequests) {
+            return new ArrayList<>(mRequests);
+        }
+    }
+
+    /**
+     * Returns the number of body bytes handed out so far.
+     */
+    public long getBytesServed() {
+        return mBytesServed.get();
+    }
+
+    public void clearRequests() {
+        mRequests.clear();
+        mBytesServed.set(0L);
+    }
+
+    @Override
+    public HttpURLConnection open(URL url) {
+        return new FakeConnection(url);
+    }
+
+    private class FakeConnection extends HttpURLConnection {
+        private int mCode;
+        private byte[] mBody;
+        private final Map<String, String> mResponseHeaders = new LinkedHashMap<>();
+
+        FakeConnection(URL url) {
+            super(url);
+        }
+
+        @Override
+        public void connect() throws IOException {
+            if (connected) {
+                return;
+            }
+            // Request properties can't be read once connected.
+            String ifNoneMatch = getRequestProperty("If-None-Match");
+            String range = getRequestProperty("Range");
+            String ifRange = getRequestProperty("If-Range");
+            connected = true;
+
+            Response response = null;
+            for (int redirects = 0; redirects <= MAX_REDIRECTS; redirects++) {
+                mRequests.add(getRequestMethod() + " " + url);
+                response = mResponses.get(url.toString());
+
+                String location = response != null ? response.mHeaders.get("location") : null;
+                if (location == null || !getInstanceFollowRedirects() || response.mCode / 100 != 3) {
+                    break;
+                }
+                URL target = new URL(url, location);
+                if (!target.getProtocol().equals(url.getProtocol())) {
+                    // Like the platform, don't follow redirects to another protocol.
+                    break;
+                }
+                url = target;
+            }
+
+            if (response == null) {
+                respond(HTTP_NOT_FOUND, "Not found".getBytes(Charset.forName("UTF-8")));
+                mResponseHeaders.put("content-type", "text/plain");
+                return;
+            }
+            mResponseHeaders.putAll(response.mHeaders);
+
+            String eTag = response.mHeaders.get("etag");
+            if (eTag != null && eTag.equals(ifNoneMatch)) {
+                respond(HTTP_NOT_MODIFIED, new byte[0]);
+                return;
+            }
+
+            if (response.mCode == HTTP_OK && range != null && (ifRange == null || ifRange.equals(eTag))) {
+                int length = response.mBody.length;
+                long[] bounds = parseRange(range, length);
+                if (bounds == null) {
+                    mResponseHeaders.put("content-range", "bytes */" + length);
+                    respond(416, new byte[0]);
+                } else {
+                    mResponseHeaders.put("content-range", "bytes " + bounds[0] + "-" + bounds[1] + "/" + length);
+                    respond(HTTP_PARTIAL, Arrays.copyOfRange(response.mBody, (int) bounds[0], (int) bounds[1] + 1));
+                }
+                return;
+            }
+            respond(response.mCode, response.mBody);
+        }
+
+        private void respond(int code, byte[] body) {
+            mCode = code;
+            mBody = body;
+            mResponseHeaders.put("content-length", Integer.toString(body.length));
+        }
+
+        @Override
+        public int getResponseCode() throws IOException {
+            connect();
+            return mCode;
+        }
+
+        @Override
+        public String getHeaderField(String name) {
+            try {
+                connect();
+            } catch (IOException e) {
+                return null;
+            }
+            return name != null ? mResponseHeaders.get(name.toLowerCase(Locale.US)) : null;
+        }
+
+        @Override
+        public String getHeaderFieldKey(int n) {
+            if (n <= 0 || n > mResponseHeaders.size()) {
+                return null;
+            }
+            return new ArrayList<>(mResponseHeaders.keySet()).get(n - 1);
+        }
+
+        @Override
+        public String getHeaderField(int n) {
+            if (n == 0) {
+                return "HTTP/1.1 " + mCode;
+            }
+            String key = getHeaderFieldKey(n);
+            return key != null ? mResponseHeaders.get(key) : null;
+        }
+
+        @Override
+        public Map<String, List<String>> getHeaderFields() {
+            Map<String, List<String>> fields = new LinkedHashMap<>();
+            for (Map.Entry<String, String> header : mResponseHeaders.entrySet()) {
+                fields.put(header.getKey(), Collections.singletonList(header.getValue()));
+            }
+            return Collections.unmodifiableMap(fields);
+        }
+
+        @Override
+        public InputStream getInputStream() throws IOException {
+            connect();
+            if (mCode >= HTTP_BAD_REQUEST) {
+                if (mCode == HTTP_NOT_FOUND || mCode == HTTP_GONE) {
+                    throw new FileNotFoundException(url.toString());
+                }
+                throw new IOException("Server returned HTTP response code: " + mCode + " for URL: " + url);
+            }
+            return body();
+        }
+
+        @Override
+        public InputStream getErrorStream() {
+            return connected && mCode >= HTTP_BAD_REQUEST ? body() : null;
+        }
+
+        private InputStream body() {
+            byte[] body = "HEAD".equals(getRequestMethod()) ? new byte[0] : mBody;
+            mBytesServed.addAndGet(body.length);
+            return new ByteArrayInputStream(body);
+        }
+
+        @Override
+        public void disconnect() {
+        }
+
+        @Override
+        public boolean usingProxy() {
+            return false;
+        }
+    }
+
+    /**
+     * Parses a single range of the form "bytes=a-b", "bytes=a-" or
+     * "bytes=-n". Returns null if it can't be satisfied.
+     */
+    private static long[] parseRange(String range, int length) {
+        if (!range.startsWith("bytes=") || range.indexOf(',') >= 0) {
+            return null;
+        }
+        String spec = range.substring("bytes=".length()).trim();
+        int dash = spec.indexOf('-');
+        if (dash < 0) {
+            return null;
+        }
+
+        try {
+            long start;
+            long end;
+            if (dash == 0) {
+                start = Math.max(0, length - Long.parseLong(spec.substring(1)));
+                end = length - 1;
+            } else {
+                start = Long.parseLong(spec.substring(0, dash));
+                end = dash == spec.length() - 1 ? length - 1 : Math.min(length - 1, Long.parseLong(spec.substring(dash + 1)));
+            }
+            return start <= end && start < length ? new long[]{start, end} : null;
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,148 @@
+package com.audacious_software.zamboni.utils;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * <h3>Description</h3>
+ *
+ * Internal helper class. Evaluates the version feed: whether it offers
+ * an update for the installed version, whether that update is mandatory,
+ * and which versions are kept for the release notes.
+ *
+ **/
+public class FeedParser {
+
+    /**
+     * <h3>Description</h3>
+     *
+     * Decides whether a build with the installed version code is newer
+     * than the installed APK file.
+     *
+     **/
+    public interface UpdateTimeCheck {
+        boolean isNewerThanLastUpdateTime(long timestamp);
+    }
+
+    private final int mVersionCode;
+    private final UpdateTimeCheck mUpdateTimeCheck;
+    private boolean mMandatory;
+
+    /**
+     * @param versionCode     version code of the installed app
+     * @param updateTimeCheck check for builds with the installed version code
+     */
+    public FeedParser(int versionCode, UpdateTimeCheck updateTimeCheck) {
+        this.mVersionCode = versionCode;
+        this.mUpdateTimeCheck = updateTimeCheck;
+    }
+
+    /**
+     * Returns true if the feed contains a newer version. Also determines
+     * whether any newer version is mandatory, see {@link #isMandatory()}.
+     *
+     * @param json the versions of the feed
+     */
+    public boolean findNewVersion(JSONArray json) {
+        try {
+            boolean newerVersionFound = false;
+
+            for (int index = 0; index < json.length(); index++) {
+                JSONObject entry = json.getJSONObject(index);
+
+                boolean largerVersionCode = (entry.getInt("version") > mVersionCode);
+                boolean newerApkFile = ((entry.getInt("version") == mVersionCode) && mUpdateTimeCheck.isNewerThanLastUpdateTime(entry.getLong("timestamp")));
+                // boolean minRequirementsMet = VersionHelper.compareVersionStrings(entry.getString("minimum_os_version"), VersionHelper.mapGoogleVersion(Build.VERSION.RELEASE)) <= 0;
+
+                // if ((largerVersionCode || newerApkFile) && minRequirementsMet) {
+                if (largerVersionCode || newerApkFile) {
+                    if (entry.has("mandatory")) {
+                        mMandatory |= entry.getBoolean("mandatory");
+                    }
+                    newerVersionFound = true;
+                }
+            }
+
+            return newerVersionFound;
+        } catch (JSONException e) {
+
+            return false;
+        }
+    }
+
+    /**
+     * Returns true if one of the newer versions found is mandatory.
+     */
+    public boolean isMandatory() {
+        return mMandatory;
+    }
+
+    /**
+     * Returns the URLs an entry of the feed can be downloaded from: its
+     * app_url followed by the URLs of its optional mirror_urls array, e.g.
+     * <pre>
+     * "app_url": "https://cdn1.example.com/app-42.apk",
+     * "mirror_urls": ["https://cdn2.example.com/app-42.apk"]
+     * </pre>
+     * Duplicates and empty values are skipped.
+     *
+     * @param entry a version of the feed
+     */
+    public static List<String> getDownloadUrls(JSONObject entry) {
+        return getUrls(entry, "app_url", "mirror_urls");
+    }
+
+    /**
+     * Returns the URL of the block index of an entry, its optional
+     * block_index_url, or null, see {@link BlockIndex}.
+     *
+     * @param entry a version of the feed
+     */
+    public static String getBlockIndexUrl(JSONObject entry) {
+        String url = entry.optString("block_index_url", null);
+        return url != null && url.trim().length() > 0 ? url.trim() : null;
+    }
+
+    /**
+     * Returns the URL of the key followed by the URLs of the array of the
+     * mirrors key, without duplicates and empty values.
+     */
+    static List<String> getUrls(JSONObject json, String key, String mirrorsKey) {
+        List<String> urls = new ArrayList<>();
+        addUrl(urls, json.optString(key, null));
+
+        JSONArray mirrors = json.optJSONArray(mirrorsKey);
+        if (mirrors != null) {
+            for (int index = 0; index < mirrors.length(); index++) {
+                addUrl(urls, mirrors.optString(index, null));
+            }
+        }
+        return urls;
+    }
+
+    private static void addUrl(List<String> urls, String url) {
+        if (url != null && url.trim().length() > 0 && !urls.contains(url.trim())) {
+            urls.add(url.trim());
+        }
+    }
+
+    /**
+     * Returns the newest versions of the feed, newest first.
+     *
+     * @param json        the versions of the feed
+     * @param maxVersions maximum number of versions to keep
+     */
+    public static JSONArray limitResponseSize(JSONArray json, int maxVersions) {
+        ReleaseIndex index = new ReleaseIndex(json, maxVersions);
+
+        JSONArray result = new JSONArray();
+        for (int position = 0; position < index.size(); position++) {
+            result.put(index.get(position));
+        }
+        return result;
+    }
+}
@@ -0,0 +1,969 @@
+package com.audacious_software.zamboni.utils;
+
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+
+/**
+ * <h3>Description</h3>
+ *
+ * Wrapper class for logging in the SDK as well as
+ * setting the desired log level for end users.
+ * Log levels correspond to those of android.util.Log. Messages are
+ * written to LogCat on Android and to System.err elsewhere, see
+ * {@link #setPrinter(Printer)}.
+ *
+ * Messages can be passed as format string with arguments or as
+ * {@link MessageSupplier}, so nothing is formatted unless the level is
+ * enabled. Recent messages can also be kept in a ring buffer, see
+ * {@link #setRingBufferCapacity(int, int)}.
+ */
+@SuppressWarnings({"unused", "WeakerAccess"})
+public class HockeyLog {
+    public static final String HOCKEY_TAG = "HockeyApp";
+
+    public static final int VERBOSE = 2;
+    public static final int DEBUG = 3;
+    public static final int INFO = 4;
+    public static final int WARN = 5;
+    public static final int ERROR = 6;
+    public static final int ASSERT = 7;
+
+    /**
+     * Writes to System.err, or to LogCat once the Android library installed
+     * its printer, see {@link #setDefaultPrinter(Printer)}.
+     */
+    private static volatile Printer sDefaultPrinter = createSystemErrPrinter();
+
+    private static volatile Printer sPrinter = sDefaultPrinter;
+
+    private static int sLogLevel = ERROR;
+
+    private static volatile RingBuffer sRingBuffer;
+
+    /**
+     * Lowest level of any output, so disabled messages are dropped with a single check.
+     */
+    private static volatile int sMinLevel = ERROR;
+
+    /**
+     * <h3>Description</h3>
+     *
+     * Builds a log message only if it is going to be logged.
+     *
+     **/
+    public interface MessageSupplier {
+        String get();
+    }
+
+    /**
+     * <h3>Description</h3>
+     *
+     * Writes enabled messages somewhere, LogCat by default.
+     *
+     **/
+    public interface Printer {
+        void println(int level, String tag, String message, Throwable throwable);
+    }
+
+    /**
+     * Get the log level to find out how much data the HockeySDK spews into LogCat. The Default will be
+     * LOG_LEVEL.ERROR so only errors show up in LogCat.
+     *
+     * @return the log level
+     */
+    public static int getLogLevel() {
+        return sLogLevel;
+    }
+
+    /**
+     * Set the log level to determine the amount of info the HockeySDK spews info into LogCat.
+     *
+     * @param hockeyLogLevel The log level for hockeySDK logging
+     */
+    public static void setLogLevel(int hockeyLogLevel) {
+        sLogLevel = hockeyLogLevel;
+        updateMinLevel();
+    }
+
+    /**
+     * Replaces where messages are written, e.g. to collect them in tests
+     * or in server-side tooling.
+     *
+     * @param printer the printer, null to restore the default
+     */
+    public static synchronized void setPrinter(Printer printer) {
+        sPrinter = printer != null ? printer : sDefaultPrinter;
+    }
+
+    /**
+     * Replaces the printer used unless one was set with
+     * {@link #setPrinter(Printer)}. Called by the Android library with its
+     * LogCat printer.
+     */
+    static synchronized void setDefaultPrinter(Printer printer) {
+        if (sPrinter == sDefaultPrinter) {
+            sPrinter = printer;
+        }
+        sDefaultPrinter = printer;
+    }
+
+    /**
+     * Keeps the most recent messages of at least the given level in memory,
+     * regardless of the log level, so they can be attached to a bug report
+     * with {@link #getRecentMessages()}. Messages are formatted only when
+     * dumped: recording one costs a store into preallocated slots, plus a
+     * String.valueOf() of each argument that isn't a string, a boxed
+     * primitive or an enum, so the buffer holds no mutable objects of the
+     * caller. Messages with more than two arguments also copy the array.
+     *
+     * @param capacity number of messages to keep, 0 to disable the buffer
+     * @param level    the lowest level to record
+     */
+    public static synchronized void setRingBufferCapacity(int capacity, int level) {
+        sRingBuffer = capacity > 0 ? new RingBuffer(capacity, level) : null;
+        updateMinLevel();
+    }
+
+    /**
+     * Returns the messages in the ring buffer, oldest first, one per line.
+     * Returns an empty string if the buffer is disabled.
+     */
+    public static String getRecentMessages() {
+        RingBuffer ringBuffer = sRingBuffer;
+        return ringBuffer != null ? ringBuffer.dump() : "";
+    }
+
+    /**
+     * Returns true if a message of the given level is written to LogCat or
+     * the ring buffer. Use this to guard expensive work that the overloads
+     * of this class don't cover.
+     *
+     * @param level the level of the message
+     */
+    public static boolean isLoggable(int level) {
+        return level >= sMinLevel;
+    }
+
+    private static synchronized void updateMinLevel() {
+        RingBuffer ringBuffer = sRingBuffer;
+        sMinLevel = ringBuffer != null ? Math.min(sLogLevel, ringBuffer.mLevel) : sLogLevel;
+    }
+
+
+    /**
+     * Log a message with level VERBOSE with the default tag
+     *
+     * @param message the log message
+     */
+    public static void verbose(String message) {
+        verbose(null, message);
+    }
+
+    /**
+     * Log a message with level VERBOSE
+     *
+     * @param tag     the log tag for your message
+     * @param message the log message
+     */
+    public static void verbose(String tag, String message) {
+        if (isLoggable(VERBOSE)) {
+            log(VERBOSE, tag, message, 0, null, null, null, null);
+        }
+    }
+
+    /**
+     * Log a message with level VERBOSE with the default tag
+     *
+     * @param message   the log message
+     * @param throwable the throwable you want to log
+     */
+    public static void verbose(String message, Throwable throwable) {
+        verbose(null, message, throwable);
+    }
+
+    /**
+     * Log a message with level VERBOSE
+     *
+     * @param tag       the log tag for your message
+     * @param message   the log message
+     * @param throwable the throwable you want to log
+     */
+    public static void verbose(String tag, String message, Throwable throwable) {
+        if (isLoggable(VERBOSE)) {
+            log(VERBOSE, tag, message, 0, null, null, null, throwable);
+        }
+    }
+
+    /**
+     * Log a formatted message with level VERBOSE. The message is only
+     * formatted if the level is enabled.
+     *
+     * @param tag    the log tag for your message
+     * @param format the format of the log message, see {@link String#format(String, Object...)}
+     * @param arg    the argument of the format
+     */
+    public static void verbose(String tag, String format, Object arg) {
+        if (isLoggable(VERBOSE)) {
+            log(VERBOSE, tag, format, 1, arg, null, null, null);
+        }
+    }
+
+    /**
+     * Log a formatted message with level VERBOSE. The message is only
+     * formatted if the level is enabled.
+     *
+     * @param tag       the log tag for your message
+     * @param format    the format of the log message, see {@link String#format(String, Object...)}
+     * @param arg       the argument of the format
+     * @param throwable the throwable you want to log
+     */
+    public static void verbose(String tag, String format, Object arg, Throwable throwable) {
+        if (isLoggable(VERBOSE)) {
+            log(VERBOSE, tag, format, 1, arg, null, null, throwable);
+        }
+    }
+
+    /**
+     * Log a formatted message with level VERBOSE. The message is only
+     * formatted if the level is enabled.
+     *
+     * @param tag    the log tag for your message
+     * @param format the format of the log message, see {@link String#format(String, Object...)}
+     * @param arg1   the first argument of the format
+     * @param arg2   the second argument of the format
+     */
+    public static void verbose(String tag, String format, Object arg1, Object arg2) {
+        if (isLoggable(VERBOSE)) {
+            log(VERBOSE, tag, format, 2, arg1, arg2, null, null);
+        }
+    }
+
+    /**
+     * Log a formatted message with level VERBOSE. The message is only
+     * formatted if the level is enabled.
+     *
+     * @param tag    the log tag for your message
+     * @param format the format of the log message, see {@link String#format(String, Object...)}
+     * @param args   the arguments of the format
+     */
+    public static void verbose(String tag, String format, Object... args) {
+        if (isLoggable(VERBOSE)) {
+            log(VERBOSE, tag, format, -1, null, null, args, null);
+        }
+    }
+
+    /**
+     * Log a message with level VERBOSE. The supplier is only called if the
+     * level is enabled.
+     *
+     * @param tag      the log tag for your message
+     * @param supplier builds the log message
+     */
+    public static void verbose(String tag, MessageSupplier supplier) {
+        if (isLoggable(VERBOSE)) {
+            log(VERBOSE, tag, supplier.get(), 0, null, null, null, null);
+        }
+    }
+
+    /**
+     * Log a message with level VERBOSE. The supplier is only called if the
+     * level is enabled.
+     *
+     * @param tag       the log tag for your message
+     * @param supplier  builds the log message
+     * @param throwable the throwable you want to log
+     */
+    public static void verbose(String tag, MessageSupplier supplier, Throwable throwable) {
+        if (isLoggable(VERBOSE)) {
+            log(VERBOSE, tag, supplier.get(), 0, null, null, null, throwable);
+        }
+    }
+
+    /**
+     * Log a message with level DEBUG with the default tag
+     *
+     * @param message the log message
+     */
+    public static void debug(String message) {
+        debug(null, message);
+    }
+
+    /**
+     * Log a message with level DEBUG
+     *
+     * @param tag     the log tag for your message
+     * @param message the log message
+     */
+    public static void debug(String tag, String message) {
+        if (isLoggable(DEBUG)) {
+            log(DEBUG, tag, message, 0, null, null, null, null);
+        }
+    }
+
+    /**
+     * Log a message with level DEBUG with the default tag
+     *
+     * @param message   the log message
+     * @param throwable the throwable you want to log
+     */
+    public static void debug(String message, Throwable throwable) {
+        debug(null, message, throwable);
+    }
+
+    /**
+     * Log a message with level DEBUG
+     *
+     * @param tag       the log tag for your message
+     * @param message   the log message
+     * @param throwable the throwable you want to log
+     */
+    public static void debug(String tag, String message, Throwable throwable) {
+        if (isLoggable(DEBUG)) {
+            log(DEBUG, tag, message, 0, null, null, null, throwable);
+        }
+    }
+
+    /**
+     * Log a formatted message with level DEBUG. The message is only
+     * formatted if the level is enabled.
+     *
+     * @param tag    the log tag for your message
+     * @param format the format of the log message, see {@link String#format(String, Object...)}
+     * @param arg    the argument of the format
+     */
+    public static void debug(String tag, String format, Object arg) {
+        if (isLoggable(DEBUG)) {
+            log(DEBUG, tag, format, 1, arg, null, null, null);
+        }
+    }
+
+    /**
+     * Log a formatted message with level DEBUG. The message is only
+     * formatted if the level is enabled.
+     *
+     * @param tag       the log tag for your message
+     * @param format    the format of the log message, see {@link String#format(String, Object...)}
+     * @param arg       the argument of the format
+     * @param throwable the throwable you want to log
+     */
+    public static void debug(String tag, String format, Object arg, Throwable throwable) {
+        if (isLoggable(DEBUG)) {
+            log(DEBUG, tag, format, 1, arg, null, null, throwable);
+        }
+    }
+
+    /**
+     * Log a formatted message with level DEBUG. The message is only
+     * formatted if the level is enabled.
+     *
+     * @param tag    the log tag for your message
+     * @param format the format of the log message, see {@link String#format(String, Object...)}
+     * @param arg1   the first argument of the format
+     * @param arg2   the second argument of the format
+     */
+    public static void debug(String tag, String format, Object arg1, Object arg2) {
+        if (isLoggable(DEBUG)) {
+            log(DEBUG, tag, format, 2, arg1, arg2, null, null);
+        }
+    }
+
+    /**
+     * Log a formatted message with level DEBUG. The message is only
+     * formatted if the level is enabled.
+     *
+     * @param tag    the log tag for your message
+     * @param format the format of the log message, see {@link String#format(String, Object...)}
+     * @param args   the arguments of the format
+     */
+    public static void debug(String tag, String format, Object... args) {
+        if (isLoggable(DEBUG)) {
+            log(DEBUG, tag, format, -1, null, null, args, null);
+        }
+    }
+
+    /**
+     * Log a message with level DEBUG. The supplier is only called if the
+     * level is enabled.
+     *
+     * @param tag      the log tag for your message
+     * @param supplier builds the log message
+     */
+    public static void debug(String tag, MessageSupplier supplier) {
+        if (isLoggable(DEBUG)) {
+            log(DEBUG, tag, supplier.get(), 0, null, null, null, null);
+        }
+    }
+
+    /**
+     * Log a message with level DEBUG. The supplier is only called if the
+     * level is enabled.
+     *
+     * @param tag       the log tag for your message
+     * @param supplier  builds the log message
+     * @param throwable the throwable you want to log
+     */
+    public static void debug(String tag, MessageSupplier supplier, Throwable throwable) {
+        if (isLoggable(DEBUG)) {
+            log(DEBUG, tag, supplier.get(), 0, null, null, null, throwable);
+        }
+    }
+
+    /**
+     * Log a message with level INFO with the default tag
+     *
+     * @param message the log message
+     */
+    public static void info(String message) {
+        info(null, message);
+    }
+
+    /**
+     * Log a message with level INFO
+     *
+     * @param tag     the log tag for your message
+     * @param message the log message
+     */
+    public static void info(String tag, String message) {
+        if (isLoggable(INFO)) {
+            log(INFO, tag, message, 0, null, null, null, null);
+        }
+    }
+
+    /**
+     * Log a message with level INFO with the default tag
+     *
+     * @param message   the log message
+     * @param throwable the throwable you want to log
+     */
+    public static void info(String message, Throwable throwable) {
+        info(null, message, throwable);
+    }
+
+    /**
+     * Log a message with level INFO
+     *
+     * @param tag       the log tag for your message
+     * @param message   the log message
+     * @param throwable the throwable you want to log
+     */
+    public static void info(String tag, String message, Throwable throwable) {
+        if (isLoggable(INFO)) {
+            log(INFO, tag, message, 0, null, null, null, throwable);
+        }
+    }
+
+    /**
+     * Log a formatted message with level INFO. The message is only
+     * formatted if the level is enabled.
+     *
+     * @param tag    the log tag for your message
+     * @param format the format of the log message, see {@link String#format(String, Object...)}
+     * @param arg    the argument of the format
+     */
+    public static void info(String tag, String format, Object arg) {
+        if (isLoggable(INFO)) {
+            log(INFO, tag, format, 1, arg, null, null, null);
+        }
+    }
+
+    /**
+     * Log a formatted message with level INFO. The message is only
+     * formatted if the level is enabled.
+     *
+     * @param tag       the log tag for your message
+     * @param format    the format of the log message, see {@link String#format(String, Object...)}
+     * @param arg       the argument of the format
+     * @param throwable the throwable you want to log
+     */
+    public static void info(String tag, String format, Object arg, Throwable throwable) {
+        if (isLoggable(INFO)) {
+            log(INFO, tag, format, 1, arg, null, null, throwable);
+        }
+    }
+
+    /**
+     * Log a formatted message with level INFO. The message is only
+     * formatted if the level is enabled.
+     *
+     * @param tag    the log tag for your message
+     * @param format the format of the log message, see {@link String#format(String, Object...)}
+     * @param arg1   the first argument of the format
+     * @param arg2   the second argument of the format
+     */
+    public static void info(String tag, String format, Object arg1, Object arg2) {
+        if (isLoggable(INFO)) {
+            log(INFO, tag, format, 2, arg1, arg2, null, null);
+        }
+    }
+
+    /**
+     * Log a formatted message with level INFO. The message is only
+     * formatted if the level is enabled.
+     *
+     * @param tag    the log tag for your message
+     * @param format the format of the log message, see {@link String#format(String, Object...)}
+     * @param args   the arguments of the format
+     */
+    public static void info(String tag, String format, Object... args) {
+        if (isLoggable(INFO)) {
+            log(INFO, tag, format, -1, null, null, args, null);
+        }
+    }
+
+    /**
+     * Log a message with level INFO. The supplier is only called if the
+     * level is enabled.
+     *
+     * @param tag      the log tag for your message
+     * @param supplier builds the log message
+     */
+    public static void info(String tag, MessageSupplier supplier) {
+        if (isLoggable(INFO)) {
+            log(INFO, tag, supplier.get(), 0, null, null, null, null);
+        }
+    }
+
+    /**
+     * Log a message with level INFO. The supplier is only called if the
+     * level is enabled.
+     *
+     * @param tag       the log tag for your message
+     * @param supplier  builds the log message
+     * @param throwable the throwable you want to log
+     */
+    public static void info(String tag, MessageSupplier supplier, Throwable throwable) {
+        if (isLoggable(INFO)) {
+            log(INFO, tag, supplier.get(), 0, null, null, null, throwable);
+        }
+    }
+
+    /**
+     * Log a message with level WARN with the default tag
+     *
+     * @param message the log message
+     */
+    public static void warn(String message) {
+        warn(null, message);
+    }
+
+    /**
+     * Log a message with level WARN
+     *
+     * @param tag     the log tag for your message
+     * @param message the log message
+     */
+    public static void warn(String tag, String message) {
+        if (isLoggable(WARN)) {
+            log(WARN, tag, message, 0, null, null, null, null);
+        }
+    }
+
+    /**
+     * Log a message with level WARN with the default tag
+     *
+     * @param message   the log message
+     * @param throwable the throwable you want to log
+     */
+    public static void warn(String message, Throwable throwable) {
+        warn(null, message, throwable);
+    }
+
+    /**
+     * Log a message with level WARN
+     *
+     * @param tag       the log tag for your message
+     * @param message   the log message
+     * @param throwable the throwable you want to log
+     */
+    public static void warn(String tag, String message, Throwable throwable) {
+        if (isLoggable(WARN)) {
+            log(WARN, tag, message, 0, null, null, null, throwable);
+        }
+    }
+
+    /**
+     * Log a formatted message with level WARN. The message is only
+     * formatted if the level is enabled.
+     *
+     * @param tag    the log tag for your message
+     * @param format the format of the log message, see {@link String#format(String, Object...)}
+     * @param arg    the argument of the format
+     */
+    public static void warn(String tag, String format, Object arg) {
+        if (isLoggable(WARN)) {
+            log(WARN, tag, format, 1, arg, null, null, null);
+        }
+    }
+
+    /**
+     * Log a formatted message with level WARN. The message is only
+     * formatted if the level is enabled.
+     *
+     * @param tag       the log tag for your message
+     * @param format    the format of the log message, see {@link String#format(String, Object...)}
+     * @param arg       the argument of the format
+     * @param throwable the throwable you want to log
+     */
+    public static void warn(String tag, String format, Object arg, Throwable throwable) {
+        if (isLoggable(WARN)) {
+            log(WARN, tag, format, 1, arg, null, null, throwable);
+        }
+    }
+
+    /**
+     * Log a formatted message with level WARN. The message is only
+     * formatted if the level is enabled.
+     *
+     * @param tag    the log tag for your message
+     * @param format the format of the log message, see {@link String#format(String, Object...)}
+     * @param arg1   the first argument of the format
+     * @param arg2   the second argument of the format
+     */
+    public static void warn(String tag, String format, Object arg1, Object arg2) {
+        if (isLoggable(WARN)) {
+            log(WARN, tag, format, 2, arg1, arg2, null, null);
+        }
+    }
+
+    /**
+     * Log a formatted message with level WARN. The message is only
+     * formatted if the level is enabled.
+     *
+     * @param tag    the log tag for your message
+     * @param format the format of the log message, see {@link String#format(String, Object...)}
+     * @param args   the arguments of the format
+     */
+    public static void warn(String tag, String format, Object... args) {
+        if (isLoggable(WARN)) {
+            log(WARN, tag, format, -1, null, null, args, null);
+        }
+    }
+
+    /**
+     * Log a message with level WARN. The supplier is only called if the
+     * level is enabled.
+     *
+     * @param tag      the log tag for your message
+     * @param supplier builds the log message
+     */
+    public static void warn(String tag, MessageSupplier supplier) {
+        if (isLoggable(WARN)) {
+            log(WARN, tag, supplier.get(), 0, null, null, null, null);
+        }
+    }
+
+    /**
+     * Log a message with level WARN. The supplier is only called if the
+     * level is enabled.
+     *
+     * @param tag       the log tag for your message
+     * @param supplier  builds the log message
+     * @param throwable the throwable you want to log
+     */
+    public static void warn(String tag, MessageSupplier supplier, Throwable throwable) {
+        if (isLoggable(WARN)) {
+            log(WARN, tag, supplier.get(), 0, null, null, null, throwable);
+        }
+    }
+
+    /**
+     * Log a message with level ERROR with the default tag
+     *
+     * @param message the log message
+     */
+    public static void error(String message) {
+        error(null, message);
+    }
+
+    /**
+     * Log a message with level ERROR
+     *
+     * @param tag     the log tag for your message
+     * @param message the log message
+     */
+    public static void error(String tag, String message) {
+        if (isLoggable(ERROR)) {
+            log(ERROR, tag, message, 0, null, null, null, null);
+        }
+    }
+
+    /**
+     * Log a message with level ERROR with the default tag
+     *
+     * @param message   the log message
+     * @param throwable the throwable you want to log
+     */
+    public static void error(String message, Throwable throwable) {
+        error(null, message, throwable);
+    }
+
+    /**
+     * Log a message with level ERROR
+     *
+     * @param tag       the log tag for your message
+     * @param message   the log message
+     * @param throwable the throwable you want to log
+     */
+    public static void error(String tag, String message, Throwable throwable) {
+        if (isLoggable(ERROR)) {
+            log(ERROR, tag, message, 0, null, null, null, throwable);
+        }
+    }
+
+    /**
+     * Log a formatted message with level ERROR. The message is only
+     * formatted if the level is enabled.
+     *
+     * @param tag    the log tag for your message
+     * @param format the format of the log message, see {@link String#format(String, Object...)}
+     * @param arg    the argument of the format
+     */
+    public static void error(String tag, String format, Object arg) {
+        if (isLoggable(ERROR)) {
+            log(ERROR, tag, format, 1, arg, null, null, null);
+        }
+    }
+
+    /**
+     * Log a formatted message with level ERROR. The message is only
+     * formatted if the level is enabled.
+     *
+     * @param tag       the log tag for your message
+     * @param format    the format of the log message, see {@link String#format(String, Object...)}
+     * @param arg       the argument of the format
+     * @param throwable the throwable you want to log
+     */
+    public static void error(String tag, String format, Object arg, Throwable throwable) {
+        if (isLoggable(ERROR)) {
+            log(ERROR, tag, format, 1, arg, null, null, throwable);
+        }
+    }
+
+    /**
+     * Log a formatted message with level ERROR. The message is only
+     * formatted if the level is enabled.
+     *
+     * @param tag    the log tag for your message
+     * @param format the format of the log message, see {@link String#format(String, Object...)}
+     * @param arg1   the first argument of the format
+     * @param arg2   the second argument of the format
+     */
+    public static void error(String tag, String format, Object arg1, Object arg2) {
+        if (isLoggable(ERROR)) {
+            log(ERROR, tag, format, 2, arg1, arg2, null, null);
+        }
+    }
+
+    /**
+     * Log a formatted message with level ERROR. The message is only
+     * formatted if the level is enabled.
+     *
+     * @param tag    the log tag for your message
+     * @param format the format of the log message, see {@link String#format(String, Object...)}
+     * @param args   the arguments of the format
+     */
+    public static void error(String tag, String format, Object... args) {
+        if (isLoggable(ERROR)) {
+            log(ERROR, tag, format, -1, null, null, args, null);
+        }
+    }
+
+    /**
+     * Log a message with level ERROR. The supplier is only called if the
+     * level is enabled.
+     *
+     * @param tag      the log tag for your message
+     * @param supplier builds the log message
+     */
+    public static void error(String tag, MessageSupplier supplier) {
+        if (isLoggable(ERROR)) {
+            log(ERROR, tag, supplier.get(), 0, null, null, null, null);
+        }
+    }
+
+    /**
+     * Log a message with level ERROR. The supplier is only called if the
+     * level is enabled.
+     *
+     * @param tag       the log tag for your message
+     * @param supplier  builds the log message
+     * @param throwable the throwable you want to log
+     */
+    public static void error(String tag, MessageSupplier supplier, Throwable throwable) {
+        if (isLoggable(ERROR)) {
+            log(ERROR, tag, supplier.get(), 0, null, null, null, throwable);
+        }
+    }
+
+    /**
+     * Writes an enabled message to the ring buffer and LogCat.
+     *
+     * @param argCount number of arguments in arg1 and arg2, 0 if the message
+     *                 is no format, -1 if the arguments are in args
+     */
+    private static void log(int level, String tag, String format, int argCount, Object arg1, Object arg2, Object[] args, Throwable throwable) {
+        tag = sanitizeTag(tag);
+
+        RingBuffer ringBuffer = sRingBuffer;
+        if (ringBuffer != null && level >= ringBuffer.mLevel) {
+            ringBuffer.add(level, tag, format, argCount, arg1, arg2, args, throwable);
+        }
+
+        if (level >= sLogLevel) {
+            String message = formatMessage(format, argCount, arg1, arg2, args);
+            sPrinter.println(level, tag, message, throwable);
+        }
+    }
+
+    private static String formatMessage(String format, int argCount, Object arg1, Object arg2, Object[] args) {
+        if (format == null || argCount == 0) {
+            return format;
+        }
+
+        try {
+            if (argCount == 1) {
+                return String.format(Locale.US, format, arg1);
+            } else if (argCount == 2) {
+                return String.format(Locale.US, format, arg1, arg2);
+            }
+            return String.format(Locale.US, format, args);
+        } catch (RuntimeException e) {
+            // Never fail because of a broken format.
+            return format;
+        }
+    }
+
+    /**
+     * Sanitize a TAG string
+     *
+     * @param tag the log tag for your message for the logging
+     * @return a sanitized TAG, defaults to 'HockeyApp' in case the log tag for your message is null, empty or longer than
+     * 23 characters.
+     */
+    static String sanitizeTag(String tag) {
+        if ((tag == null) || (tag.length() == 0) || (tag.length() > 23)) {
+            tag = HOCKEY_TAG;
+        }
+
+        return tag;
+    }
+
+    private static Printer createSystemErrPrinter() {
+        return new Printer() {
+            @Override
+            public void println(int level, String tag, String message, Throwable throwable) {
+                System.err.println(RingBuffer.levelLetter(level) + "/" + tag + ": " + message);
+                if (throwable != null) {
+                    throwable.printStackTrace();
+                }
+            }
+        };
+    }
+
+    /**
+     * <h3>Description</h3>
+     *
+     * Fixed-size buffer of the most recent messages. All slots are
+     * allocated up front; adding a message overwrites the oldest one. The
+     * messages are formatted when dumped, from immutable snapshots of their
+     * arguments, see {@link #snapshot(Object)}.
+     *
+     **/
+    private static final class RingBuffer {
+        private final int mLevel;
+        private final long[] mTimes;
+        private final int[] mLevels;
+        private final String[] mTags;
+        private final String[] mFormats;
+        private final int[] mArgCounts;
+        private final Object[] mArgs1;
+        private final Object[] mArgs2;
+        private final Object[][] mArgs;
+        private final Throwable[] mThrowables;
+        private long mCount;
+
+        RingBuffer(int capacity, int level) {
+            mLevel = level;
+            mTimes = new long[capacity];
+            mLevels = new int[capacity];
+            mTags = new String[capacity];
+            mFormats = new String[capacity];
+            mArgCounts = new int[capacity];
+            mArgs1 = new Object[capacity];
+            mArgs2 = new Object[capacity];
+            mArgs = new Object[capacity][];
+            mThrowables = new Throwable[capacity];
+        }
+
+        synchronized void add(int level, String tag, String format, int argCount, Object arg1, Object arg2, Object[] args, Throwable throwable) {
+            int slot = (int) (mCount % mTimes.length);
+            mTimes[slot] = System.currentTimeMillis();
+            mLevels[slot] = level;
+            mTags[slot] = tag;
+            mFormats[slot] = format;
+            mArgCounts[slot] = argCount;
+            mArgs1[slot] = snapshot(arg1);
+            mArgs2[slot] = snapshot(arg2);
+            mArgs[slot] = snapshot(args);
+            mThrowables[slot] = throwable;
+            mCount++;
+        }
+
+        synchronized String dump() {
+            SimpleDateFormat timeFormat = new SimpleDateFormat("MM-dd HH:mm:ss.SSS", Locale.US);
+            StringBuilder result = new StringBuilder();
+            long first = Math.max(0, mCount - mTimes.length);
+            for (long index = first; index < mCount; index++) {
+                int slot = (int) (index % mTimes.length);
+                result.append(timeFormat.format(new Date(mTimes[slot]))).append(' ')
+                        .append(levelLetter(mLevels[slot])).append('/').append(mTags[slot]).append(": ")
+                        .append(formatMessage(mFormats[slot], mArgCounts[slot], mArgs1[slot], mArgs2[slot], mArgs[slot]));
+                if (mThrowables[slot] != null) {
+                    result.append(" (").append(mThrowables[slot]).append(')');
+                }
+                result.append('\n');
+            }
+            return result.toString();
+        }
+
+        /**
+         * Returns the argument if it can't change, otherwise its string
+         * value at the time of logging.
+         */
+        private static Object snapshot(Object arg) {
+            if (arg == null || arg instanceof String || arg instanceof Integer || arg instanceof Long
+                    || arg instanceof Double || arg instanceof Float || arg instanceof Short || arg instanceof Byte
+                    || arg instanceof Boolean || arg instanceof Character || arg instanceof Enum) {
+                return arg;
+            }
+            return String.valueOf(arg);
+        }
+
+        private static Object[] snapshot(Object[] args) {
+            if (args == null) {
+                return null;
+            }
+            Object[] copy = new Object[args.length];
+            for (int index = 0; index < args.length; index++) {
+                copy[index] = snapshot(args[index]);
+            }
+            return copy;
+        }
+
+        private static char levelLetter(int level) {
+            switch (level) {
+                case VERBOSE:
+                    return 'V';
+                case DEBUG:
+                    return 'D';
+                case INFO:
+                    return 'I';
+                case WARN:
+                    return 'W';
+                default:
+                    return 'E';
+            }
+        }
+    }
+}
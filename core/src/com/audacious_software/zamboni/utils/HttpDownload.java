@@ -0,0 +1,233 @@
+package com.audacious_software.zamboni.utils;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.net.URLConnection;
+
+/**
+ * <h3>Description</h3>
+ *
+ * Internal helper class. Resolves redirects and transfers the response
+ * body of a download for DownloadFileTask.
+ * Connections are opened by the caller, so this class has no Android
+ * dependencies and can be exercised against a local server.
+ *
+ **/
+public class HttpDownload {
+    public static final int BUFFER_SIZE = 1024;
+
+    /**
+     * <h3>Description</h3>
+     *
+     * Opens and configures the connection for a URL, without connecting.
+     *
+     **/
+    public interface ConnectionFactory {
+        HttpURLConnection open(URL url) throws IOException;
+    }
+
+    /**
+     * <h3>Description</h3>
+     *
+     * Receives the number of bytes transferred so far after each read.
+     *
+     **/
+    public interface ProgressListener {
+        void onProgress(long total, int length);
+    }
+
+    /**
+     * Connects to the URL and follows redirects to another protocol, which
+     * HttpURLConnection doesn't follow by itself, see
+     * http://code.google.com/p/android/issues/detail?id=41651
+     * Resolves at most remainingRedirects times.
+     *
+     * @param url                a URL
+     * @param remainingRedirects loop counter
+     * @param factory            opens the connection for each URL
+     * @return the connection of the last request, with the response code read
+     * @throws IOException if connection fails
+     */
+    public static HttpURLConnection connect(URL url, int remainingRedirects, ConnectionFactory factory) throws IOException {
+        HttpURLConnection connection = factory.open(url);
+
+        int code = connection.getResponseCode();
+        if (code == HttpURLConnection.HTTP_MOVED_PERM ||
+                code == HttpURLConnection.HTTP_MOVED_TEMP ||
+                code == HttpURLConnection.HTTP_SEE_OTHER) {
+
+            if (remainingRedirects == 0) {
+                // Stop redirecting.
+                return connection;
+            }
+
+            URL movedUrl = new URL(url, connection.getHeaderField("Location"));
+            if (!url.getProtocol().equals(movedUrl.getProtocol())) {
+                // Keep the connection for later requests to the same host.
+                close(connection);
+                return connect(movedUrl, remainingRedirects - 1, factory); // Recursion
+            }
+        }
+        return connection;
+    }
+
+    /**
+     * Resolves the redirects of a URL and determines the size of the file
+     * without downloading it. Uses HEAD, or a request for the first byte if
+     * the server refuses HEAD, as URLs signed for GET requests do.
+     *
+     * @param url                a URL
+     * @param remainingRedirects loop counter
+     * @param factory            opens the connection for each URL
+     * @return the final URL, size, validators and lifetime from the headers
+     * @throws IOException if connection fails, {@link HttpStatusException} if
+     *                     the server responds with an error
+     */
+    public static ProbeCache.Entry probe(URL url, int remainingRedirects, final ConnectionFactory factory) throws IOException {
+        HttpURLConnection connection = connect(url, remainingRedirects, new ConnectionFactory() {
+            @Override
+            public HttpURLConnection open(URL url) throws IOException {
+                HttpURLConnection connection = factory.open(url);
+                connection.setRequestMethod("HEAD");
+                return connection;
+            }
+        });
+
+        boolean ranged = false;
+        int headCode = connection.getResponseCode();
+        if (!isSuccessful(headCode) && headCode < HttpURLConnection.HTTP_INTERNAL_ERROR && headCode != 429) {
+            // Refused, not overloaded; asking again with GET would add to the load.
+            close(connection);
+            ranged = true;
+            connection = connect(url, remainingRedirects, new ConnectionFactory() {
+                @Override
+                public HttpURLConnection open(URL url) throws IOException {
+                    HttpURLConnection connection = factory.open(url);
+                    connection.setRequestProperty("Range", "bytes=0-0");
+                    return connection;
+                }
+            });
+        }
+
+        try {
+            int code = connection.getResponseCode();
+            if (!isSuccessful(code)) {
+                throw new HttpStatusException(connection.getURL(), code,
+                        HttpStatusException.parseRetryAfter(connection.getHeaderField("Retry-After"), connection.getDate()));
+            }
+
+            long length = code == HttpURLConnection.HTTP_PARTIAL
+                    ? parseTotalLength(connection.getHeaderField("Content-Range"))
+                    : parseLength(connection.getHeaderField("Content-Length"));
+            long ttl = ProbeCache.getTtlMillis(connection.getHeaderField("Cache-Control"), connection.getDate(),
+                    connection.getExpiration(), ProbeCache.DEFAULT_TTL_MILLIS);
+            return new ProbeCache.Entry(connection.getURL(), length, connection.getHeaderField("ETag"),
+                    connection.getHeaderField("Last-Modified"), ttl);
+        } finally {
+            if (ranged && connection.getResponseCode() != HttpURLConnection.HTTP_PARTIAL) {
+                // The server ignored the range, reading the body would download the whole file.
+                connection.disconnect();
+            } else {
+                close(connection);
+            }
+        }
+    }
+
+    public static boolean isSuccessful(int code) {
+        return code >= 200 && code < 300;
+    }
+
+    /**
+     * Returns the total of a header like "bytes 0-0/1234", -1 if unknown.
+     */
+    static long parseTotalLength(String contentRange) {
+        if (contentRange == null) {
+            return -1L;
+        }
+        int slash = contentRange.lastIndexOf('/');
+        return slash >= 0 ? parseLength(contentRange.substring(slash + 1)) : -1L;
+    }
+
+    private static long parseLength(String value) {
+        if (value == null) {
+            return -1L;
+        }
+        try {
+            return Long.parseLong(value.trim());
+        } catch (NumberFormatException e) {
+            return -1L;
+        }
+    }
+
+    /**
+     * Reads the rest of a small response and closes it, so the connection
+     * can be reused.
+     */
+    public static void close(HttpURLConnection connection) {
+        try {
+            InputStream input = connection.getResponseCode() < HttpURLConnection.HTTP_BAD_REQUEST ? connection.getInputStream() : connection.getErrorStream();
+            if (input != null) {
+                byte[] buffer = new byte[BUFFER_SIZE];
+                while (input.read(buffer) != -1) {
+                    // Discard.
+                }
+                input.close();
+            }
+        } catch (IOException e) {
+            connection.disconnect();
+        }
+    }
+
+    /**
+     * Returns false if the response is a text, e.g. an error page served
+     * instead of the file.
+     */
+    public static boolean isFile(URLConnection connection) {
+        String contentType = connection.getContentType();
+        return contentType == null || !contentType.contains("text");
+    }
+
+    /**
+     * Copies the response body to the output and closes the response. The
+     * buffer is sized for the throughput of the network, see
+     * {@link BandwidthEstimator#getBufferSize()}.
+     *
+     * @param connection a connected connection
+     * @param output     receives the body, flushed but not closed
+     * @param listener   notified after each read, may be null
+     * @return the number of bytes transferred
+     * @throws IOException if the transfer fails or ends before the announced
+     *                     content length
+     */
+    public static long transfer(URLConnection connection, OutputStream output, ProgressListener listener) throws IOException {
+        int length = connection.getContentLength();
+        InputStream input = new BufferedInputStream(connection.getInputStream());
+        try {
+            byte[] data = new byte[BandwidthEstimator.getBufferSize()];
+            long total = 0;
+            int count;
+            while ((count = input.read(data)) != -1) {
+                total += count;
+                if (listener != null) {
+                    listener.onProgress(total, length);
+                }
+                output.write(data, 0, count);
+            }
+            output.flush();
+
+            if (length >= 0 && total != length) {
+                throw new IOException("Download incomplete, received " + total + " of " + length + " bytes");
+            }
+            return total;
+        } finally {
+            try {
+                input.close();
+            } catch (IOException ignored) {
+            }
+        }
+    }
+}
@@ -0,0 +1,85 @@
+package com.audacious_software.zamboni.utils;
+
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.Locale;
+import java.util.TimeZone;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <h3>Description</h3>
+ *
+ * Thrown if a server answers a request with an error status. Keeps the
+ * status and the delay the server asked for in a Retry-After header, so
+ * {@link RetryPolicy} can decide whether and when to try again.
+ *
+ **/
+public class HttpStatusException extends IOException {
+    private static final long serialVersionUID = 1L;
+
+    private final int mCode;
+    private final long mRetryAfterMillis;
+
+    public HttpStatusException(URL url, int code, long retryAfterMillis) {
+        super("Request to " + url + " failed with HTTP " + code);
+        this.mCode = code;
+        this.mRetryAfterMillis = retryAfterMillis;
+    }
+
+    /**
+     * Creates the exception for an unsuccessful response and closes it.
+     *
+     * @param connection a connection with an error status
+     */
+    public static HttpStatusException forResponse(HttpURLConnection connection) throws IOException {
+        int code = connection.getResponseCode();
+        long retryAfter = parseRetryAfter(connection.getHeaderField("Retry-After"), connection.getDate());
+        URL url = connection.getURL();
+        HttpDownload.close(connection);
+        return new HttpStatusException(url, code, retryAfter);
+    }
+
+    public int getCode() {
+        return mCode;
+    }
+
+    /**
+     * Returns the delay the server asked for, or -1 if it didn't.
+     */
+    public long getRetryAfterMillis() {
+        return mRetryAfterMillis;
+    }
+
+    /**
+     * Parses a Retry-After header, either seconds or an HTTP date.
+     *
+     * @param value      the header, may be null
+     * @param dateMillis the Date header of the response, 0 if missing
+     * @return the delay in milliseconds, or -1 if the header is missing or
+     * invalid
+     */
+    static long parseRetryAfter(String value, long dateMillis) {
+        if (value == null) {
+            return -1L;
+        }
+        value = value.trim();
+        try {
+            long seconds = Long.parseLong(value);
+            return seconds >= 0L ? TimeUnit.SECONDS.toMillis(seconds) : -1L;
+        } catch (NumberFormatException ignored) {
+        }
+
+        SimpleDateFormat format = new SimpleDateFormat("EEE, dd MMM yyyy HH:mm:ss zzz", Locale.US);
+        format.setTimeZone(TimeZone.getTimeZone("GMT"));
+        try {
+            // Relative to the clock of the server, if it sent one.
+            long now = dateMillis > 0L ? dateMillis : System.currentTimeMillis();
+            return Math.max(0L, format.parse(value).getTime() - now);
+        } catch (ParseException e) {
+            return -1L;
+        }
+    }
+}
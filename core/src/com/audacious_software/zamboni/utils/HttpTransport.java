@@ -0,0 +1,32 @@
+package com.audacious_software.zamboni.utils;
+
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.net.URL;
+
+/**
+ * <h3>Description</h3>
+ *
+ * Opens the connections for the update check, the size probe and the
+ * download. The default transport uses the HttpURLConnection of the
+ * platform, which keeps idle connections per host alive and reuses them.
+ *
+ * Apps that ship an HTTP/2-capable client can plug it in with any
+ * adapter that presents it as HttpURLConnection, e.g.
+ * CronetEngine.openConnection() or the URL factory of OkHttp. For tests
+ * and benchmarks, see {@link FakeTransport}.
+ *
+ **/
+public interface HttpTransport extends HttpDownload.ConnectionFactory {
+
+    /**
+     * Returns a connection for the URL which is not connected yet, so the
+     * caller can still set the method and request headers. A connection
+     * may be reused once its response has been read to the end and closed.
+     *
+     * @param url an http or https URL
+     * @throws IOException if the connection can't be created
+     */
+    @Override
+    HttpURLConnection open(URL url) throws IOException;
+}
@@ -0,0 +1,403 @@
+package com.audacious_software.zamboni.utils;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <h3>Description</h3>
+ *
+ * Internal helper class. Downloads a file that is hosted on several
+ * mirrors. The mirrors are tried in the order of {@link MirrorSelector};
+ * if one fails, even in the middle of the transfer, the next one continues
+ * with a range request from where the previous one stopped. Each mirror is
+ * tried once per call of {@link #download(File, HttpDownload.ProgressListener)};
+ * a further call resumes from where the previous one stopped. Mirrors
+ * whose {@link CircuitBreaker} is open are skipped.
+ *
+ * If hedging is enabled and the first mirror is slow to respond, the
+ * second one is asked as well and the first response wins. Hedged
+ * requests are made on their own threads.
+ *
+ **/
+public class MirrorDownload {
+    /**
+     * <h3>Description</h3>
+     *
+     * Requests the file from a mirror.
+     *
+     **/
+    public interface Connector {
+        /**
+         * Opens a connection for the file and reads the response code.
+         *
+         * @param mirror the URL of the file on the mirror
+         * @param offset the first byte wanted, 0 for the whole file
+         */
+        HttpURLConnection connect(URL mirror, long offset) throws IOException;
+    }
+
+    /**
+     * <h3>Description</h3>
+     *
+     * Thrown if a mirror responds with something that isn't the file,
+     * e.g. an error page.
+     *
+     **/
+    public static class NotAFileException extends IOException {
+        private static final long serialVersionUID = 1L;
+
+        NotAFileException(URL mirror) {
+            super("The download from " + mirror + " does not appear to be a file");
+        }
+    }
+
+    private final List<URL> mMirrors;
+    private final Connector mConnector;
+    private long mLength;
+    private URL mMirror;
+    private int mFailovers;
+    private boolean mStarted;
+
+    /**
+     * @param mirrors        the URLs of the file, in the order of the feed
+     * @param connector      makes the requests
+     * @param expectedLength the size of the file, or -1 if unknown
+     */
+    public MirrorDownload(List<URL> mirrors, Connector connector, long expectedLength) {
+        this.mMirrors = MirrorSelector.order(mirrors, expectedLength);
+        this.mConnector = connector;
+        this.mLength = expectedLength;
+    }
+
+    /**
+     * Downloads the file.
+     *
+     * @param file     receives the file, overwritten on the first call and
+     *                 continued on further calls
+     * @param listener notified with the bytes of the file received so far,
+     *                 may be null
+     * @return the size of the file
+     * @throws IOException the failure of the last mirror if all failed
+     */
+    public long download(File file, final HttpDownload.ProgressListener listener) throws IOException {
+        List<URL> remaining = new ArrayList<>(mMirrors);
+        long offset = mStarted ? file.length() : 0L;
+        mStarted = true;
+        IOException failure = null;
+
+        while (!remaining.isEmpty()) {
+            Response response;
+            try {
+                response = request(remaining, offset);
+            } catch (MirrorException e) {
+                for (URL mirror : e.mMirrors) {
+                    recordFailure(mirror, e.mFailure);
+                    remaining.remove(mirror);
+                }
+                failure = e.mFailure;
+                if (!(failure instanceof CircuitBreaker.OpenException)) {
+                    mFailovers++;
+                }
+                continue;
+            }
+
+            URL mirror = response.mMirror;
+            HttpURLConnection connection = response.mConnection;
+            remaining.remove(mirror);
+            MirrorSelector.recordFirstByte(mirror, response.mFirstByteMillis);
+
+            long transferStart = now();
+            long bodyStart = offset;
+            boolean recorded = false;
+            try {
+                bodyStart = getBodyStart(connection, mirror, offset, mLength);
+                mLength = getTotalLength(connection, bodyStart);
+                CircuitBreaker.recordSuccess(mirror.getHost());
+                recorded = true;
+
+                final long base = bodyStart;
+                final long total = mLength;
+                OutputStream output = new FileOutputStream(file, bodyStart > 0L);
+                try {
+                    HttpDownload.transfer(connection, output, listener == null ? null : new HttpDownload.ProgressListener() {
+                        @Override
+                        public void onProgress(long received, int ignored) {
+                            listener.onProgress(base + received, (int) total);
+                        }
+                    });
+                } finally {
+                    output.close();
+                }
+
+                MirrorSelector.recordTransfer(mirror, file.length() - bodyStart, now() - transferStart);
+                BandwidthEstimator.addSample(file.length() - bodyStart, now() - transferStart);
+                mMirror = mirror;
+                return file.length();
+            } catch (IOException e) {
+                HockeyLog.warn(HockeyLog.HOCKEY_TAG, "Download from %s failed", mirror, e);
+                connection.disconnect();
+                MirrorSelector.recordTransfer(mirror, file.length() - bodyStart, now() - transferStart);
+                BandwidthEstimator.addSample(file.length() - bodyStart, now() - transferStart);
+                recordFailure(mirror, e);
+                recorded = true;
+                offset = file.length();
+                failure = e;
+                mFailovers++;
+            } finally {
+                if (!recorded) {
+                    // E.g. a RuntimeException, which must not leave a half open circuit waiting for this request.
+                    CircuitBreaker.recordUnrelatedFailure(mirror.getHost());
+                }
+            }
+        }
+        throw failure != null ? failure : new IOException("No mirror to download from");
+    }
+
+    /**
+     * Returns the mirror the download finished from, or null.
+     */
+    public URL getMirror() {
+        return mMirror;
+    }
+
+    /**
+     * Returns how often the download moved on to another mirror.
+     */
+    public int getFailoverCount() {
+        return mFailovers;
+    }
+
+    private static void recordFailure(URL mirror, IOException failure) {
+        if (failure instanceof CircuitBreaker.OpenException) {
+            // Not requested at all.
+            return;
+        }
+        MirrorSelector.recordFailure(mirror);
+        if (RetryPolicy.isServerFailure(failure)) {
+            CircuitBreaker.recordFailure(mirror.getHost(), ((HttpStatusException) failure).getRetryAfterMillis());
+        } else {
+            CircuitBreaker.recordUnrelatedFailure(mirror.getHost());
+        }
+    }
+
+    /**
+     * Checks the response and returns the position in the file its body
+     * starts at.
+     */
+    private static long getBodyStart(HttpURLConnection connection, URL mirror, long offset, long length) throws IOException {
+        int code = connection.getResponseCode();
+        if (!HttpDownload.isSuccessful(code)) {
+            throw new HttpStatusException(mirror, code, HttpStatusException.parseRetryAfter(connection.getHeaderField("Retry-After"), connection.getDate()));
+        }
+        if (!HttpDownload.isFile(connection)) {
+            throw new NotAFileException(mirror);
+        }
+        if (code != HttpURLConnection.HTTP_PARTIAL) {
+            // The whole file, e.g. the mirror ignores ranges.
+            long contentLength = connection.getContentLength();
+            if (length >= 0L && contentLength >= 0L && contentLength != length) {
+                throw new IOException("Mirror " + mirror + " serves " + contentLength + " bytes instead of " + length);
+            }
+            return 0L;
+        }
+
+        String contentRange = connection.getHeaderField("Content-Range");
+        long total = HttpDownload.parseTotalLength(contentRange);
+        if (contentRange == null || !contentRange.startsWith("bytes " + offset + "-") || (length >= 0L && total != length)) {
+            throw new IOException("Mirror " + mirror + " returned an unexpected range: " + contentRange);
+        }
+        return offset;
+    }
+
+    private static long getTotalLength(HttpURLConnection connection, long bodyStart) {
+        if (bodyStart > 0L) {
+            return HttpDownload.parseTotalLength(connection.getHeaderField("Content-Range"));
+        }
+        return connection.getContentLength();
+    }
+
+    /**
+     * Requests the file from the first remaining mirror, hedged with the
+     * second one for the first request of the download. The second mirror
+     * is only asked if its circuit is closed.
+     */
+    private Response request(List<URL> remaining, long offset) throws MirrorException {
+        URL primary = remaining.get(0);
+        try {
+            CircuitBreaker.checkRequest(primary.getHost());
+        } catch (CircuitBreaker.OpenException e) {
+            throw new MirrorException(e, primary);
+        }
+
+        boolean handedOver = false;
+        try {
+            boolean hedgeable = mFailovers == 0 && offset == 0L && remaining.size() > 1 && !CircuitBreaker.isOpen(remaining.get(1).getHost());
+            long hedgeDelay = hedgeable ? MirrorSelector.getHedgeDelayMillis(primary) : 0L;
+            if (hedgeDelay <= 0L) {
+                long start = now();
+                try {
+                    Response response = new Response(primary, mConnector.connect(primary, offset), now() - start);
+                    handedOver = true;
+                    return response;
+                } catch (IOException e) {
+                    handedOver = true;
+                    throw new MirrorException(e, primary);
+                }
+            }
+            Response response = hedge(primary, remaining.get(1), hedgeDelay);
+            handedOver = true;
+            return response;
+        } catch (MirrorException e) {
+            // The caller records the failure.
+            handedOver = true;
+            throw e;
+        } finally {
+            if (!handedOver) {
+                // E.g. a RuntimeException, which must not leave a half open circuit waiting for this request.
+                CircuitBreaker.recordUnrelatedFailure(primary.getHost());
+            }
+        }
+    }
+
+    private Response hedge(URL primary, URL secondary, long delayMillis) throws MirrorException {
+        BlockingQueue<Attempt> finished = new LinkedBlockingQueue<>();
+        List<Attempt> attempts = new ArrayList<>();
+        attempts.add(new Attempt(primary, finished));
+        attempts.get(0).start();
+
+        Attempt winner = null;
+        try {
+            Attempt result = finished.poll(delayMillis, TimeUnit.MILLISECONDS);
+            if (result != null) {
+                if (result.mFailure != null) {
+                    // Failed fast, the caller moves on to the next mirror.
+                    throw new MirrorException(result.mFailure, primary);
+                }
+                winner = result;
+                return new Response(result.mMirror, result.mConnection, result.mFirstByteMillis);
+            }
+
+            HockeyLog.debug(HockeyLog.HOCKEY_TAG, "No response from %s within %dms, asking %s", primary, delayMillis, secondary);
+            attempts.add(new Attempt(secondary, finished));
+            attempts.get(1).start();
+
+            IOException failure = null;
+            for (int index = 0; index < attempts.size(); index++) {
+                result = finished.take();
+                if (result.mFailure == null) {
+                    if (result.mMirror != primary) {
+                        // At least, so the slow mirror isn't preferred next time.
+                        MirrorSelector.recordFirstByte(primary, result.mFirstByteMillis + delayMillis);
+                        // The request to the primary is abandoned, not failed.
+                        CircuitBreaker.recordUnrelatedFailure(primary.getHost());
+                    }
+                    winner = result;
+                    return new Response(result.mMirror, result.mConnection, result.mFirstByteMillis);
+                }
+                failure = result.mFailure;
+            }
+            throw new MirrorException(failure, primary, secondary);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new MirrorException(new IOException("Interrupted while connecting to " + primary), primary);
+        } finally {
+            for (Attempt attempt : attempts) {
+                if (attempt != winner) {
+                    attempt.cancel();
+                }
+            }
+        }
+    }
+
+    private static long now() {
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime());
+    }
+
+    private static class Response {
+        private final URL mMirror;
+        private final HttpURLConnection mConnection;
+        private final long mFirstByteMillis;
+
+        Response(URL mirror, HttpURLConnection connection, long firstByteMillis) {
+            this.mMirror = mirror;
+            this.mConnection = connection;
+            this.mFirstByteMillis = firstByteMillis;
+        }
+    }
+
+    /**
+     * The failure of a request and the mirrors it was sent to.
+     */
+    private static class MirrorException extends Exception {
+        private static final long serialVersionUID = 1L;
+
+        private final IOException mFailure;
+        private final URL[] mMirrors;
+
+        MirrorException(IOException failure, URL... mirrors) {
+            super(failure);
+            this.mFailure = failure;
+            this.mMirrors = mirrors;
+        }
+    }
+
+    /**
+     * A hedged request on its own thread. A connection that arrives after
+     * the race was decided is closed.
+     */
+    private class Attempt extends Thread {
+        private final URL mMirror;
+        private final BlockingQueue<Attempt> mFinished;
+        private HttpURLConnection mConnection;
+        private IOException mFailure;
+        private long mFirstByteMillis;
+        private boolean mCancelled;
+
+        Attempt(URL mirror, BlockingQueue<Attempt> finished) {
+            super("Zamboni-Hedge");
+            setDaemon(true);
+            this.mMirror = mirror;
+            this.mFinished = finished;
+        }
+
+        @Override
+        public void run() {
+            long start = now();
+            HttpURLConnection connection = null;
+            IOException failure = null;
+            try {
+                connection = mConnector.connect(mMirror, 0L);
+            } catch (IOException e) {
+                failure = e;
+            }
+
+            synchronized (this) {
+                mConnection = connection;
+                mFailure = failure;
+                mFirstByteMillis = now() - start;
+                if (mCancelled) {
+                    cancel();
+                    return;
+                }
+            }
+            mFinished.add(this);
+        }
+
+        synchronized void cancel() {
+            mCancelled = true;
+            if (mConnection != null) {
+                mConnection.disconnect();
+                mConnection = null;
+            }
+        }
+    }
+}
@@ -0,0 +1,245 @@
+package com.audacious_software.zamboni.utils;
+
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <h3>Description</h3>
+ *
+ * Internal helper class. Keeps the recently measured time to the first
+ * byte and throughput of each download host, and orders the mirrors of a
+ * download by the time they are expected to take. Hosts that failed
+ * recently are tried last. Also decides whether and when the first
+ * request of a download is hedged, see {@link MirrorDownload}.
+ *
+ * The measurements are kept per network type, see
+ * {@link BandwidthEstimator#getNetworkType()}, in a {@link Store}, so they
+ * survive the process. Failures are only kept in memory.
+ *
+ **/
+public class MirrorSelector {
+    /**
+     * Weight of a new sample in the moving averages.
+     */
+    static final double SMOOTHING = 0.3;
+
+    /**
+     * How long a failed host is tried last.
+     */
+    static final long FAILURE_PENALTY_MILLIS = TimeUnit.MINUTES.toMillis(5);
+
+    /**
+     * Hedge delay for a host without measurements.
+     */
+    static final long DEFAULT_HEDGE_DELAY_MILLIS = 1000L;
+
+    static final long MIN_HEDGE_DELAY_MILLIS = 250L;
+
+    private static final int MAX_ENTRIES = 16;
+
+    private static final String KEY_PREFIX = "mirror.";
+
+    private static final Map<String, Stats> sStats = new LinkedHashMap<>(MAX_ENTRIES, 0.75f, true);
+
+    private static volatile boolean sHedgingEnabled;
+
+    private static Store sStore;
+
+    /**
+     * <h3>Description</h3>
+     *
+     * Persists the measurements.
+     *
+     **/
+    public interface Store {
+        long getLong(String key, long defaultValue);
+
+        void putLong(String key, long value);
+    }
+
+    private static class Stats {
+        private double mFirstByteMillis = -1.0;
+        private double mBytesPerMilli = -1.0;
+        private long mFailedAt = -1L;
+
+        boolean hasFailedRecently() {
+            return mFailedAt >= 0L && now() - mFailedAt < FAILURE_PENALTY_MILLIS;
+        }
+
+        /**
+         * Returns the expected duration in milliseconds, or -1 if nothing
+         * was measured yet.
+         */
+        double estimate(long expectedBytes) {
+            if (mFirstByteMillis < 0.0) {
+                return -1.0;
+            }
+            double transfer = expectedBytes > 0L && mBytesPerMilli > 0.0 ? expectedBytes / mBytesPerMilli : 0.0;
+            return mFirstByteMillis + transfer;
+        }
+    }
+
+    /**
+     * Sets where the measurements are kept. Measurements loaded before are
+     * kept.
+     */
+    public static synchronized void setStore(Store store) {
+        sStore = store;
+    }
+
+    /**
+     * Enables a second request to the next mirror if the first one is slow
+     * to respond. Costs a second connection and possibly duplicate traffic.
+     */
+    public static void setHedgingEnabled(boolean enabled) {
+        sHedgingEnabled = enabled;
+    }
+
+    public static boolean isHedgingEnabled() {
+        return sHedgingEnabled;
+    }
+
+    /**
+     * Returns how long to wait for the response of the mirror before
+     * asking the next one, or 0 if hedging is disabled: twice the usual
+     * time to the first byte of the host.
+     */
+    public static synchronized long getHedgeDelayMillis(URL mirror) {
+        if (!sHedgingEnabled) {
+            return 0L;
+        }
+        Stats stats = getStats(mirror);
+        if (stats.mFirstByteMillis < 0.0) {
+            return DEFAULT_HEDGE_DELAY_MILLIS;
+        }
+        return Math.max(MIN_HEDGE_DELAY_MILLIS, (long) (2.0 * stats.mFirstByteMillis));
+    }
+
+    /**
+     * Orders the mirrors by their expected duration. Mirrors without
+     * measurements count as good as the best one, so the order of the feed
+     * decides between them; mirrors that failed recently come last.
+     *
+     * @param mirrors       the mirrors in the order of the feed
+     * @param expectedBytes the size of the file, or -1 if unknown
+     * @return a new list with the same mirrors
+     */
+    public static synchronized List<URL> order(List<URL> mirrors, long expectedBytes) {
+        final Map<URL, Double> estimates = new LinkedHashMap<>();
+        final Map<URL, Boolean> failed = new LinkedHashMap<>();
+        double best = Double.MAX_VALUE;
+        for (URL mirror : mirrors) {
+            Stats stats = getStats(mirror);
+            double estimate = stats.estimate(expectedBytes);
+            estimates.put(mirror, estimate);
+            failed.put(mirror, stats.hasFailedRecently());
+            if (estimate >= 0.0) {
+                best = Math.min(best, estimate);
+            }
+        }
+        final double unknown = best == Double.MAX_VALUE ? 0.0 : best;
+
+        List<URL> ordered = new ArrayList<>(mirrors);
+        // Stable, so equal estimates keep the order of the feed.
+        Collections.sort(ordered, new Comparator<URL>() {
+            @Override
+            public int compare(URL first, URL second) {
+                int byFailure = Boolean.compare(failed.get(first), failed.get(second));
+                if (byFailure != 0) {
+                    return byFailure;
+                }
+                double firstEstimate = estimates.get(first) >= 0.0 ? estimates.get(first) : unknown;
+                double secondEstimate = estimates.get(second) >= 0.0 ? estimates.get(second) : unknown;
+                return Double.compare(firstEstimate, secondEstimate);
+            }
+        });
+        return ordered;
+    }
+
+    /**
+     * Records the time from sending a request to the mirror until its
+     * response headers arrived.
+     */
+    public static synchronized void recordFirstByte(URL mirror, long millis) {
+        Stats stats = getStats(mirror);
+        stats.mFirstByteMillis = smooth(stats.mFirstByteMillis, millis);
+        save(mirror.getAuthority(), stats);
+    }
+
+    /**
+     * Records a transfer from the mirror, complete or not.
+     */
+    public static synchronized void recordTransfer(URL mirror, long bytes, long millis) {
+        if (bytes <= 0L || millis <= 0L) {
+            return;
+        }
+        Stats stats = getStats(mirror);
+        stats.mBytesPerMilli = smooth(stats.mBytesPerMilli, (double) bytes / millis);
+        save(mirror.getAuthority(), stats);
+    }
+
+    /**
+     * Records that the mirror failed, so it is tried last for a while.
+     */
+    public static synchronized void recordFailure(URL mirror) {
+        getStats(mirror).mFailedAt = now();
+    }
+
+    /**
+     * Forgets the measurements and failures kept in memory, e.g. after the
+     * network changed. Persisted measurements of the current network type
+     * are loaded again when used.
+     */
+    public static synchronized void clear() {
+        sStats.clear();
+    }
+
+    private static Stats getStats(URL mirror) {
+        String host = mirror.getAuthority();
+        Stats stats = sStats.get(host);
+        if (stats == null) {
+            stats = new Stats();
+            if (sStore != null) {
+                String prefix = getKeyPrefix(host);
+                stats.mFirstByteMillis = sStore.getLong(prefix + "firstByteMillis", -1L);
+                long bytesPerSecond = sStore.getLong(prefix + "bytesPerSecond", -1L);
+                stats.mBytesPerMilli = bytesPerSecond > 0L ? bytesPerSecond / 1000.0 : -1.0;
+            }
+            sStats.put(host, stats);
+
+            Iterator<Stats> iterator = sStats.values().iterator();
+            while (sStats.size() > MAX_ENTRIES && iterator.hasNext()) {
+                iterator.next();
+                iterator.remove();
+            }
+        }
+        return stats;
+    }
+
+    private static void save(String host, Stats stats) {
+        if (sStore != null) {
+            String prefix = getKeyPrefix(host);
+            sStore.putLong(prefix + "firstByteMillis", Math.round(stats.mFirstByteMillis));
+            sStore.putLong(prefix + "bytesPerSecond", stats.mBytesPerMilli > 0.0 ? Math.round(stats.mBytesPerMilli * 1000.0) : -1L);
+        }
+    }
+
+    private static String getKeyPrefix(String host) {
+        return KEY_PREFIX + BandwidthEstimator.getNetworkType() + "." + host + ".";
+    }
+
+    private static double smooth(double average, double sample) {
+        return average < 0.0 ? sample : average + SMOOTHING * (sample - average);
+    }
+
+    private static long now() {
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime());
+    }
+}
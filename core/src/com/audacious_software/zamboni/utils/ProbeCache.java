@@ -0,0 +1,175 @@
+package com.audacious_software.zamboni.utils;
+
+import java.net.URL;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <h3>Description</h3>
+ *
+ * Internal helper class. Remembers where a download URL redirects to and
+ * what the size probe found there, so the download can start directly
+ * from the final URL. Entries expire after the lifetime the server
+ * allows in its caching headers, see {@link #getTtlMillis(String, long, long, long)}.
+ *
+ **/
+public class ProbeCache {
+    /**
+     * Used if the response has no caching headers. Long enough to cover
+     * the time between showing an update and pressing the button.
+     */
+    public static final long DEFAULT_TTL_MILLIS = TimeUnit.MINUTES.toMillis(5);
+
+    private static final int MAX_ENTRIES = 8;
+
+    private static final Map<String, Entry> sEntries = new LinkedHashMap<>(MAX_ENTRIES, 0.75f, true);
+
+    /**
+     * <h3>Description</h3>
+     *
+     * The result of a probe.
+     *
+     **/
+    public static class Entry {
+        private final URL mUrl;
+        private final long mLength;
+        private final String mETag;
+        private final String mLastModified;
+        private final long mExpiresAt;
+
+        /**
+         * @param url          the final URL after all redirects
+         * @param length       the size of the file, -1 if unknown
+         * @param eTag         the ETag header, may be null
+         * @param lastModified the Last-Modified header, may be null
+         * @param ttlMillis    how long the entry may be used
+         */
+        public Entry(URL url, long length, String eTag, String lastModified, long ttlMillis) {
+            this.mUrl = url;
+            this.mLength = length;
+            this.mETag = eTag;
+            this.mLastModified = lastModified;
+            this.mExpiresAt = ttlMillis > 0 ? now() + ttlMillis : 0L;
+        }
+
+        public URL getUrl() {
+            return mUrl;
+        }
+
+        public long getLength() {
+            return mLength;
+        }
+
+        public String getETag() {
+            return mETag;
+        }
+
+        public String getLastModified() {
+            return mLastModified;
+        }
+
+        /**
+         * Returns the value for an If-Range header, so a resumed download
+         * gets the whole file instead of a range if the file changed: the
+         * ETag unless it is weak, otherwise Last-Modified, or null.
+         */
+        public String getRangeValidator() {
+            if (mETag != null && !mETag.startsWith("W/")) {
+                return mETag;
+            }
+            return mLastModified;
+        }
+
+        boolean isFresh() {
+            return now() < mExpiresAt;
+        }
+    }
+
+    /**
+     * Returns the fresh entry for a URL, null if there is none.
+     *
+     * @param url the URL as requested, before redirects
+     */
+    public static synchronized Entry get(String url) {
+        Entry entry = sEntries.get(url);
+        if (entry != null && !entry.isFresh()) {
+            sEntries.remove(url);
+            return null;
+        }
+        return entry;
+    }
+
+    /**
+     * Stores an entry, unless its lifetime is 0.
+     *
+     * @param url   the URL as requested, before redirects
+     * @param entry the result of the probe
+     */
+    public static synchronized void put(String url, Entry entry) {
+        if (entry == null || !entry.isFresh()) {
+            return;
+        }
+        sEntries.put(url, entry);
+
+        Iterator<Entry> iterator = sEntries.values().iterator();
+        while (sEntries.size() > MAX_ENTRIES && iterator.hasNext()) {
+            iterator.next();
+            iterator.remove();
+        }
+    }
+
+    /**
+     * Drops the entry for a URL, e.g. because the final URL stopped working.
+     */
+    public static synchronized void remove(String url) {
+        sEntries.remove(url);
+    }
+
+    public static synchronized void clear() {
+        sEntries.clear();
+    }
+
+    /**
+     * Returns how long a response may be reused: max-age of Cache-Control,
+     * otherwise Expires relative to Date, otherwise {@link #DEFAULT_TTL_MILLIS}.
+     * Returns 0 for no-store and no-cache.
+     *
+     * @param cacheControl the Cache-Control header, may be null
+     * @param date         the Date header in milliseconds, 0 if missing
+     * @param expires      the Expires header in milliseconds, 0 if missing
+     *                     or invalid
+     * @param fallback     the lifetime for responses without caching headers
+     */
+    public static long getTtlMillis(String cacheControl, long date, long expires, long fallback) {
+        long maxAge = -1L;
+        if (cacheControl != null) {
+            for (String directive : cacheControl.split(",")) {
+                directive = directive.trim().toLowerCase(Locale.US);
+                if (directive.equals("no-store") || directive.equals("no-cache")) {
+                    return 0L;
+                }
+                if (directive.startsWith("max-age=")) {
+                    try {
+                        maxAge = TimeUnit.SECONDS.toMillis(Long.parseLong(directive.substring("max-age=".length()).trim()));
+                    } catch (NumberFormatException ignored) {
+                        // Fall back to the other headers.
+                    }
+                }
+            }
+        }
+        if (maxAge >= 0L) {
+            return maxAge;
+        }
+        if (expires > 0L) {
+            return Math.max(0L, expires - (date > 0L ? date : System.currentTimeMillis()));
+        }
+        return fallback;
+    }
+
+    private static long now() {
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime());
+    }
+}
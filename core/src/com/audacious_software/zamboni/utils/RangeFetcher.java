@@ -0,0 +1,312 @@
+package com.audacious_software.zamboni.utils;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * <h3>Description</h3>
+ *
+ * Internal helper class. Fetches byte ranges of a file into the same
+ * positions of a local file, several ranges per request. The parts of a
+ * multipart/byteranges response are written as they arrive. Servers that
+ * answer with a single range are asked for one range at a time, and a
+ * server that ignores ranges sends the whole file, which is kept unless
+ * that is disallowed with {@link #setWholeFileAllowed(boolean)}.
+ *
+ **/
+public class RangeFetcher {
+    /**
+     * Ranges per request, which keeps the Range header short enough for
+     * common servers and proxies.
+     */
+    public static final int MAX_RANGES_PER_REQUEST = 32;
+
+    private static final int HTTP_RANGE_NOT_SATISFIABLE = 416;
+
+    /**
+     * Same as DownloadFileTask.MAX_REDIRECTS.
+     */
+    private static final int MAX_REDIRECTS = 6;
+
+    private final URL mUrl;
+    private final HttpDownload.ConnectionFactory mFactory;
+    private final long mLength;
+    private boolean mMultipart = true;
+    private boolean mWholeFileAllowed = true;
+    private boolean mComplete;
+    private long mReceived;
+    private int mRequests;
+
+    /**
+     * @param url     the URL of the file
+     * @param factory opens the connections; redirects to another protocol
+     *                are followed as well, see
+     *                {@link HttpDownload#connect(URL, int, HttpDownload.ConnectionFactory)}
+     * @param length  the size of the file
+     */
+    public RangeFetcher(URL url, HttpDownload.ConnectionFactory factory, long length) {
+        this.mUrl = url;
+        this.mFactory = factory;
+        this.mLength = length;
+    }
+
+    /**
+     * Sets whether the whole file may be received if the server ignores
+     * the ranges. If not, such a response is dropped and fails the fetch.
+     */
+    public void setWholeFileAllowed(boolean wholeFileAllowed) {
+        this.mWholeFileAllowed = wholeFileAllowed;
+    }
+
+    /**
+     * Fetches the ranges into the target.
+     *
+     * @param ranges   the first and the last byte of each range, sorted
+     *                 and not overlapping
+     * @param target   receives the bytes at their offsets in the file
+     * @param listener notified with the bytes received so far, may be null
+     * @throws IOException if a request fails or a range is missing
+     */
+    public void fetch(List<long[]> ranges, RandomAccessFile target, HttpDownload.ProgressListener listener) throws IOException {
+        Deque<long[]> pending = new ArrayDeque<>(ranges);
+        while (!pending.isEmpty() && !mComplete) {
+            List<long[]> batch = new ArrayList<>();
+            int maxRanges = mMultipart ? MAX_RANGES_PER_REQUEST : 1;
+            while (!pending.isEmpty() && batch.size() < maxRanges) {
+                batch.add(pending.poll());
+            }
+
+            List<long[]> missing = request(batch, target, listener);
+            if (missing.isEmpty()) {
+                continue;
+            }
+            if (batch.size() == 1) {
+                throw new IOException("The server did not send bytes " + batch.get(0)[0] + "-" + batch.get(0)[1]);
+            }
+            // Only some ranges were sent, so the server doesn't do multipart.
+            mMultipart = false;
+            for (int index = missing.size() - 1; index >= 0; index--) {
+                pending.addFirst(missing.get(index));
+            }
+        }
+    }
+
+    /**
+     * Returns the number of bytes received, including those of a whole
+     * file sent instead of the ranges.
+     */
+    public long getReceivedBytes() {
+        return mReceived;
+    }
+
+    public int getRequestCount() {
+        return mRequests;
+    }
+
+    /**
+     * Requests the ranges once.
+     *
+     * @return the ranges that weren't sent
+     */
+    private List<long[]> request(List<long[]> ranges, RandomAccessFile target, HttpDownload.ProgressListener listener) throws IOException {
+        StringBuilder header = new StringBuilder("bytes=");
+        for (int index = 0; index < ranges.size(); index++) {
+            header.append(index > 0 ? "," : "").append(ranges.get(index)[0]).append('-').append(ranges.get(index)[1]);
+        }
+
+        mRequests++;
+        final String rangeHeader = header.toString();
+        HttpURLConnection connection = HttpDownload.connect(mUrl, MAX_REDIRECTS, new HttpDownload.ConnectionFactory() {
+            @Override
+            public HttpURLConnection open(URL url) throws IOException {
+                HttpURLConnection connection = mFactory.open(url);
+                connection.setRequestProperty("Range", rangeHeader);
+                return connection;
+            }
+        });
+        try {
+            int code = connection.getResponseCode();
+            if (code == HttpURLConnection.HTTP_OK && !mWholeFileAllowed) {
+                connection.disconnect();
+                throw new IOException(mUrl.getHost() + " ignores ranges");
+            }
+            if (code == HttpURLConnection.HTTP_OK) {
+                HockeyLog.debug(HockeyLog.HOCKEY_TAG, "%s ignores ranges, receiving the whole file", mUrl.getHost());
+                InputStream input = new BufferedInputStream(connection.getInputStream());
+                try {
+                    copy(input, target, 0L, mLength, listener);
+                } finally {
+                    input.close();
+                }
+                mComplete = true;
+                return new ArrayList<>();
+            }
+            if (code != HttpURLConnection.HTTP_PARTIAL) {
+                if (code == HTTP_RANGE_NOT_SATISFIABLE) {
+                    HttpDownload.close(connection);
+                    throw new IOException("The server refused the ranges of " + mUrl);
+                }
+                throw HttpStatusException.forResponse(connection);
+            }
+
+            List<long[]> received = new ArrayList<>();
+            InputStream input = new BufferedInputStream(connection.getInputStream());
+            try {
+                String boundary = getBoundary(connection.getContentType());
+                if (boundary != null) {
+                    readParts(input, boundary, target, received, listener);
+                } else {
+                    long[] range = parseContentRange(connection.getHeaderField("Content-Range"));
+                    if (range == null) {
+                        throw new IOException("Partial response without Content-Range from " + mUrl);
+                    }
+                    copy(input, target, range[0], range[1] - range[0] + 1, listener);
+                    received.add(range);
+                }
+            } finally {
+                input.close();
+            }
+
+            List<long[]> missing = new ArrayList<>();
+            for (long[] range : ranges) {
+                if (!isCovered(range, received)) {
+                    missing.add(range);
+                }
+            }
+            return missing;
+        } catch (IOException e) {
+            connection.disconnect();
+            throw e;
+        }
+    }
+
+    /**
+     * Reads the parts of a multipart/byteranges body.
+     */
+    private void readParts(InputStream input, String boundary, RandomAccessFile target, List<long[]> received, HttpDownload.ProgressListener listener) throws IOException {
+        String delimiter = "--" + boundary;
+        String line;
+        while ((line = readLine(input)) != null) {
+            if (line.equals(delimiter + "--")) {
+                return;
+            }
+            if (!line.equals(delimiter)) {
+                // The preamble or the line break after a part.
+                continue;
+            }
+
+            long[] range = null;
+            while ((line = readLine(input)) != null && line.length() > 0) {
+                int colon = line.indexOf(':');
+                if (colon > 0 && "Content-Range".equalsIgnoreCase(line.substring(0, colon).trim())) {
+                    range = parseContentRange(line.substring(colon + 1));
+                }
+            }
+            if (range == null) {
+                throw new IOException("Part without Content-Range from " + mUrl);
+            }
+            copy(input, target, range[0], range[1] - range[0] + 1, listener);
+            received.add(range);
+        }
+        throw new IOException("Truncated multipart response from " + mUrl);
+    }
+
+    private void copy(InputStream input, RandomAccessFile target, long offset, long length, HttpDownload.ProgressListener listener) throws IOException {
+        byte[] buffer = new byte[(int) Math.min(BandwidthEstimator.getBufferSize(), Math.max(length, 1L))];
+        target.seek(offset);
+        long remaining = length;
+        while (remaining > 0L) {
+            int count = input.read(buffer, 0, (int) Math.min(buffer.length, remaining));
+            if (count == -1) {
+                throw new IOException("Range ended after " + (length - remaining) + " of " + length + " bytes");
+            }
+            target.write(buffer, 0, count);
+            remaining -= count;
+            mReceived += count;
+            if (listener != null) {
+                listener.onProgress(mReceived, -1);
+            }
+        }
+    }
+
+    private static boolean isCovered(long[] range, List<long[]> received) {
+        for (long[] part : received) {
+            if (part[0] <= range[0] && part[1] >= range[1]) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns the boundary of a multipart/byteranges content type, or null.
+     */
+    static String getBoundary(String contentType) {
+        if (contentType == null || !contentType.toLowerCase(Locale.US).startsWith("multipart/byteranges")) {
+            return null;
+        }
+        for (String parameter : contentType.split(";")) {
+            String trimmed = parameter.trim();
+            if (trimmed.toLowerCase(Locale.US).startsWith("boundary=")) {
+                String boundary = trimmed.substring("boundary=".length());
+                if (boundary.length() > 1 && boundary.startsWith("\"") && boundary.endsWith("\"")) {
+                    boundary = boundary.substring(1, boundary.length() - 1);
+                }
+                return boundary;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Parses "bytes a-b/total" into a and b, or returns null.
+     */
+    static long[] parseContentRange(String contentRange) {
+        if (contentRange == null) {
+            return null;
+        }
+        String value = contentRange.trim();
+        if (!value.startsWith("bytes ")) {
+            return null;
+        }
+        int dash = value.indexOf('-');
+        int slash = value.indexOf('/');
+        if (dash < 0 || slash < dash) {
+            return null;
+        }
+        try {
+            long start = Long.parseLong(value.substring("bytes ".length(), dash).trim());
+            long end = Long.parseLong(value.substring(dash + 1, slash).trim());
+            return start <= end ? new long[]{start, end} : null;
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Reads a line of a multipart body without its line break, or returns
+     * null at the end of the stream.
+     */
+    private static String readLine(InputStream input) throws IOException {
+        StringBuilder line = new StringBuilder();
+        int value;
+        while ((value = input.read()) != '\n') {
+            if (value == -1) {
+                return line.length() > 0 ? line.toString() : null;
+            }
+            if (value != '\r') {
+                line.append((char) value);
+            }
+        }
+        return line.toString();
+    }
+}
@@ -0,0 +1,196 @@
+package com.audacious_software.zamboni.utils;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.util.HashMap;
+
+/**
+ * <h3>Description</h3>
+ *
+ * Internal helper class. Keeps the newest entries of a version feed
+ * ordered by version code and timestamp (newest first) and allows
+ * looking up a retained entry by its release ID.
+ *
+ * The ordering is computed once over primitive sort keys, so no JSON
+ * access happens while comparing entries.
+ *
+ **/
+public class ReleaseIndex {
+    private final JSONObject[] mEntries;
+    private final int[] mVersionCodes;
+    private final long[] mTimestamps;
+    private final HashMap<String, Integer> mPositionsById;
+
+    /**
+     * Builds an index over the given feed, retaining at most the given
+     * number of newest entries. Entries without a version code are skipped.
+     *
+     * @param versions the version feed
+     * @param limit    maximum number of entries to retain
+     */
+    public ReleaseIndex(JSONArray versions, int limit) {
+        int length = versions != null ? versions.length() : 0;
+
+        JSONObject[] candidates = new JSONObject[length];
+        long[] keys = new long[length];
+        int count = 0;
+
+        for (int index = 0; index < length; index++) {
+            JSONObject entry = versions.optJSONObject(index);
+            if (entry == null || !entry.has("version")) {
+                continue;
+            }
+
+            candidates[count] = entry;
+            keys[count] = sortKey(entry.optInt("version", 0), entry.optLong("timestamp", 0L));
+            count++;
+        }
+
+        int[] selected = selectNewest(keys, count, Math.max(0, limit));
+
+        this.mEntries = new JSONObject[selected.length];
+        this.mVersionCodes = new int[selected.length];
+        this.mTimestamps = new long[selected.length];
+        this.mPositionsById = new HashMap<>(selected.length * 2);
+
+        for (int position = 0; position < selected.length; position++) {
+            JSONObject entry = candidates[selected[position]];
+            mEntries[position] = entry;
+            mVersionCodes[position] = entry.optInt("version", 0);
+            mTimestamps[position] = entry.optLong("timestamp", 0L);
+
+            String id = entry.optString("id", "");
+            if (id.length() > 0 && !mPositionsById.containsKey(id)) {
+                mPositionsById.put(id, position);
+            }
+        }
+    }
+
+    /**
+     * Returns the number of retained entries.
+     */
+    public int size() {
+        return mEntries.length;
+    }
+
+    /**
+     * Returns the entry at the given position, newest first.
+     */
+    public JSONObject get(int position) {
+        return mEntries[position];
+    }
+
+    public int getVersionCode(int position) {
+        return mVersionCodes[position];
+    }
+
+    public long getTimestamp(int position) {
+        return mTimestamps[position];
+    }
+
+    /**
+     * Returns the position of the entry with the given release ID or -1
+     * if no such entry was retained.
+     */
+    public int indexOf(String id) {
+        Integer position = id != null ? mPositionsById.get(id) : null;
+        return position != null ? position : -1;
+    }
+
+    /**
+     * Returns the entry with the given release ID or null if no such entry
+     * was retained.
+     */
+    public JSONObject findById(String id) {
+        int position = indexOf(id);
+        return position >= 0 ? mEntries[position] : null;
+    }
+
+    /**
+     * Combines version code and timestamp into a single key so that a larger
+     * key always means a newer release. Timestamps are Unix seconds and fit
+     * into the lower 32 bits.
+     */
+    static long sortKey(int versionCode, long timestamp) {
+        return ((long) versionCode << 32) | (timestamp & 0xFFFFFFFFL);
+    }
+
+    /**
+     * Selects the positions of the largest keys, ordered from largest to
+     * smallest. Uses a bounded min-heap, so only the selected entries are
+     * ever ordered. Equal keys keep their feed order.
+     */
+    static int[] selectNewest(long[] keys, int count, int limit) {
+        int capacity = Math.min(count, limit);
+        int[] heap = new int[capacity];
+        int heapSize = 0;
+
+        for (int index = 0; index < count; index++) {
+            if (heapSize < capacity) {
+                heap[heapSize] = index;
+                siftUp(heap, heapSize, keys);
+                heapSize++;
+            } else if (capacity > 0 && isNewer(index, heap[0], keys)) {
+                heap[0] = index;
+                siftDown(heap, heapSize, keys);
+            }
+        }
+
+        // Repeatedly removing the minimum fills the result from the back.
+        int[] result = new int[heapSize];
+        for (int position = heapSize - 1; position >= 0; position--) {
+            result[position] = heap[0];
+            heapSize--;
+            heap[0] = heap[heapSize];
+            siftDown(heap, heapSize, keys);
+        }
+        return result;
+    }
+
+    /**
+     * Returns true if the entry at left sorts before the one at right.
+     */
+    private static boolean isNewer(int left, int right, long[] keys) {
+        if (keys[left] != keys[right]) {
+            return keys[left] > keys[right];
+        }
+        return left < right;
+    }
+
+    private static void siftUp(int[] heap, int position, long[] keys) {
+        int value = heap[position];
+        while (position > 0) {
+            int parent = (position - 1) >>> 1;
+            if (!isNewer(heap[parent], value, keys)) {
+                break;
+            }
+            heap[position] = heap[parent];
+            position = parent;
+        }
+        heap[position] = value;
+    }
+
+    private static void siftDown(int[] heap, int size, long[] keys) {
+        if (size == 0) {
+            return;
+        }
+        int position = 0;
+        int value = heap[0];
+        while (true) {
+            int child = (position << 1) + 1;
+            if (child >= size) {
+                break;
+            }
+            if (child + 1 < size && isNewer(heap[child], heap[child + 1], keys)) {
+                child++;
+            }
+            if (!isNewer(value, heap[child], keys)) {
+                break;
+            }
+            heap[position] = heap[child];
+            position = child;
+        }
+        heap[position] = value;
+    }
+}
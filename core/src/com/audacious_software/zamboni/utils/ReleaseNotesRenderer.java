@@ -0,0 +1,309 @@
+package com.audacious_software.zamboni.utils;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * <h3>Description</h3>
+ *
+ * Internal helper class. Renders the release notes of a {@link ReleaseIndex}
+ * as HTML. All fixed markup and localized strings are prepared once in a
+ * {@link Template}, so rendering only appends to a presized buffer.
+ *
+ * Sections can be rendered one by one (newest first), which allows showing
+ * the newest release while older ones are still being rendered.
+ *
+ **/
+public class ReleaseNotesRenderer {
+    private static final int CACHE_SIZE = 4;
+
+    /**
+     * Estimated markup per section on top of the notes themselves.
+     */
+    private static final int SECTION_OVERHEAD = 512;
+
+    private static final String DOCUMENT_HEAD = "<html><body style='padding: 0px 0px 20px 0px'>";
+    private static final String DOCUMENT_TAIL = "</body></html>";
+    private static final String SEPARATOR = "<hr style='border-top: 1px solid #c8c8c8; border-bottom: 0px; margin: 40px 10px 0px 10px;' />";
+    private static final String RESTORE_HEAD = "<a href='restore:";
+    private static final String RESTORE_STYLE = "' style='background: #c8c8c8; color: #000; display: block; float: right; padding: 7px; margin: 0px 10px 10px; text-decoration: none;'>";
+    private static final String LINE_HEAD = "<div style='padding: 20px 10px 10px;'><strong>";
+    private static final String LINE_TAIL = "</strong></div>";
+    private static final String NOTES_HEAD = "<div style='padding: 0px 10px;'>";
+    private static final String NOTES_TAIL = "</div>";
+
+    private static final Set<String> SIMPLE_TAGS = new HashSet<>(Arrays.asList(
+            "a", "b", "big", "blockquote", "br", "cite", "del", "dfn", "div", "em", "font",
+            "h1", "h2", "h3", "h4", "h5", "h6", "i", "p", "s", "small", "span", "strike",
+            "strong", "sub", "sup", "tt", "u"));
+    private static final Set<String> LIST_TAGS = new HashSet<>(Arrays.asList("ul", "li"));
+
+    private static final Map<String, String> sCache = new LinkedHashMap<String, String>(CACHE_SIZE, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, String> eldest) {
+            return size() > CACHE_SIZE;
+        }
+    };
+
+    private final ReleaseIndex mIndex;
+    private final Template mTemplate;
+    private final boolean mShowRestore;
+    private final int mInstalledPosition;
+
+    /**
+     * @param index              the releases to render, newest first
+     * @param template           the prepared markup for the current locale
+     * @param newestCode         version code of the offered update
+     * @param currentVersionCode version code of the installed app
+     * @param showRestore        whether to render restore links for older versions
+     */
+    public ReleaseNotesRenderer(ReleaseIndex index, Template template, int newestCode, int currentVersionCode, boolean showRestore) {
+        this.mIndex = index;
+        this.mTemplate = template;
+        this.mShowRestore = showRestore;
+
+        // Only the first older release matching the installed version is marked.
+        int installedPosition = -1;
+        for (int position = 1; position < index.size(); position++) {
+            int versionCode = index.getVersionCode(position);
+            if ((versionCode != newestCode) && (versionCode == currentVersionCode)) {
+                installedPosition = position;
+                break;
+            }
+        }
+        this.mInstalledPosition = installedPosition;
+    }
+
+    /**
+     * Returns the number of sections, one per release.
+     */
+    public int getSectionCount() {
+        return mIndex.size();
+    }
+
+    /**
+     * Renders the complete document.
+     */
+    public String render() {
+        return render(mIndex.size());
+    }
+
+    /**
+     * Renders a complete document that only contains the given number of
+     * newest sections.
+     */
+    public String render(int sectionCount) {
+        int count = Math.min(sectionCount, mIndex.size());
+        StringBuilder result = new StringBuilder(estimateLength(0, count));
+        result.append(DOCUMENT_HEAD);
+        for (int position = 0; position < count; position++) {
+            appendSection(position, result);
+        }
+        result.append(DOCUMENT_TAIL);
+        return result.toString();
+    }
+
+    /**
+     * Renders a single section without the surrounding document.
+     */
+    public String renderSection(int position) {
+        StringBuilder result = new StringBuilder(estimateLength(position, position + 1));
+        appendSection(position, result);
+        return result.toString();
+    }
+
+    /**
+     * Appends the markup of a single section to the given buffer.
+     */
+    public void appendSection(int position, StringBuilder result) {
+        if (position > 0) {
+            result.append(SEPARATOR);
+            if (mShowRestore) {
+                String versionID = mIndex.get(position).optString("id", "");
+                if (versionID.length() > 0) {
+                    result.append(RESTORE_HEAD).append(versionID).append(RESTORE_STYLE)
+                            .append(mTemplate.mRestoreLabel).append("</a>");
+                }
+            }
+        }
+
+        result.append(LINE_HEAD);
+        appendTitle(position, result);
+        result.append(LINE_TAIL);
+
+        String notes = getSectionNotes(position);
+        result.append(NOTES_HEAD);
+        if (notes == null) {
+            result.append("<em>").append(mTemplate.mNoInfoLabel).append("</em>");
+        } else {
+            result.append(notes);
+        }
+        result.append(NOTES_TAIL);
+    }
+
+    /**
+     * Returns the plain text title of a section, e.g. "Version 1.2 (3):".
+     */
+    public String getSectionTitle(int position) {
+        StringBuilder result = new StringBuilder(64);
+        appendTitle(position, result);
+        return result.toString();
+    }
+
+    /**
+     * Returns the notes of a section as HTML or null if the release has no notes.
+     */
+    public String getSectionNotes(int position) {
+        String notes = mIndex.get(position).optString("notes", "");
+        return notes.trim().length() == 0 ? null : notes;
+    }
+
+    /**
+     * Returns the text shown for releases without notes.
+     */
+    public String getNoInfoLabel() {
+        return mTemplate.mNoInfoLabel;
+    }
+
+    /**
+     * Returns true if the notes of all sections only use markup from
+     * {@link #isSimpleMarkup(String, boolean)}.
+     */
+    public boolean hasOnlySimpleMarkup(boolean listsSupported) {
+        for (int position = 0; position < mIndex.size(); position++) {
+            String notes = getSectionNotes(position);
+            if (notes != null && !isSimpleMarkup(notes, listsSupported)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void appendTitle(int position, StringBuilder result) {
+        if (position == 0) {
+            result.append(mTemplate.mNewestVersionLabel).append(':');
+        } else {
+            result.append(mTemplate.mVersionPrefix).append(mIndex.get(position).optString("shortversion", ""))
+                    .append(mTemplate.mVersionSuffix).append(" (").append(mIndex.getVersionCode(position)).append("): ");
+            if (position == mInstalledPosition) {
+                result.append('[').append(mTemplate.mAlreadyInstalledLabel).append(']');
+            }
+        }
+    }
+
+    /**
+     * Returns true if the given HTML only consists of basic text formatting
+     * that can be shown without a browser engine (paragraphs, line breaks,
+     * emphasis, links, headings and, if supported, lists). Comments, scripts,
+     * styles, tables, images and any other element are not simple.
+     *
+     * @param html           the markup to check
+     * @param listsSupported whether ul and li elements are allowed
+     */
+    public static boolean isSimpleMarkup(String html, boolean listsSupported) {
+        int length = html.length();
+        int position = html.indexOf('<');
+        while (position >= 0) {
+            int start = position + 1;
+            if (start < length && html.charAt(start) == '/') {
+                start++;
+            }
+
+            int end = start;
+            while (end < length && Character.isLetterOrDigit(html.charAt(end))) {
+                end++;
+            }
+            if (end == start || end >= length) {
+                return false;
+            }
+
+            String tag = html.substring(start, end).toLowerCase(Locale.US);
+            if (!SIMPLE_TAGS.contains(tag) && !(listsSupported && LIST_TAGS.contains(tag))) {
+                return false;
+            }
+
+            int close = html.indexOf('>', end);
+            if (close < 0) {
+                return false;
+            }
+            position = html.indexOf('<', close + 1);
+        }
+        return true;
+    }
+
+    private int estimateLength(int from, int to) {
+        int length = DOCUMENT_HEAD.length() + DOCUMENT_TAIL.length();
+        for (int position = from; position < to; position++) {
+            length += SECTION_OVERHEAD + mIndex.get(position).optString("notes", "").length();
+        }
+        return length;
+    }
+
+    /**
+     * Returns a previously rendered document or null.
+     *
+     * @param key the key as built by {@link #cacheKey}
+     */
+    public static String getCached(String key) {
+        synchronized (sCache) {
+            return sCache.get(key);
+        }
+    }
+
+    public static void putCached(String key, String html) {
+        synchronized (sCache) {
+            sCache.put(key, html);
+        }
+    }
+
+    /**
+     * Builds a cache key from everything the rendered output depends on.
+     */
+    public static String cacheKey(int feedHash, String locale, int currentVersionCode, boolean showRestore) {
+        return feedHash + "|" + locale + "|" + currentVersionCode + "|" + showRestore;
+    }
+
+    /**
+     * <h3>Description</h3>
+     *
+     * Localized strings used by the renderer, resolved once. The version
+     * format is split at its placeholder, so no formatting happens while
+     * rendering.
+     *
+     **/
+    public static class Template {
+        final String mNewestVersionLabel;
+        final String mVersionPrefix;
+        final String mVersionSuffix;
+        final String mAlreadyInstalledLabel;
+        final String mNoInfoLabel;
+        final String mRestoreLabel;
+
+        /**
+         * @param newestVersionLabel    label of the newest release
+         * @param versionFormat         format with a single %s placeholder for the version name
+         * @param alreadyInstalledLabel marker of the installed release
+         * @param noInfoLabel           text shown for releases without notes
+         * @param restoreLabel          text of the restore links
+         */
+        public Template(String newestVersionLabel, String versionFormat, String alreadyInstalledLabel, String noInfoLabel, String restoreLabel) {
+            this.mNewestVersionLabel = newestVersionLabel;
+            this.mAlreadyInstalledLabel = alreadyInstalledLabel;
+            this.mNoInfoLabel = noInfoLabel;
+            this.mRestoreLabel = restoreLabel;
+
+            int placeholder = versionFormat.indexOf("%s");
+            if (placeholder >= 0) {
+                this.mVersionPrefix = versionFormat.substring(0, placeholder);
+                this.mVersionSuffix = versionFormat.substring(placeholder + 2);
+            } else {
+                this.mVersionPrefix = versionFormat + " ";
+                this.mVersionSuffix = "";
+            }
+        }
+    }
+}
@@ -0,0 +1,200 @@
+package com.audacious_software.zamboni.utils;
+
+import com.audacious_software.zamboni.listeners.UpdateMetricsListener;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.HttpURLConnection;
+import java.net.SocketTimeoutException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <h3>Description</h3>
+ *
+ * Internal helper class. Runs a request of the update check, the size
+ * probe or the download and repeats it after failures that may go away:
+ * network errors and the statuses 408, 429 and 5xx. The delays grow
+ * exponentially with full jitter; a longer delay asked for with
+ * Retry-After is honoured, and if it exceeds {@link #getMaxDelayMillis()}
+ * the request is not repeated in this process. Requests go through the
+ * {@link CircuitBreaker} of their host.
+ *
+ * Replace the policy of the library with {@link #setDefault(RetryPolicy)}.
+ *
+ **/
+public class RetryPolicy {
+    public static final int DEFAULT_MAX_ATTEMPTS = 3;
+
+    public static final long DEFAULT_INITIAL_DELAY_MILLIS = 1000L;
+
+    public static final long DEFAULT_MAX_DELAY_MILLIS = TimeUnit.SECONDS.toMillis(30);
+
+    /**
+     * A single attempt, for requests that are only worth making once.
+     */
+    public static final RetryPolicy NO_RETRIES = new RetryPolicy(1, 0L, 0L);
+
+    private static final int HTTP_TOO_MANY_REQUESTS = 429;
+
+    private static volatile RetryPolicy sDefault = new RetryPolicy(DEFAULT_MAX_ATTEMPTS, DEFAULT_INITIAL_DELAY_MILLIS, DEFAULT_MAX_DELAY_MILLIS);
+
+    private static final Random sRandom = new Random();
+
+    private final int mMaxAttempts;
+    private final long mInitialDelayMillis;
+    private final long mMaxDelayMillis;
+
+    /**
+     * <h3>Description</h3>
+     *
+     * A request, made once per attempt.
+     *
+     **/
+    public interface Request<T> {
+        T run() throws IOException;
+    }
+
+    /**
+     * @param maxAttempts        the number of attempts, at least 1
+     * @param initialDelayMillis the upper bound of the delay after the
+     *                           first failure, doubled after each further one
+     * @param maxDelayMillis     the upper bound of any delay
+     */
+    public RetryPolicy(int maxAttempts, long initialDelayMillis, long maxDelayMillis) {
+        this.mMaxAttempts = Math.max(1, maxAttempts);
+        this.mInitialDelayMillis = initialDelayMillis;
+        this.mMaxDelayMillis = maxDelayMillis;
+    }
+
+    public static RetryPolicy getDefault() {
+        return sDefault;
+    }
+
+    /**
+     * Sets the policy used for all requests of the library.
+     *
+     * @param policy the policy, or null to restore the default one
+     */
+    public static void setDefault(RetryPolicy policy) {
+        sDefault = policy != null ? policy : new RetryPolicy(DEFAULT_MAX_ATTEMPTS, DEFAULT_INITIAL_DELAY_MILLIS, DEFAULT_MAX_DELAY_MILLIS);
+    }
+
+    public int getMaxAttempts() {
+        return mMaxAttempts;
+    }
+
+    public long getMaxDelayMillis() {
+        return mMaxDelayMillis;
+    }
+
+    /**
+     * Runs the request until it succeeds, fails permanently or the attempts
+     * are used up. Blocks while waiting, so must not be called on the main
+     * thread.
+     *
+     * @param host    the host for the circuit breaker, or null to bypass it
+     * @param phase   the phase reported to the metrics listener
+     * @param metrics notified of each retry, may be null
+     * @param request the request
+     * @return the result of the request
+     * @throws IOException the failure of the last attempt, or
+     *                     {@link CircuitBreaker.OpenException}
+     */
+    public <T> T execute(String host, int phase, UpdateMetricsListener metrics, Request<T> request) throws IOException {
+        for (int attempt = 1; ; attempt++) {
+            if (host != null) {
+                CircuitBreaker.checkRequest(host);
+            }
+            boolean recorded = false;
+            try {
+                T result = request.run();
+                if (host != null) {
+                    CircuitBreaker.recordSuccess(host);
+                }
+                recorded = true;
+                return result;
+            } catch (IOException e) {
+                long retryAfter = e instanceof HttpStatusException ? ((HttpStatusException) e).getRetryAfterMillis() : -1L;
+                if (host != null) {
+                    if (isServerFailure(e)) {
+                        CircuitBreaker.recordFailure(host, retryAfter);
+                    } else {
+                        CircuitBreaker.recordUnrelatedFailure(host);
+                    }
+                }
+                recorded = true;
+
+                if (attempt >= mMaxAttempts || !isRetryable(e) || retryAfter > mMaxDelayMillis) {
+                    throw e;
+                }
+                long delay = Math.max(getDelayMillis(attempt), retryAfter);
+                if (host != null && CircuitBreaker.getRemainingMillis(host) > delay) {
+                    // The next attempt would be refused anyway.
+                    throw e;
+                }
+                HockeyLog.info(HockeyLog.HOCKEY_TAG, "Attempt %d failed (%s), retrying in %dms", attempt, e.getMessage(), delay);
+                if (metrics != null) {
+                    metrics.onRetry(phase);
+                }
+                sleep(delay);
+            } finally {
+                if (host != null && !recorded) {
+                    // E.g. a RuntimeException, which must not leave a half open circuit waiting for this request.
+                    CircuitBreaker.recordUnrelatedFailure(host);
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the delay before the given retry: random between 0 and the
+     * exponentially growing bound.
+     *
+     * @param attempt the number of the failed attempt, starting at 1
+     */
+    long getDelayMillis(int attempt) {
+        long bound = Math.min(mMaxDelayMillis, mInitialDelayMillis << Math.min(attempt - 1, 20));
+        return (long) (sRandom.nextDouble() * bound);
+    }
+
+    /**
+     * Returns true if the request may succeed when repeated.
+     */
+    public static boolean isRetryable(IOException e) {
+        if (e instanceof CircuitBreaker.OpenException || e instanceof FileNotFoundException || e instanceof MirrorDownload.NotAFileException) {
+            return false;
+        }
+        if (e instanceof InterruptedIOException && !(e instanceof SocketTimeoutException)) {
+            // Aborted on purpose.
+            return false;
+        }
+        if (e instanceof HttpStatusException) {
+            int code = ((HttpStatusException) e).getCode();
+            return code == HttpURLConnection.HTTP_CLIENT_TIMEOUT || code == HTTP_TOO_MANY_REQUESTS || code >= HttpURLConnection.HTTP_INTERNAL_ERROR;
+        }
+        return true;
+    }
+
+    /**
+     * Returns true if the failure says the server is unwell. Network errors
+     * don't: a device without connectivity says nothing about the server.
+     */
+    static boolean isServerFailure(IOException e) {
+        if (!(e instanceof HttpStatusException)) {
+            return false;
+        }
+        int code = ((HttpStatusException) e).getCode();
+        return code == HTTP_TOO_MANY_REQUESTS || code >= HttpURLConnection.HTTP_INTERNAL_ERROR;
+    }
+
+    private static void sleep(long millis) throws IOException {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting to retry");
+        }
+    }
+}
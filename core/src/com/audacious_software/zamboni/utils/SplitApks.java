@@ -0,0 +1,308 @@
+package com.audacious_software.zamboni.utils;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * <h3>Description</h3>
+ *
+ * Internal helper class. Describes a version of the feed that is also
+ * published as a base APK with configuration splits, so a device only
+ * downloads the native libraries, resources and languages it uses, e.g.
+ * <pre>
+ * "split_apks": {
+ *   "base_url": "https://cdn.example.com/app-42/base.apk",
+ *   "base_size": 8123456,
+ *   "base_sha256": "9f86d081884c7d659a2feaa0c55ad015a3bf4f1b2b0b822cd15d6c15b0f00a08",
+ *   "splits": [
+ *     { "name": "config.arm64_v8a", "abi": "arm64-v8a", "url": "https://cdn.example.com/app-42/arm64.apk", "size": 5123456 },
+ *     { "name": "config.xxhdpi", "density": "xxhdpi", "url": "https://cdn.example.com/app-42/xxhdpi.apk" },
+ *     { "name": "config.de", "language": "de", "url": "https://cdn.example.com/app-42/de.apk" }
+ *   ]
+ * }
+ * </pre>
+ * Each URL may be followed by mirrors in base_mirror_urls or the
+ * mirror_urls of the split. Sizes and SHA-256 hashes, base_sha256 and
+ * the sha256 of a split, are optional; the downloaded APKs are checked
+ * against those given before they are installed. The app_url of the version stays the universal APK, for
+ * devices that can't install splits.
+ *
+ **/
+public class SplitApks {
+    public static final int TYPE_ABI = 1;
+    public static final int TYPE_DENSITY = 2;
+    public static final int TYPE_LANGUAGE = 3;
+
+    private static final String[] DENSITY_NAMES = {"ldpi", "mdpi", "tvdpi", "hdpi", "xhdpi", "xxhdpi", "xxxhdpi"};
+    private static final int[] DENSITY_DPIS = {120, 160, 213, 240, 320, 480, 640};
+
+    private final List<String> mBaseUrls;
+    private final long mBaseSize;
+    private final String mBaseSha256;
+    private final List<Split> mSplits;
+
+    /**
+     * <h3>Description</h3>
+     *
+     * A configuration split.
+     *
+     **/
+    public static class Split {
+        private final String mName;
+        private final int mType;
+        private final String mValue;
+        private final List<String> mUrls;
+        private final long mSize;
+        private final String mSha256;
+
+        Split(String name, int type, String value, List<String> urls, long size, String sha256) {
+            this.mName = name;
+            this.mType = type;
+            this.mValue = value;
+            this.mUrls = urls;
+            this.mSize = size;
+            this.mSha256 = sha256;
+        }
+
+        /**
+         * Returns the name of the split, unique within the version.
+         */
+        public String getName() {
+            return mName;
+        }
+
+        /**
+         * Returns one of the TYPE constants.
+         */
+        public int getType() {
+            return mType;
+        }
+
+        /**
+         * Returns the ABI, density bucket or language the split is for.
+         */
+        public String getValue() {
+            return mValue;
+        }
+
+        /**
+         * Returns the URLs of the split, the primary one first.
+         */
+        public List<String> getUrls() {
+            return mUrls;
+        }
+
+        /**
+         * Returns the size of the split, -1 if unknown.
+         */
+        public long getSize() {
+            return mSize;
+        }
+
+        /**
+         * Returns the SHA-256 of the split in lower case hex, null if
+         * unknown.
+         */
+        public String getSha256() {
+            return mSha256;
+        }
+
+        @Override
+        public String toString() {
+            return mName;
+        }
+    }
+
+    private SplitApks(List<String> baseUrls, long baseSize, String baseSha256, List<Split> splits) {
+        this.mBaseUrls = baseUrls;
+        this.mBaseSize = baseSize;
+        this.mBaseSha256 = baseSha256;
+        this.mSplits = splits;
+    }
+
+    /**
+     * Returns the split APKs of a version of the feed, or null if it has
+     * none or they are malformed.
+     *
+     * @param entry a version of the feed
+     */
+    public static SplitApks parse(JSONObject entry) {
+        JSONObject json = entry.optJSONObject("split_apks");
+        if (json == null) {
+            return null;
+        }
+
+        List<String> baseUrls = FeedParser.getUrls(json, "base_url", "base_mirror_urls");
+        if (baseUrls.isEmpty()) {
+            return null;
+        }
+
+        List<Split> splits = new ArrayList<>();
+        JSONArray array = json.optJSONArray("splits");
+        for (int index = 0; array != null && index < array.length(); index++) {
+            JSONObject split = array.optJSONObject(index);
+            if (split == null) {
+                return null;
+            }
+
+            int type;
+            String value;
+            if (split.has("abi")) {
+                type = TYPE_ABI;
+                value = split.optString("abi");
+            } else if (split.has("density")) {
+                type = TYPE_DENSITY;
+                value = split.optString("density");
+            } else if (split.has("language")) {
+                type = TYPE_LANGUAGE;
+                value = split.optString("language");
+            } else {
+                HockeyLog.warn(HockeyLog.HOCKEY_TAG, "Ignoring split APKs, %s has no abi, density or language", split.optString("name"));
+                return null;
+            }
+
+            String name = split.optString("name", null);
+            List<String> urls = FeedParser.getUrls(split, "url", "mirror_urls");
+            if (name == null || urls.isEmpty()) {
+                return null;
+            }
+            splits.add(new Split(name, type, value, urls, split.optLong("size", -1L), getSha256(split, "sha256")));
+        }
+        return new SplitApks(baseUrls, json.optLong("base_size", -1L), getSha256(json, "base_sha256"), splits);
+    }
+
+    /**
+     * Returns the hash of the key in lower case, or null if it is missing
+     * or no SHA-256 in hex.
+     */
+    private static String getSha256(JSONObject json, String key) {
+        String value = json.optString(key, null);
+        if (value == null) {
+            return null;
+        }
+        value = value.toLowerCase(Locale.US);
+        if (!value.matches("[0-9a-f]{64}")) {
+            HockeyLog.warn(HockeyLog.HOCKEY_TAG, "Ignoring malformed %s %s", key, value);
+            return null;
+        }
+        return value;
+    }
+
+    /**
+     * Returns the URLs of the base APK, the primary one first.
+     */
+    public List<String> getBaseUrls() {
+        return mBaseUrls;
+    }
+
+    /**
+     * Returns the size of the base APK, -1 if unknown.
+     */
+    public long getBaseSize() {
+        return mBaseSize;
+    }
+
+    /**
+     * Returns the SHA-256 of the base APK in lower case hex, null if
+     * unknown.
+     */
+    public String getBaseSha256() {
+        return mBaseSha256;
+    }
+
+    public List<Split> getSplits() {
+        return Collections.unmodifiableList(mSplits);
+    }
+
+    /**
+     * Returns the splits a device needs: the ABI split of its most
+     * preferred ABI, the density split closest to its display, preferring
+     * the next larger one, and the splits of its languages.
+     *
+     * @param supportedAbis the ABIs of the device, most preferred first
+     * @param densityDpi    the density of the display
+     * @param languages     the languages of the user, e.g. "de"
+     * @return the splits, or null if none matches the ABIs of the device
+     *         although the version has ABI splits
+     */
+    public List<Split> select(String[] supportedAbis, int densityDpi, List<String> languages) {
+        List<Split> selected = new ArrayList<>();
+
+        if (hasSplits(TYPE_ABI)) {
+            Split abiSplit = findAbiSplit(supportedAbis);
+            if (abiSplit == null) {
+                return null;
+            }
+            selected.add(abiSplit);
+        }
+
+        Split densitySplit = null;
+        int bestDpi = 0;
+        for (Split split : mSplits) {
+            int dpi = split.mType == TYPE_DENSITY ? getDensityDpi(split.mValue) : 0;
+            if (dpi > 0 && (densitySplit == null || isCloser(dpi, bestDpi, densityDpi))) {
+                densitySplit = split;
+                bestDpi = dpi;
+            }
+        }
+        if (densitySplit != null) {
+            selected.add(densitySplit);
+        }
+
+        for (Split split : mSplits) {
+            if (split.mType == TYPE_LANGUAGE && languages.contains(split.mValue.toLowerCase(Locale.US))) {
+                selected.add(split);
+            }
+        }
+        return selected;
+    }
+
+    private Split findAbiSplit(String[] supportedAbis) {
+        for (String abi : supportedAbis) {
+            for (Split split : mSplits) {
+                if (split.mType == TYPE_ABI && split.mValue.equals(abi)) {
+                    return split;
+                }
+            }
+        }
+        return null;
+    }
+
+    private boolean hasSplits(int type) {
+        for (Split split : mSplits) {
+            if (split.mType == type) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns true if the density dpi suits the display better than the
+     * best one so far: the smallest density at least as high as the one of
+     * the display, or the highest if there is none.
+     */
+    static boolean isCloser(int dpi, int bestDpi, int displayDpi) {
+        if (dpi >= displayDpi) {
+            return bestDpi < displayDpi || dpi < bestDpi;
+        }
+        return bestDpi < displayDpi && dpi > bestDpi;
+    }
+
+    /**
+     * Returns the dpi of a density bucket, e.g. 480 for "xxhdpi", or 0.
+     */
+    static int getDensityDpi(String name) {
+        for (int index = 0; index < DENSITY_NAMES.length; index++) {
+            if (DENSITY_NAMES[index].equals(name)) {
+                return DENSITY_DPIS[index];
+            }
+        }
+        return 0;
+    }
+}
@@ -0,0 +1,277 @@
+package com.audacious_software.zamboni.utils;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+/**
+ * <h3>Description</h3>
+ *
+ * Internal helper class. The append-only log behind the StateStore of the
+ * library. Each record sets or removes one string or number value and is
+ * written as its length, the payload and a CRC32 of the payload, so a
+ * record cut off by a crash or damaged on disk ends the replay instead of
+ * producing wrong values.
+ *
+ * Not thread-safe, the caller serializes access to the file.
+ *
+ **/
+public class StateLog {
+    /**
+     * The largest record that is read back. Longer values are refused when
+     * they are written, so they can't make the log unreadable.
+     */
+    public static final int MAX_RECORD_LENGTH = 1024 * 1024;
+
+    private static final byte TYPE_REMOVE = 0;
+
+    /**
+     * A string written with writeUTF(), which older versions used and
+     * which is limited to 64 KB.
+     */
+    private static final byte TYPE_STRING = 1;
+
+    private static final byte TYPE_LONG = 2;
+
+    /**
+     * A string of any length, as UTF-8 bytes after their length.
+     */
+    private static final byte TYPE_TEXT = 3;
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private final File mFile;
+    private int mRecordCount;
+
+    public StateLog(File file) {
+        this.mFile = file;
+    }
+
+    public boolean exists() {
+        return mFile.exists();
+    }
+
+    /**
+     * Returns the number of records in the file.
+     */
+    public int getRecordCount() {
+        return mRecordCount;
+    }
+
+    /**
+     * Replays the log. A truncated or corrupt record, e.g. after a crash
+     * while appending, ends the replay.
+     *
+     * @param values receives the values of the records before the damage
+     * @return false if the log is damaged and needs to be rewritten
+     */
+    public boolean load(Map<String, Object> values) {
+        mRecordCount = 0;
+        DataInputStream input = null;
+        try {
+            input = new DataInputStream(new BufferedInputStream(new FileInputStream(mFile)));
+            CRC32 crc = new CRC32();
+            while (true) {
+                int first = input.read();
+                if (first < 0) {
+                    break;
+                }
+                int length = (first << 24) | (input.readUnsignedByte() << 16) | input.readUnsignedShort();
+                if (length <= 0 || length > MAX_RECORD_LENGTH) {
+                    HockeyLog.warn(HockeyLog.HOCKEY_TAG, "Ignoring corrupt state after %d records", mRecordCount);
+                    return false;
+                }
+
+                byte[] payload = new byte[length];
+                input.readFully(payload);
+                crc.reset();
+                crc.update(payload, 0, length);
+                if (input.readInt() != (int) crc.getValue()) {
+                    HockeyLog.warn(HockeyLog.HOCKEY_TAG, "Ignoring corrupt state after %d records", mRecordCount);
+                    return false;
+                }
+
+                apply(payload, values);
+                mRecordCount++;
+            }
+            return true;
+        } catch (EOFException e) {
+            HockeyLog.warn(HockeyLog.HOCKEY_TAG, "Ignoring truncated state after %d records", mRecordCount);
+            return false;
+        } catch (IOException e) {
+            HockeyLog.error("Failed to read state", e);
+            return false;
+        } finally {
+            close(input);
+        }
+    }
+
+    /**
+     * Appends records and syncs them to disk.
+     *
+     * @param records records created with the encode methods
+     */
+    public void append(List<byte[]> records) throws IOException {
+        FileOutputStream output = new FileOutputStream(mFile, true);
+        try {
+            for (byte[] record : records) {
+                output.write(record);
+                mRecordCount++;
+            }
+            output.getFD().sync();
+        } finally {
+            close(output);
+        }
+    }
+
+    /**
+     * Returns true if the log holds so many outdated records that it
+     * should be compacted.
+     *
+     * @param minRecords the number of records below which the log is kept
+     * @param valueCount the number of current values
+     */
+    public boolean isCompactionDue(int minRecords, int valueCount) {
+        return mRecordCount > minRecords && mRecordCount > 2 * valueCount;
+    }
+
+    /**
+     * Writes one record per value to a new file and replaces the log with
+     * it.
+     *
+     * @return false if the log could not be replaced and is unchanged
+     */
+    public boolean compact(Map<String, Object> values) {
+        List<byte[]> records = new ArrayList<>();
+        for (Map.Entry<String, Object> entry : values.entrySet()) {
+            Object value = entry.getValue();
+            byte[] record = value instanceof Long ? encodeLong(entry.getKey(), (Long) value) : encodeString(entry.getKey(), (String) value);
+            if (record != null) {
+                records.add(record);
+            }
+        }
+
+        File tempFile = new File(mFile.getPath() + ".tmp");
+        FileOutputStream output = null;
+        try {
+            output = new FileOutputStream(tempFile);
+            for (byte[] record : records) {
+                output.write(record);
+            }
+            output.getFD().sync();
+            output.close();
+            output = null;
+
+            if (!tempFile.renameTo(mFile)) {
+                HockeyLog.warn("Failed to replace state file");
+                return false;
+            }
+            mRecordCount = records.size();
+            return true;
+        } catch (IOException e) {
+            HockeyLog.error("Failed to compact state", e);
+            return false;
+        } finally {
+            close(output);
+        }
+    }
+
+    /**
+     * Returns the record setting a string, or null if it would be longer
+     * than {@link #MAX_RECORD_LENGTH}.
+     */
+    public static byte[] encodeString(String key, String value) {
+        byte[] bytes = value.getBytes(UTF_8);
+        if (bytes.length > MAX_RECORD_LENGTH - 16 - 3 * key.length()) {
+            return null;
+        }
+        return encode(TYPE_TEXT, key, bytes, 0L);
+    }
+
+    public static byte[] encodeLong(String key, long value) {
+        return encode(TYPE_LONG, key, null, value);
+    }
+
+    public static byte[] encodeRemove(String key) {
+        return encode(TYPE_REMOVE, key, null, 0L);
+    }
+
+    private static byte[] encode(byte type, String key, byte[] text, long number) {
+        try {
+            ByteArrayOutputStream payload = new ByteArrayOutputStream(64);
+            DataOutputStream data = new DataOutputStream(payload);
+            data.writeByte(type);
+            data.writeUTF(key);
+            if (type == TYPE_TEXT) {
+                data.writeInt(text.length);
+                data.write(text);
+            } else if (type == TYPE_LONG) {
+                data.writeLong(number);
+            }
+            data.flush();
+
+            byte[] bytes = payload.toByteArray();
+            CRC32 crc = new CRC32();
+            crc.update(bytes, 0, bytes.length);
+
+            ByteArrayOutputStream record = new ByteArrayOutputStream(bytes.length + 8);
+            DataOutputStream recordData = new DataOutputStream(record);
+            recordData.writeInt(bytes.length);
+            recordData.write(bytes);
+            recordData.writeInt((int) crc.getValue());
+            recordData.flush();
+            return record.toByteArray();
+        } catch (IOException e) {
+            // Keys are short constants, the streams are in memory.
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static void apply(byte[] payload, Map<String, Object> values) throws IOException {
+        DataInputStream input = new DataInputStream(new ByteArrayInputStream(payload));
+        byte type = input.readByte();
+        String key = input.readUTF();
+        switch (type) {
+            case TYPE_STRING:
+                values.put(key, input.readUTF());
+                break;
+            case TYPE_TEXT:
+                int length = input.readInt();
+                if (length < 0 || length > payload.length) {
+                    throw new EOFException();
+                }
+                byte[] text = new byte[length];
+                input.readFully(text);
+                values.put(key, new String(text, UTF_8));
+                break;
+            case TYPE_LONG:
+                values.put(key, input.readLong());
+                break;
+            default:
+                values.remove(key);
+                break;
+        }
+    }
+
+    private static void close(Closeable closeable) {
+        try {
+            if (closeable != null) {
+                closeable.close();
+            }
+        } catch (IOException ignored) {
+        }
+    }
+}
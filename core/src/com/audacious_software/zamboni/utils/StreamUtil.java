@@ -0,0 +1,93 @@
+package com.audacious_software.zamboni.utils;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * <h3>Description</h3>
+ *
+ * Internal helper class. Stream and byte conversions used by the
+ * network code, kept free of Android dependencies.
+ *
+ **/
+public class StreamUtil {
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+    /**
+     * Reads the stream line by line and closes it. Every line, including
+     * the last one, ends with a line feed in the result.
+     *
+     * @param inputStream the stream to read
+     * @return the content read until the end or the first error
+     */
+    public static String convertStreamToString(InputStream inputStream) {
+        BufferedReader reader = new BufferedReader(new InputStreamReader(inputStream), 1024);
+        StringBuilder stringBuilder = new StringBuilder();
+
+        String line;
+        try {
+            while ((line = reader.readLine()) != null) {
+                stringBuilder.append(line).append('\n');
+            }
+        } catch (IOException e) {
+            HockeyLog.error("Failed to convert stream to string", e);
+        } finally {
+            try {
+                if (inputStream != null) {
+                    inputStream.close();
+                }
+            } catch (Exception ignored) {
+            }
+        }
+        return stringBuilder.toString();
+    }
+
+    /**
+     * Converts a byte array to a lower case hex string.
+     *
+     * @param bytes a byte array
+     */
+    public static String bytesToHex(final byte[] bytes) {
+        char[] hex = new char[bytes.length * 2];
+        for (int index = 0; index < bytes.length; index++) {
+            int value = bytes[index] & 0xFF;
+            hex[index * 2] = HEX_DIGITS[value >>> 4];
+            hex[index * 2 + 1] = HEX_DIGITS[value & 0x0F];
+        }
+        return new String(hex);
+    }
+
+    /**
+     * Returns the SHA-256 of a file as a lower case hex string.
+     *
+     * @param file the file to hash
+     * @throws IOException if the file can't be read
+     */
+    public static String sha256Hex(File file) throws IOException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            // Every Java platform has to provide SHA-256.
+            throw new IllegalStateException(e);
+        }
+
+        InputStream input = new FileInputStream(file);
+        try {
+            byte[] buffer = new byte[64 * 1024];
+            int count;
+            while ((count = input.read(buffer)) != -1) {
+                digest.update(buffer, 0, count);
+            }
+        } finally {
+            input.close();
+        }
+        return bytesToHex(digest.digest());
+    }
+}
@@ -0,0 +1,95 @@
+package com.audacious_software.zamboni.utils;
+
+import java.util.Scanner;
+import java.util.regex.Pattern;
+
+/**
+ * <h3>Description</h3>
+ *
+ * Internal helper class. Compares version names such as "2.1" or
+ * "4.2.2-update1", used by VersionHelper.compareVersionStrings().
+ *
+ **/
+public class VersionStrings {
+    public static final String VERSION_MAX = "99.0";
+
+    private static final Pattern SUFFIX_PATTERN = Pattern.compile("\\-.*");
+    private static final Pattern DELIMITER_PATTERN = Pattern.compile("\\.");
+    private static final Pattern LETTERS_PATTERN = Pattern.compile("^[a-zA-Z]+");
+
+    /**
+     * Compare two versions strings with each other by splitting at the .
+     * and comparing the integer values. Additional string like "-update1"
+     * are ignored, i.e. "2.2" is considered equal to "2.2-update1".
+     *
+     * @param left  A version string, e.g. "2.1".
+     * @param right A version string, e.g. "4.2.2".
+     * @return 0 if the versions are equal.
+     * 1 if the left side is bigger.
+     * -1 if the right side is bigger.
+     */
+    public static int compare(String left, String right) {
+        // If either side is null, we consider the versions equal
+        if ((left == null) || (right == null)) {
+            return 0;
+        }
+
+        try {
+            // Strip out any "-update1" stuff, then build a scanner for the strings
+            Scanner leftScanner = new Scanner(SUFFIX_PATTERN.matcher(left).replaceAll(""));
+            Scanner rightScanner = new Scanner(SUFFIX_PATTERN.matcher(right).replaceAll(""));
+            leftScanner.useDelimiter(DELIMITER_PATTERN);
+            rightScanner.useDelimiter(DELIMITER_PATTERN);
+
+            // Compare the parts
+            while ((leftScanner.hasNextInt()) && (rightScanner.hasNextInt())) {
+                int leftValue = leftScanner.nextInt();
+                int rightValue = rightScanner.nextInt();
+                if (leftValue < rightValue) {
+                    return -1;
+                } else if (leftValue > rightValue) {
+                    return 1;
+                }
+            }
+
+            // Left side has more parts, so consider it bigger
+            if (leftScanner.hasNextInt()) {
+                return 1;
+            }
+            // Right side has more parts, so consider it bigger
+            else if (rightScanner.hasNextInt()) {
+                return -1;
+            }
+            // Ok, they are equal
+            else {
+                return 0;
+            }
+        } catch (Exception e) {
+            // If any exceptions happen, return zero
+            return 0;
+        }
+    }
+
+    /**
+     * Map internal Google version letter to a semantic version, see
+     * VersionHelper.mapGoogleVersion().
+     *
+     * @param version value of Build.VERSION.RELEASE
+     * @return mapped version number
+     */
+    public static String mapGoogleVersion(String version) {
+        if ((version == null) || (version.equalsIgnoreCase("L"))) {
+            return "5.0";
+        } else if (version.equalsIgnoreCase("M")) {
+            return "6.0";
+        } else if (version.equalsIgnoreCase("N")) {
+            return "7.0";
+        } else if (version.equalsIgnoreCase("O")) {
+            return "8.0";
+        } else if (LETTERS_PATTERN.matcher(version).matches()) {
+            return VERSION_MAX;
+        } else {
+            return version;
+        }
+    }
+}
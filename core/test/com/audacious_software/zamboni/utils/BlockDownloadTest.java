@@ -0,0 +1,128 @@
+package com.audacious_software.zamboni.utils;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.URL;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class BlockDownloadTest {
+    private static final int BLOCK_SIZE = 1024;
+    private static final int BLOCKS = 16;
+    private static final String URL = "https://example.com/app.apk";
+
+    @Rule
+    public TemporaryFolder mFolder = new TemporaryFolder();
+
+    @Test
+    public void matchesShiftedBlocks() throws IOException {
+        byte[] updated = random(BLOCKS * BLOCK_SIZE, 1);
+        // The old version lacks a prefix of 100 bytes and differs in block 5.
+        byte[] old = new byte[updated.length + 100];
+        System.arraycopy(updated, 0, old, 100, updated.length);
+        Arrays.fill(old, 100 + 5 * BLOCK_SIZE, 100 + 6 * BLOCK_SIZE, (byte) 7);
+
+        BlockDownload download = new BlockDownload(index(updated), new URL(URL), new FakeTransport());
+        long[] seedOffsets = download.match(write(old));
+
+        for (int block = 0; block < BLOCKS; block++) {
+            assertEquals("block " + block, block == 5 ? -1L : 100L + block * BLOCK_SIZE, seedOffsets[block]);
+        }
+        List<long[]> ranges = download.getMissingRanges(seedOffsets);
+        assertEquals(1, ranges.size());
+        assertArrayEquals(new long[]{5 * BLOCK_SIZE, 6 * BLOCK_SIZE - 1}, ranges.get(0));
+    }
+
+    @Test
+    public void mergesAdjacentMissingBlocks() throws IOException {
+        byte[] updated = random(BLOCKS * BLOCK_SIZE, 2);
+        BlockDownload download = new BlockDownload(index(updated), new URL(URL), new FakeTransport());
+
+        long[] seedOffsets = new long[BLOCKS];
+        Arrays.fill(seedOffsets, 0L);
+        seedOffsets[3] = -1L;
+        seedOffsets[4] = -1L;
+        seedOffsets[BLOCKS - 1] = -1L;
+
+        List<long[]> ranges = download.getMissingRanges(seedOffsets);
+        assertEquals(2, ranges.size());
+        assertArrayEquals(new long[]{3 * BLOCK_SIZE, 5 * BLOCK_SIZE - 1}, ranges.get(0));
+        assertArrayEquals(new long[]{(BLOCKS - 1) * BLOCK_SIZE, BLOCKS * BLOCK_SIZE - 1}, ranges.get(1));
+    }
+
+    @Test
+    public void fetchesOnlyChangedBlocks() throws IOException {
+        byte[] updated = random(BLOCKS * BLOCK_SIZE, 3);
+        byte[] old = updated.clone();
+        Arrays.fill(old, 9 * BLOCK_SIZE, 10 * BLOCK_SIZE, (byte) 0);
+
+        FakeTransport transport = new FakeTransport();
+        transport.respond(URL, "application/vnd.android.package-archive", updated);
+        BlockDownload download = new BlockDownload(index(updated), new URL(URL), transport);
+        File target = mFolder.newFile();
+
+        assertEquals(updated.length, download.download(write(old), target, null));
+        assertArrayEquals(updated, Files.readAllBytes(target.toPath()));
+        assertEquals((BLOCKS - 1) * BLOCK_SIZE, download.getReusedBytes());
+        assertEquals(BLOCK_SIZE, download.getFetchedBytes());
+    }
+
+    @Test
+    public void rejectsResultThatDoesNotMatchIndex() throws IOException {
+        byte[] updated = random(BLOCKS * BLOCK_SIZE, 4);
+        byte[] old = updated.clone();
+        Arrays.fill(old, 0, BLOCK_SIZE, (byte) 0);
+
+        // The server has a different file than the index describes.
+        byte[] served = updated.clone();
+        served[10] ^= 1;
+        FakeTransport transport = new FakeTransport();
+        transport.respond(URL, "application/vnd.android.package-archive", served);
+        BlockDownload download = new BlockDownload(index(updated), new URL(URL), transport);
+
+        try {
+            download.download(write(old), mFolder.newFile(), null);
+            fail();
+        } catch (IOException e) {
+            assertTrue(e.getMessage().contains("SHA-256"));
+        }
+    }
+
+    private BlockIndex index(byte[] data) throws IOException {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        BlockIndex.write(write(data), BLOCK_SIZE, BlockIndex.DEFAULT_HASH_LENGTH, output);
+        return BlockIndex.parse(new ByteArrayInputStream(output.toByteArray()));
+    }
+
+    private File write(byte[] data) throws IOException {
+        File file = mFolder.newFile();
+        OutputStream output = new FileOutputStream(file);
+        try {
+            output.write(data);
+        } finally {
+            output.close();
+        }
+        return file;
+    }
+
+    private static byte[] random(int length, long seed) {
+        byte[] data = new byte[length];
+        new Random(seed).nextBytes(data);
+        return data;
+    }
+}
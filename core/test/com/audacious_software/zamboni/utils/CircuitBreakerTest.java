@@ -0,0 +1,140 @@
+package com.audacious_software.zamboni.utils;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class CircuitBreakerTest {
+    private static final String HOST = "updates.example.com";
+
+    @After
+    public void tearDown() {
+        CircuitBreaker.clear();
+        CircuitBreaker.setStore(null);
+    }
+
+    @Test
+    public void opensAfterRepeatedFailures() throws CircuitBreaker.OpenException {
+        for (int failure = 1; failure < CircuitBreaker.FAILURE_THRESHOLD; failure++) {
+            CircuitBreaker.recordFailure(HOST, -1L);
+            CircuitBreaker.checkRequest(HOST);
+        }
+        CircuitBreaker.recordFailure(HOST, -1L);
+
+        assertTrue(CircuitBreaker.isOpen(HOST));
+        long remaining = CircuitBreaker.getRemainingMillis(HOST);
+        assertTrue(remaining > CircuitBreaker.BASE_COOLDOWN_MILLIS / 2 - 1000L && remaining <= CircuitBreaker.BASE_COOLDOWN_MILLIS);
+        assertRefused();
+    }
+
+    @Test
+    public void successResetsFailures() throws CircuitBreaker.OpenException {
+        for (int round = 0; round < 3; round++) {
+            for (int failure = 1; failure < CircuitBreaker.FAILURE_THRESHOLD; failure++) {
+                CircuitBreaker.recordFailure(HOST, -1L);
+            }
+            CircuitBreaker.recordSuccess(HOST);
+        }
+        assertFalse(CircuitBreaker.isOpen(HOST));
+        CircuitBreaker.checkRequest(HOST);
+    }
+
+    @Test
+    public void opensForRetryAfter() {
+        CircuitBreaker.recordFailure(HOST, 10 * 60 * 1000L);
+
+        assertTrue(CircuitBreaker.isOpen(HOST));
+        assertTrue(CircuitBreaker.getRemainingMillis(HOST) > 9 * 60 * 1000L);
+        assertRefused();
+    }
+
+    @Test
+    public void letsOneTrialRequestThroughWhenHalfOpen() throws CircuitBreaker.OpenException {
+        MapStore store = new MapStore();
+        store.putLong("circuit." + HOST + ".failures", CircuitBreaker.FAILURE_THRESHOLD);
+        store.putLong("circuit." + HOST + ".trips", 1L);
+        store.putLong("circuit." + HOST + ".openUntil", System.currentTimeMillis() - 1L);
+        CircuitBreaker.setStore(store);
+
+        CircuitBreaker.checkRequest(HOST);
+        assertRefused();
+
+        // A failure unrelated to the server lets the next request try again.
+        CircuitBreaker.recordUnrelatedFailure(HOST);
+        CircuitBreaker.checkRequest(HOST);
+
+        CircuitBreaker.recordSuccess(HOST);
+        assertFalse(CircuitBreaker.isOpen(HOST));
+        assertTrue(store.mValues.isEmpty());
+    }
+
+    @Test
+    public void failedTrialRequestDoublesCooldown() throws CircuitBreaker.OpenException {
+        MapStore store = new MapStore();
+        store.putLong("circuit." + HOST + ".trips", 1L);
+        store.putLong("circuit." + HOST + ".openUntil", System.currentTimeMillis() - 1L);
+        CircuitBreaker.setStore(store);
+
+        CircuitBreaker.checkRequest(HOST);
+        CircuitBreaker.recordFailure(HOST, -1L);
+
+        assertTrue(CircuitBreaker.getRemainingMillis(HOST) > CircuitBreaker.BASE_COOLDOWN_MILLIS - 1000L);
+        assertEquals(2L, store.getLong("circuit." + HOST + ".trips", 0L));
+        assertRefused();
+    }
+
+    @Test
+    public void keepsStateInStore() {
+        MapStore store = new MapStore();
+        CircuitBreaker.setStore(store);
+        for (int failure = 0; failure < CircuitBreaker.FAILURE_THRESHOLD; failure++) {
+            CircuitBreaker.recordFailure(HOST, -1L);
+        }
+        long openUntil = store.getLong("circuit." + HOST + ".openUntil", 0L);
+        assertTrue(openUntil > System.currentTimeMillis());
+
+        // A new process only has the store.
+        CircuitBreaker.setStore(null);
+        CircuitBreaker.clear();
+        CircuitBreaker.setStore(store);
+
+        assertTrue(CircuitBreaker.isOpen(HOST));
+        assertEquals(openUntil, System.currentTimeMillis() + CircuitBreaker.getRemainingMillis(HOST), 1000L);
+        assertRefused();
+    }
+
+    private static void assertRefused() {
+        try {
+            CircuitBreaker.checkRequest(HOST);
+            fail();
+        } catch (CircuitBreaker.OpenException expected) {
+        }
+    }
+
+    static class MapStore implements CircuitBreaker.Store {
+        final Map<String, Long> mValues = new HashMap<>();
+
+        @Override
+        public long getLong(String key, long defaultValue) {
+            Long value = mValues.get(key);
+            return value != null ? value : defaultValue;
+        }
+
+        @Override
+        public void putLong(String key, long value) {
+            mValues.put(key, value);
+        }
+
+        @Override
+        public void remove(String key) {
+            mValues.remove(key);
+        }
+    }
+}
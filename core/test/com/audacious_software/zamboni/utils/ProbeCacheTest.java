@@ -0,0 +1,88 @@
+package com.audacious_software.zamboni.utils;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.net.MalformedURLException;
+import java.net.URL;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+public class ProbeCacheTest {
+    private static final long FALLBACK = 1234L;
+
+    @After
+    public void tearDown() {
+        ProbeCache.clear();
+    }
+
+    @Test
+    public void prefersMaxAge() {
+        assertEquals(60000L, ProbeCache.getTtlMillis("public, max-age=60", 1000L, 999999L, FALLBACK));
+        assertEquals(0L, ProbeCache.getTtlMillis("max-age=0", 0L, 0L, FALLBACK));
+    }
+
+    @Test
+    public void refusesNoStoreAndNoCache() {
+        assertEquals(0L, ProbeCache.getTtlMillis("max-age=60, no-store", 0L, 0L, FALLBACK));
+        assertEquals(0L, ProbeCache.getTtlMillis("No-Cache", 0L, 0L, FALLBACK));
+    }
+
+    @Test
+    public void usesExpiresRelativeToDate() {
+        assertEquals(30000L, ProbeCache.getTtlMillis(null, 1000000L, 1030000L, FALLBACK));
+        assertEquals(0L, ProbeCache.getTtlMillis(null, 1030000L, 1000000L, FALLBACK));
+        assertEquals(30000L, ProbeCache.getTtlMillis("max-age=soon", 1000000L, 1030000L, FALLBACK));
+    }
+
+    @Test
+    public void fallsBackWithoutCachingHeaders() {
+        assertEquals(FALLBACK, ProbeCache.getTtlMillis(null, 0L, 0L, FALLBACK));
+        assertEquals(FALLBACK, ProbeCache.getTtlMillis("public", 1000L, 0L, FALLBACK));
+    }
+
+    @Test
+    public void keepsFreshEntries() throws MalformedURLException {
+        ProbeCache.Entry entry = entry(60000L);
+        ProbeCache.put("https://example.com/app", entry);
+        assertSame(entry, ProbeCache.get("https://example.com/app"));
+
+        ProbeCache.remove("https://example.com/app");
+        assertNull(ProbeCache.get("https://example.com/app"));
+    }
+
+    @Test
+    public void skipsEntriesWithoutLifetime() throws MalformedURLException {
+        ProbeCache.put("https://example.com/app", entry(0L));
+        assertNull(ProbeCache.get("https://example.com/app"));
+    }
+
+    @Test
+    public void evictsLeastRecentlyUsed() throws MalformedURLException {
+        ProbeCache.Entry first = entry(60000L);
+        ProbeCache.put("https://example.com/0", first);
+        for (int index = 1; index < 8; index++) {
+            ProbeCache.put("https://example.com/" + index, entry(60000L));
+        }
+        // Using the first entry makes the second the eldest.
+        assertSame(first, ProbeCache.get("https://example.com/0"));
+        ProbeCache.put("https://example.com/8", entry(60000L));
+
+        assertSame(first, ProbeCache.get("https://example.com/0"));
+        assertNull(ProbeCache.get("https://example.com/1"));
+    }
+
+    @Test
+    public void prefersStrongETagAsRangeValidator() throws MalformedURLException {
+        URL url = new URL("https://cdn.example.com/app.apk");
+        assertEquals("\"v2\"", new ProbeCache.Entry(url, 10L, "\"v2\"", "Mon, 01 Jan 2024 00:00:00 GMT", 1L).getRangeValidator());
+        assertEquals("Mon, 01 Jan 2024 00:00:00 GMT", new ProbeCache.Entry(url, 10L, "W/\"v2\"", "Mon, 01 Jan 2024 00:00:00 GMT", 1L).getRangeValidator());
+        assertNull(new ProbeCache.Entry(url, 10L, "W/\"v2\"", null, 1L).getRangeValidator());
+    }
+
+    private static ProbeCache.Entry entry(long ttlMillis) throws MalformedURLException {
+        return new ProbeCache.Entry(new URL("https://cdn.example.com/app.apk"), 1024L, "\"v1\"", null, ttlMillis);
+    }
+}
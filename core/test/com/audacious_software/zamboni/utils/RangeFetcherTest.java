@@ -0,0 +1,150 @@
+package com.audacious_software.zamboni.utils;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class RangeFetcherTest {
+    private static final String URL = "https://example.com/app.apk";
+    private static final Charset ASCII = Charset.forName("US-ASCII");
+
+    @Rule
+    public TemporaryFolder mFolder = new TemporaryFolder();
+
+    @Test
+    public void parsesBoundary() {
+        assertEquals("3d6b6a416f9b5", RangeFetcher.getBoundary("multipart/byteranges; boundary=3d6b6a416f9b5"));
+        assertEquals("a b", RangeFetcher.getBoundary("Multipart/Byteranges;charset=utf-8; BOUNDARY=\"a b\""));
+        assertNull(RangeFetcher.getBoundary("multipart/byteranges"));
+        assertNull(RangeFetcher.getBoundary("multipart/form-data; boundary=x"));
+        assertNull(RangeFetcher.getBoundary("application/octet-stream"));
+        assertNull(RangeFetcher.getBoundary(null));
+    }
+
+    @Test
+    public void parsesContentRange() {
+        assertArrayEquals(new long[]{0L, 499L}, RangeFetcher.parseContentRange("bytes 0-499/1234"));
+        assertArrayEquals(new long[]{500L, 999L}, RangeFetcher.parseContentRange(" bytes 500-999/*"));
+        assertNull(RangeFetcher.parseContentRange("bytes */1234"));
+        assertNull(RangeFetcher.parseContentRange("bytes 9-1/1234"));
+        assertNull(RangeFetcher.parseContentRange("bytes 0-499"));
+        assertNull(RangeFetcher.parseContentRange("items 0-1/2"));
+        assertNull(RangeFetcher.parseContentRange(null));
+    }
+
+    @Test
+    public void writesPartsOfMultipartResponse() throws IOException {
+        byte[] file = random(4096);
+        FakeTransport transport = new FakeTransport();
+        transport.respond(URL, HttpURLConnection.HTTP_PARTIAL, multipart(file, "THIS_STRING_SEPARATES", new long[]{100L, 199L}, new long[]{3000L, 4095L}))
+                .header("Content-Type", "multipart/byteranges; boundary=\"THIS_STRING_SEPARATES\"");
+
+        RangeFetcher fetcher = new RangeFetcher(new URL(URL), transport, file.length);
+        RandomAccessFile target = target(file.length);
+        try {
+            fetcher.fetch(ranges(new long[]{100L, 199L}, new long[]{3000L, 4095L}), target, null);
+
+            assertArrayEquals(Arrays.copyOfRange(file, 100, 200), read(target, 100, 100));
+            assertArrayEquals(Arrays.copyOfRange(file, 3000, 4096), read(target, 3000, 1096));
+        } finally {
+            target.close();
+        }
+        assertEquals(1, fetcher.getRequestCount());
+        assertEquals(1196L, fetcher.getReceivedBytes());
+    }
+
+    @Test
+    public void failsOnTruncatedMultipartResponse() throws IOException {
+        byte[] file = random(4096);
+        byte[] body = multipart(file, "sep", new long[]{0L, 99L}, new long[]{200L, 299L});
+        FakeTransport transport = new FakeTransport();
+        transport.respond(URL, HttpURLConnection.HTTP_PARTIAL, Arrays.copyOf(body, body.length - 20))
+                .header("Content-Type", "multipart/byteranges; boundary=sep");
+
+        RangeFetcher fetcher = new RangeFetcher(new URL(URL), transport, file.length);
+        RandomAccessFile target = target(file.length);
+        try {
+            fetcher.fetch(ranges(new long[]{0L, 99L}, new long[]{200L, 299L}), target, null);
+            fail();
+        } catch (IOException e) {
+            assertTrue(e.getMessage(), e.getMessage().startsWith("Range ended") || e.getMessage().startsWith("Truncated"));
+        } finally {
+            target.close();
+        }
+    }
+
+    @Test
+    public void writesSingleRange() throws IOException {
+        byte[] file = random(2048);
+        FakeTransport transport = new FakeTransport();
+        transport.respond(URL, "application/vnd.android.package-archive", file);
+
+        RangeFetcher fetcher = new RangeFetcher(new URL(URL), transport, file.length);
+        RandomAccessFile target = target(file.length);
+        try {
+            fetcher.fetch(ranges(new long[]{1024L, 1535L}), target, null);
+            assertArrayEquals(Arrays.copyOfRange(file, 1024, 1536), read(target, 1024, 512));
+        } finally {
+            target.close();
+        }
+        assertEquals(512L, fetcher.getReceivedBytes());
+    }
+
+    /**
+     * Builds a multipart/byteranges body with a preamble, as RFC 7233 allows.
+     */
+    private static byte[] multipart(byte[] file, String boundary, long[]... ranges) throws IOException {
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        body.write("This is the preamble.\r\n".getBytes(ASCII));
+        for (long[] range : ranges) {
+            String header = "--" + boundary + "\r\n"
+                    + "Content-Type: application/vnd.android.package-archive\r\n"
+                    + "Content-Range: bytes " + range[0] + "-" + range[1] + "/" + file.length + "\r\n\r\n";
+            body.write(header.getBytes(ASCII));
+            body.write(file, (int) range[0], (int) (range[1] - range[0] + 1));
+            body.write("\r\n".getBytes(ASCII));
+        }
+        body.write(("--" + boundary + "--\r\n").getBytes(ASCII));
+        return body.toByteArray();
+    }
+
+    private static List<long[]> ranges(long[]... ranges) {
+        return new ArrayList<>(Arrays.asList(ranges));
+    }
+
+    private RandomAccessFile target(long length) throws IOException {
+        RandomAccessFile target = new RandomAccessFile(mFolder.newFile(), "rw");
+        target.setLength(length);
+        return target;
+    }
+
+    private static byte[] read(RandomAccessFile file, long offset, int length) throws IOException {
+        byte[] bytes = new byte[length];
+        file.seek(offset);
+        file.readFully(bytes);
+        return bytes;
+    }
+
+    private static byte[] random(int length) {
+        byte[] data = new byte[length];
+        new Random(length).nextBytes(data);
+        return data;
+    }
+}
@@ -0,0 +1,81 @@
+package com.audacious_software.zamboni.utils;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+public class ReleaseIndexTest {
+    @Test
+    public void ordersNewestFirst() {
+        JSONArray feed = new JSONArray()
+                .put(release("a", 3, 100L))
+                .put(release("b", 5, 50L))
+                .put(release("c", 3, 200L))
+                .put(release("d", 1, 900L));
+
+        ReleaseIndex index = new ReleaseIndex(feed, 10);
+        assertEquals(4, index.size());
+        assertEquals("b", index.get(0).optString("id"));
+        assertEquals("c", index.get(1).optString("id"));
+        assertEquals("a", index.get(2).optString("id"));
+        assertEquals("d", index.get(3).optString("id"));
+        assertEquals(3, index.getVersionCode(1));
+        assertEquals(200L, index.getTimestamp(1));
+    }
+
+    @Test
+    public void keepsOnlyNewestEntries() {
+        JSONArray feed = new JSONArray();
+        for (int version = 1; version <= 20; version++) {
+            feed.put(release("r" + version, version, 0L));
+        }
+
+        ReleaseIndex index = new ReleaseIndex(feed, 3);
+        assertEquals(3, index.size());
+        assertEquals(20, index.getVersionCode(0));
+        assertEquals(18, index.getVersionCode(2));
+        assertEquals(-1, index.indexOf("r17"));
+        assertNull(index.findById("r17"));
+    }
+
+    @Test
+    public void skipsEntriesWithoutVersion() {
+        JSONArray feed = new JSONArray()
+                .put(new JSONObject().put("id", "broken"))
+                .put("not an object")
+                .put(release("ok", 2, 0L));
+
+        ReleaseIndex index = new ReleaseIndex(feed, 10);
+        assertEquals(1, index.size());
+        assertEquals(-1, index.indexOf("broken"));
+        assertEquals(0, index.indexOf("ok"));
+    }
+
+    @Test
+    public void findsById() {
+        JSONObject older = release("older", 1, 0L);
+        JSONObject newer = release("newer", 2, 0L);
+        ReleaseIndex index = new ReleaseIndex(new JSONArray().put(older).put(newer), 10);
+
+        assertSame(newer, index.findById("newer"));
+        assertSame(older, index.findById("older"));
+        assertEquals(-1, index.indexOf(null));
+    }
+
+    @Test
+    public void keepsFeedOrderOfEqualKeys() {
+        long[] keys = {ReleaseIndex.sortKey(1, 5L), ReleaseIndex.sortKey(2, 0L), ReleaseIndex.sortKey(1, 5L), ReleaseIndex.sortKey(1, 5L)};
+        assertArrayEquals(new int[]{1, 0, 2, 3}, ReleaseIndex.selectNewest(keys, keys.length, 4));
+        assertArrayEquals(new int[]{1, 0}, ReleaseIndex.selectNewest(keys, keys.length, 2));
+        assertArrayEquals(new int[0], ReleaseIndex.selectNewest(keys, keys.length, 0));
+    }
+
+    private static JSONObject release(String id, int version, long timestamp) {
+        return new JSONObject().put("id", id).put("version", version).put("timestamp", timestamp);
+    }
+}
@@ -0,0 +1,152 @@
+package com.audacious_software.zamboni.utils;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.SocketTimeoutException;
+import java.net.URL;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class RetryPolicyTest {
+    private static final String HOST = "updates.example.com";
+
+    private final RetryPolicy mPolicy = new RetryPolicy(3, 1L, 1L);
+
+    @After
+    public void tearDown() {
+        CircuitBreaker.clear();
+        CircuitBreaker.setStore(null);
+    }
+
+    @Test
+    public void retriesServerErrors() throws IOException {
+        final int[] attempts = new int[1];
+        String result = mPolicy.execute(null, 0, null, new RetryPolicy.Request<String>() {
+            @Override
+            public String run() throws IOException {
+                if (++attempts[0] < 3) {
+                    throw status(503, -1L);
+                }
+                return "feed";
+            }
+        });
+        assertEquals("feed", result);
+        assertEquals(3, attempts[0]);
+    }
+
+    @Test
+    public void stopsAfterMaxAttempts() {
+        final int[] attempts = new int[1];
+        final IOException failure = new SocketTimeoutException();
+        try {
+            mPolicy.execute(null, 0, null, new RetryPolicy.Request<Void>() {
+                @Override
+                public Void run() throws IOException {
+                    attempts[0]++;
+                    throw failure;
+                }
+            });
+            fail();
+        } catch (IOException e) {
+            assertSame(failure, e);
+        }
+        assertEquals(3, attempts[0]);
+    }
+
+    @Test
+    public void doesNotRetryPermanentFailures() {
+        final int[] attempts = new int[1];
+        try {
+            mPolicy.execute(null, 0, null, new RetryPolicy.Request<Void>() {
+                @Override
+                public Void run() throws IOException {
+                    attempts[0]++;
+                    throw status(404, -1L);
+                }
+            });
+            fail();
+        } catch (IOException expected) {
+        }
+        assertEquals(1, attempts[0]);
+    }
+
+    @Test
+    public void doesNotWaitLongerThanMaxDelay() {
+        final int[] attempts = new int[1];
+        try {
+            mPolicy.execute(null, 0, null, new RetryPolicy.Request<Void>() {
+                @Override
+                public Void run() throws IOException {
+                    attempts[0]++;
+                    throw status(503, 60000L);
+                }
+            });
+            fail();
+        } catch (IOException expected) {
+        }
+        assertEquals(1, attempts[0]);
+    }
+
+    @Test
+    public void classifiesFailures() {
+        assertTrue(RetryPolicy.isRetryable(new IOException()));
+        assertTrue(RetryPolicy.isRetryable(new SocketTimeoutException()));
+        assertTrue(RetryPolicy.isRetryable(status(408, -1L)));
+        assertTrue(RetryPolicy.isRetryable(status(429, -1L)));
+        assertTrue(RetryPolicy.isRetryable(status(502, -1L)));
+        assertFalse(RetryPolicy.isRetryable(status(403, -1L)));
+        assertFalse(RetryPolicy.isRetryable(new FileNotFoundException()));
+        assertFalse(RetryPolicy.isRetryable(new InterruptedIOException()));
+
+        assertTrue(RetryPolicy.isServerFailure(status(500, -1L)));
+        assertFalse(RetryPolicy.isServerFailure(status(408, -1L)));
+        assertFalse(RetryPolicy.isServerFailure(new IOException()));
+    }
+
+    @Test
+    public void delaysStayWithinBounds() {
+        RetryPolicy policy = new RetryPolicy(10, 100L, 1000L);
+        for (int attempt = 1; attempt <= 10; attempt++) {
+            long delay = policy.getDelayMillis(attempt);
+            assertTrue(delay >= 0L && delay <= Math.min(1000L, 100L << (attempt - 1)));
+        }
+    }
+
+    @Test
+    public void releasesTrialRequestOnRuntimeException() throws IOException {
+        CircuitBreakerTest.MapStore store = new CircuitBreakerTest.MapStore();
+        store.putLong("circuit." + HOST + ".trips", 1L);
+        store.putLong("circuit." + HOST + ".openUntil", System.currentTimeMillis() - 1L);
+        CircuitBreaker.setStore(store);
+
+        try {
+            RetryPolicy.NO_RETRIES.execute(HOST, 0, null, new RetryPolicy.Request<Void>() {
+                @Override
+                public Void run() {
+                    throw new IllegalStateException();
+                }
+            });
+            fail();
+        } catch (IllegalStateException expected) {
+        }
+
+        // Another trial request is allowed instead of the circuit staying half open for good.
+        CircuitBreaker.checkRequest(HOST);
+    }
+
+    private static HttpStatusException status(int code, long retryAfterMillis) {
+        try {
+            return new HttpStatusException(new URL("https://" + HOST + "/feed"), code, retryAfterMillis);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,150 @@
+package com.audacious_software.zamboni.utils;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class StateLogTest {
+    @Rule
+    public TemporaryFolder mFolder = new TemporaryFolder();
+
+    @Test
+    public void replaysAppendedRecords() throws IOException {
+        StateLog log = new StateLog(mFolder.newFile());
+        log.append(Arrays.asList(
+                StateLog.encodeString("name", "Zamboni"),
+                StateLog.encodeLong("count", 42L),
+                StateLog.encodeLong("gone", 1L),
+                StateLog.encodeRemove("gone")));
+
+        Map<String, Object> values = new HashMap<>();
+        assertTrue(log.load(values));
+        assertEquals(4, log.getRecordCount());
+        assertEquals("Zamboni", values.get("name"));
+        assertEquals(42L, values.get("count"));
+        assertFalse(values.containsKey("gone"));
+    }
+
+    @Test
+    public void truncatedRecordEndsReplay() throws IOException {
+        File file = mFolder.newFile();
+        StateLog log = new StateLog(file);
+        log.append(Arrays.asList(
+                StateLog.encodeLong("first", 1L),
+                StateLog.encodeLong("second", 2L),
+                StateLog.encodeLong("third", 3L)));
+        truncate(file, file.length() - 3);
+
+        Map<String, Object> values = new HashMap<>();
+        assertFalse(log.load(values));
+        assertEquals(2, log.getRecordCount());
+        assertEquals(1L, values.get("first"));
+        assertEquals(2L, values.get("second"));
+        assertFalse(values.containsKey("third"));
+    }
+
+    @Test
+    public void corruptRecordEndsReplay() throws IOException {
+        File file = mFolder.newFile();
+        StateLog log = new StateLog(file);
+        byte[] first = StateLog.encodeString("first", "one");
+        log.append(Arrays.asList(first, StateLog.encodeString("second", "two"), StateLog.encodeString("third", "three")));
+
+        // Damages the payload of the second record, so its checksum no longer matches.
+        RandomAccessFile output = new RandomAccessFile(file, "rw");
+        try {
+            output.seek(first.length + 6);
+            int value = output.read();
+            output.seek(first.length + 6);
+            output.write(value ^ 0xff);
+        } finally {
+            output.close();
+        }
+
+        Map<String, Object> values = new HashMap<>();
+        assertFalse(log.load(values));
+        assertEquals(1, log.getRecordCount());
+        assertEquals("one", values.get("first"));
+        assertEquals(1, values.size());
+    }
+
+    @Test
+    public void rewrittenLogReplaysAfterTruncation() throws IOException {
+        File file = mFolder.newFile();
+        StateLog log = new StateLog(file);
+        log.append(Arrays.asList(StateLog.encodeLong("first", 1L), StateLog.encodeLong("second", 2L)));
+        truncate(file, file.length() - 1);
+
+        Map<String, Object> values = new HashMap<>();
+        assertFalse(log.load(values));
+        assertTrue(log.compact(values));
+        log.append(Arrays.asList(StateLog.encodeLong("third", 3L)));
+
+        Map<String, Object> replayed = new HashMap<>();
+        assertTrue(log.load(replayed));
+        assertEquals(2, log.getRecordCount());
+        assertEquals(1L, replayed.get("first"));
+        assertEquals(3L, replayed.get("third"));
+        assertFalse(replayed.containsKey("second"));
+    }
+
+    @Test
+    public void keepsStringsLongerThanWriteUtf() throws IOException {
+        char[] chars = new char[100 * 1024];
+        Arrays.fill(chars, '\u00e9');
+        String value = new String(chars);
+
+        StateLog log = new StateLog(mFolder.newFile());
+        log.append(Arrays.asList(StateLog.encodeString("notes", value)));
+
+        Map<String, Object> values = new HashMap<>();
+        assertTrue(log.load(values));
+        assertEquals(value, values.get("notes"));
+    }
+
+    @Test
+    public void refusesRecordsThatCouldNotBeRead() {
+        char[] chars = new char[StateLog.MAX_RECORD_LENGTH];
+        Arrays.fill(chars, 'x');
+        assertNull(StateLog.encodeString("key", new String(chars)));
+    }
+
+    @Test
+    public void compactionKeepsCurrentValues() throws IOException {
+        StateLog log = new StateLog(mFolder.newFile());
+        for (long value = 0L; value < 10L; value++) {
+            log.append(Arrays.asList(StateLog.encodeLong("counter", value)));
+        }
+        Map<String, Object> values = new HashMap<>();
+        assertTrue(log.load(values));
+        assertTrue(log.isCompactionDue(4, values.size()));
+
+        assertTrue(log.compact(values));
+        assertEquals(1, log.getRecordCount());
+
+        Map<String, Object> replayed = new HashMap<>();
+        assertTrue(log.load(replayed));
+        assertEquals(9L, replayed.get("counter"));
+    }
+
+    private static void truncate(File file, long length) throws IOException {
+        RandomAccessFile output = new RandomAccessFile(file, "rw");
+        try {
+            output.setLength(length);
+        } finally {
+            output.close();
+        }
+    }
+}
@@ -2,7 +2,6 @@ package com.audacious_software.zamboni;
 
 import android.annotation.SuppressLint;
 import android.content.Context;
-import android.content.SharedPreferences;
 import android.content.pm.ApplicationInfo;
 import android.content.pm.PackageInfo;
 import android.content.pm.PackageManager;
@@ -11,7 +10,10 @@ import android.os.Bundle;
 
 import com.audacious_software.zamboni.utils.AsyncTaskUtils;
 import com.audacious_software.zamboni.utils.LatchFuture;
+import com.audacious_software.zamboni.utils.LogcatPrinter;
 import com.audacious_software.zamboni.utils.HockeyLog;
+import com.audacious_software.zamboni.utils.StateStore;
+import com.audacious_software.zamboni.utils.TraceUtil;
 
 import java.io.File;
 import java.util.UUID;
@@ -40,6 +42,26 @@ public class Constants {
 
     public static final int THREAD_STATS_TAG = SDK_NAME.hashCode();
 
+    /**
+     * TrafficStats tag of the requests for the version feed.
+     */
+    public static final int THREAD_STATS_TAG_CHECK = THREAD_STATS_TAG + 1;
+
+    /**
+     * TrafficStats tag of the requests determining the size of an APK.
+     */
+    public static final int THREAD_STATS_TAG_SIZE_PROBE = THREAD_STATS_TAG + 2;
+
+    /**
+     * TrafficStats tag of the APK downloads.
+     */
+    public static final int THREAD_STATS_TAG_DOWNLOAD = THREAD_STATS_TAG + 3;
+
+    /**
+     * TrafficStats tag of the requests warming up the connection for a download.
+     */
+    public static final int THREAD_STATS_TAG_PRECONNECT = THREAD_STATS_TAG + 4;
+
     /**
      * The user agent string the SDK will send with every HockeyApp API request.
      */
@@ -103,13 +125,19 @@ public class Constants {
      * @param context The context to use. Usually your Activity object.
      */
     public static void loadFromContext(Context context) {
-        ANDROID_VERSION = android.os.Build.VERSION.RELEASE;
-        ANDROID_BUILD = android.os.Build.DISPLAY;
-        PHONE_MODEL = android.os.Build.MODEL;
-        PHONE_MANUFACTURER = android.os.Build.MANUFACTURER;
-
-        loadPackageData(context);
-        loadIdentifiers(context);
+        LogcatPrinter.install();
+        boolean traced = TraceUtil.beginSection("loadFromContext");
+        try {
+            ANDROID_VERSION = android.os.Build.VERSION.RELEASE;
+            ANDROID_BUILD = android.os.Build.DISPLAY;
+            PHONE_MODEL = android.os.Build.MODEL;
+            PHONE_MANUFACTURER = android.os.Build.MANUFACTURER;
+
+            loadPackageData(context);
+            loadIdentifiers(context);
+        } finally {
+            TraceUtil.endSection(traced);
+        }
     }
 
     /**
@@ -184,11 +212,11 @@ public class Constants {
         AsyncTaskUtils.execute(loadIdentifiersTask = new AsyncTask<Void, Object, String>() {
             @Override
             protected String doInBackground(Void... voids) {
-                final SharedPreferences preferences = context.getSharedPreferences("HockeyApp", Context.MODE_PRIVATE);
-                String deviceIdentifier = preferences.getString("deviceIdentifier", null);
+                StateStore store = StateStore.get(context);
+                String deviceIdentifier = store.getString("deviceIdentifier", null);
                 if (deviceIdentifier == null) {
                     deviceIdentifier = UUID.randomUUID().toString();
-                    preferences.edit().putString("deviceIdentifier", deviceIdentifier).apply();
+                    store.putString("deviceIdentifier", deviceIdentifier);
                 }
                 DEVICE_IDENTIFIER.complete(deviceIdentifier);
                 return deviceIdentifier;
@@ -0,0 +1,50 @@
+package com.audacious_software.zamboni;
+
+import android.content.ActivityNotFoundException;
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.pm.PackageInstaller;
+
+import androidx.core.content.IntentCompat;
+
+import com.audacious_software.zamboni.utils.HockeyLog;
+import com.audacious_software.zamboni.utils.UpdateMetrics;
+
+/**
+ * <h3>Description</h3>
+ *
+ * Receives the status of a PackageInstaller session committed by
+ * {@link com.audacious_software.zamboni.utils.SplitInstaller} and shows
+ * the confirmation of the installer when the system asks for it.
+ *
+ **/
+public class SplitInstallReceiver extends BroadcastReceiver {
+
+    @Override
+    public void onReceive(Context context, Intent intent) {
+        int status = intent.getIntExtra(PackageInstaller.EXTRA_STATUS, PackageInstaller.STATUS_FAILURE);
+        switch (status) {
+            case PackageInstaller.STATUS_PENDING_USER_ACTION:
+                Intent confirmation = IntentCompat.getParcelableExtra(intent, Intent.EXTRA_INTENT, Intent.class);
+                if (confirmation == null) {
+                    return;
+                }
+                confirmation.addFlags(Intent.FLAG_ACTIVITY_NEW_TASK);
+                try {
+                    context.startActivity(confirmation);
+                    UpdateMetrics.getListener().onInstallerLaunched(UpdateMetrics.getMillisSinceUpdateDetected());
+                } catch (ActivityNotFoundException e) {
+                    HockeyLog.error(HockeyLog.HOCKEY_TAG, "Could not show the installer", e);
+                }
+                break;
+            case PackageInstaller.STATUS_SUCCESS:
+                HockeyLog.info(HockeyLog.HOCKEY_TAG, "Update installed");
+                break;
+            default:
+                HockeyLog.error(HockeyLog.HOCKEY_TAG, "Installing the update failed with status %d: %s", status,
+                        intent.getStringExtra(PackageInstaller.EXTRA_STATUS_MESSAGE));
+                break;
+        }
+    }
+}
@@ -1,14 +1,31 @@
 package com.audacious_software.zamboni;
 
 import android.app.Activity;
+import android.content.ComponentCallbacks2;
 import android.content.Context;
 import android.content.SharedPreferences;
+import android.content.res.Configuration;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+
+import com.audacious_software.zamboni.utils.StateStore;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * <h3>Description</h3>
  *
  * This class defines methods to track the app's usage time.
  *
+ * The usage time is accumulated in memory and written to the
+ * {@link StateStore} in batches: when the last tracked activity stops, at most
+ * every minute while activities are running, and when the process is
+ * asked to trim its memory.
+ *
  **/
 public class Tracking {
     /**
@@ -21,26 +38,57 @@ public class Tracking {
      */
     protected static final String USAGE_TIME_KEY = "usageTime";
 
+    /**
+     * Maximum time usage is kept in memory only, in milliseconds.
+     */
+    private static final long FLUSH_INTERVAL = 60 * 1000L;
+
+    /**
+     * Start times of the running activities, by their hash code.
+     */
+    private static final Map<Integer, Long> sStartTimes = new ConcurrentHashMap<>();
+
+    /**
+     * Usage time in milliseconds which hasn't been written yet.
+     */
+    private static final AtomicLong sPendingUsage = new AtomicLong();
+
+    private static final AtomicBoolean sFlushScheduled = new AtomicBoolean();
+
+    /**
+     * Usage time in milliseconds as stored in the preferences, -1 until loaded.
+     */
+    private static volatile long sStoredUsage = -1L;
+
+    private static Context sContext;
+
+    private static final Runnable sFlushRunnable = new Runnable() {
+        @Override
+        public void run() {
+            sFlushScheduled.set(false);
+            flush();
+        }
+    };
+
     /**
      * Starts tracking of the usage time for the given activity. The current
-     * time is saved in shared preferences with a unique key.
+     * time is kept in memory with a unique key.
      *
      * @param activity Instance of activity
      */
     public static void startUsage(Activity activity) {
-        long now = System.currentTimeMillis();
+        long now = SystemClock.elapsedRealtime();
 
         if (activity == null) {
             return;
         }
 
-        SharedPreferences.Editor editor = getPreferences(activity).edit();
-        editor.putLong(START_TIME_KEY + activity.hashCode(), now);
-        editor.apply();
+        load(activity);
+        sStartTimes.put(activity.hashCode(), now);
     }
 
     /**
-     * Stops tracking of the usage time for the given activity. Reads the
+     * Stops tracking of the usage time for the given activity. Takes the
      * start time which was stored by startUsage and calculates the
      * difference. This difference is then added to the total usage time
      * for the current version.
@@ -48,32 +96,32 @@ public class Tracking {
      * @param activity Instance of activity
      */
     public static void stopUsage(Activity activity) {
-        long now = System.currentTimeMillis();
+        long now = SystemClock.elapsedRealtime();
 
         if (activity == null) {
             return;
         }
 
+        Long start = sStartTimes.remove(activity.hashCode());
         if (!checkVersion(activity)) {
             return;
         }
+        load(activity);
 
-        SharedPreferences preferences = getPreferences(activity);
-        long start = preferences.getLong(START_TIME_KEY + activity.hashCode(), 0);
-        long sum = preferences.getLong(USAGE_TIME_KEY + Constants.APP_VERSION, 0);
-
-        if (start > 0) {
+        if (start != null) {
             long duration = now - start;
-            long newSum = sum + duration;
-
-            if (duration <= 0 || newSum < 0) {
+            if (duration <= 0 || sPendingUsage.get() + duration < 0) {
                 // Don't add negative values or values which cause overflow to tracking
                 return;
             }
+            sPendingUsage.addAndGet(duration);
+        }
 
-            SharedPreferences.Editor editor = preferences.edit();
-            editor.putLong(USAGE_TIME_KEY + Constants.APP_VERSION, newSum);
-            editor.apply();
+        if (sStartTimes.isEmpty()) {
+            // The app most likely went to the background.
+            flush();
+        } else {
+            scheduleFlush();
         }
     }
 
@@ -88,13 +136,88 @@ public class Tracking {
             return 0;
         }
 
-        SharedPreferences preferences = getPreferences(context);
-        long sum = preferences.getLong(USAGE_TIME_KEY + Constants.APP_VERSION, 0);
+        load(context);
+        long sum = sStoredUsage + sPendingUsage.get();
+        return sum < 0 ? 0 : sum / 1000;
+    }
+
+    /**
+     * Writes the usage time which is only kept in memory so far.
+     */
+    public static synchronized void flush() {
+        if (sContext == null || sStoredUsage < 0) {
+            return;
+        }
+
+        long pending = sPendingUsage.getAndSet(0);
+        if (pending == 0) {
+            return;
+        }
+
+        long sum = sStoredUsage + pending;
         if (sum < 0) {
-            preferences.edit().remove(USAGE_TIME_KEY + Constants.APP_VERSION).apply();
-            return 0;
+            return;
+        }
+        sStoredUsage = sum;
+        StateStore.get(sContext).putLong(USAGE_TIME_KEY + Constants.APP_VERSION, sum);
+    }
+
+    /**
+     * Reads the stored usage time once per process and removes keys which
+     * are no longer used, i.e. start times migrated from older versions of
+     * this class and usage times of previous app versions.
+     */
+    private static void load(Context context) {
+        if (sStoredUsage >= 0) {
+            return;
+        }
+
+        synchronized (Tracking.class) {
+            if (sStoredUsage >= 0 || !checkVersion(context)) {
+                return;
+            }
+
+            Context appContext = context.getApplicationContext();
+            sContext = appContext != null ? appContext : context;
+            sContext.registerComponentCallbacks(new ComponentCallbacks2() {
+                @Override
+                public void onTrimMemory(int level) {
+                    if (level >= TRIM_MEMORY_UI_HIDDEN) {
+                        flush();
+                    }
+                }
+
+                @Override
+                public void onConfigurationChanged(Configuration newConfig) {
+                }
+
+                @Override
+                public void onLowMemory() {
+                    flush();
+                }
+            });
+
+            StateStore store = StateStore.get(sContext);
+            String usageKey = USAGE_TIME_KEY + Constants.APP_VERSION;
+            for (String key : store.keySet()) {
+                if (key.startsWith(START_TIME_KEY) || (key.startsWith(USAGE_TIME_KEY) && !key.equals(usageKey))) {
+                    store.remove(key);
+                }
+            }
+
+            long sum = store.getLong(usageKey, 0);
+            if (sum < 0) {
+                store.remove(usageKey);
+                sum = 0;
+            }
+            sStoredUsage = sum;
+        }
+    }
+
+    private static void scheduleFlush() {
+        if (sFlushScheduled.compareAndSet(false, true)) {
+            new Handler(Looper.getMainLooper()).postDelayed(sFlushRunnable, FLUSH_INTERVAL);
         }
-        return sum / 1000;
     }
 
     /**
@@ -119,7 +242,9 @@ public class Tracking {
      *
      * @param context Context to access shared preference.
      * @return Shared preferences instance
+     * @deprecated the usage time is kept in the {@link StateStore}
      */
+    @Deprecated
     protected static SharedPreferences getPreferences(Context context) {
         return context.getSharedPreferences("HockeyApp", Context.MODE_PRIVATE);
     }
@@ -4,19 +4,27 @@ package com.audacious_software.zamboni;
 import android.Manifest;
 import android.app.Dialog;
 import android.content.Context;
+import android.content.DialogInterface;
 import android.content.Intent;
 import android.content.pm.PackageManager;
 import android.content.pm.PackageManager.NameNotFoundException;
 import android.net.Uri;
+import android.os.AsyncTask;
 import android.os.Build;
 import android.os.Bundle;
+import android.os.Debug;
+import android.os.SystemClock;
 import android.provider.Settings;
+import android.text.Spanned;
+import android.text.method.LinkMovementMethod;
 import android.util.Log;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
+import android.view.ViewTreeObserver;
 import android.webkit.WebView;
 import android.widget.LinearLayout;
+import android.widget.Toast;
 
 import androidx.appcompat.app.AlertDialog;
 import androidx.appcompat.widget.AppCompatButton;
@@ -24,17 +32,35 @@ import androidx.appcompat.widget.AppCompatTextView;
 import androidx.fragment.app.DialogFragment;
 
 import com.audacious_software.zamboni.listeners.DownloadFileListener;
+import com.audacious_software.zamboni.listeners.ReleaseNotesListener;
+import com.audacious_software.zamboni.listeners.UpdateMetricsListener;
 import com.audacious_software.zamboni.tasks.DownloadFileTask;
 import com.audacious_software.zamboni.tasks.GetFileSizeTask;
+import com.audacious_software.zamboni.tasks.RenderReleaseNotesTask;
+import com.audacious_software.zamboni.tasks.SplitDownloadTask;
 import com.audacious_software.zamboni.utils.AsyncTaskUtils;
+import com.audacious_software.zamboni.utils.DeferredDownload;
+import com.audacious_software.zamboni.utils.DownloadPolicy;
+import com.audacious_software.zamboni.utils.HockeyLog;
 import com.audacious_software.zamboni.utils.PermissionsUtil;
+import com.audacious_software.zamboni.utils.ProbeCache;
+import com.audacious_software.zamboni.utils.ReleasePayloadStore;
+import com.audacious_software.zamboni.utils.SpannedReleaseNotes;
+import com.audacious_software.zamboni.utils.SplitApks;
+import com.audacious_software.zamboni.utils.SplitInstaller;
+import com.audacious_software.zamboni.utils.TraceUtil;
+import com.audacious_software.zamboni.utils.UpdateMetrics;
+import com.audacious_software.zamboni.utils.UpdateWarmup;
 import com.audacious_software.zamboni.utils.Util;
 import com.audacious_software.zamboni.utils.VersionHelper;
 
+import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
 
+import java.io.File;
 import java.util.ArrayList;
+import java.util.List;
 import java.util.Locale;
 
 /**
@@ -56,6 +82,12 @@ public class UpdateFragment extends DialogFragment implements View.OnClickListen
      */
     public static final String FRAGMENT_VERSION_INFO = "versionInfo";
 
+    /**
+     * Handle of the metadata in the {@link ReleasePayloadStore}, used instead
+     * of {@link #FRAGMENT_VERSION_INFO} to keep the arguments small
+     */
+    public static final String FRAGMENT_VERSION_INFO_HANDLE = "versionInfoHandle";
+
     /**
      * Show as dialog
      */
@@ -64,39 +96,126 @@ public class UpdateFragment extends DialogFragment implements View.OnClickListen
     public static final String FRAGMENT_TAG = "hockey_update_dialog";
 
     /**
-     * JSON string with info for each version.
+     * Always show the release notes in a WebView.
+     */
+    public static final int RELEASE_NOTES_MODE_WEB_VIEW = 0;
+
+    /**
+     * Show the release notes as styled text if they only use simple markup,
+     * otherwise fall back to a WebView.
+     */
+    public static final int RELEASE_NOTES_MODE_AUTO = 1;
+
+    /**
+     * JSON string with info for each version, resolved on first use.
      */
     private String mVersionInfo;
 
+    /**
+     * Handle of the version info in the {@link ReleasePayloadStore}.
+     */
+    private String mVersionInfoHandle;
+
     /**
      * HockeyApp URL as a string.
      */
     private String mUrlString;
 
+    /**
+     * URLs of the APK on all its mirrors, known once the view was created.
+     */
+    private List<String> mDownloadUrls;
+
+    /**
+     * URL of the block index of the newest version, null if the feed has
+     * none.
+     */
+    private String mBlockIndexUrl;
+
+    /**
+     * True if the download policy only allows an incremental download.
+     */
+    private boolean mIncrementalOnly;
+
+    /**
+     * Split APKs of the newest version, null if the universal APK is
+     * downloaded.
+     */
+    private SplitApks mSplitApks;
+
+    /**
+     * Splits of the newest version matching the device.
+     */
+    private List<SplitApks.Split> mSplits;
+
+    /**
+     * Size of the universal APK of the newest version, -1 if unknown.
+     */
+    private long mUniversalSize = -1L;
+
+    /**
+     * Task rendering the release notes for the current view.
+     */
+    private RenderReleaseNotesTask mRenderTask;
+
     /**
      * Creates a new instance of the fragment.
      *
-     * @param versionInfo JSON string with info for each version.
+     * @param versionInfo JSON object with info for a single version.
      * @return Instance of Fragment
      */
     @SuppressWarnings("unused")
     static public UpdateFragment newInstance(JSONObject versionInfo, boolean dialog) {
-        Bundle arguments = new Bundle();
-
+        String urlString = null;
         try {
-            arguments.putString(FRAGMENT_URL, versionInfo.getString("app_url"));
-            arguments.putString(FRAGMENT_VERSION_INFO, versionInfo.toString(2));
+            urlString = versionInfo.getString("app_url");
         } catch (JSONException e) {
             e.printStackTrace();
         }
 
-        arguments.putBoolean(FRAGMENT_DIALOG, dialog);
+        JSONArray versions = new JSONArray();
+        versions.put(versionInfo);
+        return newInstance(null, versions, urlString, dialog);
+    }
 
+    /**
+     * Creates a new instance of the fragment.
+     *
+     * @param context     the context used to persist the version info, may be null
+     * @param versionInfo JSON array with info for each version.
+     * @param urlString   URL of the APK to offer as download.
+     * @return Instance of Fragment
+     */
+    static public UpdateFragment newInstance(Context context, JSONArray versionInfo, String urlString, boolean dialog) {
         UpdateFragment fragment = new UpdateFragment();
-        fragment.setArguments(arguments);
+        fragment.setArguments(createArguments(context, versionInfo.toString(), urlString, dialog));
         return fragment;
     }
 
+    /**
+     * Creates the arguments of the fragment. With a context, only a handle
+     * of the version info is included and the info itself is kept in the
+     * {@link ReleasePayloadStore}. Without one the info can't be persisted,
+     * so it is included as is and survives process death with the arguments.
+     *
+     * @param context     the context used to persist the version info, may be null
+     * @param versionInfo JSON string with info for each version.
+     * @param urlString   URL of the APK to offer as download.
+     * @param dialog      true to show the fragment as dialog.
+     * @return the arguments, also usable as Intent extras for {@link UpdateActivity}
+     */
+    public static Bundle createArguments(Context context, String versionInfo, String urlString, boolean dialog) {
+        Bundle arguments = new Bundle();
+        arguments.putString(FRAGMENT_URL, urlString);
+        if (context != null) {
+            arguments.putString(FRAGMENT_VERSION_INFO_HANDLE, ReleasePayloadStore.put(context, versionInfo));
+        } else {
+            arguments.putString(FRAGMENT_VERSION_INFO, versionInfo);
+        }
+        arguments.putBoolean(FRAGMENT_DIALOG, dialog);
+        return arguments;
+    }
+
     @Override
     public void onStart() {
         super.onStart();
@@ -128,6 +247,7 @@ public class UpdateFragment extends DialogFragment implements View.OnClickListen
         Bundle arguments = getArguments();
         this.mUrlString = arguments.getString(FRAGMENT_URL);
         this.mVersionInfo = arguments.getString(FRAGMENT_VERSION_INFO);
+        this.mVersionInfoHandle = arguments.getString(FRAGMENT_VERSION_INFO_HANDLE);
         boolean dialog = arguments.getBoolean(FRAGMENT_DIALOG);
         setShowsDialog(dialog);
     }
@@ -140,10 +260,36 @@ public class UpdateFragment extends DialogFragment implements View.OnClickListen
      */
     @Override
     public View onCreateView(LayoutInflater inflater, ViewGroup container, Bundle savedInstanceState) {
-        View view = getLayoutView();
+        boolean traced = TraceUtil.beginSection("UpdateFragment.onCreateView");
+        try {
+            return createView(container);
+        } finally {
+            TraceUtil.endSection(traced);
+        }
+    }
+
+    private View createView(ViewGroup container) {
+        // Use what was prepared while the update dialog was shown, if anything.
+        UpdateWarmup warmup = UpdateWarmup.take(getVersionInfo());
+
+        View view = null;
+        if (warmup != null && !overridesLayoutView()) {
+            view = warmup.takeLayoutView(getActivity());
+        }
+        if (view == null) {
+            view = getLayoutView();
+        }
 
         // Helper for version management.
-        VersionHelper versionHelper = new VersionHelper(getActivity(), mVersionInfo, this);
+        VersionHelper versionHelper = warmup != null && !overridesCurrentVersionCode() ? warmup.getVersionHelper() : null;
+        if (versionHelper == null) {
+            versionHelper = new VersionHelper(getActivity(), getVersionInfo(), this);
+        }
+        mDownloadUrls = versionHelper.getDownloadUrls();
+        mBlockIndexUrl = versionHelper.getBlockIndexUrl();
+        mSplits = SplitInstaller.select(getActivity(), versionHelper.getSplitApks());
+        mSplitApks = mSplits != null ? versionHelper.getSplitApks() : null;
+        mUniversalSize = versionHelper.getFileSizeBytes();
 
         AppCompatTextView nameLabel = view.findViewById(R.id.label_title);
         nameLabel.setText(Util.getAppName(getActivity()));
@@ -154,7 +300,10 @@ public class UpdateFragment extends DialogFragment implements View.OnClickListen
         final String fileDate = versionHelper.getFileDateString(container.getContext());
 
         String appSizeString = getString(R.string.hockeyapp_update_unknown_size);
-        long appSize = versionHelper.getFileSizeBytes();
+        long appSize = mSplitApks != null ? SplitInstaller.getDownloadSize(mSplitApks, mSplits) : versionHelper.getFileSizeBytes();
+        if (appSize < 0L && warmup != null) {
+            appSize = warmup.getAppSize();
+        }
         if (appSize >= 0L) {
             appSizeString = String.format(Locale.US, "%.2f", appSize / (1024.0f * 1024.0f)) + " MB";
         } else {
@@ -175,16 +324,18 @@ public class UpdateFragment extends DialogFragment implements View.OnClickListen
         AppCompatButton updateButton = view.findViewById(R.id.button_update);
         updateButton.setOnClickListener(this);
 
-        WebView webView = view.findViewById(R.id.web_update_details);
-        webView.clearCache(true);
-        webView.destroyDrawingCache();
-        webView.loadDataWithBaseURL(Constants.BASE_URL, versionHelper.getReleaseNotes(false), "text/html", "utf-8", null);
+        showReleaseNotes(view, versionHelper);
 
         return view;
     }
 
     @Override
     public void onDestroyView() {
+        if (mRenderTask != null) {
+            mRenderTask.detach();
+            mRenderTask = null;
+        }
+
         // To properly support orientation change
         Dialog dialog = getDialog();
         if (dialog != null && getRetainInstance()) {
@@ -193,6 +344,170 @@ public class UpdateFragment extends DialogFragment implements View.OnClickListen
         super.onDestroyView();
     }
 
+    /**
+     * Adds the view for the release notes and starts rendering them. Layouts
+     * with their own WebView (R.id.web_update_details) always use it,
+     * otherwise the view is added to R.id.view_update_details depending
+     * on {@link #getReleaseNotesMode()}. In the automatic mode, the markup
+     * of the notes decides the view, so unless the notes were rendered
+     * before, the view is only added once the RenderReleaseNotesTask checked
+     * them.
+     */
+    private void showReleaseNotes(View view, VersionHelper versionHelper) {
+        final long start = SystemClock.elapsedRealtime();
+        final long heapBefore = getUsedHeapBytes();
+
+        WebView webView = view.findViewById(R.id.web_update_details);
+        if (webView != null) {
+            showHtmlReleaseNotes(webView, versionHelper);
+            measureFirstFrame(webView, true, start, heapBefore);
+            return;
+        }
+
+        final ViewGroup container = view.findViewById(R.id.view_update_details);
+        if (container == null) {
+            return;
+        }
+
+        if (getReleaseNotesMode() != RELEASE_NOTES_MODE_AUTO) {
+            showHtmlReleaseNotes(addWebView(container, start, heapBefore), versionHelper);
+            return;
+        }
+
+        Spanned spannedNotes = SpannedReleaseNotes.getCached(versionHelper.getReleaseNotesCacheKey(false));
+        if (spannedNotes != null) {
+            addTextView(container, start, heapBefore).setText(spannedNotes);
+            return;
+        }
+        if (versionHelper.getCachedReleaseNotes(false) != null) {
+            showHtmlReleaseNotes(addWebView(container, start, heapBefore), versionHelper);
+            return;
+        }
+
+        mRenderTask = new RenderReleaseNotesTask(versionHelper, false, RenderReleaseNotesTask.FORMAT_AUTO, new ReleaseNotesListener() {
+            private AppCompatTextView mNotesLabel;
+
+            @Override
+            public void newestReleaseRendered(RenderReleaseNotesTask task, Spanned text) {
+                showText(text);
+            }
+
+            @Override
+            public void releaseNotesRendered(RenderReleaseNotesTask task, Spanned text) {
+                showText(text);
+                mRenderTask = null;
+            }
+
+            @Override
+            public void releaseNotesRendered(RenderReleaseNotesTask task, String html) {
+                // Loaded once: a second load replaces the document and the WebView flickers.
+                addWebView(container, start, heapBefore).loadDataWithBaseURL(Constants.BASE_URL, html, "text/html", "utf-8", null);
+                mRenderTask = null;
+            }
+
+            private void showText(Spanned text) {
+                if (mNotesLabel == null) {
+                    mNotesLabel = addTextView(container, start, heapBefore);
+                }
+                mNotesLabel.setText(text);
+            }
+        });
+        AsyncTaskUtils.execute(mRenderTask);
+    }
+
+    private WebView addWebView(ViewGroup container, long start, long heapBefore) {
+        WebView webView = new WebView(getActivity());
+        webView.setId(R.id.web_update_details);
+        container.addView(webView, new ViewGroup.LayoutParams(ViewGroup.LayoutParams.MATCH_PARENT, ViewGroup.LayoutParams.MATCH_PARENT));
+        measureFirstFrame(webView, true, start, heapBefore);
+        return webView;
+    }
+
+    private AppCompatTextView addTextView(ViewGroup container, long start, long heapBefore) {
+        View notesView = LayoutInflater.from(getActivity()).inflate(R.layout.hockeyapp_view_release_notes, container, false);
+        container.addView(notesView);
+        measureFirstFrame(notesView, false, start, heapBefore);
+
+        AppCompatTextView notesLabel = notesView.findViewById(R.id.label_release_notes);
+        notesLabel.setMovementMethod(LinkMovementMethod.getInstance());
+        return notesLabel;
+    }
+
+    private void showHtmlReleaseNotes(final WebView webView, VersionHelper versionHelper) {
+        String releaseNotes = versionHelper.getCachedReleaseNotes(false);
+        if (releaseNotes != null) {
+            webView.loadDataWithBaseURL(Constants.BASE_URL, releaseNotes, "text/html", "utf-8", null);
+            return;
+        }
+
+        // Loaded once: a second load replaces the document and the WebView flickers.
+        mRenderTask = new RenderReleaseNotesTask(versionHelper, false, new ReleaseNotesListener() {
+            @Override
+            public void releaseNotesRendered(RenderReleaseNotesTask task, String html) {
+                webView.loadDataWithBaseURL(Constants.BASE_URL, html, "text/html", "utf-8", null);
+                mRenderTask = null;
+            }
+        });
+        AsyncTaskUtils.execute(mRenderTask);
+    }
+
+    /**
+     * Reports the time and heap growth from creating the release notes view
+     * until its first frame is drawn.
+     */
+    private void measureFirstFrame(final View notesView, final boolean webView, final long start, final long heapBefore) {
+        notesView.getViewTreeObserver().addOnPreDrawListener(new ViewTreeObserver.OnPreDrawListener() {
+            @Override
+            public boolean onPreDraw() {
+                notesView.getViewTreeObserver().removeOnPreDrawListener(this);
+                onReleaseNotesShown(webView, SystemClock.elapsedRealtime() - start, getUsedHeapBytes() - heapBefore);
+                return true;
+            }
+        });
+    }
+
+    /**
+     * Called when the release notes are drawn for the first time. Override
+     * to collect the cost of the rendering modes.
+     *
+     * @param webView          true if the notes are shown in a WebView, false for styled text
+     * @param firstFrameMillis time from creating the view until its first frame
+     * @param heapBytes        growth of the Java and native heap in that time
+     */
+    protected void onReleaseNotesShown(boolean webView, long firstFrameMillis, long heapBytes) {
+        HockeyLog.debug(HockeyLog.HOCKEY_TAG, "Release notes shown in %s after %d ms, heap grew by %d KB", webView ? "WebView" : "TextView", firstFrameMillis, heapBytes / 1024);
+    }
+
+    /**
+     * Returns how the release notes are shown. Override to always use a
+     * WebView, e.g. if the notes rely on styling.
+     *
+     * @return {@link #RELEASE_NOTES_MODE_AUTO} or {@link #RELEASE_NOTES_MODE_WEB_VIEW}
+     */
+    protected int getReleaseNotesMode() {
+        return RELEASE_NOTES_MODE_AUTO;
+    }
+
+    private static long getUsedHeapBytes() {
+        Runtime runtime = Runtime.getRuntime();
+        return runtime.totalMemory() - runtime.freeMemory() + Debug.getNativeHeapAllocatedSize();
+    }
+
+    /**
+     * Returns the JSON string with info for each version, resolving the
+     * handle from the arguments on first use. That may read the info from
+     * disk on the main thread, see {@link ReleasePayloadStore#get(Context, String)}.
+     */
+    protected String getVersionInfo() {
+        if (mVersionInfo == null && mVersionInfoHandle != null) {
+            mVersionInfo = ReleasePayloadStore.get(getActivity(), mVersionInfoHandle);
+            if (mVersionInfo == null) {
+                HockeyLog.warn(HockeyLog.HOCKEY_TAG, "Version info %s is no longer available", mVersionInfoHandle);
+            }
+        }
+        return mVersionInfo;
+    }
+
     /**
      * Called when the download button is tapped. Starts the download task and
      * disables the button to avoid multiple taps.
@@ -236,7 +551,8 @@ public class UpdateFragment extends DialogFragment implements View.OnClickListen
 
     protected void prepareDownload() {
         Context context = getActivity();
-        if (!Util.isConnectedToNetwork(context)) {
+        File prefetched = DeferredDownload.getPrefetched(context, mUrlString);
+        if (prefetched == null && !Util.isConnectedToNetwork(context)) {
             showError(R.string.hockeyapp_error_no_network_message);
             return;
         }
@@ -259,8 +575,123 @@ public class UpdateFragment extends DialogFragment implements View.OnClickListen
             return;
         }
 
+        if (prefetched != null) {
+            installPrefetched(prefetched);
+            return;
+        }
+
+        long size;
+        if (mSplitApks != null) {
+            size = SplitInstaller.getDownloadSize(mSplitApks, mSplits);
+        } else {
+            ProbeCache.Entry probe = ProbeCache.get(mUrlString);
+            size = probe != null ? probe.getLength() : -1L;
+        }
+        DownloadPolicy.Conditions conditions = DownloadPolicy.getConditions(context, size, false);
+        int decision = DownloadPolicy.decide(UpdateManager.getListener(), conditions);
+        mIncrementalOnly = decision == DownloadPolicy.DECISION_DELTA_ONLY;
+        switch (decision) {
+            case DownloadPolicy.DECISION_DOWNLOAD_NOW:
+                downloadNow();
+                break;
+            case DownloadPolicy.DECISION_ASK_USER:
+                askForDownload(conditions);
+                break;
+            case DownloadPolicy.DECISION_DELTA_ONLY:
+                // Split APKs are always downloaded in full.
+                if (mSplitApks == null && mBlockIndexUrl != null) {
+                    downloadNow();
+                } else {
+                    deferDownload(decision, conditions);
+                }
+                break;
+            default:
+                deferDownload(decision, conditions);
+                break;
+        }
+    }
+
+    /**
+     * Installs the APK downloaded in the background once it's verified,
+     * or downloads it again if it changed since.
+     */
+    private void installPrefetched(final File prefetched) {
+        final Context context = getActivity().getApplicationContext();
+        AsyncTaskUtils.execute(new AsyncTask<Void, Void, Boolean>() {
+            @Override
+            protected Boolean doInBackground(Void... args) {
+                return DeferredDownload.verifyPrefetched(context, prefetched);
+            }
+
+            @Override
+            protected void onPostExecute(Boolean valid) {
+                Context activity = getActivity();
+                if (activity == null) {
+                    return;
+                }
+                if (valid) {
+                    HockeyLog.info(HockeyLog.HOCKEY_TAG, "Installing %s downloaded in the background", prefetched);
+                    DownloadFileTask.launchInstaller(activity, prefetched);
+                    dismissDialog();
+                } else {
+                    prepareDownload();
+                }
+            }
+        });
+    }
+
+    private void downloadNow() {
+        DeferredDownload.cancel();
         startDownloadTask();
+        dismissDialog();
+    }
+
+    /**
+     * Asks whether to download now, e.g. while roaming or on low battery.
+     * The fragment stays until the user answered.
+     */
+    private void askForDownload(final DownloadPolicy.Conditions conditions) {
+        AlertDialog alertDialog = new AlertDialog.Builder(getActivity())
+                .setTitle(R.string.hockeyapp_download_policy_dialog_title)
+                .setMessage(R.string.hockeyapp_download_policy_dialog_message)
+                .setPositiveButton(R.string.hockeyapp_download_policy_dialog_positive_button, new DialogInterface.OnClickListener() {
+                    @Override
+                    public void onClick(DialogInterface dialog, int which) {
+                        downloadNow();
+                    }
+                })
+                .setNegativeButton(R.string.hockeyapp_download_policy_dialog_negative_button, new DialogInterface.OnClickListener() {
+                    @Override
+                    public void onClick(DialogInterface dialog, int which) {
+                        deferDownload(DownloadPolicy.DECISION_PREFETCH_LATER, conditions);
+                    }
+                })
+                .create();
+        alertDialog.show();
+    }
+
+    private void deferDownload(int decision, DownloadPolicy.Conditions conditions) {
+        Context context = getActivity();
+        if (context == null) {
+            return;
+        }
+
+        long size = conditions.getDownloadBytes();
+        if (mSplitApks != null) {
+            // The background download fetches the universal APK, not the splits.
+            ProbeCache.Entry probe = ProbeCache.get(mUrlString);
+            size = probe != null ? probe.getLength() : mUniversalSize;
+        }
+        UpdateManagerListener listener = UpdateManager.getListener();
+        DeferredDownload.schedule(context, getDownloadUrls(), size, listener);
+        if (listener != null) {
+            listener.onDownloadDeferred(decision);
+        }
+        Toast.makeText(context, R.string.hockeyapp_download_deferred_toast, Toast.LENGTH_LONG).show();
+        dismissDialog();
+    }
 
+    private void dismissDialog() {
         if (getShowsDialog()) {
             dismiss();
         }
@@ -279,9 +710,10 @@ public class UpdateFragment extends DialogFragment implements View.OnClickListen
 
         Log.e("ZAMBONI", "START DOWNLOAD: " + this.mUrlString);
 
-        AsyncTaskUtils.execute(new DownloadFileTask(context, this.mUrlString, new DownloadFileListener() {
+        DownloadFileListener listener = new DownloadFileListener() {
             public void downloadFailed(DownloadFileTask task, Boolean userWantsRetry) {
                 if (userWantsRetry) {
+                    UpdateMetrics.getListener().onRetry(UpdateMetricsListener.PHASE_DOWNLOAD);
                     startDownloadTask();
                 }
             }
@@ -289,7 +721,57 @@ public class UpdateFragment extends DialogFragment implements View.OnClickListen
             public void downloadSuccessful(DownloadFileTask task) {
                 // Do nothing as the fragment is already dismissed
             }
-        }));
+        };
+        if (mSplitApks != null) {
+            // Only the splits for this device, installed in one session.
+            AsyncTaskUtils.execute(new SplitDownloadTask(context, mSplitApks, mSplits, listener));
+        } else {
+            DownloadFileTask task = new DownloadFileTask(context, getDownloadUrls(), listener);
+            task.setBlockIndexUrl(mBlockIndexUrl);
+            task.setFullDownloadAllowed(!mIncrementalOnly);
+            AsyncTaskUtils.execute(task);
+        }
+    }
+
+    /**
+     * Returns the URL of the arguments followed by the mirrors of the
+     * newest version in the feed.
+     */
+    private List<String> getDownloadUrls() {
+        List<String> urls = new ArrayList<>();
+        urls.add(mUrlString);
+        if (mDownloadUrls != null) {
+            for (String url : mDownloadUrls) {
+                if (!urls.contains(url)) {
+                    urls.add(url);
+                }
+            }
+        }
+        return urls;
+    }
+
+    /**
+     * Returns true if a subclass provides its own update view, in which case
+     * a view inflated in advance can't be used.
+     */
+    private boolean overridesLayoutView() {
+        try {
+            return getClass().getMethod("getLayoutView").getDeclaringClass() != UpdateFragment.class;
+        } catch (NoSuchMethodException e) {
+            return true;
+        }
+    }
+
+    /**
+     * Returns true if a subclass determines the current version code itself,
+     * in which case versions parsed in advance can't be used.
+     */
+    private boolean overridesCurrentVersionCode() {
+        try {
+            return getClass().getMethod("getCurrentVersionCode").getDeclaringClass() != UpdateFragment.class;
+        } catch (NoSuchMethodException e) {
+            return true;
+        }
     }
 
     /**
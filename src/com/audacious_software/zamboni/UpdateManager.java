@@ -13,6 +13,7 @@ import androidx.fragment.app.Fragment;
 import com.audacious_software.zamboni.tasks.CheckUpdateTask;
 import com.audacious_software.zamboni.tasks.CheckUpdateTaskWithUI;
 import com.audacious_software.zamboni.utils.AsyncTaskUtils;
+import com.audacious_software.zamboni.utils.TraceUtil;
 
 import java.lang.ref.WeakReference;
 import java.util.Date;
@@ -60,16 +61,21 @@ public class UpdateManager {
      * @param isDialogRequired if false, no alert dialog is shown
      */
     public static void register(AppCompatActivity activity, UpdateManagerListener listener, Uri updateFeed, boolean isDialogRequired) {
-        Constants.loadFromContext(activity);
+        boolean traced = TraceUtil.beginSection("register");
+        try {
+            Constants.loadFromContext(activity);
 
-        WeakReference<AppCompatActivity> weakActivity = new WeakReference<>(activity);
+            WeakReference<AppCompatActivity> weakActivity = new WeakReference<>(activity);
 
-        if (dialogShown(weakActivity)) {
-            return;
-        }
+            if (dialogShown(weakActivity)) {
+                return;
+            }
 
-        if ((!checkExpiryDate(weakActivity, listener)) && ((listener != null && listener.canUpdateInMarket()) || !installedFromMarket(weakActivity))) {
-            startUpdateTask(weakActivity, listener, updateFeed, isDialogRequired);
+            if ((!checkExpiryDate(weakActivity, listener)) && ((listener != null && listener.canUpdateInMarket()) || !installedFromMarket(weakActivity))) {
+                startUpdateTask(weakActivity, listener, updateFeed, isDialogRequired);
+            }
+        } finally {
+            TraceUtil.endSection(traced);
         }
     }
 
@@ -208,6 +214,13 @@ public class UpdateManager {
         }
     }
 
+    /**
+     * Returns the listener of the last update check, or null.
+     */
+    static UpdateManagerListener getListener() {
+        return updateTask != null ? updateTask.getListener() : null;
+    }
+
     /**
      * Returns true if the dialog is already shown.
      */
@@ -2,6 +2,7 @@ package com.audacious_software.zamboni;
 
 import android.content.Context;
 
+import com.audacious_software.zamboni.utils.DownloadPolicy;
 import com.audacious_software.zamboni.utils.Util;
 
 import org.json.JSONArray;
@@ -50,6 +51,77 @@ public abstract class UpdateManagerListener {
         return Util.runsOnTablet(context);
     }
 
+    /**
+     * Return true to prepare the update UI in the background as soon as an
+     * update was found, i.e. parse the versions, render the release notes,
+     * determine the download size and inflate the layout while the update
+     * dialog is shown. Costs some work and traffic for updates that the
+     * user declines.
+     *
+     * @return true to warm up the update UI
+     */
+    public boolean prewarmUpdateUi() {
+        return false;
+    }
+
+    /**
+     * Return true to connect to the host of the APK as soon as an update
+     * was found, while the update dialog is shown. The download then starts
+     * on a connection that is already established. Costs a request and a
+     * TLS handshake for updates that the user declines.
+     *
+     * @return true to pre-connect the download
+     */
+    public boolean preconnectDownload() {
+        return false;
+    }
+
+    /**
+     * Return true to send a second request to the next mirror of the APK
+     * if the first one doesn't respond in about twice its usual time, and
+     * to download from whichever answers first. Only matters for feeds
+     * listing mirrors. Costs a second connection and possibly some
+     * duplicate traffic.
+     *
+     * @return true to hedge the first request of a download
+     */
+    public boolean hedgeMirrorRequests() {
+        return false;
+    }
+
+    /**
+     * Return whether the update is downloaded now, one of the DECISION
+     * constants of {@link DownloadPolicy}. Called when the user taps the
+     * download button, and for a deferred download whenever the network or
+     * the power supply change. See {@link DownloadPolicy#suggest(DownloadPolicy.Conditions)}
+     * for what the library suggests.
+     *
+     * @param conditions        the state of the network and the battery
+     * @param suggestedDecision the decision of the library
+     * @return the decision
+     */
+    public int getDownloadDecision(DownloadPolicy.Conditions conditions, int suggestedDecision) {
+        return suggestedDecision;
+    }
+
+    /**
+     * Called when the download of the update was deferred.
+     *
+     * @param decision the DECISION constant of {@link DownloadPolicy} that
+     *                 deferred it
+     */
+    public void onDownloadDeferred(int decision) {
+        // Do nothing
+    }
+
+    /**
+     * Called when a deferred download finished in the background. The
+     * next tap on the download button opens the installer right away.
+     */
+    public void onUpdatePrefetched() {
+        // Do nothing
+    }
+
     /**
      * Called when the update manager found no update.
      */
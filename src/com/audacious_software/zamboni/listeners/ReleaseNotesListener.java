@@ -0,0 +1,34 @@
+package com.audacious_software.zamboni.listeners;
+
+import android.text.Spanned;
+
+import com.audacious_software.zamboni.tasks.RenderReleaseNotesTask;
+
+/**
+ * <h3>Description</h3>
+ *
+ * Abstract class for callbacks to be invoked from the RenderReleaseNotesTask.
+ * Depending on the task, the notes are delivered as HTML or as styled text.
+ **/
+public abstract class ReleaseNotesListener {
+    /**
+     * Called with a document containing only the newest release, before
+     * the older releases have been rendered. Not called if the notes were
+     * rendered in one go.
+     */
+    public void newestReleaseRendered(RenderReleaseNotesTask task, String html) {
+    }
+
+    public void releaseNotesRendered(RenderReleaseNotesTask task, String html) {
+    }
+
+    /**
+     * Called with styled text containing only the newest release, before
+     * the older releases have been converted.
+     */
+    public void newestReleaseRendered(RenderReleaseNotesTask task, Spanned text) {
+    }
+
+    public void releaseNotesRendered(RenderReleaseNotesTask task, Spanned text) {
+    }
+}
@@ -4,24 +4,39 @@ import android.content.Context;
 import android.net.TrafficStats;
 import android.net.Uri;
 import android.os.AsyncTask;
+import android.os.SystemClock;
 import android.util.Log;
 
 import com.audacious_software.zamboni.Constants;
 import com.audacious_software.zamboni.Tracking;
 import com.audacious_software.zamboni.UpdateManagerListener;
+import com.audacious_software.zamboni.listeners.UpdateMetricsListener;
+import com.audacious_software.zamboni.utils.AddressRacer;
+import com.audacious_software.zamboni.utils.BandwidthEstimator;
+import com.audacious_software.zamboni.utils.CircuitBreaker;
+import com.audacious_software.zamboni.utils.FeedParser;
 import com.audacious_software.zamboni.utils.HockeyLog;
+import com.audacious_software.zamboni.utils.HttpDownload;
+import com.audacious_software.zamboni.utils.HttpStatusException;
+import com.audacious_software.zamboni.utils.MirrorSelector;
+import com.audacious_software.zamboni.utils.NetworkMonitor;
+import com.audacious_software.zamboni.utils.RequestTimer;
+import com.audacious_software.zamboni.utils.RetryPolicy;
+import com.audacious_software.zamboni.utils.StateStore;
+import com.audacious_software.zamboni.utils.TraceUtil;
+import com.audacious_software.zamboni.utils.UpdateMetrics;
 import com.audacious_software.zamboni.utils.Util;
 import com.audacious_software.zamboni.utils.VersionHelper;
 
 import org.json.JSONArray;
 import org.json.JSONException;
-import org.json.JSONObject;
 
 import java.io.BufferedInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.UnsupportedEncodingException;
 import java.lang.ref.WeakReference;
+import java.net.HttpURLConnection;
 import java.net.URL;
 import java.net.URLConnection;
 import java.net.URLEncoder;
@@ -33,7 +48,7 @@ import java.net.URLEncoder;
  * fetching version data from Hockeyapp.
  **/
 public class CheckUpdateTask extends AsyncTask<Void, String, JSONArray> {
-    private static final int MAX_NUMBER_OF_VERSIONS = 25;
+    protected static final int CONNECT_TIMEOUT = 15000;
 
     protected Uri mUpdateFeed = null;
 
@@ -41,6 +56,8 @@ public class CheckUpdateTask extends AsyncTask<Void, String, JSONArray> {
     protected Boolean mandatory = false;
     protected UpdateManagerListener listener;
     private long usageTime = 0;
+    private int mTraceCookie;
+    private int mFeedBytes = -1;
 
     public CheckUpdateTask(WeakReference<? extends Context> weakContext, Uri updateFeed) {
         this(weakContext, updateFeed, null);
@@ -49,6 +66,7 @@ public class CheckUpdateTask extends AsyncTask<Void, String, JSONArray> {
     public CheckUpdateTask(WeakReference<? extends Context> weakContext, Uri updateFeed, UpdateManagerListener listener) {
         this.mUpdateFeed = updateFeed;
         this.listener = listener;
+        MirrorSelector.setHedgingEnabled(listener != null && listener.hedgeMirrorRequests());
 
         Context ctx = null;
         if (weakContext != null) {
@@ -78,6 +96,10 @@ public class CheckUpdateTask extends AsyncTask<Void, String, JSONArray> {
         weakContext = null;
     }
 
+    public UpdateManagerListener getListener() {
+        return listener;
+    }
+
     protected int getVersionCode() {
         return Integer.parseInt(Constants.APP_VERSION);
     }
@@ -89,82 +111,115 @@ public class CheckUpdateTask extends AsyncTask<Void, String, JSONArray> {
             return null;
         }
 
+        mTraceCookie = TraceUtil.beginAsyncSection("checkUpdate");
+        String threadName = TraceUtil.nameThread("Check");
+        boolean traced = TraceUtil.beginSection("fetchFeed");
         try {
             int versionCode = getVersionCode();
-            URL url = new URL(this.mUpdateFeed.toString());
-
-            TrafficStats.setThreadStatsTag(Constants.THREAD_STATS_TAG);
-            URLConnection connection = createConnection(url);
-            connection.connect();
-
-            InputStream inputStream = new BufferedInputStream(connection.getInputStream());
-            String jsonString = Util.convertStreamToString(inputStream);
+            final URL url = new URL(this.mUpdateFeed.toString());
+
+            CircuitBreaker.setStore(StateStore.get(context));
+            BandwidthEstimator.setStore(StateStore.get(context));
+            MirrorSelector.setStore(StateStore.get(context));
+            NetworkMonitor.get(context);
+            TrafficStats.setThreadStatsTag(Constants.THREAD_STATS_TAG_CHECK);
+            String jsonString = RetryPolicy.getDefault().execute(url.getHost(), UpdateMetricsListener.PHASE_CHECK, UpdateMetrics.getListener(), new RetryPolicy.Request<String>() {
+                @Override
+                public String run() throws IOException {
+                    return fetchFeed(url);
+                }
+            });
 
-            JSONArray json = new JSONArray(jsonString);
+            long parseStart = SystemClock.elapsedRealtime();
+            JSONArray json = parseFeed(context, jsonString, versionCode);
 
-            if (findNewVersion(context, json, versionCode)) {
-                json = limitResponseSize(json);
-                return json;
-            }
+            UpdateMetrics.getListener().onFeedParsed(mFeedBytes >= 0 ? mFeedBytes : jsonString.length(), SystemClock.elapsedRealtime() - parseStart);
+            return json;
+        } catch (CircuitBreaker.OpenException e) {
+            HockeyLog.info(HockeyLog.HOCKEY_TAG, e.getMessage());
         } catch (IOException | JSONException e) {
             if(Util.isConnectedToNetwork(context)) {
                 HockeyLog.error("Zamboni", "Could not fetch updates although connected to Internet.", e);
             }
         } finally {
             TrafficStats.clearThreadStatsTag();
+            TraceUtil.endSection(traced);
+            TraceUtil.restoreThreadName(threadName);
         }
 
         return null;
     }
 
-    protected URLConnection createConnection(URL url) throws IOException {
-        URLConnection connection = Util.openHttpsConnection(url);
-        connection.addRequestProperty("User-Agent", Constants.SDK_USER_AGENT);
-        return connection;
-    }
-
-    private boolean findNewVersion(Context context, JSONArray json, int versionCode) {
+    /**
+     * Requests the feed once.
+     *
+     * @throws HttpStatusException if the server answers with an error
+     */
+    private String fetchFeed(URL url) throws IOException {
+        RequestTimer timer = RequestTimer.start(UpdateMetricsListener.PHASE_CHECK);
         try {
-            boolean newerVersionFound = false;
-
-            for (int index = 0; index < json.length(); index++) {
-                JSONObject entry = json.getJSONObject(index);
-
-                boolean largerVersionCode = (entry.getInt("version") > versionCode);
-                boolean newerApkFile = ((entry.getInt("version") == versionCode) && VersionHelper.isNewerThanLastUpdateTime(context, entry.getLong("timestamp")));
-                // boolean minRequirementsMet = VersionHelper.compareVersionStrings(entry.getString("minimum_os_version"), VersionHelper.mapGoogleVersion(Build.VERSION.RELEASE)) <= 0;
+            URLConnection connection = createConnection(url);
+            connection.connect();
+            if (connection instanceof HttpURLConnection && !HttpDownload.isSuccessful(((HttpURLConnection) connection).getResponseCode())) {
+                throw HttpStatusException.forResponse((HttpURLConnection) connection);
+            }
 
-                // if ((largerVersionCode || newerApkFile) && minRequirementsMet) {
-                if (largerVersionCode || newerApkFile) {
-                    if (entry.has("mandatory")) {
-                        mandatory |= entry.getBoolean("mandatory");
-                    }
-                    newerVersionFound = true;
-                }
+            InputStream inputStream = new BufferedInputStream(connection.getInputStream());
+            timer.responseReceived();
+            long readStart = SystemClock.elapsedRealtime();
+            String jsonString = Util.convertStreamToString(inputStream);
+            mFeedBytes = connection.getContentLength();
+            if (BandwidthEstimator.addSample(mFeedBytes >= 0 ? mFeedBytes : jsonString.length(), SystemClock.elapsedRealtime() - readStart)) {
+                UpdateMetrics.getListener().onBandwidthEstimated(BandwidthEstimator.getNetworkType(), BandwidthEstimator.getBytesPerSecond());
             }
+            return jsonString;
+        } finally {
+            timer.finish();
+        }
+    }
 
-            return newerVersionFound;
-        } catch (JSONException e) {
+    /**
+     * Returns the newest versions of the feed if it contains an update, null otherwise.
+     */
+    private JSONArray parseFeed(final Context context, String jsonString, int versionCode) throws JSONException {
+        boolean traced = TraceUtil.beginSection("parseFeed");
+        try {
+            JSONArray json = new JSONArray(jsonString);
+            FeedParser parser = new FeedParser(versionCode, new FeedParser.UpdateTimeCheck() {
+                @Override
+                public boolean isNewerThanLastUpdateTime(long timestamp) {
+                    return VersionHelper.isNewerThanLastUpdateTime(context, timestamp);
+                }
+            });
 
-            return false;
+            boolean newVersionFound = parser.findNewVersion(json);
+            mandatory |= parser.isMandatory();
+            return newVersionFound ? FeedParser.limitResponseSize(json, VersionHelper.MAX_NUMBER_OF_VERSIONS) : null;
+        } finally {
+            TraceUtil.endSection(traced);
         }
     }
 
-    private JSONArray limitResponseSize(JSONArray json) {
-        JSONArray result = new JSONArray();
-        for (int index = 0; index < Math.min(json.length(), MAX_NUMBER_OF_VERSIONS); index++) {
-            try {
-                result.put(json.get(index));
-            } catch (JSONException ignored) {
-            }
-        }
-        return result;
+    protected URLConnection createConnection(URL url) throws IOException {
+        URLConnection connection = Util.openConnection(url);
+        connection.addRequestProperty("User-Agent", Constants.SDK_USER_AGENT);
+        connection.setConnectTimeout(CONNECT_TIMEOUT);
+        AddressRacer.measure(url, CONNECT_TIMEOUT, UpdateMetricsListener.PHASE_CHECK, UpdateMetrics.getListener());
+        return connection;
+    }
+
+    @Override
+    protected void onCancelled() {
+        TraceUtil.endAsyncSection("checkUpdate", mTraceCookie);
     }
 
     @Override
     protected void onPostExecute(JSONArray updateInfo) {
+        TraceUtil.endAsyncSection("checkUpdate", mTraceCookie);
+
         if (updateInfo != null) {
             HockeyLog.verbose("Zamboni", "Received Update Info");
+            UpdateMetrics.markUpdateDetected();
 
             if (listener != null) {
                 listener.onUpdateAvailable(updateInfo);
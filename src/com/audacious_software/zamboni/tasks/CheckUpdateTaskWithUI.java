@@ -3,6 +3,7 @@ package com.audacious_software.zamboni.tasks;
 import android.content.DialogInterface;
 import android.content.Intent;
 import android.net.Uri;
+import android.os.Bundle;
 import android.util.Log;
 import android.widget.Toast;
 
@@ -16,14 +17,15 @@ import com.audacious_software.zamboni.R;
 import com.audacious_software.zamboni.UpdateActivity;
 import com.audacious_software.zamboni.UpdateFragment;
 import com.audacious_software.zamboni.UpdateManagerListener;
+import com.audacious_software.zamboni.utils.DownloadPreconnect;
 import com.audacious_software.zamboni.utils.HockeyLog;
+import com.audacious_software.zamboni.utils.UpdateWarmup;
 import com.audacious_software.zamboni.utils.Util;
 
 import org.json.JSONArray;
 import org.json.JSONException;
 
 import java.lang.ref.WeakReference;
-import java.lang.reflect.Method;
 
 /**
  * <h3>Description</h3>
@@ -61,7 +63,32 @@ public class CheckUpdateTaskWithUI extends CheckUpdateTask {
         super.onPostExecute(updateInfo);
 
         if ((updateInfo != null) && (mIsDialogRequired)) {
-            showDialog(mWeakActivity.get(), updateInfo);
+            AppCompatActivity activity = mWeakActivity.get();
+            if (listener != null && listener.prewarmUpdateUi()) {
+                prewarm(activity, updateInfo);
+            }
+            if (listener != null && listener.preconnectDownload() && activity != null) {
+                DownloadPreconnect.start(activity, getAppUrl(updateInfo));
+            }
+            showDialog(activity, updateInfo);
+        }
+    }
+
+    private void prewarm(AppCompatActivity activity, JSONArray updateInfo) {
+        if ((activity == null) || (activity.isFinishing())) {
+            return;
+        }
+
+        boolean inflateLayout = !mandatory && listener.useUpdateDialog(activity);
+        UpdateWarmup.start(activity, updateInfo.toString(), getAppUrl(updateInfo), inflateLayout);
+    }
+
+    private static String getAppUrl(JSONArray updateInfo) {
+        try {
+            return updateInfo.getJSONObject(0).getString("app_url");
+        } catch (JSONException e) {
+            HockeyLog.error("Zamboni", "Update info does not contain an APK URL.", e);
+            return null;
         }
     }
 
@@ -77,6 +104,8 @@ public class CheckUpdateTaskWithUI extends CheckUpdateTask {
             builder.setMessage(R.string.hockeyapp_update_dialog_message);
             builder.setNegativeButton(R.string.hockeyapp_update_dialog_negative_button, new DialogInterface.OnClickListener() {
                 public void onClick(DialogInterface dialog, int which) {
+                    UpdateWarmup.clear();
+                    DownloadPreconnect.cancel();
                     cleanUp();
                     if (null != listener) {
                         listener.onCancel();
@@ -87,6 +116,8 @@ public class CheckUpdateTaskWithUI extends CheckUpdateTask {
             builder.setOnCancelListener(new DialogInterface.OnCancelListener() {
                 @Override
                 public void onCancel(DialogInterface dialog) {
+                    UpdateWarmup.clear();
+                    DownloadPreconnect.cancel();
                     cleanUp();
                     if (null != listener) {
                         listener.onCancel();
@@ -134,14 +165,9 @@ public class CheckUpdateTaskWithUI extends CheckUpdateTask {
                 fragmentClass = listener.getUpdateFragmentClass();
             }
 
-            try {
-                Method method = fragmentClass.getMethod("newInstance", String.class, String.class, boolean.class);
-                DialogFragment updateFragment = (DialogFragment) method.invoke(null, updateInfo, true);
-                updateFragment.show(fragmentTransaction, UpdateFragment.FRAGMENT_TAG);
-
-            } catch (Exception e) { // can't catch ReflectiveOperationException here because not targeting API level 19 or later
-                HockeyLog.error("An exception happened while showing the update fragment", e);
-            }
+            Bundle arguments = UpdateFragment.createArguments(activity, updateInfo.toString(), getAppUrl(updateInfo), true);
+            DialogFragment updateFragment = (DialogFragment) Fragment.instantiate(activity, fragmentClass.getName(), arguments);
+            updateFragment.show(fragmentTransaction, UpdateFragment.FRAGMENT_TAG);
         }
     }
 
@@ -155,15 +181,7 @@ public class CheckUpdateTaskWithUI extends CheckUpdateTask {
             Intent intent = new Intent();
             intent.setClass(activity, UpdateActivity.class);
             intent.putExtra(UpdateActivity.FRAGMENT_CLASS, fragmentClass.getName());
-            intent.putExtra(UpdateFragment.FRAGMENT_VERSION_INFO, updateInfo.toString());
-
-            try {
-                intent.putExtra(UpdateFragment.FRAGMENT_URL, updateInfo.getJSONObject(0).getString("app_url"));
-            } catch (JSONException e) {
-                e.printStackTrace();
-            }
-
-            intent.putExtra(UpdateFragment.FRAGMENT_DIALOG, false);
+            intent.putExtras(UpdateFragment.createArguments(activity, updateInfo.toString(), getAppUrl(updateInfo), false));
             activity.startActivity(intent);
 
             if (finish) {
@@ -12,6 +12,7 @@ import android.net.Uri;
 import android.os.AsyncTask;
 import android.os.Build;
 import android.os.StrictMode;
+import android.os.SystemClock;
 
 import androidx.core.content.FileProvider;
 
@@ -19,20 +20,39 @@ import com.audacious_software.zamboni.Constants;
 
 import com.audacious_software.zamboni.R;
 import com.audacious_software.zamboni.listeners.DownloadFileListener;
+import com.audacious_software.zamboni.listeners.UpdateMetricsListener;
+import com.audacious_software.zamboni.utils.AddressRacer;
+import com.audacious_software.zamboni.utils.BandwidthEstimator;
+import com.audacious_software.zamboni.utils.BlockDownload;
+import com.audacious_software.zamboni.utils.BlockIndex;
+import com.audacious_software.zamboni.utils.CircuitBreaker;
 import com.audacious_software.zamboni.utils.HockeyLog;
+import com.audacious_software.zamboni.utils.HttpDownload;
+import com.audacious_software.zamboni.utils.HttpStatusException;
+import com.audacious_software.zamboni.utils.MirrorDownload;
+import com.audacious_software.zamboni.utils.MirrorSelector;
+import com.audacious_software.zamboni.utils.ProbeCache;
+import com.audacious_software.zamboni.utils.NetworkMonitor;
+import com.audacious_software.zamboni.utils.RequestTimer;
+import com.audacious_software.zamboni.utils.RetryPolicy;
+import com.audacious_software.zamboni.utils.StateStore;
+import com.audacious_software.zamboni.utils.TraceUtil;
+import com.audacious_software.zamboni.utils.UpdateMetrics;
 import com.audacious_software.zamboni.utils.Util;
 
-import java.io.BufferedInputStream;
 import java.io.File;
-import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.OutputStream;
-import javax.net.ssl.HttpsURLConnection;
+import java.net.HttpURLConnection;
 import java.net.URL;
 import java.net.URLConnection;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 import java.util.UUID;
 
+import javax.net.ssl.HttpsURLConnection;
+
 /**
  * <h3>Description</h3>
  *
@@ -48,20 +68,57 @@ public class DownloadFileTask extends AsyncTask<Void, Integer, Long> {
     protected Context mContext;
     protected DownloadFileListener mNotifier;
     protected String mUrlString;
+    protected List<String> mUrlStrings;
     protected String mFilename;
     protected File mDirectory;
     protected ProgressDialog mProgressDialog;
+    protected String mBlockIndexUrl;
+    protected boolean mFullDownloadAllowed = true;
     private String mDownloadErrorMessage;
+    private int mDownloadErrorResource;
+    protected int mTraceCookie;
+    private boolean mStageTraced;
+    private volatile long mBytesReceived;
+    private long mTransferStart = -1L;
 
     public DownloadFileTask(Context context, String urlString, DownloadFileListener notifier) {
+        this(context, Collections.singletonList(urlString), notifier);
+    }
+
+    /**
+     * @param urlStrings the URLs of the APK on its mirrors, the primary one
+     *                   first, see {@link MirrorDownload}
+     */
+    public DownloadFileTask(Context context, List<String> urlStrings, DownloadFileListener notifier) {
         this.mContext = context;
-        this.mUrlString = urlString;
+        this.mUrlString = urlStrings.get(0);
+        this.mUrlStrings = urlStrings;
         this.mFilename = UUID.randomUUID() + ".apk";
         this.mDirectory = new File(context.getExternalFilesDir(null), "Download");
         this.mNotifier = notifier;
         this.mDownloadErrorMessage = null;
     }
 
+    /**
+     * Lets the task build the APK from the unchanged blocks of the
+     * installed one and only download the rest, see {@link BlockDownload}.
+     * The whole APK is downloaded if that fails.
+     *
+     * @param blockIndexUrl the URL of the block index of the APK, or null
+     */
+    public void setBlockIndexUrl(String blockIndexUrl) {
+        this.mBlockIndexUrl = blockIndexUrl;
+    }
+
+    /**
+     * Sets whether the whole APK may be downloaded. If not, the task only
+     * builds the APK from the block index, see {@link #setBlockIndexUrl(String)},
+     * and fails if that isn't possible.
+     */
+    public void setFullDownloadAllowed(boolean fullDownloadAllowed) {
+        this.mFullDownloadAllowed = fullDownloadAllowed;
+    }
+
     public void attach(Context context) {
         this.mContext = context;
     }
@@ -73,71 +130,293 @@ public class DownloadFileTask extends AsyncTask<Void, Integer, Long> {
 
     @Override
     protected Long doInBackground(Void... args) {
-        InputStream input = null;
-        OutputStream output = null;
+        RequestTimer timer = null;
+        boolean successful = false;
 
+        mTraceCookie = TraceUtil.beginAsyncSection("download");
+        String threadName = TraceUtil.nameThread("Download");
+        mStageTraced = TraceUtil.beginSection("download.connect");
+        boolean stageOpen = true;
         try {
-            URL url = new URL(this.mUrlString);
-            TrafficStats.setThreadStatsTag(Constants.THREAD_STATS_TAG);
-            URLConnection connection = createConnection(url, MAX_REDIRECTS);
-            connection.connect();
-
-            int lengthOfFile = connection.getContentLength();
-            String contentType = connection.getContentType();
-
-            if (contentType != null && contentType.contains("text")) {
-                // This is not the expected APK file. Maybe the redirect could not be resolved.
-                mDownloadErrorMessage = "The requested download does not appear to be a file.";
-                return 0L;
+            List<URL> mirrors = new ArrayList<>();
+            for (String urlString : mUrlStrings) {
+                mirrors.add(new URL(urlString));
             }
+            ProbeCache.Entry probed = ProbeCache.get(mUrlString);
 
             boolean result = mDirectory.mkdirs();
             if (!result && !mDirectory.exists()) {
                 throw new IOException("Could not create the dir(s):" + mDirectory.getAbsolutePath());
             }
-            File file = new File(mDirectory, this.mFilename);
-
-            input = new BufferedInputStream(connection.getInputStream());
-            output = new FileOutputStream(file);
-
-            byte data[] = new byte[1024];
-            int count;
-            long total = 0;
-            while ((count = input.read(data)) != -1) {
-                total += count;
-                publishProgress(Math.round(total * 100.0f / lengthOfFile));
-                output.write(data, 0, count);
-            }
+            final File file = new File(mDirectory, this.mFilename);
 
-            output.flush();
+            if (mContext != null) {
+                CircuitBreaker.setStore(StateStore.get(mContext));
+                BandwidthEstimator.setStore(StateStore.get(mContext));
+                MirrorSelector.setStore(StateStore.get(mContext));
+                NetworkMonitor.get(mContext);
+            }
+            TrafficStats.setThreadStatsTag(Constants.THREAD_STATS_TAG_DOWNLOAD);
+            timer = RequestTimer.start(UpdateMetricsListener.PHASE_DOWNLOAD);
+            final RequestTimer requestTimer = timer;
+            final MirrorDownload download = new MirrorDownload(mirrors, new MirrorDownload.Connector() {
+                @Override
+                public HttpURLConnection connect(URL mirror, long offset) throws IOException {
+                    HttpURLConnection connection = openMirror(mirror, offset);
+                    requestTimer.responseReceived();
+                    return connection;
+                }
+            }, probed != null ? probed.getLength() : -1L);
+
+            final HttpDownload.ProgressListener progressListener = new HttpDownload.ProgressListener() {
+                @Override
+                public void onProgress(long total, int length) {
+                    if (mTransferStart < 0L) {
+                        mTransferStart = SystemClock.elapsedRealtime();
+                        TraceUtil.endSection(mStageTraced);
+                        mStageTraced = TraceUtil.beginSection("download.transfer");
+                    }
+                    mBytesReceived = total;
+                    publishProgress(Math.round(total * 100.0f / length));
+                }
+            };
+            long total = downloadBlocks(file, progressListener, timer);
+            if (total < 0L && !mFullDownloadAllowed) {
+                HockeyLog.info(HockeyLog.HOCKEY_TAG, "Not downloading the whole APK of %s", mUrlString);
+                mDownloadErrorResource = R.string.hockeyapp_download_failed_incremental_message;
+                return 0L;
+            }
+            if (total < 0L) {
+                // The breakers of the mirrors are checked by MirrorDownload; retries resume the file.
+                total = RetryPolicy.getDefault().execute(null, UpdateMetricsListener.PHASE_DOWNLOAD, UpdateMetrics.getListener(), new RetryPolicy.Request<Long>() {
+                    @Override
+                    public Long run() throws IOException {
+                        return download.download(file, progressListener);
+                    }
+                });
+            }
+            successful = true;
+            TraceUtil.endSection(mStageTraced);
+            stageOpen = false;
 
+            if (download.getFailoverCount() > 0) {
+                HockeyLog.info(HockeyLog.HOCKEY_TAG, "Downloaded from %s after %d failovers", download.getMirror(), download.getFailoverCount());
+            }
+            verifyApk(file);
             return total;
+        } catch (MirrorDownload.NotAFileException e) {
+            // This is not the expected APK file. Maybe the redirect could not be resolved.
+            mDownloadErrorMessage = "The requested download does not appear to be a file.";
+            return 0L;
+        } catch (CircuitBreaker.OpenException e) {
+            HockeyLog.info(HockeyLog.HOCKEY_TAG, e.getMessage());
+            return 0L;
         } catch (IOException e) {
-            HockeyLog.error("Failed to download " + mUrlString, e);
+            HockeyLog.error(HockeyLog.HOCKEY_TAG, "Failed to download %s", mUrlString, e);
             return 0L;
         } finally {
-            TrafficStats.clearThreadStatsTag();
-            try {
-                if (output != null) {
-                    output.close();
+            if (timer != null) {
+                timer.finish();
+            }
+            if (mTransferStart >= 0L) {
+                UpdateMetrics.getListener().onDownloadFinished(mBytesReceived, SystemClock.elapsedRealtime() - mTransferStart, successful);
+                if (mBytesReceived >= BandwidthEstimator.MIN_SAMPLE_BYTES) {
+                    UpdateMetrics.getListener().onBandwidthEstimated(BandwidthEstimator.getNetworkType(), BandwidthEstimator.getBytesPerSecond());
                 }
-                if (input != null) {
-                    input.close();
+            }
+            TrafficStats.clearThreadStatsTag();
+            if (stageOpen) {
+                TraceUtil.endSection(mStageTraced);
+            }
+            TraceUtil.restoreThreadName(threadName);
+        }
+    }
+
+    /**
+     * Builds the APK from the blocks of the installed APK and the ranges
+     * of the new one that changed, if the feed has a block index for it.
+     *
+     * @param file     receives the APK
+     * @param listener notified with the bytes of the APK built so far
+     * @param timer    times the requests, the index is the first response
+     * @return the size of the APK, or -1 if it has to be downloaded in full
+     */
+    private long downloadBlocks(File file, HttpDownload.ProgressListener listener, RequestTimer timer) {
+        Context context = mContext;
+        if (mBlockIndexUrl == null || context == null) {
+            return -1L;
+        }
+
+        try {
+            BlockIndex index = fetchBlockIndex(new URL(mBlockIndexUrl), timer);
+            // Ranges are requested from where the size probe was redirected to, if known.
+            ProbeCache.Entry resolved = ProbeCache.get(mUrlString);
+            URL url = resolved != null ? resolved.getUrl() : new URL(mUrlString);
+            BlockDownload download = new BlockDownload(index, url, createConnectionFactory());
+            download.setWholeFileAllowed(mFullDownloadAllowed);
+            long total = download.download(new File(context.getApplicationInfo().sourceDir), file, listener);
+
+            mBytesReceived = download.getFetchedBytes();
+            UpdateMetrics.getListener().onBlockDownload(download.getReusedBytes(), download.getFetchedBytes(), download.getScanMillis());
+            HockeyLog.info(HockeyLog.HOCKEY_TAG, "Built %s from %d installed and %d downloaded bytes", mUrlString, download.getReusedBytes(), download.getFetchedBytes());
+            return total;
+        } catch (IOException e) {
+            if (mFullDownloadAllowed) {
+                HockeyLog.warn(HockeyLog.HOCKEY_TAG, "Block download of %s failed, downloading the whole APK", mUrlString, e);
+            } else {
+                HockeyLog.warn(HockeyLog.HOCKEY_TAG, "Block download of %s failed", mUrlString, e);
+            }
+            if (file.exists() && !file.delete()) {
+                HockeyLog.debug(HockeyLog.HOCKEY_TAG, "Could not delete %s", file);
+            }
+            return -1L;
+        }
+    }
+
+    private BlockIndex fetchBlockIndex(URL url, RequestTimer timer) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) createConnection(url, MAX_REDIRECTS);
+        int code = connection.getResponseCode();
+        timer.responseReceived();
+        if (code != HttpURLConnection.HTTP_OK) {
+            throw HttpStatusException.forResponse(connection);
+        }
+        InputStream input = connection.getInputStream();
+        try {
+            return BlockIndex.parse(input);
+        } finally {
+            input.close();
+        }
+    }
+
+    /**
+     * Requests the APK from a mirror, starting from where its size probe
+     * was redirected to if that's still valid. May be called on other
+     * threads if the request is hedged.
+     *
+     * @param mirror a URL of the APK
+     * @param offset the first byte wanted
+     */
+    protected HttpURLConnection openMirror(URL mirror, long offset) throws IOException {
+        TrafficStats.setThreadStatsTag(Constants.THREAD_STATS_TAG_DOWNLOAD);
+        ProbeCache.Entry resolved = ProbeCache.get(mirror.toString());
+        URL url = resolved != null ? resolved.getUrl() : mirror;
+        String validator = resolved != null ? resolved.getRangeValidator() : null;
+        HttpURLConnection connection = openRange(url, offset, validator);
+        if (resolved != null && isFailed(connection)) {
+            // The resolved URL stopped working, e.g. a signed link expired.
+            HockeyLog.debug(HockeyLog.HOCKEY_TAG, "Resolved URL %s failed, starting over", url);
+            HttpDownload.close(connection);
+            ProbeCache.remove(mirror.toString());
+            connection = openRange(mirror, offset, validator);
+        }
+        return connection;
+    }
+
+    /**
+     * @param validator the ETag or date the file had when it was probed,
+     *                  sent as If-Range so a changed file is sent whole,
+     *                  may be null
+     */
+    private HttpURLConnection openRange(URL url, final long offset, final String validator) throws IOException {
+        if (offset == 0L) {
+            return (HttpURLConnection) createConnection(url, MAX_REDIRECTS);
+        }
+
+        final HttpDownload.ConnectionFactory factory = createConnectionFactory();
+        return HttpDownload.connect(url, MAX_REDIRECTS, new HttpDownload.ConnectionFactory() {
+            @Override
+            public HttpURLConnection open(URL url) throws IOException {
+                HttpURLConnection connection = factory.open(url);
+                connection.setRequestProperty("Range", "bytes=" + offset + "-");
+                if (validator != null) {
+                    connection.setRequestProperty("If-Range", validator);
                 }
-            } catch (IOException ignored) {
+                return connection;
             }
+        });
+    }
+
+    /**
+     * Checks that the downloaded file can be read as an APK and reports the
+     * result to the metrics listener. The installer shows its own error for
+     * broken files, so the download is not rejected here.
+     *
+     * @param file the downloaded file
+     */
+    protected void verifyApk(File file) {
+        Context context = mContext;
+        if (context == null) {
+            return;
+        }
+
+        long start = SystemClock.elapsedRealtime();
+        boolean traced = TraceUtil.beginSection("download.verify");
+        boolean valid;
+        try {
+            valid = context.getPackageManager().getPackageArchiveInfo(file.getAbsolutePath(), 0) != null;
+        } finally {
+            TraceUtil.endSection(traced);
+        }
+        UpdateMetrics.getListener().onApkVerified(SystemClock.elapsedRealtime() - start, valid);
+        if (!valid) {
+            HockeyLog.warn(HockeyLog.HOCKEY_TAG, "Downloaded file %s is not a valid APK", file);
         }
     }
 
+    /**
+     * Configures a connection of the download. Mirrors and redirects may
+     * use plain HTTP, so this isn't limited to HTTPS. For HTTPS
+     * connections, {@link #setConnectionProperties(HttpsURLConnection)} is
+     * called, so subclasses overriding it keep working.
+     *
+     * @param connection a connection which is not connected yet
+     */
+    protected void setConnectionProperties(HttpURLConnection connection) {
+        if (connection instanceof HttpsURLConnection) {
+            setConnectionProperties((HttpsURLConnection) connection);
+        } else {
+            setDefaultConnectionProperties(connection);
+        }
+    }
+
+    /**
+     * @deprecated override {@link #setConnectionProperties(HttpURLConnection)},
+     * which is called for all connections.
+     */
+    @Deprecated
     protected void setConnectionProperties(HttpsURLConnection connection) {
+        setDefaultConnectionProperties(connection);
+    }
+
+    private void setDefaultConnectionProperties(HttpURLConnection connection) {
         connection.addRequestProperty("User-Agent", Constants.SDK_USER_AGENT);
         connection.setInstanceFollowRedirects(true);
         connection.setConnectTimeout(TIMEOUT);
+        AddressRacer.measure(connection.getURL(), TIMEOUT, RequestTimer.getCurrentPhase(), UpdateMetrics.getListener());
         connection.setReadTimeout(TIMEOUT);
     }
 
+    private static boolean isFailed(URLConnection connection) throws IOException {
+        return connection instanceof HttpURLConnection && ((HttpURLConnection) connection).getResponseCode() >= HttpURLConnection.HTTP_BAD_REQUEST;
+    }
+
+    /**
+     * Returns the factory opening and configuring connections, see
+     * {@link #setConnectionProperties(HttpURLConnection)}.
+     */
+    protected HttpDownload.ConnectionFactory createConnectionFactory() {
+        return new HttpDownload.ConnectionFactory() {
+            @Override
+            public HttpURLConnection open(URL url) throws IOException {
+                HttpURLConnection connection = Util.openConnection(url);
+                setConnectionProperties(connection);
+                return connection;
+            }
+        };
+    }
+
     /**
-     * Recursive method for resolving redirects. Resolves at most MAX_REDIRECTS times.
+     * Resolves redirects, see {@link HttpDownload#connect(URL, int, HttpDownload.ConnectionFactory)}.
      *
      * @param url                a URL
      * @param remainingRedirects loop counter
@@ -145,28 +424,7 @@ public class DownloadFileTask extends AsyncTask<Void, Integer, Long> {
      * @throws IOException if connection fails
      */
     protected URLConnection createConnection(URL url, int remainingRedirects) throws IOException {
-        HttpsURLConnection connection = Util.openHttpsConnection(url);
-        setConnectionProperties(connection);
-
-        int code = connection.getResponseCode();
-        if (code == HttpsURLConnection.HTTP_MOVED_PERM ||
-                code == HttpsURLConnection.HTTP_MOVED_TEMP ||
-                code == HttpsURLConnection.HTTP_SEE_OTHER) {
-
-            if (remainingRedirects == 0) {
-                // Stop redirecting.
-                return connection;
-            }
-
-            URL movedUrl = new URL(connection.getHeaderField("Location"));
-            if (!url.getProtocol().equals(movedUrl.getProtocol())) {
-                // HttpsURLConnection doesn't handle redirects across schemes, so handle it manually, see
-                // http://code.google.com/p/android/issues/detail?id=41651
-                connection.disconnect();
-                return createConnection(movedUrl, --remainingRedirects); // Recursion
-            }
-        }
-        return connection;
+        return HttpDownload.connect(url, remainingRedirects, createConnectionFactory());
     }
 
     @Override
@@ -185,64 +443,90 @@ public class DownloadFileTask extends AsyncTask<Void, Integer, Long> {
         }
     }
 
-    @Override
-    protected void onPostExecute(Long result) {
-        if (mProgressDialog != null) {
-            try {
-                mProgressDialog.dismiss();
-            } catch (Exception e) {
-                // Ignore all exceptions
-            }
-        }
+    /**
+     * Opens the installer for a downloaded APK.
+     *
+     * @param context the context to start the installer from
+     * @param apkFile the APK
+     */
+    public static void launchInstaller(Context context, File apkFile) {
+        Intent intent = new Intent(Intent.ACTION_INSTALL_PACKAGE);
 
-        if (result > 0L) {
-            mNotifier.downloadSuccessful(this);
-            Intent intent = new Intent(Intent.ACTION_INSTALL_PACKAGE);
+        Uri fileUri = Uri.fromFile(apkFile);
 
-            File apkFile = new File(this.mDirectory, this.mFilename);
-            Uri fileUri = Uri.fromFile(apkFile);
+        intent.setDataAndType(fileUri, "application/vnd.android.package-archive");
+        intent.setFlags(Intent.FLAG_ACTIVITY_NEW_TASK);
 
-            intent.setDataAndType(fileUri, "application/vnd.android.package-archive");
-            intent.setFlags(Intent.FLAG_ACTIVITY_NEW_TASK);
+        StrictMode.VmPolicy oldVmPolicy = null;
 
-            StrictMode.VmPolicy oldVmPolicy = null;
+        if (android.os.Build.VERSION.SDK_INT >= Build.VERSION_CODES.N){
+            intent = new Intent(Intent.ACTION_VIEW);
+            intent.setFlags(Intent.FLAG_ACTIVITY_CLEAR_TOP);
 
-            if (android.os.Build.VERSION.SDK_INT >= Build.VERSION_CODES.N){
-                intent = new Intent(Intent.ACTION_VIEW);
-                intent.setFlags(Intent.FLAG_ACTIVITY_CLEAR_TOP);
+            Uri apkURI = FileProvider.getUriForFile(context, context.getApplicationContext().getPackageName() + ".provider", apkFile);
+            intent.setDataAndType(apkURI, "application/vnd.android.package-archive");
+            intent.addFlags(Intent.FLAG_GRANT_READ_URI_PERMISSION);
+        }
 
-                Uri apkURI = FileProvider.getUriForFile(this.mContext, this.mContext.getApplicationContext().getPackageName() + ".provider", apkFile);
-                intent.setDataAndType(apkURI, "application/vnd.android.package-archive");
-                intent.addFlags(Intent.FLAG_GRANT_READ_URI_PERMISSION);
-            }
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.N) {
+            oldVmPolicy = StrictMode.getVmPolicy();
 
-            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.N) {
-                oldVmPolicy = StrictMode.getVmPolicy();
+            StrictMode.VmPolicy policy = new StrictMode.VmPolicy.Builder()
+                    .penaltyLog()
+                    .build();
 
-                StrictMode.VmPolicy policy = new StrictMode.VmPolicy.Builder()
-                        .penaltyLog()
-                        .build();
+            StrictMode.setVmPolicy(policy);
+        }
 
-                StrictMode.setVmPolicy(policy);
-            }
+        try {
+            context.startActivity(intent);
+            UpdateMetrics.getListener().onInstallerLaunched(UpdateMetrics.getMillisSinceUpdateDetected());
+        } catch (ActivityNotFoundException ex) {
+            ex.printStackTrace();
+        }
 
-            try {
-                mContext.startActivity(intent);
-            } catch (ActivityNotFoundException ex) {
-                ex.printStackTrace();
-            }
+        if (oldVmPolicy != null) {
+            StrictMode.setVmPolicy(oldVmPolicy);
+        }
+    }
 
-            if (oldVmPolicy != null) {
-                StrictMode.setVmPolicy(oldVmPolicy);
+    /**
+     * Installs the downloaded APK. Called on the main thread after a
+     * successful download.
+     */
+    protected void install() {
+        launchInstaller(mContext, new File(this.mDirectory, this.mFilename));
+    }
+
+    @Override
+    protected void onCancelled() {
+        TraceUtil.endAsyncSection("download", mTraceCookie);
+    }
+
+    @Override
+    protected void onPostExecute(Long result) {
+        TraceUtil.endAsyncSection("download", mTraceCookie);
+
+        if (mProgressDialog != null) {
+            try {
+                mProgressDialog.dismiss();
+            } catch (Exception e) {
+                // Ignore all exceptions
             }
+        }
 
+        if (result > 0L) {
+            mNotifier.downloadSuccessful(this);
+            install();
         } else {
             try {
                 AlertDialog.Builder builder = new AlertDialog.Builder(mContext);
                 builder.setTitle(R.string.hockeyapp_download_failed_dialog_title);
 
                 String message;
-                if (mDownloadErrorMessage == null) {
+                if (mDownloadErrorResource != 0) {
+                    message = mContext.getString(mDownloadErrorResource);
+                } else if (mDownloadErrorMessage == null) {
                     message = mContext.getString(R.string.hockeyapp_download_failed_dialog_message);
                 } else {
                     message = mDownloadErrorMessage;
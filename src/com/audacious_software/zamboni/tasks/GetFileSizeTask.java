@@ -1,13 +1,25 @@
 package com.audacious_software.zamboni.tasks;
 
 import android.content.Context;
+import android.net.TrafficStats;
 
+import com.audacious_software.zamboni.Constants;
 import com.audacious_software.zamboni.listeners.DownloadFileListener;
+import com.audacious_software.zamboni.listeners.UpdateMetricsListener;
+import com.audacious_software.zamboni.utils.CircuitBreaker;
 import com.audacious_software.zamboni.utils.HockeyLog;
+import com.audacious_software.zamboni.utils.HttpDownload;
+import com.audacious_software.zamboni.utils.ProbeCache;
+import com.audacious_software.zamboni.utils.RequestTimer;
+import com.audacious_software.zamboni.utils.RetryPolicy;
+import com.audacious_software.zamboni.utils.StateStore;
+import com.audacious_software.zamboni.utils.TraceUtil;
+import com.audacious_software.zamboni.utils.UpdateMetrics;
 
 import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.HttpURLConnection;
 import java.net.URL;
-import java.net.URLConnection;
 
 /**
  * <h3>Description</h3>
@@ -18,6 +30,8 @@ import java.net.URLConnection;
  **/
 public class GetFileSizeTask extends DownloadFileTask {
     private long mSize;
+    private volatile boolean mAborted;
+    private volatile HttpURLConnection mConnection;
 
     public GetFileSizeTask(Context context, String urlString, DownloadFileListener notifier) {
         super(context, urlString, notifier);
@@ -25,16 +39,110 @@ public class GetFileSizeTask extends DownloadFileTask {
 
     @Override
     protected Long doInBackground(Void... args) {
+        return probeSize();
+    }
+
+    /**
+     * Determines the size synchronously with a HEAD request. Must not be
+     * called on the main thread. The final URL and the size are cached for
+     * the download, see {@link ProbeCache}.
+     *
+     * @return the size in bytes or 0 if it could not be determined
+     */
+    public long probeSize() {
+        ProbeCache.Entry cached = ProbeCache.get(mUrlString);
+        if (cached != null && cached.getLength() >= 0L) {
+            return cached.getLength();
+        }
+        return probe(UpdateMetricsListener.PHASE_SIZE_PROBE, Constants.THREAD_STATS_TAG_SIZE_PROBE, "SizeProbe", RetryPolicy.getDefault());
+    }
+
+    /**
+     * Probes the URL even if a cached result exists, leaving a connection
+     * with a completed handshake to the final host in the connection pool,
+     * so the download only waits for its own request. Not repeated after a
+     * failure. Must not be called on the main thread.
+     *
+     * @return the size in bytes or 0 if it could not be determined
+     */
+    public long preconnect() {
+        return probe(UpdateMetricsListener.PHASE_PRECONNECT, Constants.THREAD_STATS_TAG_PRECONNECT, "Preconnect", RetryPolicy.NO_RETRIES);
+    }
+
+    /**
+     * Aborts a running probe by closing its connection.
+     */
+    public void abort() {
+        mAborted = true;
+        HttpURLConnection connection = mConnection;
+        if (connection != null) {
+            connection.disconnect();
+        }
+    }
+
+    private long probe(final int phase, int statsTag, String name, RetryPolicy policy) {
+        String threadName = TraceUtil.nameThread(name);
+        boolean traced = TraceUtil.beginSection("sizeProbe");
         try {
-            URL url = new URL(this.mUrlString);
-            URLConnection connection = createConnection(url, MAX_REDIRECTS);
-            return (long) connection.getContentLength();
+            final URL url = new URL(this.mUrlString);
+            if (mContext != null) {
+                CircuitBreaker.setStore(StateStore.get(mContext));
+            }
+            TrafficStats.setThreadStatsTag(statsTag);
+            ProbeCache.Entry resolved = policy.execute(url.getHost(), phase, UpdateMetrics.getListener(), new RetryPolicy.Request<ProbeCache.Entry>() {
+                @Override
+                public ProbeCache.Entry run() throws IOException {
+                    RequestTimer timer = RequestTimer.start(phase);
+                    try {
+                        ProbeCache.Entry resolved = HttpDownload.probe(url, MAX_REDIRECTS, createConnectionFactory());
+                        timer.responseReceived();
+                        return resolved;
+                    } finally {
+                        timer.finish();
+                    }
+                }
+            });
+            ProbeCache.put(mUrlString, resolved);
+            return Math.max(resolved.getLength(), 0L);
+        } catch (CircuitBreaker.OpenException e) {
+            HockeyLog.info(HockeyLog.HOCKEY_TAG, e.getMessage());
+            return 0L;
         } catch (IOException e) {
-            HockeyLog.error("Failed to get size " + mUrlString, e);
+            if (mAborted) {
+                HockeyLog.debug(HockeyLog.HOCKEY_TAG, "Aborted probe of %s", mUrlString);
+            } else {
+                HockeyLog.error(HockeyLog.HOCKEY_TAG, "Failed to get size %s", mUrlString, e);
+            }
             return 0L;
+        } finally {
+            mConnection = null;
+            TrafficStats.clearThreadStatsTag();
+            TraceUtil.endSection(traced);
+            TraceUtil.restoreThreadName(threadName);
         }
     }
 
+    @Override
+    protected HttpDownload.ConnectionFactory createConnectionFactory() {
+        final HttpDownload.ConnectionFactory factory = super.createConnectionFactory();
+        return new HttpDownload.ConnectionFactory() {
+            @Override
+            public HttpURLConnection open(URL url) throws IOException {
+                if (mAborted) {
+                    throw new InterruptedIOException("Probe aborted");
+                }
+                HttpURLConnection connection = factory.open(url);
+                mConnection = connection;
+                if (mAborted) {
+                    // Aborted while opening, after abort() looked at mConnection.
+                    connection.disconnect();
+                    throw new InterruptedIOException("Probe aborted");
+                }
+                return connection;
+            }
+        };
+    }
+
     @Override
     protected void onProgressUpdate(Integer... args) {
         // Do not display any progress for this task.
@@ -0,0 +1,76 @@
+package com.audacious_software.zamboni.tasks;
+
+import android.content.Context;
+
+import com.audacious_software.zamboni.listeners.DownloadFileListener;
+import com.audacious_software.zamboni.utils.DeferredDownload;
+import com.audacious_software.zamboni.utils.HockeyLog;
+import com.audacious_software.zamboni.utils.TraceUtil;
+
+import java.io.File;
+import java.util.List;
+
+/**
+ * <h3>Description</h3>
+ *
+ * Internal helper class. Downloads an .apk in the background, without
+ * progress or error dialogs and without opening the installer. Used for
+ * downloads that were deferred, see {@link DeferredDownload}. A file that
+ * is no APK of this app is deleted, as nobody would see the installer's
+ * error until much later.
+ *
+ **/
+public class PrefetchTask extends DownloadFileTask {
+    private String mSha256;
+
+    public PrefetchTask(Context context, List<String> urlStrings, DownloadFileListener notifier) {
+        super(context, urlStrings, notifier);
+    }
+
+    /**
+     * Returns the downloaded file.
+     */
+    public File getFile() {
+        return new File(mDirectory, mFilename);
+    }
+
+    /**
+     * Returns the SHA-256 of the downloaded file in hex.
+     */
+    public String getSha256() {
+        return mSha256;
+    }
+
+    @Override
+    protected Long doInBackground(Void... args) {
+        Long result = super.doInBackground(args);
+        if (result <= 0L || mContext == null) {
+            return result;
+        }
+
+        File file = getFile();
+        mSha256 = DeferredDownload.checkApk(mContext, file);
+        if (mSha256 == null) {
+            if (!file.delete()) {
+                HockeyLog.debug(HockeyLog.HOCKEY_TAG, "Could not delete %s", file);
+            }
+            return 0L;
+        }
+        return result;
+    }
+
+    @Override
+    protected void onProgressUpdate(Integer... args) {
+        // Nobody is watching.
+    }
+
+    @Override
+    protected void onPostExecute(Long result) {
+        TraceUtil.endAsyncSection("download", mTraceCookie);
+        if (result > 0L) {
+            mNotifier.downloadSuccessful(this);
+        } else {
+            mNotifier.downloadFailed(this, false);
+        }
+    }
+}
@@ -0,0 +1,133 @@
+package com.audacious_software.zamboni.tasks;
+
+import android.os.AsyncTask;
+import android.text.Spanned;
+
+import com.audacious_software.zamboni.listeners.ReleaseNotesListener;
+import com.audacious_software.zamboni.utils.ReleaseNotesRenderer;
+import com.audacious_software.zamboni.utils.SpannedReleaseNotes;
+import com.audacious_software.zamboni.utils.TraceUtil;
+import com.audacious_software.zamboni.utils.VersionHelper;
+
+/**
+ * <h3>Description</h3>
+ *
+ * Internal helper class. Renders the release notes off the main thread,
+ * either as HTML or as styled text. The newest release is published first,
+ * so it can be shown while the older releases are appended. Results are
+ * cached per feed and locale.
+ **/
+public class RenderReleaseNotesTask extends AsyncTask<Void, CharSequence, CharSequence> {
+    /**
+     * Render the notes as HTML.
+     */
+    public static final int FORMAT_HTML = 0;
+
+    /**
+     * Convert the notes to styled text.
+     */
+    public static final int FORMAT_SPANNED = 1;
+
+    /**
+     * Convert the notes to styled text if their markup allows it, see
+     * {@link SpannedReleaseNotes#isSupported(ReleaseNotesRenderer)},
+     * otherwise render them as HTML. The listener learns the outcome from
+     * the type of the result.
+     */
+    public static final int FORMAT_AUTO = 2;
+
+    private final VersionHelper mVersionHelper;
+    private final boolean mShowRestore;
+    private final int mFormat;
+    private ReleaseNotesListener mListener;
+
+    public RenderReleaseNotesTask(VersionHelper versionHelper, boolean showRestore, ReleaseNotesListener listener) {
+        this(versionHelper, showRestore, FORMAT_HTML, listener);
+    }
+
+    /**
+     * @param versionHelper the versions to render
+     * @param showRestore   whether to include restore links, only supported for HTML
+     * @param format        {@link #FORMAT_HTML}, {@link #FORMAT_SPANNED} or {@link #FORMAT_AUTO}
+     * @param listener      the listener to notify on the main thread
+     */
+    public RenderReleaseNotesTask(VersionHelper versionHelper, boolean showRestore, int format, ReleaseNotesListener listener) {
+        this.mVersionHelper = versionHelper;
+        this.mShowRestore = showRestore;
+        this.mFormat = format;
+        this.mListener = listener;
+    }
+
+    public void detach() {
+        mListener = null;
+    }
+
+    @Override
+    protected CharSequence doInBackground(Void... args) {
+        String threadName = TraceUtil.nameThread("Render");
+        boolean traced = TraceUtil.beginSection("renderReleaseNotes");
+        try {
+            return render();
+        } finally {
+            TraceUtil.endSection(traced);
+            TraceUtil.restoreThreadName(threadName);
+        }
+    }
+
+    private CharSequence render() {
+        String key = mVersionHelper.getReleaseNotesCacheKey(mShowRestore);
+        CharSequence cached = mFormat != FORMAT_HTML ? SpannedReleaseNotes.getCached(key) : null;
+        if (cached == null && mFormat != FORMAT_SPANNED) {
+            cached = ReleaseNotesRenderer.getCached(key);
+        }
+        if (cached != null) {
+            return cached;
+        }
+
+        ReleaseNotesRenderer renderer = mVersionHelper.getReleaseNotesRenderer(mShowRestore);
+        boolean spanned = mFormat == FORMAT_SPANNED || (mFormat == FORMAT_AUTO && SpannedReleaseNotes.isSupported(renderer));
+        if (spanned) {
+            if (renderer.getSectionCount() > 1) {
+                publishProgress(SpannedReleaseNotes.build(renderer, 1));
+            }
+
+            Spanned text = SpannedReleaseNotes.build(renderer, renderer.getSectionCount());
+            SpannedReleaseNotes.putCached(key, text);
+            return text;
+        }
+
+        if (renderer.getSectionCount() > 1) {
+            publishProgress(renderer.render(1));
+        }
+
+        String html = renderer.render();
+        ReleaseNotesRenderer.putCached(key, html);
+        return html;
+    }
+
+    @Override
+    protected void onProgressUpdate(CharSequence... args) {
+        if (mListener == null || isCancelled()) {
+            return;
+        }
+
+        if (args[0] instanceof Spanned) {
+            mListener.newestReleaseRendered(this, (Spanned) args[0]);
+        } else {
+            mListener.newestReleaseRendered(this, args[0].toString());
+        }
+    }
+
+    @Override
+    protected void onPostExecute(CharSequence notes) {
+        if (mListener == null) {
+            return;
+        }
+
+        if (notes instanceof Spanned) {
+            mListener.releaseNotesRendered(this, (Spanned) notes);
+        } else {
+            mListener.releaseNotesRendered(this, notes.toString());
+        }
+    }
+}
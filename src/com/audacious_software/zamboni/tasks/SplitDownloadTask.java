@@ -0,0 +1,252 @@
+package com.audacious_software.zamboni.tasks;
+
+import android.content.Context;
+import android.net.TrafficStats;
+import android.os.SystemClock;
+
+import com.audacious_software.zamboni.Constants;
+import com.audacious_software.zamboni.listeners.DownloadFileListener;
+import com.audacious_software.zamboni.listeners.UpdateMetricsListener;
+import com.audacious_software.zamboni.utils.BandwidthEstimator;
+import com.audacious_software.zamboni.utils.CircuitBreaker;
+import com.audacious_software.zamboni.utils.HockeyLog;
+import com.audacious_software.zamboni.utils.HttpDownload;
+import com.audacious_software.zamboni.utils.MirrorDownload;
+import com.audacious_software.zamboni.utils.MirrorSelector;
+import com.audacious_software.zamboni.utils.NetworkMonitor;
+import com.audacious_software.zamboni.utils.RetryPolicy;
+import com.audacious_software.zamboni.utils.SplitApks;
+import com.audacious_software.zamboni.utils.SplitInstaller;
+import com.audacious_software.zamboni.utils.StateStore;
+import com.audacious_software.zamboni.utils.StreamUtil;
+import com.audacious_software.zamboni.utils.TraceUtil;
+import com.audacious_software.zamboni.utils.UpdateMetrics;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * <h3>Description</h3>
+ *
+ * Internal helper class. Downloads the base APK and the configuration
+ * splits of an update in parallel and installs them together in one
+ * PackageInstaller session, see {@link SplitInstaller}. Each APK is
+ * downloaded like the universal one, from its mirrors and with retries,
+ * and checked against the size and SHA-256 of the feed, if given.
+ *
+ **/
+public class SplitDownloadTask extends DownloadFileTask {
+    /**
+     * The number of APKs downloaded at the same time.
+     */
+    private static final int MAX_PARALLEL_DOWNLOADS = 4;
+
+    private final SplitApks mApks;
+    private final List<SplitApks.Split> mSplits;
+    private final AtomicLong[] mReceived;
+    private final long mTotal;
+    private final Context mInstallerContext;
+    private int mSessionId = -1;
+
+    /**
+     * @param apks   the split APKs of the update
+     * @param splits the splits to install, see {@link SplitInstaller#select(Context, SplitApks)}
+     */
+    public SplitDownloadTask(Context context, SplitApks apks, List<SplitApks.Split> splits, DownloadFileListener notifier) {
+        super(context, apks.getBaseUrls(), notifier);
+        this.mApks = apks;
+        this.mSplits = splits;
+        this.mReceived = new AtomicLong[splits.size() + 1];
+        for (int index = 0; index < mReceived.length; index++) {
+            mReceived[index] = new AtomicLong();
+        }
+        this.mTotal = SplitInstaller.getDownloadSize(apks, splits);
+        this.mInstallerContext = context.getApplicationContext();
+    }
+
+    @Override
+    protected Long doInBackground(Void... args) {
+        mTraceCookie = TraceUtil.beginAsyncSection("download");
+        String threadName = TraceUtil.nameThread("Download");
+        long start = SystemClock.elapsedRealtime();
+        boolean successful = false;
+        List<File> files = new ArrayList<>();
+        ExecutorService executor = null;
+        try {
+            boolean result = mDirectory.mkdirs();
+            if (!result && !mDirectory.exists()) {
+                throw new IOException("Could not create the dir(s):" + mDirectory.getAbsolutePath());
+            }
+            if (mContext != null) {
+                CircuitBreaker.setStore(StateStore.get(mContext));
+                BandwidthEstimator.setStore(StateStore.get(mContext));
+                MirrorSelector.setStore(StateStore.get(mContext));
+                NetworkMonitor.get(mContext);
+            }
+
+            List<String> names = new ArrayList<>();
+            List<List<String>> urls = new ArrayList<>();
+            names.add("base.apk");
+            urls.add(mApks.getBaseUrls());
+            for (SplitApks.Split split : mSplits) {
+                names.add(split.getName() + ".apk");
+                urls.add(split.getUrls());
+            }
+
+            executor = Executors.newFixedThreadPool(Math.min(MAX_PARALLEL_DOWNLOADS, names.size()));
+            List<Future<Long>> futures = new ArrayList<>();
+            String prefix = UUID.randomUUID().toString();
+            for (int index = 0; index < names.size(); index++) {
+                File file = new File(mDirectory, prefix + "-" + names.get(index));
+                files.add(file);
+                futures.add(executor.submit(new PartDownload(index, urls.get(index), file)));
+            }
+
+            long total = 0L;
+            for (Future<Long> future : futures) {
+                total += future.get();
+            }
+            successful = true;
+            HockeyLog.info(HockeyLog.HOCKEY_TAG, "Downloaded %d APKs in %dms", names.size(), SystemClock.elapsedRealtime() - start);
+
+            Context context = mContext;
+            if (context == null) {
+                HockeyLog.info(HockeyLog.HOCKEY_TAG, "Not installing %s, the task was detached", mUrlString);
+                return 0L;
+            }
+            boolean traced = TraceUtil.beginSection("download.stage");
+            try {
+                mSessionId = SplitInstaller.stage(context, names, files);
+            } finally {
+                TraceUtil.endSection(traced);
+            }
+            return total;
+        } catch (ExecutionException e) {
+            HockeyLog.error(HockeyLog.HOCKEY_TAG, "Failed to download %s", mUrlString, e.getCause());
+            return 0L;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return 0L;
+        } catch (IOException | SecurityException e) {
+            HockeyLog.error(HockeyLog.HOCKEY_TAG, "Failed to install %s", mUrlString, e);
+            return 0L;
+        } finally {
+            if (executor != null) {
+                // Stops waiting for retries of the other APKs after a failure.
+                executor.shutdownNow();
+            }
+            for (File file : files) {
+                // Copied into the session, or not needed after a failure.
+                if (file.exists() && !file.delete()) {
+                    HockeyLog.debug(HockeyLog.HOCKEY_TAG, "Could not delete %s", file);
+                }
+            }
+            UpdateMetrics.getListener().onDownloadFinished(getReceived(), SystemClock.elapsedRealtime() - start, successful);
+            TraceUtil.restoreThreadName(threadName);
+        }
+    }
+
+    @Override
+    protected void install() {
+        if (mSessionId < 0) {
+            return;
+        }
+        if (mContext != null) {
+            SplitInstaller.commit(mContext, mSessionId);
+        } else {
+            // Detached after staging, nobody is left to confirm the installation.
+            SplitInstaller.abandon(mInstallerContext, mSessionId);
+        }
+        mSessionId = -1;
+    }
+
+    @Override
+    protected void onCancelled() {
+        super.onCancelled();
+        if (mSessionId >= 0) {
+            SplitInstaller.abandon(mInstallerContext, mSessionId);
+            mSessionId = -1;
+        }
+    }
+
+    private long getReceived() {
+        long received = 0L;
+        for (AtomicLong part : mReceived) {
+            received += part.get();
+        }
+        return received;
+    }
+
+    /**
+     * Downloads one of the APKs on a thread of the executor.
+     */
+    private class PartDownload implements Callable<Long> {
+        private final int mIndex;
+        private final List<URL> mMirrors = new ArrayList<>();
+        private final File mFile;
+
+        PartDownload(int index, List<String> urlStrings, File file) throws IOException {
+            this.mIndex = index;
+            for (String urlString : urlStrings) {
+                mMirrors.add(new URL(urlString));
+            }
+            this.mFile = file;
+        }
+
+        @Override
+        public Long call() throws IOException {
+            TrafficStats.setThreadStatsTag(Constants.THREAD_STATS_TAG_DOWNLOAD);
+            long expected = mIndex == 0 ? mApks.getBaseSize() : mSplits.get(mIndex - 1).getSize();
+            String sha256 = mIndex == 0 ? mApks.getBaseSha256() : mSplits.get(mIndex - 1).getSha256();
+            final MirrorDownload download = new MirrorDownload(mMirrors, new MirrorDownload.Connector() {
+                @Override
+                public HttpURLConnection connect(URL mirror, long offset) throws IOException {
+                    return openMirror(mirror, offset);
+                }
+            }, expected);
+            final HttpDownload.ProgressListener listener = new HttpDownload.ProgressListener() {
+                @Override
+                public void onProgress(long total, int length) {
+                    mReceived[mIndex].set(total);
+                    publishProgress(mTotal > 0L ? Math.round(getReceived() * 100.0f / mTotal) : 0);
+                }
+            };
+            try {
+                long size = RetryPolicy.getDefault().execute(null, UpdateMetricsListener.PHASE_DOWNLOAD, UpdateMetrics.getListener(), new RetryPolicy.Request<Long>() {
+                    @Override
+                    public Long run() throws IOException {
+                        return download.download(mFile, listener);
+                    }
+                });
+                verify(expected, sha256);
+                return size;
+            } finally {
+                TrafficStats.clearThreadStatsTag();
+            }
+        }
+
+        /**
+         * Checks the downloaded APK against the feed, so a truncated or
+         * altered file isn't written into the install session.
+         */
+        private void verify(long expectedSize, String expectedSha256) throws IOException {
+            if (expectedSize >= 0L && mFile.length() != expectedSize) {
+                throw new IOException(mFile.getName() + " has " + mFile.length() + " bytes instead of " + expectedSize);
+            }
+            if (expectedSha256 != null && !expectedSha256.equals(StreamUtil.sha256Hex(mFile))) {
+                throw new IOException(mFile.getName() + " does not match the SHA-256 of the feed");
+            }
+        }
+    }
+}
@@ -0,0 +1,291 @@
+package com.audacious_software.zamboni.utils;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.content.pm.PackageInfo;
+import android.net.ConnectivityManager;
+import android.os.Build;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.PowerManager;
+
+import com.audacious_software.zamboni.UpdateManagerListener;
+import com.audacious_software.zamboni.listeners.DownloadFileListener;
+import com.audacious_software.zamboni.tasks.DownloadFileTask;
+import com.audacious_software.zamboni.tasks.PrefetchTask;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.ref.WeakReference;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.List;
+
+/**
+ * <h3>Description</h3>
+ *
+ * Internal helper class. Holds a download that {@link DownloadPolicy}
+ * deferred and starts it in the background when the network or the power
+ * supply change and the policy allows it. The downloaded APK is kept, so
+ * the next tap on the download button installs it right away, after
+ * checking that it's still the file that was downloaded.
+ *
+ * The policy is evaluated on the main thread. The listener of the app is
+ * only held weakly, as it often belongs to an activity.
+ *
+ * The deferral lasts as long as the process. After a restart, the update
+ * check finds the update again and the user decides anew.
+ *
+ **/
+public class DeferredDownload {
+    private static final String URL_KEY = "deferredDownload.url";
+    private static final String FILE_KEY = "deferredDownload.file";
+    private static final String SIZE_KEY = "deferredDownload.size";
+    private static final String SHA256_KEY = "deferredDownload.sha256";
+
+    private static volatile DeferredDownload sCurrent;
+
+    private final Context mContext;
+    private final List<String> mUrlStrings;
+    private final long mSize;
+    private final WeakReference<UpdateManagerListener> mListener;
+    private final Handler mHandler = new Handler(Looper.getMainLooper());
+    private PrefetchTask mTask;
+
+    private final Runnable mEvaluateRunnable = new Runnable() {
+        @Override
+        public void run() {
+            evaluate();
+        }
+    };
+
+    private final NetworkMonitor.Listener mNetworkListener = new NetworkMonitor.Listener() {
+        @Override
+        public void onNetworkChanged(NetworkMonitor.Snapshot previous, NetworkMonitor.Snapshot current) {
+            // Called on a thread of the connectivity service.
+            mHandler.post(mEvaluateRunnable);
+        }
+    };
+
+    private final BroadcastReceiver mPowerReceiver = new BroadcastReceiver() {
+        @Override
+        public void onReceive(Context context, Intent intent) {
+            evaluate();
+        }
+    };
+
+    private DeferredDownload(Context context, List<String> urlStrings, long size, UpdateManagerListener listener) {
+        this.mContext = context;
+        this.mUrlStrings = urlStrings;
+        this.mSize = size;
+        this.mListener = new WeakReference<>(listener);
+    }
+
+    /**
+     * Defers the download of the APK, replacing any other deferred
+     * download. Starts it right away if the policy allows it already.
+     * Must be called on the main thread.
+     *
+     * @param context    a context, only its application context is kept
+     * @param urlStrings the URLs of the APK, see {@link DownloadFileTask}
+     * @param size       the size of the APK, -1 if unknown
+     * @param listener   the listener of the app, may be null
+     */
+    public static synchronized void schedule(Context context, List<String> urlStrings, long size, UpdateManagerListener listener) {
+        cancel();
+        DeferredDownload download = new DeferredDownload(context.getApplicationContext(), urlStrings, size, listener);
+        sCurrent = download;
+        NetworkMonitor.get(download.mContext).addListener(download.mNetworkListener);
+        download.mContext.registerReceiver(download.mPowerReceiver, createPowerFilter());
+        download.evaluate();
+    }
+
+    /**
+     * Stops waiting for the deferred download. A download that already
+     * started continues.
+     */
+    public static synchronized void cancel() {
+        if (sCurrent != null) {
+            sCurrent.stopWaiting();
+            sCurrent = null;
+        }
+    }
+
+    /**
+     * Returns the APK downloaded in the background for the URL, or null.
+     * Only compares the size of the file, call
+     * {@link #verifyPrefetched(Context, File)} before installing it.
+     *
+     * @param context   the context to use
+     * @param urlString the URL of the APK
+     */
+    public static File getPrefetched(Context context, String urlString) {
+        StateStore store = StateStore.get(context);
+        String path = store.getString(FILE_KEY, null);
+        if (path == null) {
+            return null;
+        }
+
+        File file = new File(path);
+        if (urlString.equals(store.getString(URL_KEY, null)) && file.length() > 0L && file.length() == store.getLong(SIZE_KEY, -1L)) {
+            return file;
+        }
+        // Another version, or the file was removed or changed.
+        forgetPrefetched(store);
+        return null;
+    }
+
+    /**
+     * Checks that the APK downloaded in the background still has the
+     * SHA-256 it had after the download, as it waited on external storage.
+     * Forgets it otherwise. Reads the whole file, so don't call this on
+     * the main thread.
+     *
+     * @param context the context to use
+     * @param file    the file returned by {@link #getPrefetched(Context, String)}
+     * @return true if the file can be installed
+     */
+    public static boolean verifyPrefetched(Context context, File file) {
+        StateStore store = StateStore.get(context);
+        String expected = store.getString(SHA256_KEY, null);
+        String actual = checkApk(context, file);
+        if (expected != null && expected.equals(actual)) {
+            return true;
+        }
+        HockeyLog.warn(HockeyLog.HOCKEY_TAG, "Prefetched file %s changed, downloading it again", file);
+        forgetPrefetched(store);
+        return false;
+    }
+
+    /**
+     * Checks that a downloaded file is an APK of this app.
+     *
+     * @param context the context to use
+     * @param file    the downloaded file
+     * @return the SHA-256 of the file in hex, or null if it is no APK of
+     * this app or can't be read
+     */
+    public static String checkApk(Context context, File file) {
+        PackageInfo info = context.getPackageManager().getPackageArchiveInfo(file.getAbsolutePath(), 0);
+        if (info == null || !context.getPackageName().equals(info.packageName)) {
+            HockeyLog.warn(HockeyLog.HOCKEY_TAG, "%s is not an APK of %s", file, context.getPackageName());
+            return null;
+        }
+
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            InputStream input = new FileInputStream(file);
+            try {
+                byte[] buffer = new byte[64 * 1024];
+                int count;
+                while ((count = input.read(buffer)) != -1) {
+                    digest.update(buffer, 0, count);
+                }
+            } finally {
+                input.close();
+            }
+            return Util.bytesToHex(digest.digest());
+        } catch (IOException | NoSuchAlgorithmException e) {
+            HockeyLog.error(HockeyLog.HOCKEY_TAG, "Failed to hash %s", file, e);
+            return null;
+        }
+    }
+
+    private static void forgetPrefetched(StateStore store) {
+        String path = store.getString(FILE_KEY, null);
+        if (path != null && !new File(path).delete()) {
+            HockeyLog.debug(HockeyLog.HOCKEY_TAG, "Could not delete %s", path);
+        }
+        store.remove(URL_KEY);
+        store.remove(FILE_KEY);
+        store.remove(SIZE_KEY);
+        store.remove(SHA256_KEY);
+    }
+
+    /**
+     * Returns the broadcasts after which the policy may decide otherwise:
+     * charging, leaving Battery Saver or Data Saver.
+     */
+    private static IntentFilter createPowerFilter() {
+        IntentFilter filter = new IntentFilter(Intent.ACTION_POWER_CONNECTED);
+        filter.addAction(Intent.ACTION_BATTERY_OKAY);
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP) {
+            filter.addAction(PowerManager.ACTION_POWER_SAVE_MODE_CHANGED);
+        }
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.N) {
+            filter.addAction(ConnectivityManager.ACTION_RESTRICT_BACKGROUND_CHANGED);
+        }
+        return filter;
+    }
+
+    private void evaluate() {
+        if (sCurrent != this || mTask != null) {
+            return;
+        }
+
+        DownloadPolicy.Conditions conditions = DownloadPolicy.getConditions(mContext, mSize, true);
+        if (DownloadPolicy.decide(mListener.get(), conditions) != DownloadPolicy.DECISION_DOWNLOAD_NOW) {
+            return;
+        }
+
+        HockeyLog.info(HockeyLog.HOCKEY_TAG, "Starting deferred download of %s", mUrlStrings.get(0));
+        mTask = new PrefetchTask(mContext, mUrlStrings, new DownloadFileListener() {
+            @Override
+            public void downloadFailed(DownloadFileTask task, Boolean userWantsRetry) {
+                // Try again on the next change.
+                finished(null, null);
+            }
+
+            @Override
+            public void downloadSuccessful(DownloadFileTask task) {
+                PrefetchTask prefetchTask = (PrefetchTask) task;
+                finished(prefetchTask.getFile(), prefetchTask.getSha256());
+            }
+        });
+        AsyncTaskUtils.execute(mTask);
+    }
+
+    /**
+     * Called on the main thread when the download ended.
+     *
+     * @param file   the checked APK, or null if the download failed
+     * @param sha256 the SHA-256 of the APK
+     */
+    private void finished(File file, String sha256) {
+        mTask = null;
+        if (file == null) {
+            return;
+        }
+
+        StateStore store = StateStore.get(mContext);
+        forgetPrefetched(store);
+        store.putString(URL_KEY, mUrlStrings.get(0));
+        store.putString(FILE_KEY, file.getAbsolutePath());
+        store.putLong(SIZE_KEY, file.length());
+        store.putString(SHA256_KEY, sha256);
+
+        synchronized (DeferredDownload.class) {
+            if (sCurrent == this) {
+                cancel();
+            }
+        }
+        UpdateManagerListener listener = mListener.get();
+        if (listener != null) {
+            listener.onUpdatePrefetched();
+        }
+    }
+
+    private void stopWaiting() {
+        mHandler.removeCallbacks(mEvaluateRunnable);
+        NetworkMonitor.get(mContext).removeListener(mNetworkListener);
+        try {
+            mContext.unregisterReceiver(mPowerReceiver);
+        } catch (IllegalArgumentException ignored) {
+            // Not registered.
+        }
+    }
+}
@@ -0,0 +1,226 @@
+package com.audacious_software.zamboni.utils;
+
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.net.ConnectivityManager;
+import android.os.BatteryManager;
+import android.os.Build;
+import android.os.PowerManager;
+
+import com.audacious_software.zamboni.UpdateManagerListener;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <h3>Description</h3>
+ *
+ * Internal helper class. Decides whether the APK is downloaded right
+ * away, from the state of the network, Data Saver, Battery Saver, the
+ * battery and how long the download is estimated to take. The suggestion
+ * can be changed per app with
+ * {@link UpdateManagerListener#getDownloadDecision(Conditions, int)}.
+ *
+ **/
+public class DownloadPolicy {
+    /**
+     * Download now.
+     */
+    public static final int DECISION_DOWNLOAD_NOW = 0;
+
+    /**
+     * Download in the background once the device is on an unmetered network
+     * and has enough power, then install on the next tap, see
+     * {@link DeferredDownload}.
+     */
+    public static final int DECISION_PREFETCH_LATER = 1;
+
+    /**
+     * Only download an incremental update, i.e. build the APK from the
+     * installed one if the feed has a block index for it, see
+     * {@link BlockDownload}. Otherwise the download is deferred like
+     * {@link #DECISION_PREFETCH_LATER}. If the incremental download fails,
+     * the whole APK is not downloaded instead.
+     */
+    public static final int DECISION_DELTA_ONLY = 2;
+
+    /**
+     * Ask the user whether to download now or later.
+     */
+    public static final int DECISION_ASK_USER = 3;
+
+    /**
+     * Below this battery level, downloads are only suggested while charging.
+     */
+    public static final int LOW_BATTERY_PERCENT = 15;
+
+    /**
+     * Downloads over a metered network that are estimated to take longer
+     * are only suggested after asking.
+     */
+    public static final long LONG_DOWNLOAD_MILLIS = TimeUnit.MINUTES.toMillis(5);
+
+    /**
+     * <h3>Description</h3>
+     *
+     * The state of the device a decision is based on.
+     *
+     **/
+    public static class Conditions {
+        private final NetworkMonitor.Snapshot mNetwork;
+        private final boolean mDataSaver;
+        private final boolean mPowerSave;
+        private final int mBatteryPercent;
+        private final boolean mCharging;
+        private final long mDownloadBytes;
+        private final long mEstimatedMillis;
+        private final boolean mDeferred;
+
+        Conditions(NetworkMonitor.Snapshot network, boolean dataSaver, boolean powerSave, int batteryPercent, boolean charging, long downloadBytes, long estimatedMillis, boolean deferred) {
+            this.mNetwork = network;
+            this.mDataSaver = dataSaver;
+            this.mPowerSave = powerSave;
+            this.mBatteryPercent = batteryPercent;
+            this.mCharging = charging;
+            this.mDownloadBytes = downloadBytes;
+            this.mEstimatedMillis = estimatedMillis;
+            this.mDeferred = deferred;
+        }
+
+        public NetworkMonitor.Snapshot getNetwork() {
+            return mNetwork;
+        }
+
+        /**
+         * Returns true if the user restricts background data for the app.
+         */
+        public boolean isDataSaverEnabled() {
+            return mDataSaver;
+        }
+
+        public boolean isPowerSaveMode() {
+            return mPowerSave;
+        }
+
+        /**
+         * Returns the battery level, -1 if unknown.
+         */
+        public int getBatteryPercent() {
+            return mBatteryPercent;
+        }
+
+        public boolean isCharging() {
+            return mCharging;
+        }
+
+        public boolean isBatteryLow() {
+            return !mCharging && mBatteryPercent >= 0 && mBatteryPercent < LOW_BATTERY_PERCENT;
+        }
+
+        /**
+         * Returns the size of the APK, -1 if unknown.
+         */
+        public long getDownloadBytes() {
+            return mDownloadBytes;
+        }
+
+        /**
+         * Returns how long the download is estimated to take on the current
+         * network, -1 if unknown, see {@link BandwidthEstimator}.
+         */
+        public long getEstimatedMillis() {
+            return mEstimatedMillis;
+        }
+
+        /**
+         * Returns true if the decision is made for a deferred download, in
+         * the background. {@link #DECISION_ASK_USER} then keeps waiting.
+         */
+        public boolean isDeferred() {
+            return mDeferred;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%s dataSaver=%b powerSave=%b battery=%d%% charging=%b bytes=%d estimate=%dms deferred=%b",
+                    mNetwork, mDataSaver, mPowerSave, mBatteryPercent, mCharging, mDownloadBytes, mEstimatedMillis, mDeferred);
+        }
+    }
+
+    /**
+     * Reads the current conditions. The battery state is read from its
+     * sticky broadcast, without registering a receiver.
+     *
+     * @param context       the context to use
+     * @param downloadBytes the size of the APK, -1 if unknown
+     * @param deferred      true for a deferred download
+     */
+    public static Conditions getConditions(Context context, long downloadBytes, boolean deferred) {
+        NetworkMonitor.Snapshot network = NetworkMonitor.get(context).getSnapshot();
+
+        boolean dataSaver = false;
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.N) {
+            ConnectivityManager connectivityManager = (ConnectivityManager) context.getSystemService(Context.CONNECTIVITY_SERVICE);
+            dataSaver = connectivityManager != null && network.isMetered()
+                    && connectivityManager.getRestrictBackgroundStatus() == ConnectivityManager.RESTRICT_BACKGROUND_STATUS_ENABLED;
+        }
+
+        boolean powerSave = false;
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP) {
+            PowerManager powerManager = (PowerManager) context.getSystemService(Context.POWER_SERVICE);
+            powerSave = powerManager != null && powerManager.isPowerSaveMode();
+        }
+
+        int batteryPercent = -1;
+        boolean charging = false;
+        Intent battery = context.getApplicationContext().registerReceiver(null, new IntentFilter(Intent.ACTION_BATTERY_CHANGED));
+        if (battery != null) {
+            int level = battery.getIntExtra(BatteryManager.EXTRA_LEVEL, -1);
+            int scale = battery.getIntExtra(BatteryManager.EXTRA_SCALE, -1);
+            if (level >= 0 && scale > 0) {
+                batteryPercent = level * 100 / scale;
+            }
+            charging = battery.getIntExtra(BatteryManager.EXTRA_PLUGGED, 0) != 0;
+        }
+        return new Conditions(network, dataSaver, powerSave, batteryPercent, charging, downloadBytes,
+                BandwidthEstimator.estimateMillis(downloadBytes), deferred);
+    }
+
+    /**
+     * Returns the decision of the library for the conditions. A download
+     * the user asked for goes ahead unless it may cost money or much
+     * battery, or takes long on a metered network, then the user is
+     * asked. A deferred download waits for an unmetered network and either
+     * a charger or a battery that is neither low nor saving power.
+     */
+    public static int suggest(Conditions conditions) {
+        NetworkMonitor.Snapshot network = conditions.getNetwork();
+        if (conditions.isDeferred()) {
+            boolean ready = network.isConnected() && !network.isMetered()
+                    && (conditions.isCharging() || (!conditions.isPowerSaveMode() && !conditions.isBatteryLow()));
+            return ready ? DECISION_DOWNLOAD_NOW : DECISION_PREFETCH_LATER;
+        }
+
+        if (network.isRoaming() || conditions.isDataSaverEnabled() || conditions.isPowerSaveMode() || conditions.isBatteryLow()) {
+            return DECISION_ASK_USER;
+        }
+        if (network.isMetered() && conditions.getEstimatedMillis() > LONG_DOWNLOAD_MILLIS) {
+            return DECISION_ASK_USER;
+        }
+        return DECISION_DOWNLOAD_NOW;
+    }
+
+    /**
+     * Returns the decision for the conditions: the suggestion of the
+     * library, changed by the listener if there is one.
+     *
+     * @param listener   the listener of the app, may be null
+     * @param conditions the current conditions
+     */
+    public static int decide(UpdateManagerListener listener, Conditions conditions) {
+        int suggestion = suggest(conditions);
+        int decision = listener != null ? listener.getDownloadDecision(conditions, suggestion) : suggestion;
+        HockeyLog.debug(HockeyLog.HOCKEY_TAG, "Download decision %d for %s", decision, conditions);
+        return decision;
+    }
+}
@@ -0,0 +1,65 @@
+package com.audacious_software.zamboni.utils;
+
+import android.content.Context;
+
+import com.audacious_software.zamboni.tasks.GetFileSizeTask;
+
+import java.util.concurrent.Callable;
+
+/**
+ * <h3>Description</h3>
+ *
+ * Internal helper class. Connects to the host of the APK while the update
+ * dialog is shown, so the download finds DNS resolved, redirects followed
+ * and a connection with a completed TLS handshake in the pool, and only
+ * waits for its own request.
+ *
+ * Cancelling aborts a pre-connect that is still running. A connection
+ * that already returned to the pool can't be closed individually; the
+ * platform closes it once it was idle for a few minutes.
+ *
+ **/
+public class DownloadPreconnect {
+    private static GetFileSizeTask sCurrent;
+
+    /**
+     * Starts connecting to the host of the APK, replacing any previous
+     * pre-connect.
+     *
+     * @param context a context, only its application context is kept
+     * @param appUrl  URL of the APK, may be null
+     */
+    public static synchronized void start(Context context, String appUrl) {
+        cancel();
+        if (appUrl == null) {
+            return;
+        }
+
+        final GetFileSizeTask task = new GetFileSizeTask(context.getApplicationContext(), appUrl, null);
+        sCurrent = task;
+        AsyncTaskUtils.execute(new Callable<Void>() {
+            @Override
+            public Void call() {
+                task.preconnect();
+                finished(task);
+                return null;
+            }
+        });
+    }
+
+    /**
+     * Aborts the current pre-connect, e.g. if the user declined the update.
+     */
+    public static synchronized void cancel() {
+        if (sCurrent != null) {
+            sCurrent.abort();
+            sCurrent = null;
+        }
+    }
+
+    private static synchronized void finished(GetFileSizeTask task) {
+        if (sCurrent == task) {
+            sCurrent = null;
+        }
+    }
+}
@@ -0,0 +1,47 @@
+package com.audacious_software.zamboni.utils;
+
+import android.util.Log;
+
+/**
+ * <h3>Description</h3>
+ *
+ * Internal helper class. Writes the messages of {@link HockeyLog} to
+ * LogCat. HockeyLog is part of the Android-free core, so the library
+ * installs this printer with {@link #install()} when it is initialized.
+ *
+ **/
+public class LogcatPrinter implements HockeyLog.Printer {
+    private static volatile boolean sInstalled;
+
+    /**
+     * Makes LogCat the default output of HockeyLog, unless the app set a
+     * printer of its own.
+     */
+    public static void install() {
+        if (!sInstalled) {
+            sInstalled = true;
+            HockeyLog.setDefaultPrinter(new LogcatPrinter());
+        }
+    }
+
+    @Override
+    public void println(int level, String tag, String message, Throwable throwable) {
+        switch (level) {
+            case Log.VERBOSE:
+                Log.v(tag, message, throwable);
+                break;
+            case Log.DEBUG:
+                Log.d(tag, message, throwable);
+                break;
+            case Log.INFO:
+                Log.i(tag, message, throwable);
+                break;
+            case Log.WARN:
+                Log.w(tag, message, throwable);
+                break;
+            default:
+                Log.e(tag, message, throwable);
+                break;
+        }
+    }
+}
@@ -0,0 +1,318 @@
+package com.audacious_software.zamboni.utils;
+
+import android.annotation.SuppressLint;
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.net.ConnectivityManager;
+import android.net.Network;
+import android.net.NetworkCapabilities;
+import android.net.NetworkInfo;
+import android.os.Build;
+import android.os.SystemClock;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * <h3>Description</h3>
+ *
+ * Internal helper class. Tracks the default network of the device, so the
+ * library can look at the connectivity without asking the system service
+ * each time. Registers a NetworkCallback once per process, on older
+ * releases a receiver for connectivity broadcasts, and keeps the last
+ * known state in an immutable {@link Snapshot} that can be read from any
+ * thread.
+ *
+ * When the default network changes, the address families and mirror
+ * measurements of the previous network are dropped, see
+ * {@link AddressRacer} and {@link MirrorSelector}, and the
+ * {@link BandwidthEstimator} switches to the estimate of its transport.
+ *
+ **/
+public class NetworkMonitor {
+    public static final int TRANSPORT_NONE = 0;
+    public static final int TRANSPORT_WIFI = 1;
+    public static final int TRANSPORT_CELLULAR = 2;
+    public static final int TRANSPORT_ETHERNET = 3;
+    public static final int TRANSPORT_OTHER = 4;
+
+    @SuppressLint("StaticFieldLeak")
+    private static NetworkMonitor sInstance;
+
+    private final ConnectivityManager mConnectivityManager;
+    private final List<Listener> mListeners = new CopyOnWriteArrayList<>();
+    private volatile Snapshot mSnapshot;
+    private volatile boolean mTracking;
+    private Network mNetwork;
+
+    /**
+     * <h3>Description</h3>
+     *
+     * Notified when the state of the default network changed. Called on
+     * a background thread of the system, must not block.
+     *
+     **/
+    public interface Listener {
+        void onNetworkChanged(Snapshot previous, Snapshot current);
+    }
+
+    /**
+     * <h3>Description</h3>
+     *
+     * The state of the default network at one point in time.
+     *
+     **/
+    public static class Snapshot {
+        static final Snapshot DISCONNECTED = new Snapshot(false, false, false, TRANSPORT_NONE, 0, 0);
+
+        private final boolean mConnected;
+        private final boolean mMetered;
+        private final boolean mRoaming;
+        private final int mTransport;
+        private final int mDownstreamKbps;
+        private final int mUpstreamKbps;
+        private final long mTimestamp;
+
+        Snapshot(boolean connected, boolean metered, boolean roaming, int transport, int downstreamKbps, int upstreamKbps) {
+            this.mConnected = connected;
+            this.mMetered = metered;
+            this.mRoaming = roaming;
+            this.mTransport = transport;
+            this.mDownstreamKbps = downstreamKbps;
+            this.mUpstreamKbps = upstreamKbps;
+            this.mTimestamp = SystemClock.elapsedRealtime();
+        }
+
+        public boolean isConnected() {
+            return mConnected;
+        }
+
+        /**
+         * Returns true if the network may charge for traffic. Unknown
+         * networks count as metered.
+         */
+        public boolean isMetered() {
+            return mMetered;
+        }
+
+        /**
+         * Returns true if the device roams. Only known before Android 6.0
+         * and from Android 9 on.
+         */
+        public boolean isRoaming() {
+            return mRoaming;
+        }
+
+        /**
+         * Returns one of the TRANSPORT constants.
+         */
+        public int getTransport() {
+            return mTransport;
+        }
+
+        /**
+         * Returns the downstream bandwidth the system estimates for the
+         * network, 0 if unknown. A rough upper bound, not a measurement.
+         */
+        public int getDownstreamKbps() {
+            return mDownstreamKbps;
+        }
+
+        /**
+         * Returns the upstream bandwidth the system estimates, 0 if unknown.
+         */
+        public int getUpstreamKbps() {
+            return mUpstreamKbps;
+        }
+
+        /**
+         * Returns when the state was observed, in elapsed realtime.
+         */
+        public long getTimestamp() {
+            return mTimestamp;
+        }
+
+        /**
+         * Returns true if the snapshots describe a different network or
+         * connectivity, ignoring the bandwidth estimates, which change often.
+         */
+        boolean differsFrom(Snapshot other) {
+            return mConnected != other.mConnected || mMetered != other.mMetered || mRoaming != other.mRoaming || mTransport != other.mTransport;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("connected=%b metered=%b roaming=%b transport=%d down=%dkbps up=%dkbps",
+                    mConnected, mMetered, mRoaming, mTransport, mDownstreamKbps, mUpstreamKbps);
+        }
+    }
+
+    /**
+     * Returns the monitor of the process, starting to track the network on
+     * first use.
+     *
+     * @param context the context to use
+     */
+    public static synchronized NetworkMonitor get(Context context) {
+        if (sInstance == null) {
+            Context appContext = context.getApplicationContext();
+            sInstance = new NetworkMonitor(appContext != null ? appContext : context);
+        }
+        return sInstance;
+    }
+
+    private NetworkMonitor(Context context) {
+        mConnectivityManager = (ConnectivityManager) context.getSystemService(Context.CONNECTIVITY_SERVICE);
+        mSnapshot = Snapshot.DISCONNECTED;
+        if (mConnectivityManager == null) {
+            return;
+        }
+        mSnapshot = query();
+        BandwidthEstimator.setNetworkType(mSnapshot.getTransport());
+        try {
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.N) {
+                mConnectivityManager.registerDefaultNetworkCallback(new ConnectivityManager.NetworkCallback() {
+                    @Override
+                    public void onAvailable(Network network) {
+                        onNetwork(network, mConnectivityManager.getNetworkCapabilities(network));
+                    }
+
+                    @Override
+                    public void onCapabilitiesChanged(Network network, NetworkCapabilities capabilities) {
+                        onNetwork(network, capabilities);
+                    }
+
+                    @Override
+                    public void onLost(Network network) {
+                        onNetwork(null, null);
+                    }
+                });
+            } else {
+                context.registerReceiver(new BroadcastReceiver() {
+                    @Override
+                    public void onReceive(Context context, Intent intent) {
+                        onBroadcast();
+                    }
+                }, new IntentFilter(ConnectivityManager.CONNECTIVITY_ACTION));
+            }
+            mTracking = true;
+        } catch (RuntimeException e) {
+            // E.g. a SecurityException on some devices or too many callbacks of the app.
+            HockeyLog.warn(HockeyLog.HOCKEY_TAG, "Could not track the network, querying it instead", e);
+        }
+    }
+
+    /**
+     * Returns the last known state of the default network. Doesn't call
+     * the system service unless the network couldn't be tracked.
+     */
+    public Snapshot getSnapshot() {
+        if (!mTracking && mConnectivityManager != null) {
+            // Nobody tells us about changes.
+            update(query());
+        }
+        return mSnapshot;
+    }
+
+    public void addListener(Listener listener) {
+        mListeners.add(listener);
+    }
+
+    public void removeListener(Listener listener) {
+        mListeners.remove(listener);
+    }
+
+    private synchronized void onNetwork(Network network, NetworkCapabilities capabilities) {
+        boolean networkChanged = network == null ? mNetwork != null : !network.equals(mNetwork);
+        mNetwork = network;
+        if (networkChanged) {
+            forgetNetworkState();
+        }
+        update(network != null && capabilities != null ? fromCapabilities(capabilities) : Snapshot.DISCONNECTED);
+    }
+
+    private synchronized void onBroadcast() {
+        Snapshot snapshot = query();
+        if (snapshot.differsFrom(mSnapshot)) {
+            // Without the callback, a change of the state is all we know.
+            forgetNetworkState();
+        }
+        update(snapshot);
+    }
+
+    private synchronized void update(Snapshot snapshot) {
+        Snapshot previous = mSnapshot;
+        mSnapshot = snapshot;
+        if (snapshot.differsFrom(previous)) {
+            BandwidthEstimator.setNetworkType(snapshot.getTransport());
+            HockeyLog.debug(HockeyLog.HOCKEY_TAG, "Network changed: %s", snapshot);
+            for (Listener listener : mListeners) {
+                listener.onNetworkChanged(previous, snapshot);
+            }
+        }
+    }
+
+    private static void forgetNetworkState() {
+        AddressRacer.clear();
+        MirrorSelector.clear();
+    }
+
+    /**
+     * Asks the system service for the current state.
+     */
+    @SuppressWarnings("deprecation")
+    private Snapshot query() {
+        try {
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M) {
+                Network network = mConnectivityManager.getActiveNetwork();
+                NetworkCapabilities capabilities = network != null ? mConnectivityManager.getNetworkCapabilities(network) : null;
+                return capabilities != null ? fromCapabilities(capabilities) : Snapshot.DISCONNECTED;
+            }
+
+            NetworkInfo info = mConnectivityManager.getActiveNetworkInfo();
+            if (info == null || !info.isConnected()) {
+                return Snapshot.DISCONNECTED;
+            }
+            int transport;
+            switch (info.getType()) {
+                case ConnectivityManager.TYPE_WIFI:
+                    transport = TRANSPORT_WIFI;
+                    break;
+                case ConnectivityManager.TYPE_MOBILE:
+                    transport = TRANSPORT_CELLULAR;
+                    break;
+                case ConnectivityManager.TYPE_ETHERNET:
+                    transport = TRANSPORT_ETHERNET;
+                    break;
+                default:
+                    transport = TRANSPORT_OTHER;
+                    break;
+            }
+            return new Snapshot(true, mConnectivityManager.isActiveNetworkMetered(), info.isRoaming(), transport, 0, 0);
+        } catch (RuntimeException e) {
+            HockeyLog.error("Exception thrown when check network is connected", e);
+            return Snapshot.DISCONNECTED;
+        }
+    }
+
+    private static Snapshot fromCapabilities(NetworkCapabilities capabilities) {
+        int transport;
+        if (capabilities.hasTransport(NetworkCapabilities.TRANSPORT_WIFI)) {
+            transport = TRANSPORT_WIFI;
+        } else if (capabilities.hasTransport(NetworkCapabilities.TRANSPORT_CELLULAR)) {
+            transport = TRANSPORT_CELLULAR;
+        } else if (capabilities.hasTransport(NetworkCapabilities.TRANSPORT_ETHERNET)) {
+            transport = TRANSPORT_ETHERNET;
+        } else {
+            transport = TRANSPORT_OTHER;
+        }
+
+        boolean connected = capabilities.hasCapability(NetworkCapabilities.NET_CAPABILITY_INTERNET);
+        boolean metered = !capabilities.hasCapability(NetworkCapabilities.NET_CAPABILITY_NOT_METERED);
+        boolean roaming = Build.VERSION.SDK_INT >= Build.VERSION_CODES.P && !capabilities.hasCapability(NetworkCapabilities.NET_CAPABILITY_NOT_ROAMING);
+        return new Snapshot(connected, metered, roaming, transport,
+                capabilities.getLinkDownstreamBandwidthKbps(), capabilities.getLinkUpstreamBandwidthKbps());
+    }
+}
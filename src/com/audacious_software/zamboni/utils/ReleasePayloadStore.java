@@ -0,0 +1,174 @@
+package com.audacious_software.zamboni.utils;
+
+import android.content.Context;
+import android.os.StrictMode;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * <h3>Description</h3>
+ *
+ * Internal helper class. Keeps large payloads such as the version feed
+ * in process, so only a small handle has to be passed through Intents and
+ * fragment arguments, which are limited by the Binder transaction size.
+ *
+ * Every payload is also written to the cache directory in the background,
+ * so handles survive process death. Large payloads are then dropped from
+ * memory and read back from the memory-mapped file when resolved.
+ *
+ **/
+public class ReleasePayloadStore {
+    private static final String DIRECTORY_NAME = "zamboni-payloads";
+
+    /**
+     * Payloads with more characters than this are only kept on disk once written.
+     */
+    private static final int SPILL_THRESHOLD = 64 * 1024;
+
+    /**
+     * Files older than this are removed when new payloads are stored.
+     */
+    private static final long MAX_FILE_AGE = 24 * 60 * 60 * 1000L;
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private static final Map<String, String> sPayloads = new ConcurrentHashMap<>();
+
+    /**
+     * Stores the payload and returns its handle.
+     *
+     * @param context the context used to locate the cache directory, may be
+     *                null to keep the payload in memory only
+     * @param payload the payload
+     * @return the handle to pass instead of the payload
+     */
+    public static String put(Context context, final String payload) {
+        final String handle = UUID.randomUUID().toString();
+        sPayloads.put(handle, payload);
+
+        if (context != null) {
+            final File directory = getDirectory(context);
+            AsyncTaskUtils.execute(new Callable<Void>() {
+                @Override
+                public Void call() {
+                    removeExpiredFiles(directory);
+                    if (write(new File(directory, handle), payload) && payload.length() > SPILL_THRESHOLD) {
+                        sPayloads.remove(handle);
+                    }
+                    return null;
+                }
+            });
+        }
+        return handle;
+    }
+
+    /**
+     * Returns the payload for the given handle or null if it is unknown.
+     *
+     * Reads from disk if the payload was spilled or the process was
+     * restarted. The UpdateFragment needs the payload to create its view,
+     * so the read is allowed on the main thread despite StrictMode: it
+     * maps a single file from the app's cache directory, which costs about
+     * as much as loading SharedPreferences.
+     *
+     * @param context the context used to locate the cache directory
+     * @param handle  the handle returned by {@link #put(Context, String)}
+     */
+    public static String get(Context context, String handle) {
+        if (handle == null) {
+            return null;
+        }
+
+        String payload = sPayloads.get(handle);
+        if (payload == null && context != null) {
+            StrictMode.ThreadPolicy policy = StrictMode.allowThreadDiskReads();
+            try {
+                payload = read(new File(getDirectory(context), handle));
+            } finally {
+                StrictMode.setThreadPolicy(policy);
+            }
+        }
+        return payload;
+    }
+
+    private static File getDirectory(Context context) {
+        return new File(context.getCacheDir(), DIRECTORY_NAME);
+    }
+
+    private static boolean write(File file, String payload) {
+        File directory = file.getParentFile();
+        if (!directory.exists() && !directory.mkdirs()) {
+            HockeyLog.warn(HockeyLog.HOCKEY_TAG, "Couldn't create payload directory %s", directory);
+            return false;
+        }
+
+        File tempFile = new File(directory, file.getName() + ".tmp");
+        OutputStream output = null;
+        try {
+            output = new FileOutputStream(tempFile);
+            output.write(payload.getBytes(UTF_8));
+            output.close();
+            output = null;
+            return tempFile.renameTo(file);
+        } catch (IOException e) {
+            HockeyLog.error(HockeyLog.HOCKEY_TAG, "Failed to write payload %s", file.getName(), e);
+            return false;
+        } finally {
+            try {
+                if (output != null) {
+                    output.close();
+                }
+            } catch (IOException ignored) {
+            }
+        }
+    }
+
+    private static String read(File file) {
+        if (!file.exists()) {
+            return null;
+        }
+
+        FileInputStream input = null;
+        try {
+            input = new FileInputStream(file);
+            FileChannel channel = input.getChannel();
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            return UTF_8.decode(buffer).toString();
+        } catch (IOException e) {
+            HockeyLog.error(HockeyLog.HOCKEY_TAG, "Failed to read payload %s", file.getName(), e);
+            return null;
+        } finally {
+            try {
+                if (input != null) {
+                    input.close();
+                }
+            } catch (IOException ignored) {
+            }
+        }
+    }
+
+    private static void removeExpiredFiles(File directory) {
+        File[] files = directory.listFiles();
+        if (files == null) {
+            return;
+        }
+
+        long now = System.currentTimeMillis();
+        for (File file : files) {
+            if (now - file.lastModified() > MAX_FILE_AGE && file.delete()) {
+                sPayloads.remove(file.getName());
+            }
+        }
+    }
+}
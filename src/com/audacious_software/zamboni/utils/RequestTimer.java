@@ -0,0 +1,192 @@
+package com.audacious_software.zamboni.utils;
+
+import android.os.SystemClock;
+
+import com.audacious_software.zamboni.listeners.UpdateMetricsListener;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.net.URL;
+
+import javax.net.ssl.HandshakeCompletedEvent;
+import javax.net.ssl.HandshakeCompletedListener;
+import javax.net.ssl.HttpsURLConnection;
+import javax.net.ssl.SSLSocket;
+import javax.net.ssl.SSLSocketFactory;
+
+/**
+ * <h3>Description</h3>
+ *
+ * Internal helper class. Measures the phases of a request made on the
+ * current thread and reports them to the {@link UpdateMetrics} listener.
+ *
+ * HttpURLConnection resolves the host inside its connect, so the DNS
+ * lookup is part of the connect time; {@link AddressRacer} times a lookup
+ * of each host on its own, off the request path. TCP connect and TLS
+ * handshake are observed through the socket factory set by
+ * {@link Util#openHttpsConnection(URL)}, without changing when or how the
+ * handshake happens. Every handshake is also reported on its own, with
+ * whether it resumed an earlier session. Other transports only report the
+ * time to the first byte.
+ *
+ **/
+public class RequestTimer {
+    private static final ThreadLocal<RequestTimer> sCurrent = new ThreadLocal<>();
+
+    private static SSLSocketFactory sTimedDelegate;
+    private static SSLSocketFactory sTimedFactory;
+
+    private final int mPhase;
+    private long mStartTime;
+    private volatile long mSocketTime = -1L;
+    private volatile long mHandshakeTime = -1L;
+    private long mResponseTime = -1L;
+
+    private RequestTimer(int phase) {
+        this.mPhase = phase;
+    }
+
+    /**
+     * Starts timing a request on the current thread.
+     *
+     * @param phase one of the PHASE constants of {@link UpdateMetricsListener}
+     */
+    public static RequestTimer start(int phase) {
+        RequestTimer timer = new RequestTimer(phase);
+        timer.mStartTime = SystemClock.elapsedRealtime();
+        sCurrent.set(timer);
+        return timer;
+    }
+
+    /**
+     * Returns the phase of the request timed on the current thread, 0 if
+     * there is none.
+     */
+    public static int getCurrentPhase() {
+        RequestTimer timer = sCurrent.get();
+        return timer != null ? timer.mPhase : 0;
+    }
+
+    /**
+     * Marks that the response headers were received.
+     */
+    public void responseReceived() {
+        if (mResponseTime < 0L) {
+            mResponseTime = SystemClock.elapsedRealtime();
+        }
+    }
+
+    /**
+     * Stops timing and reports the request if a response was received.
+     */
+    public void finish() {
+        if (sCurrent.get() == this) {
+            sCurrent.remove();
+        }
+        if (mResponseTime < 0L) {
+            return;
+        }
+
+        long socketTime = mSocketTime;
+        long handshakeTime = mHandshakeTime;
+        long connectMillis = socketTime >= 0L ? socketTime - mStartTime : 0L;
+        long tlsMillis = socketTime >= 0L && handshakeTime >= 0L ? handshakeTime - socketTime : 0L;
+        long readyTime = Math.max(mStartTime, Math.max(socketTime, handshakeTime));
+        UpdateMetrics.getListener().onRequestTimed(mPhase, connectMillis, tlsMillis, mResponseTime - readyTime);
+    }
+
+    /**
+     * Returns a factory which reports socket events to the timer of the
+     * calling thread. The wrapper is reused as long as the delegate
+     * doesn't change, so pooled connections can still be shared.
+     */
+    static synchronized SSLSocketFactory wrap(SSLSocketFactory delegate) {
+        if (delegate != sTimedDelegate) {
+            sTimedDelegate = delegate;
+            sTimedFactory = new TimedSocketFactory(delegate);
+        }
+        return sTimedFactory;
+    }
+
+    /**
+     * HttpsURLConnection connects a plain socket and then layers TLS on top
+     * of it, so the layering marks the end of the TCP connect.
+     */
+    private static class TimedSocketFactory extends SSLSocketFactory {
+        private final SSLSocketFactory mDelegate;
+
+        TimedSocketFactory(SSLSocketFactory delegate) {
+            this.mDelegate = delegate;
+        }
+
+        @Override
+        public Socket createSocket(Socket socket, String host, int port, boolean autoClose) throws IOException {
+            Socket result = mDelegate.createSocket(socket, host, port, autoClose);
+
+            if (!(result instanceof SSLSocket)) {
+                return result;
+            }
+
+            final RequestTimer timer = sCurrent.get();
+            final long socketTime = SystemClock.elapsedRealtime();
+            final long socketWallTime = System.currentTimeMillis();
+            if (timer != null && timer.mSocketTime < 0L) {
+                timer.mSocketTime = socketTime;
+            }
+            ((SSLSocket) result).addHandshakeCompletedListener(new HandshakeCompletedListener() {
+                @Override
+                public void handshakeCompleted(HandshakeCompletedEvent event) {
+                    long handshakeTime = SystemClock.elapsedRealtime();
+                    if (timer != null && timer.mHandshakeTime < 0L) {
+                        timer.mHandshakeTime = handshakeTime;
+                    }
+
+                    /*
+                     * A resumed session keeps the creation time of the
+                     * handshake that negotiated it.
+                     */
+                    boolean resumed = event.getSession().getCreationTime() < socketWallTime;
+                    UpdateMetrics.getListener().onTlsHandshake(timer != null ? timer.mPhase : 0,
+                            handshakeTime - socketTime, resumed);
+                }
+            });
+            return result;
+        }
+
+        @Override
+        public String[] getDefaultCipherSuites() {
+            return mDelegate.getDefaultCipherSuites();
+        }
+
+        @Override
+        public String[] getSupportedCipherSuites() {
+            return mDelegate.getSupportedCipherSuites();
+        }
+
+        @Override
+        public Socket createSocket() throws IOException {
+            return mDelegate.createSocket();
+        }
+
+        @Override
+        public Socket createSocket(String host, int port) throws IOException {
+            return mDelegate.createSocket(host, port);
+        }
+
+        @Override
+        public Socket createSocket(String host, int port, InetAddress localHost, int localPort) throws IOException {
+            return mDelegate.createSocket(host, port, localHost, localPort);
+        }
+
+        @Override
+        public Socket createSocket(InetAddress host, int port) throws IOException {
+            return mDelegate.createSocket(host, port);
+        }
+
+        @Override
+        public Socket createSocket(InetAddress address, int port, InetAddress localAddress, int localPort) throws IOException {
+            return mDelegate.createSocket(address, port, localAddress, localPort);
+        }
+    }
+}
@@ -0,0 +1,120 @@
+package com.audacious_software.zamboni.utils;
+
+import android.graphics.Typeface;
+import android.os.Build;
+import android.text.Html;
+import android.text.Spannable;
+import android.text.SpannableStringBuilder;
+import android.text.Spanned;
+import android.text.SpannedString;
+import android.text.style.StyleSpan;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * <h3>Description</h3>
+ *
+ * Internal helper class. Converts release notes into styled text that can
+ * be shown in a TextView, which is much cheaper than creating a WebView.
+ * Only notes with simple markup can be converted.
+ *
+ **/
+public class SpannedReleaseNotes {
+    private static final int CACHE_SIZE = 2;
+
+    private static final Map<String, Spanned> sCache = new LinkedHashMap<String, Spanned>(CACHE_SIZE, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Spanned> eldest) {
+            return size() > CACHE_SIZE;
+        }
+    };
+
+    /**
+     * Returns true if all notes of the renderer can be shown as styled text.
+     *
+     * @param renderer the renderer of the release notes
+     */
+    public static boolean isSupported(ReleaseNotesRenderer renderer) {
+        return renderer.hasOnlySimpleMarkup(listsSupported());
+    }
+
+    /**
+     * Builds styled text for the given number of newest sections. Check
+     * {@link #isSupported(ReleaseNotesRenderer)} first, unsupported markup
+     * is dropped silently.
+     *
+     * @param renderer     the renderer of the release notes
+     * @param sectionCount number of sections to include
+     * @return the release notes as styled text
+     */
+    public static Spanned build(ReleaseNotesRenderer renderer, int sectionCount) {
+        int count = Math.min(sectionCount, renderer.getSectionCount());
+        SpannableStringBuilder result = new SpannableStringBuilder();
+
+        for (int position = 0; position < count; position++) {
+            if (position > 0) {
+                result.append("\n\n");
+            }
+
+            int titleStart = result.length();
+            result.append(renderer.getSectionTitle(position));
+            result.setSpan(new StyleSpan(Typeface.BOLD), titleStart, result.length(), Spannable.SPAN_EXCLUSIVE_EXCLUSIVE);
+            result.append("\n\n");
+
+            String notes = renderer.getSectionNotes(position);
+            if (notes == null) {
+                int noInfoStart = result.length();
+                result.append(renderer.getNoInfoLabel());
+                result.setSpan(new StyleSpan(Typeface.ITALIC), noInfoStart, result.length(), Spannable.SPAN_EXCLUSIVE_EXCLUSIVE);
+            } else {
+                result.append(trimTrailingWhitespace(fromHtml(notes)));
+            }
+        }
+
+        return new SpannedString(result);
+    }
+
+    /**
+     * Returns previously built text or null.
+     *
+     * @param key the cache key of the release notes, see {@link VersionHelper#getReleaseNotesCacheKey(boolean)}
+     */
+    public static Spanned getCached(String key) {
+        synchronized (sCache) {
+            return sCache.get(key);
+        }
+    }
+
+    public static void putCached(String key, Spanned text) {
+        synchronized (sCache) {
+            sCache.put(key, text);
+        }
+    }
+
+    @SuppressWarnings("deprecation")
+    private static Spanned fromHtml(String html) {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.N) {
+            return Html.fromHtml(html, Html.FROM_HTML_MODE_COMPACT);
+        }
+        return Html.fromHtml(html);
+    }
+
+    /**
+     * Paragraphs end with line breaks, which would add up between sections.
+     */
+    private static CharSequence trimTrailingWhitespace(CharSequence text) {
+        int end = text.length();
+        while (end > 0 && Character.isWhitespace(text.charAt(end - 1))) {
+            end--;
+        }
+        return text.subSequence(0, end);
+    }
+
+    /**
+     * Lists are only handled by Html.fromHtml as of Android 7.0.
+     */
+    private static boolean listsSupported() {
+        return Build.VERSION.SDK_INT >= Build.VERSION_CODES.N;
+    }
+}
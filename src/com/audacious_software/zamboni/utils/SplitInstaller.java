@@ -0,0 +1,189 @@
+package com.audacious_software.zamboni.utils;
+
+import android.annotation.TargetApi;
+import android.app.PendingIntent;
+import android.content.Context;
+import android.content.Intent;
+import android.content.pm.PackageInstaller;
+import android.content.res.Configuration;
+import android.os.Build;
+import android.os.LocaleList;
+
+import com.audacious_software.zamboni.SplitInstallReceiver;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * <h3>Description</h3>
+ *
+ * Internal helper class. Chooses the configuration splits of an update
+ * for the device and installs them with the base APK in one
+ * PackageInstaller session, which needs Android 5.0. The result of the
+ * session is handled by {@link SplitInstallReceiver}.
+ *
+ **/
+public class SplitInstaller {
+
+    /**
+     * Returns true if the device can install split APKs.
+     */
+    public static boolean isSupported() {
+        return Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP;
+    }
+
+    /**
+     * Returns the splits matching the ABIs, the display and the languages
+     * of the device, or null if the update can't be installed from splits
+     * and the universal APK has to be downloaded instead.
+     *
+     * @param context the context to use
+     * @param apks    the split APKs of the update, may be null
+     */
+    @SuppressWarnings("deprecation")
+    public static List<SplitApks.Split> select(Context context, SplitApks apks) {
+        if (apks == null || !isSupported()) {
+            return null;
+        }
+
+        List<String> languages = new ArrayList<>();
+        Configuration configuration = context.getResources().getConfiguration();
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.N) {
+            LocaleList locales = configuration.getLocales();
+            for (int index = 0; index < locales.size(); index++) {
+                languages.add(locales.get(index).getLanguage().toLowerCase(Locale.US));
+            }
+        } else if (configuration.locale != null) {
+            languages.add(configuration.locale.getLanguage().toLowerCase(Locale.US));
+        }
+
+        List<SplitApks.Split> splits = apks.select(Build.SUPPORTED_ABIS, context.getResources().getDisplayMetrics().densityDpi, languages);
+        if (splits == null) {
+            HockeyLog.info(HockeyLog.HOCKEY_TAG, "No split matches the ABIs of the device, downloading the universal APK");
+        }
+        return splits;
+    }
+
+    /**
+     * Returns the number of bytes to download for the base APK and the
+     * splits, or -1 if a size is unknown.
+     */
+    public static long getDownloadSize(SplitApks apks, List<SplitApks.Split> splits) {
+        long size = apks.getBaseSize();
+        for (SplitApks.Split split : splits) {
+            if (size < 0L || split.getSize() < 0L) {
+                return -1L;
+            }
+            size += split.getSize();
+        }
+        return size;
+    }
+
+    /**
+     * Creates a session and writes the APKs into it. Blocks, so must not be
+     * called on the main thread.
+     *
+     * @param context the context to use
+     * @param names   the names of the APKs in the session
+     * @param files   the APKs, the base APK first
+     * @return the id of the session, to be committed
+     * @throws IOException if the session couldn't be created or written,
+     *                     it is abandoned then
+     */
+    @TargetApi(Build.VERSION_CODES.LOLLIPOP)
+    public static int stage(Context context, List<String> names, List<File> files) throws IOException {
+        PackageInstaller installer = context.getPackageManager().getPackageInstaller();
+        PackageInstaller.SessionParams params = new PackageInstaller.SessionParams(PackageInstaller.SessionParams.MODE_FULL_INSTALL);
+        params.setAppPackageName(context.getPackageName());
+        long size = 0L;
+        for (File file : files) {
+            size += file.length();
+        }
+        params.setSize(size);
+
+        int sessionId = installer.createSession(params);
+        PackageInstaller.Session session = null;
+        boolean staged = false;
+        try {
+            session = installer.openSession(sessionId);
+            byte[] buffer = new byte[64 * 1024];
+            for (int index = 0; index < files.size(); index++) {
+                File file = files.get(index);
+                OutputStream output = session.openWrite(names.get(index), 0L, file.length());
+                InputStream input = new FileInputStream(file);
+                try {
+                    int count;
+                    while ((count = input.read(buffer)) != -1) {
+                        output.write(buffer, 0, count);
+                    }
+                    session.fsync(output);
+                } finally {
+                    input.close();
+                    output.close();
+                }
+            }
+            staged = true;
+            return sessionId;
+        } finally {
+            if (session != null) {
+                session.close();
+            }
+            if (!staged) {
+                installer.abandonSession(sessionId);
+            }
+        }
+    }
+
+    /**
+     * Abandons a staged session that won't be committed, so the system can
+     * delete the APKs written into it.
+     *
+     * @param context   the context to use
+     * @param sessionId the id returned by {@link #stage(Context, List, List)}
+     */
+    @TargetApi(Build.VERSION_CODES.LOLLIPOP)
+    public static void abandon(Context context, int sessionId) {
+        try {
+            context.getPackageManager().getPackageInstaller().abandonSession(sessionId);
+        } catch (SecurityException e) {
+            HockeyLog.debug(HockeyLog.HOCKEY_TAG, "Could not abandon session %d", sessionId, e);
+        }
+    }
+
+    /**
+     * Commits a staged session. The system asks the user to confirm the
+     * installation through {@link SplitInstallReceiver}.
+     *
+     * @param context   the context to use
+     * @param sessionId the id returned by {@link #stage(Context, List, List)}
+     */
+    @TargetApi(Build.VERSION_CODES.LOLLIPOP)
+    public static void commit(Context context, int sessionId) {
+        PackageInstaller installer = context.getPackageManager().getPackageInstaller();
+        PackageInstaller.Session session = null;
+        try {
+            session = installer.openSession(sessionId);
+            Intent intent = new Intent(context, SplitInstallReceiver.class);
+            int flags = PendingIntent.FLAG_UPDATE_CURRENT;
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.S) {
+                // The installer adds the status to the intent.
+                flags |= PendingIntent.FLAG_MUTABLE;
+            }
+            PendingIntent pendingIntent = PendingIntent.getBroadcast(context, sessionId, intent, flags);
+            session.commit(pendingIntent.getIntentSender());
+        } catch (IOException | SecurityException e) {
+            HockeyLog.error(HockeyLog.HOCKEY_TAG, "Could not install session %d", sessionId, e);
+            installer.abandonSession(sessionId);
+        } finally {
+            if (session != null) {
+                session.close();
+            }
+        }
+    }
+}
@@ -0,0 +1,244 @@
+package com.audacious_software.zamboni.utils;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * <h3>Description</h3>
+ *
+ * Internal helper class. Stores the state of the library, e.g. the device
+ * identifier and the usage time, in a small append-only log instead of a
+ * shared preferences XML file that is rewritten completely on every change,
+ * see {@link StateLog}.
+ *
+ * All values are held in memory. Changes are appended to the log in the
+ * background and synced to disk. Once the log contains much more records
+ * than values, it is compacted into a new file which atomically replaces
+ * the old one. Values of the "HockeyApp" shared preferences are migrated
+ * when the log is created, and only removed from there once the log was
+ * written. Only the log is read on the calling thread, writing and
+ * syncing always happen in the background.
+ *
+ * Also keeps the state of the {@link CircuitBreaker}, so a failing server
+ * is left alone across launches, and the throughput estimates of the
+ * {@link BandwidthEstimator}.
+ *
+ **/
+public class StateStore implements CircuitBreaker.Store, BandwidthEstimator.Store, MirrorSelector.Store {
+    private static final String FILE_NAME = "zamboni-state";
+    private static final String PREFERENCES_NAME = "HockeyApp";
+
+    /**
+     * Minimum number of records before the log is compacted.
+     */
+    private static final int MIN_COMPACTION_RECORDS = 64;
+
+    private static StateStore sInstance;
+
+    private final StateLog mLog;
+    private final Map<String, Object> mValues = new ConcurrentHashMap<>();
+    private final ConcurrentLinkedQueue<byte[]> mPendingRecords = new ConcurrentLinkedQueue<>();
+    private final Object mFileLock = new Object();
+
+    /**
+     * True until the log was rewritten after a migration or damage.
+     * Guarded by the file lock.
+     */
+    private boolean mRewriteNeeded;
+
+    /**
+     * The migrated shared preferences, removed once the log was written.
+     * Guarded by the file lock.
+     */
+    private SharedPreferences mMigratedPreferences;
+    private List<String> mMigratedKeys;
+
+    private final Callable<Void> mWriter = new Callable<Void>() {
+        @Override
+        public Void call() {
+            synchronized (mFileLock) {
+                writePendingRecords();
+            }
+            return null;
+        }
+    };
+
+    /**
+     * Returns the store of the app, loading it on first use.
+     *
+     * @param context the context to use
+     */
+    public static synchronized StateStore get(Context context) {
+        if (sInstance == null) {
+            Context appContext = context.getApplicationContext();
+            sInstance = new StateStore(appContext != null ? appContext : context);
+        }
+        return sInstance;
+    }
+
+    private StateStore(Context context) {
+        mLog = new StateLog(new File(context.getFilesDir(), FILE_NAME));
+        if (mLog.exists()) {
+            // Appending after a damaged record would hide the new records.
+            mRewriteNeeded = !mLog.load(mValues);
+        } else {
+            migrate(context);
+            // Creates the file even without values, so the migration only runs once.
+            mRewriteNeeded = true;
+        }
+        if (mRewriteNeeded) {
+            AsyncTaskUtils.execute(mWriter);
+        }
+    }
+
+    public String getString(String key, String defaultValue) {
+        Object value = mValues.get(key);
+        return value instanceof String ? (String) value : defaultValue;
+    }
+
+    @Override
+    public long getLong(String key, long defaultValue) {
+        Object value = mValues.get(key);
+        return value instanceof Long ? (Long) value : defaultValue;
+    }
+
+    public boolean contains(String key) {
+        return mValues.containsKey(key);
+    }
+
+    /**
+     * Returns a snapshot of all keys.
+     */
+    public Set<String> keySet() {
+        return Collections.unmodifiableSet(new HashSet<>(mValues.keySet()));
+    }
+
+    /**
+     * Stores a string. Values too long for the log, see
+     * {@link StateLog#MAX_RECORD_LENGTH}, are not stored.
+     */
+    public void putString(String key, String value) {
+        if (value == null) {
+            remove(key);
+            return;
+        }
+        if (value.equals(mValues.get(key))) {
+            return;
+        }
+        byte[] record = StateLog.encodeString(key, value);
+        if (record == null) {
+            HockeyLog.warn(HockeyLog.HOCKEY_TAG, "Not storing %s, the value is too long", key);
+            return;
+        }
+        mValues.put(key, value);
+        append(record);
+    }
+
+    @Override
+    public void putLong(String key, long value) {
+        Object previous = mValues.put(key, value);
+        if (!(previous instanceof Long) || (Long) previous != value) {
+            append(StateLog.encodeLong(key, value));
+        }
+    }
+
+    @Override
+    public void remove(String key) {
+        if (mValues.remove(key) != null) {
+            append(StateLog.encodeRemove(key));
+        }
+    }
+
+    private void append(byte[] record) {
+        mPendingRecords.add(record);
+        AsyncTaskUtils.execute(mWriter);
+    }
+
+    /**
+     * Appends all pending records with a single sync. Must hold the file
+     * lock, so records are written in the order they were added.
+     */
+    private void writePendingRecords() {
+        if (mRewriteNeeded) {
+            // The new file holds all values, including those of the pending records.
+            if (!mLog.compact(mValues)) {
+                return;
+            }
+            mRewriteNeeded = false;
+            mPendingRecords.clear();
+            removeMigratedPreferences();
+            return;
+        }
+        if (mPendingRecords.isEmpty()) {
+            return;
+        }
+
+        List<byte[]> records = new ArrayList<>();
+        byte[] record;
+        while ((record = mPendingRecords.poll()) != null) {
+            records.add(record);
+        }
+        try {
+            mLog.append(records);
+        } catch (IOException e) {
+            HockeyLog.error("Failed to write state", e);
+        }
+
+        if (mLog.isCompactionDue(MIN_COMPACTION_RECORDS, mValues.size())) {
+            mLog.compact(mValues);
+        }
+    }
+
+    /**
+     * Copies the string and number values of the shared preferences used by
+     * previous versions of the library. They are removed from there once
+     * the log was written.
+     */
+    private void migrate(Context context) {
+        SharedPreferences preferences = context.getSharedPreferences(PREFERENCES_NAME, Context.MODE_PRIVATE);
+        Map<String, ?> values = preferences.getAll();
+
+        List<String> migratedKeys = new ArrayList<>();
+        for (Map.Entry<String, ?> entry : values.entrySet()) {
+            Object value = entry.getValue();
+            if (value instanceof String) {
+                mValues.put(entry.getKey(), value);
+            } else if (value instanceof Long || value instanceof Integer) {
+                mValues.put(entry.getKey(), ((Number) value).longValue());
+            } else {
+                continue;
+            }
+            migratedKeys.add(entry.getKey());
+        }
+
+        if (!migratedKeys.isEmpty()) {
+            mMigratedPreferences = preferences;
+            mMigratedKeys = migratedKeys;
+        }
+    }
+
+    private void removeMigratedPreferences() {
+        if (mMigratedPreferences == null) {
+            return;
+        }
+        SharedPreferences.Editor editor = mMigratedPreferences.edit();
+        for (String key : mMigratedKeys) {
+            editor.remove(key);
+        }
+        editor.apply();
+        mMigratedPreferences = null;
+        mMigratedKeys = null;
+    }
+}
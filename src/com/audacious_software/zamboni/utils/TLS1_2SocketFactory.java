@@ -8,15 +8,10 @@ package com.audacious_software.zamboni.utils;
 import java.io.IOException;
 import java.net.InetAddress;
 import java.net.Socket;
-import java.security.KeyManagementException;
-import java.security.NoSuchAlgorithmException;
 
-import javax.net.ssl.SSLContext;
 import javax.net.ssl.SSLSocket;
 import javax.net.ssl.SSLSocketFactory;
 
-import static javax.net.ssl.HttpsURLConnection.getDefaultSSLSocketFactory;
-
 /**
  * This class forces TLS 1.2 protocol via adapter pattern.
  */
@@ -39,20 +34,11 @@ class TLS1_2SocketFactory extends SSLSocketFactory {
      */
     private final SSLSocketFactory delegate;
 
-    TLS1_2SocketFactory() {
-        SSLSocketFactory socketFactory = null;
-        try {
-
-            /*
-             * Explicitly specify protocol for SSL context.
-             * See https://www.java.com/en/configure_crypto.html#enableTLSv1_2
-             */
-            SSLContext sc = SSLContext.getInstance(TLS1_2_PROTOCOL);
-            sc.init(null, null, null);
-            socketFactory = sc.getSocketFactory();
-        } catch (KeyManagementException | NoSuchAlgorithmException ignored) {
-        }
-        delegate = socketFactory != null ? socketFactory : getDefaultSSLSocketFactory();
+    /**
+     * @param delegate factory of a TLSv1.2 SSLContext, see {@link TlsSessions}.
+     */
+    TLS1_2SocketFactory(SSLSocketFactory delegate) {
+        this.delegate = delegate;
     }
 
     /**
@@ -64,6 +50,7 @@ class TLS1_2SocketFactory extends SSLSocketFactory {
     private SSLSocket forceTLS1_2(Socket socket) {
         SSLSocket sslSocket = (SSLSocket) socket;
         sslSocket.setEnabledProtocols(ENABLED_PROTOCOLS);
+        TlsSessions.enableSessionTickets(sslSocket);
         return sslSocket;
     }
 
@@ -0,0 +1,164 @@
+package com.audacious_software.zamboni.utils;
+
+import android.net.SSLCertificateSocketFactory;
+import android.os.Build;
+
+import java.security.GeneralSecurityException;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+import javax.net.ssl.HttpsURLConnection;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLSession;
+import javax.net.ssl.SSLSessionContext;
+import javax.net.ssl.SSLSocket;
+import javax.net.ssl.SSLSocketFactory;
+
+/**
+ * <h3>Description</h3>
+ *
+ * Internal helper class. Provides the socket factory used for all HTTPS
+ * requests of the library, so TLS sessions negotiated by the feed check
+ * can be resumed by the size probe and the download instead of doing a
+ * full handshake each time.
+ *
+ * From Android 5.1 on, this is the default factory of HttpsURLConnection,
+ * which caches sessions itself and may have been replaced by the app,
+ * e.g. for certificate pinning. Only older releases, which don't enable
+ * TLS 1.2 by default, get an SSLContext of the library, which trusts the
+ * same certificates as the platform default.
+ *
+ **/
+public class TlsSessions {
+    /**
+     * The library talks to a handful of hosts at most: the update server
+     * and the hosts an APK download redirects to.
+     */
+    static final int SESSION_CACHE_SIZE = 16;
+
+    static final int SESSION_TIMEOUT_SECONDS = (int) TimeUnit.HOURS.toSeconds(8);
+
+    private static final String TLS1_2_PROTOCOL = "TLSv1.2";
+
+    private static SSLContext sContext;
+
+    private static SSLSocketFactory sLegacySocketFactory;
+
+    private static SSLCertificateSocketFactory sTicketHelper;
+
+    /**
+     * Returns the socket factory for HTTPS connections. As long as the app
+     * doesn't replace the default factory, the same instance is returned
+     * on every call, so connections using it can be pooled.
+     */
+    public static SSLSocketFactory getSocketFactory() {
+        /*
+         * TLS 1.2 was enabled by default only on Android 5.0 and is still
+         * disabled on some Samsung devices with API 21, see Util.openHttpsConnection().
+         */
+        if (Build.VERSION.SDK_INT > Build.VERSION_CODES.LOLLIPOP) {
+            return HttpsURLConnection.getDefaultSSLSocketFactory();
+        }
+        return getLegacySocketFactory();
+    }
+
+    /**
+     * Returns the number of sessions which can currently be resumed.
+     */
+    public static synchronized int getCachedSessionCount() {
+        SSLSessionContext sessions = getSessionContext();
+        if (sessions == null) {
+            return 0;
+        }
+        return Collections.list(sessions.getIds()).size();
+    }
+
+    /**
+     * Drops all cached sessions, e.g. after the certificates of the update
+     * server changed.
+     */
+    public static synchronized void clear() {
+        SSLSessionContext sessions = getSessionContext();
+        if (sessions != null) {
+            for (byte[] id : Collections.list(sessions.getIds())) {
+                SSLSession session = sessions.getSession(id);
+                if (session != null) {
+                    session.invalidate();
+                }
+            }
+        }
+    }
+
+    private static synchronized SSLSocketFactory getLegacySocketFactory() {
+        if (sLegacySocketFactory == null) {
+            SSLContext context = getContext(TLS1_2_PROTOCOL);
+            if (context == null) {
+                sLegacySocketFactory = HttpsURLConnection.getDefaultSSLSocketFactory();
+            } else {
+                sLegacySocketFactory = new TLS1_2SocketFactory(context.getSocketFactory());
+            }
+        }
+        return sLegacySocketFactory;
+    }
+
+    /**
+     * Returns the sessions of the context of the library, or of the
+     * platform default context if there is none.
+     */
+    private static SSLSessionContext getSessionContext() {
+        if (sContext != null) {
+            return sContext.getClientSessionContext();
+        }
+        try {
+            return SSLContext.getDefault().getClientSessionContext();
+        } catch (GeneralSecurityException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Asks the server for a session ticket on the socket, so the session
+     * can be resumed without the server keeping state. Only needed for the
+     * sockets of the library's own context, i.e. up to Android 5.0, whose
+     * SSLContext leaves tickets off. Before Android 4.2 the platform offers
+     * no way to turn them on, and those releases always do a full
+     * handshake for a session the server didn't keep.
+     */
+    static void enableSessionTickets(SSLSocket socket) {
+        try {
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR1) {
+                getTicketHelper().setUseSessionTickets(socket, true);
+            }
+        } catch (IllegalArgumentException e) {
+            // Not a socket of the platform provider, it will do a full handshake.
+            HockeyLog.debug(HockeyLog.HOCKEY_TAG, "Session tickets are not supported by %s", socket.getClass().getName());
+        }
+    }
+
+    private static synchronized SSLCertificateSocketFactory getTicketHelper() {
+        if (sTicketHelper == null) {
+            sTicketHelper = (SSLCertificateSocketFactory) SSLCertificateSocketFactory.getDefault(0);
+        }
+        return sTicketHelper;
+    }
+
+    private static SSLContext getContext(String protocol) {
+        try {
+            /*
+             * Explicitly specify protocol for SSL context.
+             * See https://www.java.com/en/configure_crypto.html#enableTLSv1_2
+             */
+            SSLContext context = SSLContext.getInstance(protocol);
+            context.init(null, null, null);
+
+            SSLSessionContext sessions = context.getClientSessionContext();
+            sessions.setSessionCacheSize(SESSION_CACHE_SIZE);
+            sessions.setSessionTimeout(SESSION_TIMEOUT_SECONDS);
+            sContext = context;
+            return context;
+        } catch (GeneralSecurityException e) {
+            HockeyLog.warn(HockeyLog.HOCKEY_TAG, "Could not create the TLS context", e);
+            return null;
+        }
+    }
+}
@@ -0,0 +1,111 @@
+package com.audacious_software.zamboni.utils;
+
+import android.os.Build;
+import android.os.Trace;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * <h3>Description</h3>
+ *
+ * Internal helper class. Adds the work of the library to systrace and
+ * Perfetto traces: sections for synchronous steps, async slices for
+ * operations spanning several threads, and names for the background
+ * threads the library borrows. Everything is off unless enabled with
+ * {@link #setEnabled(boolean)}, in which case each call costs a single
+ * field read.
+ *
+ **/
+public class TraceUtil {
+    private static final String PREFIX = "Zamboni.";
+
+    private static volatile boolean sEnabled = false;
+
+    private static final AtomicInteger sNextCookie = new AtomicInteger(1);
+
+    /**
+     * Enables trace markers and thread names. Sections require Android 4.3,
+     * async slices Android 10.
+     *
+     * @param enabled true to emit markers
+     */
+    public static void setEnabled(boolean enabled) {
+        sEnabled = enabled;
+    }
+
+    public static boolean isEnabled() {
+        return sEnabled;
+    }
+
+    /**
+     * Begins a section on the current thread. Must be ended with
+     * {@link #endSection(boolean)} on the same thread, with the result of
+     * this call, so sections stay balanced if tracing is enabled or
+     * disabled in between.
+     *
+     * @param name the name of the section, without prefix
+     * @return true if a section was begun
+     */
+    public static boolean beginSection(String name) {
+        if (sEnabled && Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR2) {
+            Trace.beginSection(PREFIX + name);
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * @param begun the result of {@link #beginSection(String)}
+     */
+    public static void endSection(boolean begun) {
+        if (begun) {
+            Trace.endSection();
+        }
+    }
+
+    /**
+     * Begins an async slice, which may end on another thread.
+     *
+     * @param name the name of the slice, without prefix
+     * @return the cookie to pass to {@link #endAsyncSection(String, int)},
+     * 0 if tracing is disabled
+     */
+    public static int beginAsyncSection(String name) {
+        if (sEnabled && Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q) {
+            int cookie = sNextCookie.getAndIncrement();
+            Trace.beginAsyncSection(PREFIX + name, cookie);
+            return cookie;
+        }
+        return 0;
+    }
+
+    public static void endAsyncSection(String name, int cookie) {
+        if (cookie != 0 && Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q) {
+            Trace.endAsyncSection(PREFIX + name, cookie);
+        }
+    }
+
+    /**
+     * Names the current thread while it works for the library. Pooled
+     * threads must be given back their name with {@link #restoreThreadName(String)}.
+     *
+     * @param name the name of the thread, without prefix
+     * @return the previous name, null if tracing is disabled
+     */
+    public static String nameThread(String name) {
+        if (!sEnabled) {
+            return null;
+        }
+
+        Thread thread = Thread.currentThread();
+        String previous = thread.getName();
+        thread.setName("Zamboni-" + name);
+        return previous;
+    }
+
+    public static void restoreThreadName(String previous) {
+        if (previous != null) {
+            Thread.currentThread().setName(previous);
+        }
+    }
+}
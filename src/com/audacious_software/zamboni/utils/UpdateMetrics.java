@@ -0,0 +1,284 @@
+package com.audacious_software.zamboni.utils;
+
+import android.os.SystemClock;
+
+import com.audacious_software.zamboni.listeners.UpdateMetricsListener;
+
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * <h3>Description</h3>
+ *
+ * Default {@link UpdateMetricsListener} which sums up all reported values
+ * in memory, and holder of the listener used by the library.
+ *
+ **/
+public class UpdateMetrics extends UpdateMetricsListener {
+    private static volatile UpdateMetricsListener sListener = new UpdateMetrics();
+
+    private static volatile long sUpdateDetectedTime = -1L;
+
+    private final AtomicLong mRequests = new AtomicLong();
+    private final AtomicLong mDnsMillis = new AtomicLong();
+    private final AtomicLong mConnectMillis = new AtomicLong();
+    private final AtomicLong mTlsMillis = new AtomicLong();
+    private final AtomicLong mFirstByteMillis = new AtomicLong();
+    private final AtomicLong mFeedBytes = new AtomicLong();
+    private final AtomicLong mParseMillis = new AtomicLong();
+    private final AtomicLong mDownloads = new AtomicLong();
+    private final AtomicLong mFailedDownloads = new AtomicLong();
+    private final AtomicLong mDownloadBytes = new AtomicLong();
+    private final AtomicLong mDownloadMillis = new AtomicLong();
+    private final AtomicLong mHandshakes = new AtomicLong();
+    private final AtomicLong mResumedHandshakes = new AtomicLong();
+    private final AtomicLong mHandshakeMillis = new AtomicLong();
+    private final AtomicLong mRetries = new AtomicLong();
+    private final AtomicLong mVerifyMillis = new AtomicLong();
+    private final AtomicLong mInvalidApks = new AtomicLong();
+    private final AtomicLong mInstallerLatencyMillis = new AtomicLong(-1L);
+    private final AtomicLong mBandwidthEstimates = new AtomicLong();
+    private final AtomicLong mEstimatedBytesPerSecond = new AtomicLong(-1L);
+    private final AtomicLong mBlockDownloads = new AtomicLong();
+    private final AtomicLong mReusedBytes = new AtomicLong();
+    private final AtomicLong mScanMillis = new AtomicLong();
+
+    /**
+     * Returns the listener that receives the metrics of the library.
+     */
+    public static UpdateMetricsListener getListener() {
+        return sListener;
+    }
+
+    /**
+     * Replaces the listener that receives the metrics of the library.
+     *
+     * @param listener the listener, or null to restore a new in-memory instance
+     */
+    public static void setListener(UpdateMetricsListener listener) {
+        sListener = listener != null ? listener : new UpdateMetrics();
+    }
+
+    /**
+     * Remembers when an update was found, to report the latency until the
+     * installer is launched.
+     */
+    public static void markUpdateDetected() {
+        sUpdateDetectedTime = SystemClock.elapsedRealtime();
+    }
+
+    /**
+     * Returns the time since {@link #markUpdateDetected()} or -1.
+     */
+    public static long getMillisSinceUpdateDetected() {
+        long detected = sUpdateDetectedTime;
+        return detected >= 0L ? SystemClock.elapsedRealtime() - detected : -1L;
+    }
+
+    @Override
+    public void onRequestTimed(int phase, long connectMillis, long tlsMillis, long firstByteMillis) {
+        mRequests.incrementAndGet();
+        mConnectMillis.addAndGet(connectMillis);
+        mTlsMillis.addAndGet(tlsMillis);
+        mFirstByteMillis.addAndGet(firstByteMillis);
+    }
+
+    @Override
+    public void onHostResolved(int phase, long millis) {
+        mDnsMillis.addAndGet(millis);
+    }
+
+    @Override
+    public void onFeedParsed(long bytes, long parseMillis) {
+        mFeedBytes.addAndGet(bytes);
+        mParseMillis.addAndGet(parseMillis);
+    }
+
+    @Override
+    public void onDownloadFinished(long bytes, long millis, boolean successful) {
+        mDownloads.incrementAndGet();
+        if (!successful) {
+            mFailedDownloads.incrementAndGet();
+        }
+        mDownloadBytes.addAndGet(bytes);
+        mDownloadMillis.addAndGet(millis);
+    }
+
+    @Override
+    public void onBandwidthEstimated(int networkType, long bytesPerSecond) {
+        mBandwidthEstimates.incrementAndGet();
+        mEstimatedBytesPerSecond.set(bytesPerSecond);
+    }
+
+    @Override
+    public void onBlockDownload(long reusedBytes, long fetchedBytes, long scanMillis) {
+        mBlockDownloads.incrementAndGet();
+        mReusedBytes.addAndGet(reusedBytes);
+        mScanMillis.addAndGet(scanMillis);
+    }
+
+    @Override
+    public void onTlsHandshake(int phase, long millis, boolean resumed) {
+        mHandshakes.incrementAndGet();
+        if (resumed) {
+            mResumedHandshakes.incrementAndGet();
+        }
+        mHandshakeMillis.addAndGet(millis);
+    }
+
+    @Override
+    public void onRetry(int phase) {
+        mRetries.incrementAndGet();
+    }
+
+    @Override
+    public void onApkVerified(long millis, boolean valid) {
+        mVerifyMillis.addAndGet(millis);
+        if (!valid) {
+            mInvalidApks.incrementAndGet();
+        }
+    }
+
+    @Override
+    public void onInstallerLaunched(long millisSinceUpdateDetected) {
+        mInstallerLatencyMillis.set(millisSinceUpdateDetected);
+    }
+
+    public long getRequestCount() {
+        return mRequests.get();
+    }
+
+    public long getDnsMillis() {
+        return mDnsMillis.get();
+    }
+
+    public long getConnectMillis() {
+        return mConnectMillis.get();
+    }
+
+    public long getTlsMillis() {
+        return mTlsMillis.get();
+    }
+
+    public long getFirstByteMillis() {
+        return mFirstByteMillis.get();
+    }
+
+    public long getFeedBytes() {
+        return mFeedBytes.get();
+    }
+
+    public long getParseMillis() {
+        return mParseMillis.get();
+    }
+
+    public long getDownloadCount() {
+        return mDownloads.get();
+    }
+
+    public long getFailedDownloadCount() {
+        return mFailedDownloads.get();
+    }
+
+    public long getDownloadBytes() {
+        return mDownloadBytes.get();
+    }
+
+    public long getDownloadMillis() {
+        return mDownloadMillis.get();
+    }
+
+    /**
+     * Returns the average download throughput in bytes per second, or 0
+     * if nothing was downloaded yet.
+     */
+    public long getDownloadBytesPerSecond() {
+        long millis = mDownloadMillis.get();
+        return millis > 0L ? mDownloadBytes.get() * 1000L / millis : 0L;
+    }
+
+    public long getBandwidthEstimateCount() {
+        return mBandwidthEstimates.get();
+    }
+
+    /**
+     * Returns the last throughput estimate in bytes per second, or -1 if
+     * there was none yet. Unlike {@link #getDownloadBytesPerSecond()}, it
+     * is an average over recent transfers on the same type of network,
+     * including those of earlier launches.
+     */
+    public long getEstimatedBytesPerSecond() {
+        return mEstimatedBytesPerSecond.get();
+    }
+
+    public long getBlockDownloadCount() {
+        return mBlockDownloads.get();
+    }
+
+    /**
+     * Returns the bytes of block downloads that were copied from the
+     * installed APK instead of being downloaded.
+     */
+    public long getReusedBytes() {
+        return mReusedBytes.get();
+    }
+
+    public long getScanMillis() {
+        return mScanMillis.get();
+    }
+
+    public long getHandshakeCount() {
+        return mHandshakes.get();
+    }
+
+    public long getResumedHandshakeCount() {
+        return mResumedHandshakes.get();
+    }
+
+    public long getHandshakeMillis() {
+        return mHandshakeMillis.get();
+    }
+
+    /**
+     * Returns the percentage of TLS handshakes which resumed a session, or
+     * 0 if there was no handshake yet.
+     */
+    public int getResumptionPercent() {
+        long handshakes = mHandshakes.get();
+        return handshakes > 0L ? (int) (mResumedHandshakes.get() * 100L / handshakes) : 0;
+    }
+
+    public long getRetryCount() {
+        return mRetries.get();
+    }
+
+    public long getVerifyMillis() {
+        return mVerifyMillis.get();
+    }
+
+    public long getInvalidApkCount() {
+        return mInvalidApks.get();
+    }
+
+    /**
+     * Returns the latency of the last update from being found to the
+     * installer being launched, or -1.
+     */
+    public long getInstallerLatencyMillis() {
+        return mInstallerLatencyMillis.get();
+    }
+
+    @Override
+    public String toString() {
+        return String.format(Locale.US, "requests=%d dns=%dms connect=%dms tls=%dms ttfb=%dms feed=%dB parse=%dms "
+                        + "downloads=%d failed=%d bytes=%d time=%dms throughput=%dB/s estimate=%dB/s "
+                        + "blockDownloads=%d reused=%d scan=%dms "
+                        + "handshakes=%d resumed=%d%% handshakeTime=%dms retries=%d verify=%dms invalid=%d installer=%dms",
+                getRequestCount(), getDnsMillis(), getConnectMillis(), getTlsMillis(), getFirstByteMillis(),
+                getFeedBytes(), getParseMillis(), getDownloadCount(), getFailedDownloadCount(), getDownloadBytes(),
+                getDownloadMillis(), getDownloadBytesPerSecond(), getEstimatedBytesPerSecond(), getBlockDownloadCount(),
+                getReusedBytes(), getScanMillis(), getHandshakeCount(),
+                getResumptionPercent(), getHandshakeMillis(), getRetryCount(), getVerifyMillis(), getInvalidApkCount(),
+                getInstallerLatencyMillis());
+    }
+}
@@ -0,0 +1,212 @@
+package com.audacious_software.zamboni.utils;
+
+import android.content.Context;
+import android.content.pm.PackageManager;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.LinearLayout;
+
+import androidx.asynclayoutinflater.view.AsyncLayoutInflater;
+import androidx.lifecycle.Lifecycle;
+import androidx.lifecycle.LifecycleEventObserver;
+import androidx.lifecycle.LifecycleOwner;
+
+import com.audacious_software.zamboni.R;
+import com.audacious_software.zamboni.UpdateInfoListener;
+import com.audacious_software.zamboni.tasks.GetFileSizeTask;
+
+import java.util.concurrent.Callable;
+
+/**
+ * <h3>Description</h3>
+ *
+ * Internal helper class. Prepares the update UI as soon as an update was
+ * found, while the user still looks at the update dialog. The versions are
+ * parsed, the release notes rendered, the size of the APK determined and
+ * the layout inflated in the background, so the UpdateFragment can show
+ * everything right away. The layout belongs to the activity it was
+ * inflated for and is dropped when that activity is destroyed.
+ *
+ **/
+public class UpdateWarmup {
+    private static UpdateWarmup sCurrent;
+
+    private final int mFeedHash;
+    private volatile VersionHelper mVersionHelper;
+    private volatile long mAppSize = -1L;
+    private LifecycleOwner mLayoutOwner;
+    private LifecycleEventObserver mLayoutObserver;
+    private View mLayoutView;
+
+    private UpdateWarmup(int feedHash) {
+        this.mFeedHash = feedHash;
+    }
+
+    /**
+     * Starts preparing the update UI for the given feed, replacing any
+     * previous warm-up. Must be called on the main thread.
+     *
+     * @param context       the activity that will show the update fragment
+     * @param versionInfo   JSON string with info for each version
+     * @param appUrl        URL of the APK, used to determine its size
+     * @param inflateLayout true to inflate the layout with the given context,
+     *                      i.e. if the fragment is shown as dialog in this
+     *                      activity, which has to be a LifecycleOwner
+     */
+    public static synchronized void start(Context context, final String versionInfo, String appUrl, boolean inflateLayout) {
+        final UpdateWarmup warmup = new UpdateWarmup(versionInfo.hashCode());
+        if (sCurrent != null) {
+            sCurrent.releaseLayout();
+        }
+        sCurrent = warmup;
+
+        final Context appContext = context.getApplicationContext();
+        final GetFileSizeTask sizeTask = appUrl != null ? new GetFileSizeTask(appContext, appUrl, null) : null;
+
+        AsyncTaskUtils.execute(new Callable<Void>() {
+            @Override
+            public Void call() {
+                String threadName = TraceUtil.nameThread("Warmup");
+                boolean traced = TraceUtil.beginSection("warmup");
+                try {
+                    warmup.prepare(appContext, versionInfo, sizeTask);
+                } finally {
+                    TraceUtil.endSection(traced);
+                    TraceUtil.restoreThreadName(threadName);
+                }
+                return null;
+            }
+        });
+
+        if (inflateLayout && context instanceof LifecycleOwner) {
+            warmup.inflateLayout(context, (LifecycleOwner) context);
+        }
+    }
+
+    /**
+     * Returns and removes the warm-up for the given feed, or null if there
+     * is none. Parts that aren't ready yet are null or unknown.
+     *
+     * @param versionInfo JSON string with info for each version
+     */
+    public static synchronized UpdateWarmup take(String versionInfo) {
+        UpdateWarmup warmup = sCurrent;
+        if (warmup == null || versionInfo == null || warmup.mFeedHash != versionInfo.hashCode()) {
+            return null;
+        }
+        sCurrent = null;
+        return warmup;
+    }
+
+    /**
+     * Drops the current warm-up, e.g. if the user declined the update.
+     * Must be called on the main thread.
+     */
+    public static synchronized void clear() {
+        if (sCurrent != null) {
+            sCurrent.releaseLayout();
+        }
+        sCurrent = null;
+    }
+
+    /**
+     * Returns the parsed versions with their release notes rendered, or
+     * null if they aren't ready yet. They are compared against the version
+     * code of the installed package, so they can't be used by a fragment
+     * that determines its current version code differently.
+     */
+    public VersionHelper getVersionHelper() {
+        return mVersionHelper;
+    }
+
+    /**
+     * Returns the size of the APK or -1 if it is not known yet.
+     */
+    public long getAppSize() {
+        return mAppSize;
+    }
+
+    /**
+     * Returns the inflated update layout if it is ready and was inflated
+     * for the given context. The view can only be taken once. Must be
+     * called on the main thread.
+     */
+    public View takeLayoutView(Context context) {
+        if (mLayoutView == null || mLayoutOwner != context) {
+            return null;
+        }
+        View view = mLayoutView;
+        releaseLayout();
+        return view;
+    }
+
+    private void prepare(final Context context, String versionInfo, GetFileSizeTask sizeTask) {
+        VersionHelper versionHelper = new VersionHelper(context, versionInfo, new UpdateInfoListener() {
+            @Override
+            public int getCurrentVersionCode() {
+                try {
+                    return context.getPackageManager().getPackageInfo(context.getPackageName(), PackageManager.GET_META_DATA).versionCode;
+                } catch (PackageManager.NameNotFoundException e) {
+                    return -1;
+                }
+            }
+        });
+
+        // Fill the caches used by the UpdateFragment, in the mode it uses by default.
+        ReleaseNotesRenderer renderer = versionHelper.getReleaseNotesRenderer(false);
+        if (SpannedReleaseNotes.isSupported(renderer)) {
+            SpannedReleaseNotes.putCached(versionHelper.getReleaseNotesCacheKey(false), SpannedReleaseNotes.build(renderer, renderer.getSectionCount()));
+        } else {
+            versionHelper.getReleaseNotes(false);
+        }
+        mVersionHelper = versionHelper;
+
+        long appSize = versionHelper.getFileSizeBytes();
+        if (appSize < 0L && sizeTask != null) {
+            long probedSize = sizeTask.probeSize();
+            if (probedSize > 0L) {
+                appSize = probedSize;
+            }
+        }
+        mAppSize = appSize;
+    }
+
+    private void inflateLayout(Context context, LifecycleOwner owner) {
+        final LinearLayout layout = new LinearLayout(context);
+        mLayoutOwner = owner;
+        mLayoutObserver = new LifecycleEventObserver() {
+            @Override
+            public void onStateChanged(LifecycleOwner source, Lifecycle.Event event) {
+                if (event == Lifecycle.Event.ON_DESTROY) {
+                    // The view holds the activity, e.g. after a rotation or finish().
+                    releaseLayout();
+                }
+            }
+        };
+        owner.getLifecycle().addObserver(mLayoutObserver);
+
+        new AsyncLayoutInflater(context).inflate(R.layout.hockeyapp_fragment_update, layout, new AsyncLayoutInflater.OnInflateFinishedListener() {
+            @Override
+            public void onInflateFinished(View view, int resid, ViewGroup parent) {
+                if (mLayoutObserver == null) {
+                    // Released while inflating.
+                    return;
+                }
+                layout.addView(view);
+                mLayoutView = layout;
+            }
+        });
+    }
+
+    /**
+     * Drops the layout and the reference to its activity.
+     */
+    private void releaseLayout() {
+        if (mLayoutObserver != null) {
+            mLayoutOwner.getLifecycle().removeObserver(mLayoutObserver);
+        }
+        mLayoutObserver = null;
+        mLayoutOwner = null;
+        mLayoutView = null;
+    }
+}
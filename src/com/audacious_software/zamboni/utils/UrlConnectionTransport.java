@@ -0,0 +1,28 @@
+package com.audacious_software.zamboni.utils;
+
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.net.URL;
+
+/**
+ * <h3>Description</h3>
+ *
+ * Internal helper class. The default {@link HttpTransport}, using the
+ * HttpURLConnection of the platform. It keeps idle connections alive per
+ * host and hands them to the next request to the same host, as long as
+ * the previous response was read to the end and closed and both used the
+ * same socket factory. {@link Util#openHttpsConnection(URL)} always sets
+ * the same factory, so the update check, the size probe and the download
+ * can share a connection.
+ *
+ **/
+public class UrlConnectionTransport implements HttpTransport {
+
+    @Override
+    public HttpURLConnection open(URL url) throws IOException {
+        if ("https".equals(url.getProtocol())) {
+            return Util.openHttpsConnection(url);
+        }
+        return (HttpURLConnection) url.openConnection();
+    }
+}
@@ -10,8 +10,6 @@ import android.content.pm.ApplicationInfo;
 import android.content.pm.PackageManager;
 import android.content.res.Configuration;
 import android.database.Cursor;
-import android.net.ConnectivityManager;
-import android.net.NetworkInfo;
 import android.net.Uri;
 import android.os.Build;
 import android.os.Bundle;
@@ -24,11 +22,10 @@ import android.view.accessibility.AccessibilityManager;
 
 import com.audacious_software.zamboni.R;
 
-import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.InputStreamReader;
 import java.io.UnsupportedEncodingException;
+import java.net.HttpURLConnection;
 import java.net.URL;
 import java.net.URLEncoder;
 import java.security.MessageDigest;
@@ -40,6 +37,7 @@ import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 import javax.net.ssl.HttpsURLConnection;
+import javax.net.ssl.SSLSocketFactory;
 
 public class Util {
     private static final String APP_IDENTIFIER_PATTERN = "[0-9a-f]+";
@@ -57,6 +55,8 @@ public class Util {
         }
     };
 
+    private static volatile HttpTransport sTransport = new UrlConnectionTransport();
+
     /**
      * Returns the given param URL-encoded.
      *
@@ -68,7 +68,7 @@ public class Util {
             return URLEncoder.encode(param, "UTF-8");
         } catch (UnsupportedEncodingException e) {
             // UTF-8 should be available, so just in case
-            HockeyLog.error("Failed to encode param " + param, e);
+            HockeyLog.error(HockeyLog.HOCKEY_TAG, "Failed to encode param %s", param, e);
             return "";
         }
     }
@@ -224,17 +224,39 @@ public class Util {
         return bundle;
     }
 
+    /**
+     * Returns true if the device has a default network, as last reported by
+     * the {@link NetworkMonitor}. Doesn't call the system service.
+     *
+     * @param context the context to use
+     */
     public static boolean isConnectedToNetwork(Context context) {
-        try {
-            ConnectivityManager connectivityManager = (ConnectivityManager) context.getApplicationContext().getSystemService(Context.CONNECTIVITY_SERVICE);
-            if (connectivityManager != null) {
-                NetworkInfo activeNetwork = connectivityManager.getActiveNetworkInfo();
-                return activeNetwork != null && activeNetwork.isConnected();
-            }
-        } catch (Exception e) {
-            HockeyLog.error("Exception thrown when check network is connected", e);
-        }
-        return false;
+        return NetworkMonitor.get(context).getSnapshot().isConnected();
+    }
+
+    /**
+     * Replaces the transport used for the update check, the size probe and
+     * the download, e.g. with an HTTP/2-capable client of the app.
+     *
+     * @param transport the transport, null to restore the default
+     */
+    public static void setTransport(HttpTransport transport) {
+        sTransport = transport != null ? transport : new UrlConnectionTransport();
+    }
+
+    public static HttpTransport getTransport() {
+        return sTransport;
+    }
+
+    /**
+     * Opens a connection with the current transport, see {@link #setTransport(HttpTransport)}.
+     *
+     * @param url an http or https URL
+     * @return a connection which is not connected yet
+     * @throws IOException if the connection can't be created
+     */
+    public static HttpURLConnection openConnection(URL url) throws IOException {
+        return sTransport.open(url);
     }
 
     public static HttpsURLConnection openHttpsConnection(URL url) throws IOException {
@@ -252,10 +274,15 @@ public class Util {
          * There is a problem that TLS 1.2 is still disabled by default on some Samsung devices
          * with API 21, so apply the rule to this API level as well.
          * See https://github.com/square/okhttp/issues/2372#issuecomment-244807676
+         *
+         * Either way all requests share one socket factory, so the TLS session of the feed
+         * check can be resumed by the download, see TlsSessions. From API 22 on, that's the
+         * default factory, which the app may have replaced, e.g. for certificate pinning.
          */
-        if (Build.VERSION.SDK_INT <= Build.VERSION_CODES.LOLLIPOP) {
-            connection.setSSLSocketFactory(new TLS1_2SocketFactory());
-        }
+        SSLSocketFactory socketFactory = TlsSessions.getSocketFactory();
+
+        // Reports TCP and TLS timings to the RequestTimer of the calling thread.
+        connection.setSSLSocketFactory(RequestTimer.wrap(socketFactory));
         return connection;
     }
 
@@ -327,25 +354,7 @@ public class Util {
     }
 
     public static String convertStreamToString(InputStream inputStream) {
-        BufferedReader reader = new BufferedReader(new InputStreamReader(inputStream), 1024);
-        StringBuilder stringBuilder = new StringBuilder();
-
-        String line;
-        try {
-            while ((line = reader.readLine()) != null) {
-                stringBuilder.append(line).append('\n');
-            }
-        } catch (IOException e) {
-            HockeyLog.error("Failed to convert stream to string", e);
-        } finally {
-            try {
-                if (inputStream != null) {
-                    inputStream.close();
-                }
-            } catch (Exception ignored) {
-            }
-        }
-        return stringBuilder.toString();
+        return StreamUtil.convertStreamToString(inputStream);
     }
 
     public static byte[] hash(final byte[] bytes, String algorithm) throws NoSuchAlgorithmException {
@@ -360,14 +369,7 @@ public class Util {
      * @param bytes a byte array
      */
     public static String bytesToHex(final byte[] bytes) {
-        StringBuilder hexString = new StringBuilder();
-        for (byte aMessageDigest : bytes) {
-            String h = Integer.toHexString(0xFF & aMessageDigest);
-            while (h.length() < 2)
-                h = "0" + h;
-            hexString.append(h);
-        }
-        return hexString.toString();
+        return StreamUtil.bytesToHex(bytes);
     }
 
     /**
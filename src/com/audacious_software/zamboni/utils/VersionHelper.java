@@ -4,7 +4,6 @@ import android.annotation.SuppressLint;
 import android.content.Context;
 import android.content.pm.ApplicationInfo;
 import android.content.pm.PackageManager;
-import android.text.TextUtils;
 
 import com.audacious_software.zamboni.R;
 import com.audacious_software.zamboni.UpdateInfoListener;
@@ -16,12 +15,9 @@ import org.json.JSONObject;
 import java.io.File;
 import java.text.DateFormat;
 import java.text.SimpleDateFormat;
-import java.util.ArrayList;
-import java.util.Collections;
-import java.util.Comparator;
 import java.util.Date;
-import java.util.Scanner;
-import java.util.regex.Pattern;
+import java.util.List;
+import java.util.Locale;
 
 /**
  * <h3>Description</h3>
@@ -31,58 +27,70 @@ import java.util.regex.Pattern;
  *
  **/
 public class VersionHelper {
-    public static final String VERSION_MAX = "99.0";
+    public static final String VERSION_MAX = VersionStrings.VERSION_MAX;
 
-    private ArrayList<JSONObject> mSortedVersions;
+    /**
+     * Maximum number of versions retained for the release notes.
+     */
+    public static final int MAX_NUMBER_OF_VERSIONS = 25;
+
+    private ReleaseIndex mIndex;
+    private ReleaseNotesRenderer.Template mTemplate;
+    private int mFeedHash;
     private JSONObject mNewest;
     private Context mContext;
     private UpdateInfoListener mListener;
     private int mCurrentVersionCode;
 
     public VersionHelper(Context context, String infoJSON, UpdateInfoListener listener) {
+        this(context, infoJSON, listener, MAX_NUMBER_OF_VERSIONS);
+    }
+
+    public VersionHelper(Context context, String infoJSON, UpdateInfoListener listener, int maxVersions) {
         this.mContext = context;
         this.mListener = listener;
 
-        loadVersions(infoJSON);
-        sortVersions();
+        boolean traced = TraceUtil.beginSection("VersionHelper");
+        try {
+            loadVersions(infoJSON, maxVersions);
+        } finally {
+            TraceUtil.endSection(traced);
+        }
     }
 
-    private void loadVersions(String infoJSON) {
+    private void loadVersions(String infoJSON, int maxVersions) {
         this.mNewest = new JSONObject();
-        this.mSortedVersions = new ArrayList<>();
         this.mCurrentVersionCode = mListener.getCurrentVersionCode();
+        this.mFeedHash = infoJSON != null ? infoJSON.hashCode() : 0;
 
+        JSONArray versions = null;
         try {
-            JSONArray versions = new JSONArray(infoJSON);
-
-            int versionCode = this.mCurrentVersionCode;
-            for (int index = 0; index < versions.length(); index++) {
-                JSONObject entry = versions.getJSONObject(index);
-                boolean largerVersionCode = (entry.getInt("version") > versionCode);
-                boolean newerApkFile = ((entry.getInt("version") == versionCode) && VersionHelper.isNewerThanLastUpdateTime(mContext, entry.getLong("timestamp")));
-
-                if (largerVersionCode || newerApkFile) {
-                    mNewest = entry;
-                    versionCode = entry.getInt("version");
-                }
-                mSortedVersions.add(entry);
-            }
+            versions = new JSONArray(infoJSON);
         } catch (JSONException | NullPointerException ignored) {
         }
-    }
+        this.mIndex = new ReleaseIndex(versions, maxVersions);
 
-    private void sortVersions() {
-        Collections.sort(mSortedVersions, new Comparator<JSONObject>() {
-            public int compare(JSONObject object1, JSONObject object2) {
-                try {
-                    if (object1.getInt("version") > object2.getInt("version")) {
-                        return 0;
-                    }
-                } catch (JSONException | NullPointerException ignored) {
-                }
-                return 0;
+        // The index is ordered newest first, so only the first entry can be an update.
+        if (mIndex.size() > 0) {
+            int versionCode = mIndex.getVersionCode(0);
+            boolean largerVersionCode = (versionCode > mCurrentVersionCode);
+            boolean newerApkFile = ((versionCode == mCurrentVersionCode) && VersionHelper.isNewerThanLastUpdateTime(mContext, mIndex.getTimestamp(0)));
+
+            if (largerVersionCode || newerApkFile) {
+                mNewest = mIndex.get(0);
             }
-        });
+        }
+    }
+
+    /**
+     * Returns the retained version with the given release ID, e.g. the
+     * target of a restore link.
+     *
+     * @param versionID the release ID
+     * @return the version or null if it is not part of the release notes
+     */
+    public JSONObject getVersion(String versionID) {
+        return mIndex.findById(versionID);
     }
 
     public String getVersionString() {
@@ -108,6 +116,30 @@ public class VersionHelper {
         return (external && appSize == 0L) ? -1L : appSize;
     }
 
+    /**
+     * Returns the URLs the newest version can be downloaded from, the
+     * app_url first, see {@link FeedParser#getDownloadUrls(JSONObject)}.
+     */
+    public List<String> getDownloadUrls() {
+        return FeedParser.getDownloadUrls(mNewest);
+    }
+
+    /**
+     * Returns the URL of the block index of the newest version, or null,
+     * see {@link FeedParser#getBlockIndexUrl(JSONObject)}.
+     */
+    public String getBlockIndexUrl() {
+        return FeedParser.getBlockIndexUrl(mNewest);
+    }
+
+    /**
+     * Returns the split APKs of the newest version, or null, see
+     * {@link SplitApks#parse(JSONObject)}.
+     */
+    public SplitApks getSplitApks() {
+        return SplitApks.parse(mNewest);
+    }
+
     private static String failSafeGetStringFromJSON(JSONObject json, String name, String defaultValue) {
         try {
             return json.getString(name);
@@ -124,77 +156,59 @@ public class VersionHelper {
         }
     }
 
+    /**
+     * Returns the release notes as HTML. The result is cached per feed,
+     * locale and installed version, so repeated calls (e.g. after rotation)
+     * don't render again.
+     *
+     * @param showRestore whether to include restore links for older versions
+     * @return the release notes document
+     */
     public String getReleaseNotes(boolean showRestore) {
-        StringBuilder result = new StringBuilder();
-        result.append("<html>");
-        result.append("<body style='padding: 0px 0px 20px 0px'>");
-
-        int count = 0;
-        for (JSONObject version : mSortedVersions) {
-            if (count > 0) {
-                result.append(getSeparator());
-                if (showRestore) {
-                    result.append(getRestoreButton(version));
-                }
-            }
-            result.append(getVersionLine(count, version));
-            result.append(getVersionNotes(version));
-            count++;
+        String key = getReleaseNotesCacheKey(showRestore);
+        String html = ReleaseNotesRenderer.getCached(key);
+        if (html == null) {
+            html = getReleaseNotesRenderer(showRestore).render();
+            ReleaseNotesRenderer.putCached(key, html);
         }
-
-        result.append("</body>");
-        result.append("</html>");
-
-        return result.toString();
+        return html;
     }
 
-    private Object getSeparator() {
-        return "<hr style='border-top: 1px solid #c8c8c8; border-bottom: 0px; margin: 40px 10px 0px 10px;' />";
+    /**
+     * Returns the cached release notes or null if they haven't been rendered yet.
+     */
+    public String getCachedReleaseNotes(boolean showRestore) {
+        return ReleaseNotesRenderer.getCached(getReleaseNotesCacheKey(showRestore));
     }
 
-    private String getRestoreButton(JSONObject version) {
-        StringBuilder result = new StringBuilder();
-
-        String versionID = getVersionID(version);
-        if (!TextUtils.isEmpty(versionID)) {
-            String style = "background: #c8c8c8; color: #000; display: block; float: right; padding: 7px; margin: 0px 10px 10px; text-decoration: none;";
-            result.append(String.format("<a href='restore:%s' style='%s'>%s</a>",
-                    versionID, style, mContext.getString(R.string.hockeyapp_update_restore)));
-        }
-
-        return result.toString();
+    public String getReleaseNotesCacheKey(boolean showRestore) {
+        return ReleaseNotesRenderer.cacheKey(mFeedHash, getLocale().toString(), mCurrentVersionCode, showRestore);
     }
 
-    private String getVersionID(JSONObject version) {
-        String versionID = "";
-        try {
-            versionID = version.getString("id");
-        } catch (JSONException ignored) {
-        }
-        return versionID;
+    /**
+     * Returns a renderer for the retained versions that allows rendering
+     * the release notes section by section.
+     */
+    public ReleaseNotesRenderer getReleaseNotesRenderer(boolean showRestore) {
+        return new ReleaseNotesRenderer(mIndex, getTemplate(), getVersionCode(mNewest), mCurrentVersionCode, showRestore);
     }
 
-    private String getVersionLine(int count, JSONObject version) {
-        StringBuilder result = new StringBuilder();
-
-        int newestCode = getVersionCode(mNewest);
-        int versionCode = getVersionCode(version);
-        String versionName = getVersionName(version);
-
-        result.append("<div style='padding: 20px 10px 10px;'><strong>");
-        if (count == 0) {
-            result.append(mContext.getString(R.string.hockeyapp_update_newest_version)).append(':');
-        } else {
-            String versionString = String.format(mContext.getString(R.string.hockeyapp_update_version), versionName);
-            result.append(String.format("%s (%s): ", versionString, versionCode));
-            if ((versionCode != newestCode) && (versionCode == mCurrentVersionCode)) {
-                mCurrentVersionCode = -1;
-                result.append(String.format("[%s]", mContext.getString(R.string.hockeyapp_update_already_installed)));
-            }
+    private synchronized ReleaseNotesRenderer.Template getTemplate() {
+        if (mTemplate == null) {
+            mTemplate = new ReleaseNotesRenderer.Template(
+                    mContext.getString(R.string.hockeyapp_update_newest_version),
+                    mContext.getString(R.string.hockeyapp_update_version),
+                    mContext.getString(R.string.hockeyapp_update_already_installed),
+                    mContext.getString(R.string.hockeyapp_update_no_info),
+                    mContext.getString(R.string.hockeyapp_update_restore));
         }
-        result.append("</strong></div>");
+        return mTemplate;
+    }
 
-        return result.toString();
+    @SuppressWarnings("deprecation")
+    private Locale getLocale() {
+        Locale locale = mContext.getResources().getConfiguration().locale;
+        return locale != null ? locale : Locale.getDefault();
     }
 
     private int getVersionCode(JSONObject version) {
@@ -206,30 +220,6 @@ public class VersionHelper {
         return versionCode;
     }
 
-    private String getVersionName(JSONObject version) {
-        String versionName = "";
-        try {
-            versionName = version.getString("shortversion");
-        } catch (JSONException ignored) {
-        }
-        return versionName;
-    }
-
-    private String getVersionNotes(JSONObject version) {
-        StringBuilder result = new StringBuilder();
-
-        String notes = failSafeGetStringFromJSON(version, "notes", "");
-        result.append("<div style='padding: 0px 10px;'>");
-        if (notes.trim().length() == 0) {
-            result.append(String.format("<em>%s</em>", mContext.getString(R.string.hockeyapp_update_no_info)));
-        } else {
-            result.append(notes);
-        }
-        result.append("</div>");
-
-        return result.toString();
-    }
-
     /**
      * Compare two versions strings with each other by splitting at the .
      * and comparing the integer values. Additional string like "-update1"
@@ -242,45 +232,7 @@ public class VersionHelper {
      * -1 if the right side is bigger.
      */
     public static int compareVersionStrings(String left, String right) {
-        // If either side is null, we consider the versions equal
-        if ((left == null) || (right == null)) {
-            return 0;
-        }
-
-        try {
-            // Strip out any "-update1" stuff, then build a scanner for the strings
-            Scanner leftScanner = new Scanner(left.replaceAll("\\-.*", ""));
-            Scanner rightScanner = new Scanner(right.replaceAll("\\-.*", ""));
-            leftScanner.useDelimiter("\\.");
-            rightScanner.useDelimiter("\\.");
-
-            // Compare the parts
-            while ((leftScanner.hasNextInt()) && (rightScanner.hasNextInt())) {
-                int leftValue = leftScanner.nextInt();
-                int rightValue = rightScanner.nextInt();
-                if (leftValue < rightValue) {
-                    return -1;
-                } else if (leftValue > rightValue) {
-                    return 1;
-                }
-            }
-
-            // Left side has more parts, so consider it bigger
-            if (leftScanner.hasNextInt()) {
-                return 1;
-            }
-            // Right side has more parts, so consider it bigger
-            else if (rightScanner.hasNextInt()) {
-                return -1;
-            }
-            // Ok, they are equal
-            else {
-                return 0;
-            }
-        } catch (Exception e) {
-            // If any exceptions happen, return zero
-            return 0;
-        }
+        return VersionStrings.compare(left, right);
     }
 
     /**
@@ -322,18 +274,6 @@ public class VersionHelper {
      * @return mapped version number
      */
     public static String mapGoogleVersion(String version) {
-        if ((version == null) || (version.equalsIgnoreCase("L"))) {
-            return "5.0";
-        } else if (version.equalsIgnoreCase("M")) {
-            return "6.0";
-        } else if (version.equalsIgnoreCase("N")) {
-            return "7.0";
-        } else if (version.equalsIgnoreCase("O")) {
-            return "8.0";
-        } else if (Pattern.matches("^[a-zA-Z]+", version)) {
-            return VERSION_MAX;
-        } else {
-            return version;
-        }
+        return VersionStrings.mapGoogleVersion(version);
     }
 }